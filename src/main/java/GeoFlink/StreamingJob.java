@@ -18,11 +18,23 @@
 
 package GeoFlink;
 
+import GeoFlink.spatialIndices.AdaptiveGrid;
+import GeoFlink.spatialIndices.CellDensitySketch;
+import GeoFlink.spatialIndices.GridPartitioner;
+import GeoFlink.spatialIndices.HexagonalGrid;
+import GeoFlink.spatialIndices.QuadTree;
+import GeoFlink.spatialIndices.SpatialIndex;
 import GeoFlink.spatialIndices.UniformGrid;
 import GeoFlink.spatialObjects.Point;
+import GeoFlink.spatialObjects.PointBatch;
 import GeoFlink.spatialObjects.Polygon;
 import GeoFlink.spatialOperators.*;
+import GeoFlink.spatialStreams.CSVPointParser;
+import GeoFlink.spatialStreams.GeoJSONDeserializationSchema;
+import GeoFlink.spatialStreams.MappedFileReplaySource;
+import GeoFlink.spatialStreams.RawBytesDeserializationSchema;
 import GeoFlink.spatialStreams.SpatialStream;
+import GeoFlink.spatialStreams.TimestampParser;
 import GeoFlink.utils.HelperClass;
 import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.api.java.tuple.Tuple3;
@@ -40,6 +52,7 @@ import org.apache.flink.streaming.util.serialization.JSONKeyValueDeserialization
 import org.locationtech.jts.geom.Coordinate;
 import scala.Serializable;
 
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -77,6 +90,29 @@ public class StreamingJob implements Serializable {
 		boolean onCluster = Boolean.parseBoolean(parameters.get("onCluster"));
 		String dataset = parameters.get("dataset"); // TDriveBeijing, ATCShoppingMall
 		Long inactiveTrajDeletionThreshold = Long.parseLong(parameters.get("trajDeletionThreshold"));
+		String gridType = parameters.get("gridType", "UniformGrid"); // UniformGrid, QuadTree, AdaptiveGrid, HexagonalGrid
+		String cellNumbering = parameters.get("cellNumbering", "Hilbert"); // UniformGrid: RowMajor, ZOrder, Hilbert
+		String quadTreeSampleFile = parameters.get("quadTreeSampleFile"); // "x,y" points used to split the dense QuadTree cells
+		int quadTreeMaxDepth = parameters.getInt("quadTreeMaxDepth", 0); // 0: 4 levels finer than the uniformGridSize resolution
+		int quadTreeNodeCapacity = parameters.getInt("quadTreeNodeCapacity", 1000);
+		int regridInterval = parameters.getInt("regridInterval", 60); // AdaptiveGrid: seconds between two layout updates
+		long splitThreshold = parameters.getLong("splitThreshold", 10000); // AdaptiveGrid: points per regridInterval above which a cell is split
+		long mergeThreshold = parameters.getLong("mergeThreshold", 1000); // AdaptiveGrid: points per regridInterval at or below which sibling cells are merged
+		String partitioning = parameters.get("partitioning", "hash"); // hash, grid: cell to subtask assignment of the keyed operators
+		String cellWeightsFile = parameters.get("cellWeightsFile"); // grid partitioning: measured load as "x,y[,weight]" lines
+		int densityInterval = parameters.getInt("densityInterval", 0); // kNN: seconds between two density sketch updates, 0: fixed radius
+		double densityDecay = parameters.getDouble("densityDecay", 0.9); // kNN: decay factor of the density sketch per densityInterval
+		boolean objectReuse = parameters.getBoolean("objectReuse", false); // reuse mutable Points in the parsers and enable Flink object reuse
+		boolean offHeapWindow = parameters.getBoolean("offHeapWindow", false); // keep the window contents of the grid-based range and kNN queries in direct memory
+		boolean directGeoJSON = parameters.getBoolean("directGeoJSON", false); // parse the GeoJSON Kafka records directly into points/polygons/trajectory points (GeoJSONDeserializationSchema)
+		String csvColumns = parameters.get("csvColumns", "2,3,0,1"); // CSV inputFormat: "x,y,timestamp,objID" column indices (Default = ATC shopping mall)
+		int batchSize = parameters.getInt("batchSize", 0); // range, kNN and windowed TAggregate queries: points per cell batch (PointBatch), 0: no batching
+		long batchDelay = parameters.getLong("batchDelay", 100); // batchSize > 0: milliseconds after which an incomplete batch is emitted
+		String replayFile = parameters.get("replayFile"); // read the input stream from a file of SpatialBinaryFormat records (MappedFileReplaySource) instead of Kafka
+		String replayConvertFrom = parameters.get("replayConvertFrom"); // replayFile: first convert this file of inputFormat records (one per line) into the replayFile
+		double replaySpeed = parameters.getDouble("replaySpeed", 0); // replayFile: pace the records by their timestamps at replaySpeed x the recorded rate, 0: as fast as possible
+		double simplify = parameters.getDouble("simplify", 0); // trajectory range queries: simplify the query polygons with a tolerance of simplify x grid cell length (uniformGridSize), keeping the original shells for the refinement, 0: no simplification
+		String queryCellWeightsFile = parameters.get("queryCellWeightsFile"); // join: query stream density as "x,y[,weight]" lines, used with cellWeightsFile to choose the replicated stream
 
 		String bootStrapServers;
 		DateFormat inputDateFormat;
@@ -108,11 +144,14 @@ public class StreamingJob implements Serializable {
 			inputTopicName = "ATCShoppingMall";
 			//inputTopicName = "ATCShoppingMall_CSV";
 			outputTopicName = "outputTopicGeoFlink";
-			inputFormat = "GeoJSON"; // CSV, GeoJSON
+			inputFormat = "GeoJSON"; // CSV, GeoJSON, Binary
 			inputDateFormat = null;
 			 */
 		}
 		env.setParallelism(30);
+		if(objectReuse) {
+			env.getConfig().enableObjectReuse();
+		}
 
 		double minX;
 		double maxX;
@@ -160,7 +199,7 @@ public class StreamingJob implements Serializable {
 		//DataStream csvStream  = env.addSource(new FlinkKafkaConsumer<>(topicName, new SimpleStringSchema(), kafkaProperties).setStartFromEarliest());
 
 		// Defining Grid
-		UniformGrid uGrid;
+		SpatialIndex uGrid;
 
 		/*
 		Point queryPoint = new Point(-73.9857, 40.6789, uGrid);
@@ -210,7 +249,7 @@ public class StreamingJob implements Serializable {
 			maxY = 41.10000;
 
 			// Defining Grid
-			uGrid = new UniformGrid(uniformGridSize, minX, maxX, minY, maxY);
+			uGrid = createGrid(gridType, uniformGridSize, cellNumbering, minX, maxX, minY, maxY, quadTreeSampleFile, quadTreeMaxDepth, quadTreeNodeCapacity);
 
 			// setting set size for filter query
 			if(k == 5)
@@ -242,7 +281,7 @@ public class StreamingJob implements Serializable {
 			maxY = 24224.0;
 
 			// Defining Grid
-			uGrid = new UniformGrid(uniformGridSize, minX, maxX, minY, maxY);
+			uGrid = createGrid(gridType, uniformGridSize, cellNumbering, minX, maxX, minY, maxY, quadTreeSampleFile, quadTreeMaxDepth, quadTreeNodeCapacity);
 
 			if(k == 5)
 				trajIDs = Stream.of("9211800", "9320801", "9090500", "7282400", "10390100").collect(Collectors.toSet());
@@ -265,8 +304,53 @@ public class StreamingJob implements Serializable {
 
 
 
+		// Polygon simplification tolerance, relative to the cell length of the uniformGridSize x uniformGridSize grid
+		double simplifyTolerance = simplify * (maxX - minX) / uniformGridSize;
+		if(simplifyTolerance > 0) {
+			// The trajectory range queries evaluate the shells (Polygon.containsPoint): the simplified shells decide the points farther than
+			// the tolerance, the original shells the nearer ones. The queries on the bounding boxes (5-8) use the polygons as they are
+			Set<Polygon> simplifiedPolygonSet = new HashSet<>();
+			for (Polygon poly : polygonSet) {
+				Polygon simplifiedPoly = new Polygon(Arrays.asList(poly.getCoordinates()), uGrid);
+				simplifiedPoly.simplify(simplifyTolerance, true);
+				simplifiedPolygonSet.add(simplifiedPoly);
+			}
+			polygonSet = simplifiedPolygonSet;
+		}
+
+		// Cell to subtask assignment, null for hash partitioning of the cells
+		GridPartitioner gridPartitioner = null;
+		if(partitioning.equals("grid")) {
+			Map<Long, Long> cellWeights = (cellWeightsFile == null) ? null : HelperClass.readCellWeights(cellWeightsFile, uGrid);
+			gridPartitioner = new GridPartitioner(uGrid, env.getParallelism(), env.getMaxParallelism(), cellWeights);
+		}
+
+		CSVPointParser csvParser = CSVPointParser.fromColumns(csvColumns);
+
+		// Replay file replacing the Kafka input topic
+		MappedFileReplaySource replaySource = null;
+		if(replayFile != null) {
+			if(replayConvertFrom != null) {
+				convertReplayFile(replayConvertFrom, inputFormat, queryOption, inputDateFormat, csvParser, uGrid, replayFile);
+			}
+			replaySource = new MappedFileReplaySource(replayFile, replaySpeed);
+		}
+
 		// Generating stream
-		DataStream inputStream  = env.addSource(new FlinkKafkaConsumer<>(inputTopicName, new JSONKeyValueDeserializationSchema(false), kafkaProperties).setStartFromEarliest());
+		DataStream inputStream;
+		if(replaySource != null) { // parsed from the record bytes by SpatialStream
+			inputStream = env.addSource(replaySource).name("Replay " + replayFile);
+			inputFormat = "Binary";
+		}
+		else if("CSV".equals(inputFormat) || "Binary".equals(inputFormat)) { // parsed from the record bytes by SpatialStream
+			inputStream = env.addSource(new FlinkKafkaConsumer<>(inputTopicName, new RawBytesDeserializationSchema(), kafkaProperties).setStartFromEarliest());
+		}
+		else if(directGeoJSON && "GeoJSON".equals(inputFormat)) { // trajectory points, passed through by SpatialStream
+			inputStream = env.addSource(new FlinkKafkaConsumer<>(inputTopicName, new GeoJSONDeserializationSchema.TPointSchema(uGrid, inputDateFormat), kafkaProperties).setStartFromEarliest());
+		}
+		else {
+			inputStream = env.addSource(new FlinkKafkaConsumer<>(inputTopicName, new JSONKeyValueDeserializationSchema(false), kafkaProperties).setStartFromEarliest());
+		}
 		//DataStream inputStream  = env.addSource(new FlinkKafkaConsumer<>(inputTopicName, new JSONKeyValueDeserializationSchema(false), kafkaProperties).setStartFromLatest());
 
 		// Converting GeoJSON,CSV stream to point spatial data stream
@@ -275,25 +359,48 @@ public class StreamingJob implements Serializable {
 		switch(queryOption) {
 
 			case 1: { // Range Query (Grid-based)
-				DataStream geoJSONStream  = env.addSource(new FlinkKafkaConsumer<>("TaxiDrive17MillionGeoJSON", new JSONKeyValueDeserializationSchema(false), kafkaProperties).setStartFromEarliest());
 				// Converting GeoJSON,CSV stream to point spatial data stream
-				DataStream<Point> spatialPointStream = SpatialStream.PointStream(geoJSONStream, "GeoJSON", uGrid);
+				DataStream<Point> spatialPointStream = geoJSONPointStream(env, "TaxiDrive17MillionGeoJSON", kafkaProperties, uGrid, objectReuse, directGeoJSON, replaySource);
 				//DataStream<Point> spatialPointStream = SpatialStream.PointStream(csvStream, "CSV", uGrid);
-				DataStream<Point> rNeighbors= RangeQuery.SpatialRangeQuery(spatialPointStream, qPoint, radius, windowSize, windowSlideStep, uGrid);  // better than equivalent GB approach
+				DataStream<Point> rNeighbors;
+				if(gridType.equals("AdaptiveGrid")) {
+					DataStream<QuadTree> layoutStream = AdaptiveGrid.getLayoutStream(spatialPointStream, (QuadTree) uGrid, regridInterval, splitThreshold, mergeThreshold);
+					rNeighbors = RangeQuery.SpatialRangeQuery(spatialPointStream, qPoint, radius, windowSize, windowSlideStep, (QuadTree) uGrid, layoutStream);
+				}
+				else if(batchSize > 0) {
+					DataStream<PointBatch> pointBatchStream = SpatialStream.PointBatchStream(spatialPointStream, batchSize, batchDelay);
+					rNeighbors = SpatialStream.UnbatchedPointStream(RangeQuery.SpatialRangeQueryBatched(pointBatchStream, qPoint, radius, windowSize, windowSlideStep, uGrid, gridPartitioner));
+				}
+				else {
+					rNeighbors = RangeQuery.SpatialRangeQuery(spatialPointStream, qPoint, radius, windowSize, windowSlideStep, uGrid, gridPartitioner, offHeapWindow);  // better than equivalent GB approach
+				}
 				rNeighbors.print();
 				break;}
 			case 2: { // KNN (Grid based - fixed radius)
-				DataStream geoJSONStream  = env.addSource(new FlinkKafkaConsumer<>("TaxiDrive17MillionGeoJSON", new JSONKeyValueDeserializationSchema(false), kafkaProperties).setStartFromEarliest());
 				// Converting GeoJSON,CSV stream to point spatial data stream
-				DataStream<Point> spatialPointStream = SpatialStream.PointStream(geoJSONStream, "GeoJSON", uGrid);
+				DataStream<Point> spatialPointStream = geoJSONPointStream(env, "TaxiDrive17MillionGeoJSON", kafkaProperties, uGrid, objectReuse, directGeoJSON, replaySource);
 				//DataStream<Point> spatialPointStream = SpatialStream.PointStream(csvStream, "CSV", uGrid);
-				DataStream < Tuple3<Long, Long, PriorityQueue<Tuple2<Point, Double>>>> kNNPQStream = KNNQuery.SpatialKNNQuery(spatialPointStream, qPoint, radius, k, windowSize, windowSlideStep, uGrid);
+				DataStream < Tuple3<Long, Long, PriorityQueue<Tuple2<Point, Double>>>> kNNPQStream;
+				if(gridType.equals("AdaptiveGrid")) {
+					DataStream<QuadTree> layoutStream = AdaptiveGrid.getLayoutStream(spatialPointStream, (QuadTree) uGrid, regridInterval, splitThreshold, mergeThreshold);
+					kNNPQStream = KNNQuery.SpatialKNNQuery(spatialPointStream, qPoint, radius, k, windowSize, windowSlideStep, (QuadTree) uGrid, layoutStream);
+				}
+				else if(densityInterval > 0) {
+					DataStream<CellDensitySketch> sketchStream = CellDensitySketch.getSketchStream(spatialPointStream, densityInterval, densityDecay);
+					kNNPQStream = KNNQuery.SpatialKNNQuery(spatialPointStream, qPoint, radius, k, windowSize, windowSlideStep, uGrid, sketchStream, densityInterval, densityDecay);
+				}
+				else if(batchSize > 0) {
+					DataStream<PointBatch> pointBatchStream = SpatialStream.PointBatchStream(spatialPointStream, batchSize, batchDelay);
+					kNNPQStream = KNNQuery.SpatialKNNQueryBatched(pointBatchStream, qPoint, radius, k, windowSize, windowSlideStep, uGrid, gridPartitioner);
+				}
+				else {
+					kNNPQStream = KNNQuery.SpatialKNNQuery(spatialPointStream, qPoint, radius, k, windowSize, windowSlideStep, uGrid, gridPartitioner, offHeapWindow);
+				}
 				kNNPQStream.print();
 				break;}
 			case 3: { // KNN (Grid based - Iterative approach)
-				DataStream geoJSONStream  = env.addSource(new FlinkKafkaConsumer<>("TaxiDrive17MillionGeoJSON", new JSONKeyValueDeserializationSchema(false), kafkaProperties).setStartFromEarliest());
 				// Converting GeoJSON,CSV stream to point spatial data stream
-				DataStream<Point> spatialPointStream = SpatialStream.PointStream(geoJSONStream, "GeoJSON", uGrid);
+				DataStream<Point> spatialPointStream = geoJSONPointStream(env, "TaxiDrive17MillionGeoJSON", kafkaProperties, uGrid, objectReuse, directGeoJSON, replaySource);
 				//DataStream<Point> spatialPointStream = SpatialStream.PointStream(csvStream, "CSV", uGrid);
 				DataStream<PriorityQueue < Tuple2 < Point, Double >>> kNNPQStream = KNNQuery.SpatialIterativeKNNQuery(spatialPointStream, qPoint, k, windowSize, windowSlideStep, uGrid);
 				kNNPQStream.print();
@@ -301,44 +408,48 @@ public class StreamingJob implements Serializable {
 			case 4: { // Spatial Join (Grid-based)
 				DataStream geoJSONStream  = env.addSource(new FlinkKafkaConsumer<>("TaxiDrive17MillionGeoJSON", new JSONKeyValueDeserializationSchema(false), kafkaProperties).setStartFromEarliest());
 				// Converting GeoJSON,CSV stream to point spatial data stream
-				DataStream<Point> spatialPointStream = SpatialStream.PointStream(geoJSONStream, "GeoJSON", uGrid);
+				DataStream<Point> spatialPointStream = SpatialStream.PointStream(geoJSONStream, "GeoJSON", uGrid, objectReuse);
 				//DataStream<Point> spatialPointStream = SpatialStream.PointStream(csvStream, "CSV", uGrid);
 				//Generating query stream
 				DataStream geoJSONQueryStream  = env.addSource(new FlinkKafkaConsumer<>("TaxiDriveQueries1MillionGeoJSON_Live", new JSONKeyValueDeserializationSchema(false),kafkaProperties).setStartFromLatest());
-				DataStream<Point> queryStream = SpatialStream.PointStream(geoJSONQueryStream, "GeoJSON", uGrid);
-				DataStream<Tuple2<String, String>> spatialJoinStream = JoinQuery.SpatialJoinQuery(spatialPointStream, queryStream, radius, windowSize, windowSlideStep, uGrid);
+				DataStream<Point> queryStream = SpatialStream.PointStream(geoJSONQueryStream, "GeoJSON", uGrid, objectReuse);
+				DataStream<Tuple2<Long, Long>> spatialJoinStream;
+				if(cellWeightsFile != null && queryCellWeightsFile != null) {
+					CellDensitySketch ordinaryDensity = new CellDensitySketch(HelperClass.readCellWeights(cellWeightsFile, uGrid));
+					CellDensitySketch queryDensity = new CellDensitySketch(HelperClass.readCellWeights(queryCellWeightsFile, uGrid));
+					spatialJoinStream = JoinQuery.SpatialJoinQuery(spatialPointStream, queryStream, radius, windowSize, windowSlideStep, uGrid, gridPartitioner, ordinaryDensity, queryDensity);
+				}
+				else {
+					spatialJoinStream = JoinQuery.SpatialJoinQuery(spatialPointStream, queryStream, radius, windowSize, windowSlideStep, uGrid, gridPartitioner);
+				}
 				spatialJoinStream.print();
 				break;}
 			case 5:{ // Range Query (Point-Polygon)
-				DataStream geoJSONStream  = env.addSource(new FlinkKafkaConsumer<>("NYCBuildingsPolygons", new JSONKeyValueDeserializationSchema(false), kafkaProperties).setStartFromEarliest());
 				// Converting GeoJSON,CSV stream to polygon spatial data stream
-				DataStream<Polygon> spatialPolygonStream = SpatialStream.PolygonStream(geoJSONStream, "GeoJSON", uGrid);
+				DataStream<Polygon> spatialPolygonStream = geoJSONPolygonStream(env, "NYCBuildingsPolygons", kafkaProperties, uGrid, directGeoJSON, replaySource);
 				// Point-Polygon Range Query
 				DataStream<Polygon> pointPolygonRangeQueryOutput = RangeQuery.SpatialRangeQuery(spatialPolygonStream, qPoint, radius, uGrid, windowSize, windowSlideStep);
 				pointPolygonRangeQueryOutput.print();
 				break;
 			}
 			case 6:{ // Range Query (Polygon-Polygon)
-				DataStream geoJSONStream  = env.addSource(new FlinkKafkaConsumer<>("NYCBuildingsPolygons", new JSONKeyValueDeserializationSchema(false), kafkaProperties).setStartFromEarliest());
 				// Converting GeoJSON,CSV stream to polygon spatial data stream
-				DataStream<Polygon> spatialPolygonStream = SpatialStream.PolygonStream(geoJSONStream, "GeoJSON", uGrid);
+				DataStream<Polygon> spatialPolygonStream = geoJSONPolygonStream(env, "NYCBuildingsPolygons", kafkaProperties, uGrid, directGeoJSON, replaySource);
 				DataStream<Polygon> polygonPolygonRangeQueryOutput = RangeQuery.SpatialRangeQuery(spatialPolygonStream, queryPoly, radius, uGrid, windowSize, windowSlideStep);
 				polygonPolygonRangeQueryOutput.print();
 				break;
 			}
 			case 7:{ // KNN Query (Point-Polygon)
-				DataStream geoJSONStream  = env.addSource(new FlinkKafkaConsumer<>("NYCBuildingsPolygons", new JSONKeyValueDeserializationSchema(false), kafkaProperties).setStartFromEarliest());
 				// Converting GeoJSON,CSV stream to polygon spatial data stream
-				DataStream<Polygon> spatialPolygonStream = SpatialStream.PolygonStream(geoJSONStream, "GeoJSON", uGrid);
+				DataStream<Polygon> spatialPolygonStream = geoJSONPolygonStream(env, "NYCBuildingsPolygons", kafkaProperties, uGrid, directGeoJSON, replaySource);
 				// The output stream contains time-window boundaries (starting and ending time) and a Priority Queue containing topK query neighboring polygons
 				DataStream<Tuple3<Long, Long, PriorityQueue<Tuple2<Polygon, Double>>>> pointPolygonkNNQueryOutput = KNNQuery.SpatialKNNQuery(spatialPolygonStream, qPoint, radius, k, uGrid, windowSize, windowSlideStep);
 				pointPolygonkNNQueryOutput.print();
 				break;
 			}
 			case 8:{ // KNN Query (Polygon-Polygon)
-				DataStream geoJSONStream  = env.addSource(new FlinkKafkaConsumer<>("NYCBuildingsPolygons", new JSONKeyValueDeserializationSchema(false), kafkaProperties).setStartFromEarliest());
 				// Converting GeoJSON,CSV stream to polygon spatial data stream
-				DataStream<Polygon> spatialPolygonStream = SpatialStream.PolygonStream(geoJSONStream, "GeoJSON", uGrid);
+				DataStream<Polygon> spatialPolygonStream = geoJSONPolygonStream(env, "NYCBuildingsPolygons", kafkaProperties, uGrid, directGeoJSON, replaySource);
 				DataStream<Tuple3<Long, Long, PriorityQueue<Tuple2<Polygon, Double>>>> pointPolygonkNNQueryOutput = KNNQuery.SpatialKNNQuery(spatialPolygonStream, queryPoly, radius, k, uGrid, windowSize, windowSlideStep);
 				pointPolygonkNNQueryOutput.print();
 				break;
@@ -352,7 +463,7 @@ public class StreamingJob implements Serializable {
 				//Generating query stream TaxiDrive17MillionGeoJSON
 				//DataStream geoJSONQueryPointStream  = env.addSource(new FlinkKafkaConsumer<>("NYCFoursquareCheckIns", new JSONKeyValueDeserializationSchema(false),kafkaProperties).setStartFromLatest());
 				DataStream geoJSONQueryPointStream  = env.addSource(new FlinkKafkaConsumer<>("NYCFourSquareCheckIns", new JSONKeyValueDeserializationSchema(false),kafkaProperties).setStartFromEarliest());
-				DataStream<Point> queryPointStream = SpatialStream.PointStream(geoJSONQueryPointStream, "GeoJSON", uGrid);
+				DataStream<Point> queryPointStream = SpatialStream.PointStream(geoJSONQueryPointStream, "GeoJSON", uGrid, objectReuse);
 				//geoJSONQueryPointStream.print();
 
 				//---Spatial Join using Neighboring Layers---
@@ -386,19 +497,19 @@ public class StreamingJob implements Serializable {
 				break;
 			}
 			case 21:{ // TFilterQuery
-				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid);
+				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid, objectReuse, csvParser);
 				DataStream<Point> outputStream = TFilterQuery.TIDSpatialFilterQuery(spatialTrajectoryStream, trajIDs);
 				outputStream.print();
 				//outputStream.addSink(new FlinkKafkaProducer<>(outputTopicName, new HelperClass.LatencySinkPoint(queryOption, outputTopicName), kafkaProperties, FlinkKafkaProducer.Semantic.EXACTLY_ONCE));
 				break;
 			}
 			case 22:{ // TFilterQuery Windowed
-				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid);
+				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid, objectReuse, csvParser);
 				TFilterQuery.TIDSpatialFilterQuery(spatialTrajectoryStream, trajIDs, windowSize, windowSlideStep);
 				break;
 			}
 			case 23:{ // TRangeQuery
-				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid);
+				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid, objectReuse, csvParser);
 				DataStream<Point> outputStream = TRangeQuery.TSpatialRangeQuery(spatialTrajectoryStream, polygonSet);
 				//Naive
 				//DataStream<Point> outputStream = TRangeQuery.TSpatialRangeQuery(polygonSet, spatialTrajectoryStream);
@@ -408,40 +519,55 @@ public class StreamingJob implements Serializable {
 				break;
 			}
 			case 24:{ // TRangeQuery Windowed
-				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid);
+				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid, objectReuse, csvParser);
 				TRangeQuery.TSpatialRangeQuery(spatialTrajectoryStream, polygonSet, windowSize, windowSlideStep).print();
 				break;
 			}
 			case 25:{ // TStatsQuery
-				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid);
+				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid, objectReuse, csvParser);
 				DataStream<Tuple5<String, Double, Long, Double, Long>> outputStream = TStatsQuery.TSpatialStatsQuery(spatialTrajectoryStream, trajIDs);
 				//outputStream.print();
 				outputStream.addSink(new FlinkKafkaProducer<>(outputTopicName, new HelperClass.LatencySinkTuple5(queryOption, outputTopicName), kafkaProperties, FlinkKafkaProducer.Semantic.EXACTLY_ONCE));
 				break;
 			}
 			case 26:{ // TStatsQuery Windowed
-				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid);
+				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid, objectReuse, csvParser);
 				TStatsQuery.TSpatialStatsQuery(spatialTrajectoryStream, trajIDs, windowSize, windowSlideStep);
 				break;
 			}
 			case 27:{ // TAggregateQuery
-				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid);
-				DataStream<Tuple4<String, Integer, HashMap<String, Long>, Long>> outputStream = TAggregateQuery.TSpatialHeatmapAggregateQuery(spatialTrajectoryStream, aggregateFunction, inactiveTrajDeletionThreshold);
+				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid, objectReuse, csvParser);
+				DataStream<Tuple4<Long, Integer, HashMap<String, Long>, Long>> outputStream = TAggregateQuery.TSpatialHeatmapAggregateQuery(spatialTrajectoryStream, aggregateFunction, inactiveTrajDeletionThreshold, gridPartitioner);
 				//outputStream.print();
 				outputStream.addSink(new FlinkKafkaProducer<>(outputTopicName, new HelperClass.LatencySinkTuple4(queryOption, outputTopicName), kafkaProperties, FlinkKafkaProducer.Semantic.EXACTLY_ONCE));
 				break;
 			}
 			case 28:{ // TAggregateQuery Windowed
-				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid);
-				TAggregateQuery.TSpatialHeatmapAggregateQuery(spatialTrajectoryStream, aggregateFunction, windowType, windowSize, windowSlideStep);
+				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid, objectReuse, csvParser);
+				if(batchSize > 0) {
+					DataStream<PointBatch> trajectoryBatchStream = SpatialStream.PointBatchStream(spatialTrajectoryStream, batchSize, batchDelay);
+					TAggregateQuery.TSpatialHeatmapAggregateQueryBatched(trajectoryBatchStream, aggregateFunction, windowType, windowSize, windowSlideStep, gridPartitioner);
+				}
+				else {
+					TAggregateQuery.TSpatialHeatmapAggregateQuery(spatialTrajectoryStream, aggregateFunction, windowType, windowSize, windowSlideStep, gridPartitioner);
+				}
 
 				break;
 			}
 			case 29:{ // TSpatialJoinQuery Windowed
 				// Generating query stream
-				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid);
-				DataStream queryStream  = env.addSource(new FlinkKafkaConsumer<>(queryTopicName, new JSONKeyValueDeserializationSchema(false), kafkaProperties).setStartFromLatest());
-				DataStream<Point> spatialQueryStream = SpatialStream.TrajectoryStream(queryStream, inputFormat, inputDateFormat, uGrid);
+				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid, objectReuse, csvParser);
+				DataStream queryStream;
+				if("CSV".equals(inputFormat) || "Binary".equals(inputFormat)) {
+					queryStream = env.addSource(new FlinkKafkaConsumer<>(queryTopicName, new RawBytesDeserializationSchema(), kafkaProperties).setStartFromLatest());
+				}
+				else if(directGeoJSON && "GeoJSON".equals(inputFormat)) {
+					queryStream = env.addSource(new FlinkKafkaConsumer<>(queryTopicName, new GeoJSONDeserializationSchema.TPointSchema(uGrid, inputDateFormat), kafkaProperties).setStartFromLatest());
+				}
+				else {
+					queryStream = env.addSource(new FlinkKafkaConsumer<>(queryTopicName, new JSONKeyValueDeserializationSchema(false), kafkaProperties).setStartFromLatest());
+				}
+				DataStream<Point> spatialQueryStream = SpatialStream.TrajectoryStream(queryStream, inputFormat, inputDateFormat, uGrid, objectReuse, csvParser);
 				TJoinQuery.TSpatialJoinQuery(spatialTrajectoryStream, spatialQueryStream, radius, windowSize, uGrid);
 
 				// Naive
@@ -450,7 +576,7 @@ public class StreamingJob implements Serializable {
 				break;
 			}
 			case 30:{ // TAggregateQuery Windowed
-				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid);
+				DataStream<Point> spatialTrajectoryStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid, objectReuse, csvParser);
 				//TKNNQuery.TSpatialKNNQuery(spatialTrajectoryStream, qPoint, radius, k, windowSize, windowSlideStep, uGrid);
 				// Naive
 				TKNNQuery.TSpatialKNNQuery(spatialTrajectoryStream, qPoint, radius, k, windowSize, windowSlideStep);
@@ -512,7 +638,7 @@ public class StreamingJob implements Serializable {
 				//inputDateFormat = "12/25/2020 17:24:36 +0900";
 				inputDateFormat = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss z"); // TDrive Dataset
 				inputFormat = "JSON";
-				DataStream<Point> deimCheckInStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid);
+				DataStream<Point> deimCheckInStream = SpatialStream.TrajectoryStream(inputStream, inputFormat, inputDateFormat, uGrid, objectReuse, csvParser);
 
 				//CheckIn.CheckInQuery(deimCheckInStream, roomCapacities, 24).print();
 			}
@@ -527,5 +653,75 @@ public class StreamingJob implements Serializable {
 
 				execute("Geo Flink");
 	}
+
+	// GeoJSON points of a topic (read from the earliest offset), parsed from the record bytes if directGeoJSON, otherwise from the ObjectNodes of JSONKeyValueDeserializationSchema
+	// replaySource: the points are read from the replay file instead of the topic if not null
+	private static DataStream<Point> geoJSONPointStream(StreamExecutionEnvironment env, String topicName, Properties kafkaProperties, SpatialIndex uGrid, boolean objectReuse, boolean directGeoJSON, MappedFileReplaySource replaySource) {
+
+		if(replaySource != null) {
+			return SpatialStream.PointStream(env.addSource(replaySource).name("Replay"), "Binary", uGrid, objectReuse);
+		}
+		if(directGeoJSON) {
+			return env.addSource(new FlinkKafkaConsumer<>(topicName, new GeoJSONDeserializationSchema.PointSchema(uGrid), kafkaProperties).setStartFromEarliest());
+		}
+		DataStream geoJSONStream  = env.addSource(new FlinkKafkaConsumer<>(topicName, new JSONKeyValueDeserializationSchema(false), kafkaProperties).setStartFromEarliest());
+		return SpatialStream.PointStream(geoJSONStream, "GeoJSON", uGrid, objectReuse);
+	}
+
+	// replaySource: the polygons are read from the replay file instead of the topic if not null
+	private static DataStream<Polygon> geoJSONPolygonStream(StreamExecutionEnvironment env, String topicName, Properties kafkaProperties, SpatialIndex uGrid, boolean directGeoJSON, MappedFileReplaySource replaySource) {
+
+		DataStream<Polygon> polygonStream;
+		if(replaySource != null) {
+			polygonStream = SpatialStream.PolygonStream(env.addSource(replaySource).name("Replay"), "Binary", uGrid);
+		}
+		else if(directGeoJSON) {
+			polygonStream = env.addSource(new FlinkKafkaConsumer<>(topicName, new GeoJSONDeserializationSchema.PolygonSchema(uGrid), kafkaProperties).setStartFromEarliest());
+		}
+		else {
+			DataStream geoJSONStream  = env.addSource(new FlinkKafkaConsumer<>(topicName, new JSONKeyValueDeserializationSchema(false), kafkaProperties).setStartFromEarliest());
+			polygonStream = SpatialStream.PolygonStream(geoJSONStream, "GeoJSON", uGrid);
+		}
+		return polygonStream;
+	}
+
+	// Converts a file of inputFormat records, one per line, into a replay file of the points (polygons for the polygon queries 5-8)
+	private static void convertReplayFile(String textFile, String inputFormat, int queryOption, DateFormat inputDateFormat, CSVPointParser csvParser, SpatialIndex uGrid, String replayFile) throws Exception {
+
+		long numRecords;
+		if("CSV".equals(inputFormat)) {
+			numRecords = MappedFileReplaySource.convertCSV(textFile, csvParser, (inputDateFormat == null) ? null : new TimestampParser(inputDateFormat), replayFile);
+		}
+		else if(queryOption >= 5 && queryOption <= 8) {
+			numRecords = MappedFileReplaySource.convert(textFile, new GeoJSONDeserializationSchema.PolygonSchema(uGrid), replayFile);
+		}
+		else if(queryOption <= 4) {
+			numRecords = MappedFileReplaySource.convert(textFile, new GeoJSONDeserializationSchema.PointSchema(uGrid), replayFile);
+		}
+		else { // trajectory points
+			numRecords = MappedFileReplaySource.convert(textFile, new GeoJSONDeserializationSchema.TPointSchema(uGrid, inputDateFormat), replayFile);
+		}
+		System.out.println("Converted " + numRecords + " records of " + textFile + " into " + replayFile);
+	}
+
+	// UniformGrid or QuadTree, where the QuadTree has at least the resolution of the uniformGridSize x uniformGridSize grid
+	// AdaptiveGrid starts with the QuadTree layout, which is then updated at run time
+	// HexagonalGrid cells have the same area as the uniformGridSize x uniformGridSize grid cells
+	private static SpatialIndex createGrid(String gridType, int uniformGridSize, String cellNumbering, double minX, double maxX, double minY, double maxY, String quadTreeSampleFile, int quadTreeMaxDepth, int quadTreeNodeCapacity) throws IOException {
+
+		if(gridType.equals("QuadTree") || gridType.equals("AdaptiveGrid")) {
+			int minDepth = 32 - Integer.numberOfLeadingZeros(Math.max(uniformGridSize - 1, 0)); // ceil(log2(uniformGridSize))
+			int maxDepth = (quadTreeMaxDepth > 0) ? quadTreeMaxDepth : minDepth + 4;
+			List<Coordinate> sampleCoordinates = (quadTreeSampleFile == null) ? new ArrayList<Coordinate>() : HelperClass.readSampleCoordinates(quadTreeSampleFile);
+
+			return new QuadTree(minDepth, maxDepth, quadTreeNodeCapacity, minX, maxX, minY, maxY, sampleCoordinates);
+		}
+		else if(gridType.equals("HexagonalGrid")) {
+			return new HexagonalGrid(uniformGridSize, minX, maxX, minY, maxY);
+		}
+		else {
+			return new UniformGrid(uniformGridSize, minX, maxX, minY, maxY, cellNumbering);
+		}
+	}
 }
 
@@ -0,0 +1,214 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialIndices;
+
+import GeoFlink.spatialObjects.Point;
+import org.apache.flink.api.common.functions.FilterFunction;
+import org.apache.flink.api.common.functions.MapFunction;
+import org.apache.flink.api.common.functions.ReduceFunction;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.state.ReadOnlyBroadcastState;
+import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.functions.co.BroadcastProcessFunction;
+import org.apache.flink.streaming.api.functions.windowing.AllWindowFunction;
+import org.apache.flink.streaming.api.windowing.assigners.TumblingProcessingTimeWindows;
+import org.apache.flink.streaming.api.windowing.time.Time;
+import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
+import org.apache.flink.util.Collector;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Set;
+
+/*
+Adaptive grid: the cell layout (a QuadTree) is periodically re-computed from the observed per cell arrival counts,
+hot cells are split and cold cells are merged, and the new layout is pushed to the operators through broadcast state
+Each object is assigned to a cell under the latest layout known to the operator. Windows of the cells of an old layout
+are not migrated, they are drained, i.e., they keep their objects and fire as usual while the new objects go to the cells
+of the new layout. As every object belongs to exactly one cell of one layout, the per-cell results remain exact
+*/
+public class AdaptiveGrid implements Serializable {
+
+    // Broadcast state holding the latest layout under LAYOUT_KEY
+    public static final MapStateDescriptor<Integer, QuadTree> layoutDescriptor = new MapStateDescriptor<Integer, QuadTree>(
+            "adaptiveGridLayout", BasicTypeInfo.INT_TYPE_INFO, TypeInformation.of(QuadTree.class));
+    private static final Integer LAYOUT_KEY = 0;
+
+    // Stream of layouts, a new layout is emitted every regridInterval seconds if the observed counts change the layout
+    // splitThreshold and mergeThreshold are in number of points per regridInterval: cells with more than splitThreshold points are split,
+    // sibling cells with mergeThreshold or less points together are merged (QuadTree.adapt)
+    public static DataStream<QuadTree> getLayoutStream(DataStream<Point> pointStream, QuadTree initialLayout, int regridInterval, long splitThreshold, long mergeThreshold){
+
+        // Per finest cell counts, pre-aggregated in parallel
+        DataStream<Tuple2<Long, Long>> finestCellCounts = pointStream.map(new MapFunction<Point, Tuple2<Long, Long>>() {
+            @Override
+            public Tuple2<Long, Long> map(Point p) throws Exception {
+                return Tuple2.of(initialLayout.getFinestCellKey(p.getCoordinate()), 1L);
+            }
+        }).filter(new FilterFunction<Tuple2<Long, Long>>() {
+            @Override
+            public boolean filter(Tuple2<Long, Long> cellCount) throws Exception {
+                return cellCount.f0 != UniformGrid.NO_CELL_KEY;
+            }
+        }).keyBy(new KeySelector<Tuple2<Long, Long>, Long>() {
+            @Override
+            public Long getKey(Tuple2<Long, Long> cellCount) throws Exception {
+                return cellCount.f0;
+            }
+        }).window(TumblingProcessingTimeWindows.of(Time.seconds(regridInterval)))
+                .reduce(new ReduceFunction<Tuple2<Long, Long>>() {
+                    @Override
+                    public Tuple2<Long, Long> reduce(Tuple2<Long, Long> c1, Tuple2<Long, Long> c2) throws Exception {
+                        return Tuple2.of(c1.f0, c1.f1 + c2.f1);
+                    }
+                });
+
+        // Computing the next layout from the counts of all the cells
+        return finestCellCounts.windowAll(TumblingProcessingTimeWindows.of(Time.seconds(regridInterval)))
+                .apply(new AdaptLayout(initialLayout, splitThreshold, mergeThreshold)).name("Adaptive Grid Layout");
+    }
+
+    // Computes the next layout from the counts of the cells in a window, emitted if it differs from the current layout
+    // The current layout is kept in operator state, hence a restored job continues from its latest layout instead of initialLayout
+    public static class AdaptLayout implements AllWindowFunction<Tuple2<Long, Long>, QuadTree, TimeWindow>, CheckpointedFunction {
+
+        private final QuadTree initialLayout;
+        private final long splitThreshold;
+        private final long mergeThreshold;
+
+        private transient QuadTree currentLayout;
+        private transient ListState<QuadTree> currentLayoutLState;
+
+        public AdaptLayout(QuadTree initialLayout, long splitThreshold, long mergeThreshold) {
+            this.initialLayout = initialLayout;
+            this.splitThreshold = splitThreshold;
+            this.mergeThreshold = mergeThreshold;
+        }
+
+        @Override
+        public void apply(TimeWindow timeWindow, Iterable<Tuple2<Long, Long>> input, Collector<QuadTree> output) throws Exception {
+
+            HashMap<Long, Long> cellCounts = new HashMap<Long, Long>();
+            for (Tuple2<Long, Long> cellCount : input) {
+                cellCounts.merge(cellCount.f0, cellCount.f1, Long::sum);
+            }
+
+            QuadTree nextLayout = currentLayout.adapt(cellCounts, splitThreshold, mergeThreshold);
+            if (!nextLayout.hasSameLayout(currentLayout)) {
+                currentLayout = nextLayout;
+                output.collect(nextLayout);
+            }
+        }
+
+        @Override
+        public void snapshotState(FunctionSnapshotContext context) throws Exception {
+            currentLayoutLState.clear();
+            currentLayoutLState.add(currentLayout);
+        }
+
+        @Override
+        public void initializeState(FunctionInitializationContext context) throws Exception {
+            currentLayoutLState = context.getOperatorStateStore().getListState(new ListStateDescriptor<QuadTree>("adaptiveGridCurrentLayout", TypeInformation.of(QuadTree.class)));
+            currentLayout = initialLayout;
+            if (context.isRestored()) {
+                for (QuadTree layout : currentLayoutLState.get()) {
+                    currentLayout = layout;
+                }
+            }
+        }
+    }
+
+    private static QuadTree getLayout(ReadOnlyBroadcastState<Integer, QuadTree> layoutState, QuadTree initialLayout) throws Exception {
+        QuadTree layout = layoutState.get(LAYOUT_KEY);
+        return (layout == null) ? initialLayout : layout;
+    }
+
+    // Assigns the points to the cells of the latest layout
+    public static class AssignCells extends BroadcastProcessFunction<Point, QuadTree, Point> {
+
+        private final QuadTree initialLayout;
+
+        public AssignCells(QuadTree initialLayout) {
+            this.initialLayout = initialLayout;
+        }
+
+        @Override
+        public void processElement(Point p, ReadOnlyContext ctx, Collector<Point> out) throws Exception {
+            p.gridID = getLayout(ctx.getBroadcastState(layoutDescriptor), initialLayout).assignGridCellID(p.getCoordinate());
+            out.collect(p);
+        }
+
+        @Override
+        public void processBroadcastElement(QuadTree nextLayout, Context ctx, Collector<Point> out) throws Exception {
+            ctx.getBroadcastState(layoutDescriptor).put(LAYOUT_KEY, nextLayout);
+        }
+    }
+
+    // Assigns the points to the cells of the latest layout and keeps only the points of the guaranteed (true) and candidate (false) cells of the query
+    public static class AssignNeighboringCells extends BroadcastProcessFunction<Point, QuadTree, Tuple2<Point, Boolean>> {
+
+        private final QuadTree initialLayout;
+        private final Point queryPoint;
+        private final double queryRadius;
+
+        // Neighboring cells of the query w.r.t. layout
+        private transient QuadTree layout;
+        private transient CellBitmap guaranteedNeighboringCells;
+        private transient CellBitmap neighboringCells;
+
+        public AssignNeighboringCells(QuadTree initialLayout, Point queryPoint, double queryRadius) {
+            this.initialLayout = initialLayout;
+            this.queryPoint = queryPoint;
+            this.queryRadius = queryRadius;
+        }
+
+        @Override
+        public void processElement(Point p, ReadOnlyContext ctx, Collector<Tuple2<Point, Boolean>> out) throws Exception {
+
+            QuadTree latestLayout = getLayout(ctx.getBroadcastState(layoutDescriptor), initialLayout);
+            if (latestLayout != layout) {
+                layout = latestLayout;
+                long queryCellID = layout.assignGridCellID(queryPoint.getCoordinate());
+                Set<Long> guaranteedCells = layout.getGuaranteedNeighboringCells(queryRadius, queryCellID);
+                guaranteedNeighboringCells = new CellBitmap(guaranteedCells);
+                neighboringCells = new CellBitmap(guaranteedCells, layout.getCandidateNeighboringCells(queryRadius, queryCellID, guaranteedCells));
+            }
+
+            p.gridID = layout.assignGridCellID(p.getCoordinate());
+            if (guaranteedNeighboringCells.contains(p.gridID)) {
+                out.collect(Tuple2.of(p, true));
+            }
+            else if (neighboringCells.contains(p.gridID)) {
+                out.collect(Tuple2.of(p, false));
+            }
+        }
+
+        @Override
+        public void processBroadcastElement(QuadTree nextLayout, Context ctx, Collector<Tuple2<Point, Boolean>> out) throws Exception {
+            ctx.getBroadcastState(layoutDescriptor).put(LAYOUT_KEY, nextLayout);
+        }
+    }
+}
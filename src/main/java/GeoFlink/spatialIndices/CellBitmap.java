@@ -0,0 +1,137 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialIndices;
+
+import GeoFlink.utils.HelperClass;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+
+/*
+Immutable set of cells used by the operator filters, a membership test costs a few integer operations
+The cells are stored as a bitmap over the bounding rectangle of their (x, y) cell indices, one bit per cell.
+If the cells are too sparse for a bitmap (e.g., far apart cells, or QuadTree leaves keyed at the finest resolution), the
+cell keys are stored as a sorted array instead, i.e., the memory is bounded by a few words per cell in both cases.
+A GridCellSet is stored as its rectangle only
+*/
+public class CellBitmap implements Serializable {
+
+    // A bitmap is used if it takes at most MAX_BITS_PER_CELL bits per cell
+    private static final long MAX_BITS_PER_CELL = 256;
+
+    private final int minXIndex;
+    private final int minYIndex;
+    private final int width;
+    private final int height;
+    private final long[] words; // bitmap, null if sortedCellKeys is used or if all the cells of the rectangle are in the set
+    private final long[] sortedCellKeys;
+    private final long numCells;
+
+    // Union of the given cell sets
+    @SafeVarargs
+    public CellBitmap(Collection<Long>... cellSets)
+    {
+        // A virtual block of cells (e.g., all the cells of the grid) is kept as a rectangle, without enumerating its cells
+        if (cellSets.length == 1 && cellSets[0] instanceof GridCellSet) {
+            GridCellSet gridCellSet = (GridCellSet) cellSets[0];
+            this.minXIndex = gridCellSet.getMinXIndex();
+            this.minYIndex = gridCellSet.getMinYIndex();
+            this.width = Math.max(gridCellSet.getMaxXIndex() - minXIndex + 1, 0);
+            this.height = Math.max(gridCellSet.getMaxYIndex() - minYIndex + 1, 0);
+            this.words = null;
+            this.sortedCellKeys = null;
+            this.numCells = gridCellSet.getNumCells();
+            return;
+        }
+
+        int n = 0;
+        for (Collection<Long> cellSet : cellSets) {
+            n += cellSet.size();
+        }
+        long[] cellKeys = new long[n];
+        n = 0;
+        for (Collection<Long> cellSet : cellSets) {
+            for (long cellKey : cellSet) {
+                cellKeys[n++] = cellKey;
+            }
+        }
+        Arrays.sort(cellKeys);
+
+        // Removing the duplicates and the cells not assigned to the grid
+        int numUniqueCells = 0;
+        for (int i = 0; i < n; i++) {
+            if (cellKeys[i] != UniformGrid.NO_CELL_KEY && (numUniqueCells == 0 || cellKeys[numUniqueCells - 1] != cellKeys[i])) {
+                cellKeys[numUniqueCells++] = cellKeys[i];
+            }
+        }
+        this.numCells = numUniqueCells;
+
+        int xMin = Integer.MAX_VALUE, yMin = Integer.MAX_VALUE, xMax = Integer.MIN_VALUE, yMax = Integer.MIN_VALUE;
+        for (int i = 0; i < numUniqueCells; i++) {
+            int x = HelperClass.getCellXIndex(cellKeys[i]);
+            int y = HelperClass.getCellYIndex(cellKeys[i]);
+            xMin = Math.min(xMin, x);
+            yMin = Math.min(yMin, y);
+            xMax = Math.max(xMax, x);
+            yMax = Math.max(yMax, y);
+        }
+
+        long numBits = (numUniqueCells == 0) ? 0 : ((long) xMax - xMin + 1) * ((long) yMax - yMin + 1);
+        if (numUniqueCells > 0 && numBits <= MAX_BITS_PER_CELL * numUniqueCells && numBits <= Integer.MAX_VALUE) {
+            this.minXIndex = xMin;
+            this.minYIndex = yMin;
+            this.width = xMax - xMin + 1;
+            this.height = yMax - yMin + 1;
+            this.words = new long[(int) ((numBits + 63) / 64)];
+            this.sortedCellKeys = null;
+            for (int i = 0; i < numUniqueCells; i++) {
+                int bit = (HelperClass.getCellXIndex(cellKeys[i]) - minXIndex) * height + (HelperClass.getCellYIndex(cellKeys[i]) - minYIndex);
+                words[bit >>> 6] |= 1L << bit;
+            }
+        }
+        else {
+            this.minXIndex = 0;
+            this.minYIndex = 0;
+            this.width = 0;
+            this.height = 0;
+            this.words = null;
+            this.sortedCellKeys = Arrays.copyOf(cellKeys, numUniqueCells);
+        }
+    }
+
+    public boolean contains(long cellKey)
+    {
+        if (sortedCellKeys != null) {
+            return Arrays.binarySearch(sortedCellKeys, cellKey) >= 0;
+        }
+
+        long x = (long) HelperClass.getCellXIndex(cellKey) - minXIndex;
+        long y = (long) HelperClass.getCellYIndex(cellKey) - minYIndex;
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return false;
+        }
+        if (words == null) { // all the cells of the rectangle
+            return true;
+        }
+        int bit = (int) (x * height + y);
+        return (words[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    public long size() {return numCells;}
+    public boolean isEmpty() {return numCells == 0;}
+}
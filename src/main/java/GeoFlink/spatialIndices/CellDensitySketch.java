@@ -0,0 +1,293 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialIndices;
+
+import GeoFlink.spatialObjects.Point;
+import org.apache.flink.api.common.functions.MapFunction;
+import org.apache.flink.api.common.functions.ReduceFunction;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.api.java.tuple.Tuple3;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.runtime.state.KeyGroupRangeAssignment;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.functions.co.BroadcastProcessFunction;
+import org.apache.flink.streaming.api.functions.windowing.RichAllWindowFunction;
+import org.apache.flink.streaming.api.windowing.assigners.TumblingProcessingTimeWindows;
+import org.apache.flink.streaming.api.windowing.time.Time;
+import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
+import org.apache.flink.util.Collector;
+import org.apache.flink.util.OutputTag;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/*
+Per cell density summary of a stream, used for selectivity estimation
+The density of a cell is its exponentially decayed arrival count: at every update interval the previous density is multiplied
+by decayFactor and the arrivals of the interval are added, i.e., with decayFactor d the density approximates the arrivals of the
+last 1 / (1 - d) intervals. Cells whose density drops below MIN_DENSITY are dropped, hence the size of the sketch is bounded by
+the number of recently active cells. A sketch is immutable, a new sketch is emitted at every update
+*/
+public class CellDensitySketch implements Serializable {
+
+    private static final double MIN_DENSITY = 0.5;
+    // kNN radius estimation: the candidate radii are queryRadius / 2^i, i <= MAX_RADIUS_HALVINGS
+    private static final int MAX_RADIUS_HALVINGS = 8;
+
+    // Broadcast state holding the latest sketch under SKETCH_KEY
+    public static final MapStateDescriptor<Integer, CellDensitySketch> sketchDescriptor = new MapStateDescriptor<Integer, CellDensitySketch>(
+            "cellDensitySketch", BasicTypeInfo.INT_TYPE_INFO, TypeInformation.of(CellDensitySketch.class));
+    private static final Integer SKETCH_KEY = 0;
+
+    private final HashMap<Long, Double> cellDensities;
+    private final double totalDensity;
+    private final double maxDensity;
+
+    public CellDensitySketch(Map<Long, ? extends Number> cellCounts)
+    {
+        this.cellDensities = new HashMap<Long, Double>();
+        double total = 0, max = 0;
+        for (Map.Entry<Long, ? extends Number> cellCount : cellCounts.entrySet()) {
+            double density = cellCount.getValue().doubleValue();
+            if (density >= MIN_DENSITY && cellCount.getKey() != UniformGrid.NO_CELL_KEY) {
+                cellDensities.put(cellCount.getKey(), density);
+                total += density;
+                max = Math.max(max, density);
+            }
+        }
+        this.totalDensity = total;
+        this.maxDensity = max;
+    }
+
+    // Sketch of the next interval, given the arrival counts of the interval
+    public CellDensitySketch update(Map<Long, Long> intervalCounts, double decayFactor)
+    {
+        HashMap<Long, Double> nextDensities = new HashMap<Long, Double>();
+        for (Map.Entry<Long, Double> cellDensity : cellDensities.entrySet()) {
+            nextDensities.put(cellDensity.getKey(), cellDensity.getValue() * decayFactor);
+        }
+        for (Map.Entry<Long, Long> cellCount : intervalCounts.entrySet()) {
+            nextDensities.merge(cellCount.getKey(), (double) cellCount.getValue(), Double::sum);
+        }
+        return new CellDensitySketch(nextDensities);
+    }
+
+    public double getDensity(long cellKey)
+    {
+        Double density = cellDensities.get(cellKey);
+        return (density == null) ? 0 : density;
+    }
+
+    public double getTotalDensity() {return totalDensity;}
+    public double getMaxDensity() {return maxDensity;}
+    public int getNumNonEmptyCells() {return cellDensities.size();}
+
+    // Expected number of objects in the given cells
+    public double estimateCount(Collection<Long> cells)
+    {
+        double count = 0;
+        // Iterating over the smaller of the two sets
+        if (cells.size() > cellDensities.size() && cells instanceof Set) {
+            for (Map.Entry<Long, Double> cellDensity : cellDensities.entrySet()) {
+                if (cells.contains(cellDensity.getKey())) {
+                    count += cellDensity.getValue();
+                }
+            }
+        }
+        else {
+            for (long cellKey : cells) {
+                count += getDensity(cellKey);
+            }
+        }
+        return count;
+    }
+
+    // Factor converting the densities (arrivals of about updateInterval / (1 - decayFactor) seconds) to the arrivals of a window
+    public static double getWindowScale(int windowSize, int updateInterval, double decayFactor)
+    {
+        return windowSize * (1 - decayFactor) / updateInterval;
+    }
+
+    // Smallest radius (among queryRadius / 2^i) whose guaranteed cells are expected to hold at least k points of a window, queryRadius if none
+    // As the guaranteed cells are completely within the radius, the k nearest neighbors are expected to be within the returned radius
+    // windowScale: see getWindowScale
+    public double estimateKNNRadius(SpatialIndex uGrid, long queryCellID, int k, double queryRadius, double windowScale)
+    {
+        double radius = queryRadius;
+        for (int i = 1; i <= MAX_RADIUS_HALVINGS; i++) {
+            double smallerRadius = queryRadius / (1 << i);
+            if (estimateCount(uGrid.getGuaranteedNeighboringCells(smallerRadius, queryCellID)) * windowScale < k) {
+                break;
+            }
+            radius = smallerRadius;
+        }
+        return radius;
+    }
+
+    // Expected number of replicas created by replicating every object of this sketch to its neighboring cells
+    public double estimateReplicationCost(SpatialIndex uGrid, double queryRadius)
+    {
+        double cost = 0;
+        for (Map.Entry<Long, Double> cellDensity : cellDensities.entrySet()) {
+            long[] numNeighbors = {0};
+            uGrid.forEachNeighboringCell(queryRadius, cellDensity.getKey(), neighboringCell -> numNeighbors[0]++);
+            cost += cellDensity.getValue() * numNeighbors[0];
+        }
+        return cost;
+    }
+
+    @Override
+    public String toString() {
+        return "CellDensitySketch{cells=" + cellDensities.size() + ", total=" + totalDensity + ", max=" + maxDensity + "}";
+    }
+
+    // Stream of sketches, a new sketch is emitted every updateInterval seconds
+    // The latest sketch is exposed as the "Density" metrics of the operator
+    public static DataStream<CellDensitySketch> getSketchStream(DataStream<Point> pointStream, int updateInterval, double decayFactor){
+
+        // Per cell counts, pre-aggregated in parallel
+        DataStream<Tuple2<Long, Long>> cellCounts = pointStream.map(new MapFunction<Point, Tuple2<Long, Long>>() {
+            @Override
+            public Tuple2<Long, Long> map(Point p) throws Exception {
+                return Tuple2.of(p.gridID, 1L);
+            }
+        }).keyBy(new KeySelector<Tuple2<Long, Long>, Long>() {
+            @Override
+            public Long getKey(Tuple2<Long, Long> cellCount) throws Exception {
+                return cellCount.f0;
+            }
+        }).window(TumblingProcessingTimeWindows.of(Time.seconds(updateInterval)))
+                .reduce(new ReduceFunction<Tuple2<Long, Long>>() {
+                    @Override
+                    public Tuple2<Long, Long> reduce(Tuple2<Long, Long> c1, Tuple2<Long, Long> c2) throws Exception {
+                        return Tuple2.of(c1.f0, c1.f1 + c2.f1);
+                    }
+                });
+
+        return cellCounts.windowAll(TumblingProcessingTimeWindows.of(Time.seconds(updateInterval)))
+                .apply(new RichAllWindowFunction<Tuple2<Long, Long>, CellDensitySketch, TimeWindow>() {
+
+                    CellDensitySketch sketch = new CellDensitySketch(new HashMap<Long, Long>());
+
+                    @Override
+                    public void open(Configuration parameters) throws Exception {
+                        MetricGroup densityMetrics = getRuntimeContext().getMetricGroup().addGroup("Density");
+                        densityMetrics.gauge("Total Density", (Gauge<Double>) () -> sketch.getTotalDensity());
+                        densityMetrics.gauge("Max Cell Density", (Gauge<Double>) () -> sketch.getMaxDensity());
+                        densityMetrics.gauge("Non-empty Cells", (Gauge<Integer>) () -> sketch.getNumNonEmptyCells());
+                    }
+
+                    @Override
+                    public void apply(TimeWindow timeWindow, Iterable<Tuple2<Long, Long>> input, Collector<CellDensitySketch> output) throws Exception {
+
+                        HashMap<Long, Long> intervalCounts = new HashMap<Long, Long>();
+                        for (Tuple2<Long, Long> cellCount : input) {
+                            intervalCounts.merge(cellCount.f0, cellCount.f1, Long::sum);
+                        }
+
+                        sketch = sketch.update(intervalCounts, decayFactor);
+                        output.collect(sketch);
+                    }
+                }).name("Cell Density Sketch");
+    }
+
+    // Emits the points of the neighboring cells of the query w.r.t. the kNN radius estimated from the latest sketch, with the estimated radius
+    // The points of the other neighboring cells w.r.t. queryRadius (the ring) are not shuffled: they go to the ringPointTag side output
+    // with subtaskKey, a key which Flink places on this subtask, for a local pre-aggregation (DataStreamUtils.reinterpretAsKeyedStream)
+    // Until the first sketch arrives, queryRadius is used
+    public static class KNNRadiusFilter extends BroadcastProcessFunction<Point, CellDensitySketch, Tuple2<Point, Double>> {
+
+        // (point, estimated radius, subtaskKey)
+        public static final OutputTag<Tuple3<Point, Double, Long>> ringPointTag = new OutputTag<Tuple3<Point, Double, Long>>("kNNRingPoints"){};
+
+        private final SpatialIndex uGrid;
+        private final Point queryPoint;
+        private final double queryRadius;
+        private final int k;
+        private final double windowScale;
+
+        private transient CellDensitySketch sketch;
+        private transient double radius;
+        private transient CellBitmap queryRadiusCells;
+        private transient CellBitmap neighboringCells;
+        private transient long subtaskKey;
+
+        public KNNRadiusFilter(SpatialIndex uGrid, Point queryPoint, double queryRadius, int k, double windowScale) {
+            this.uGrid = uGrid;
+            this.queryPoint = queryPoint;
+            this.queryRadius = queryRadius;
+            this.k = k;
+            this.windowScale = windowScale;
+        }
+
+        @Override
+        public void open(Configuration parameters) throws Exception {
+            int maxParallelism = getRuntimeContext().getMaxNumberOfParallelSubtasks();
+            int parallelism = getRuntimeContext().getNumberOfParallelSubtasks();
+            int subtaskIndex = getRuntimeContext().getIndexOfThisSubtask();
+            subtaskKey = 0;
+            while (KeyGroupRangeAssignment.assignKeyToParallelOperator(subtaskKey, maxParallelism, parallelism) != subtaskIndex) {
+                subtaskKey++;
+            }
+        }
+
+        @Override
+        public void processElement(Point p, ReadOnlyContext ctx, Collector<Tuple2<Point, Double>> out) throws Exception {
+
+            if (queryRadiusCells == null) {
+                queryRadiusCells = getNeighboringCells(queryRadius);
+            }
+
+            CellDensitySketch latestSketch = ctx.getBroadcastState(sketchDescriptor).get(SKETCH_KEY);
+            if (neighboringCells == null || latestSketch != sketch) {
+                sketch = latestSketch;
+                double nextRadius = (sketch == null) ? queryRadius : sketch.estimateKNNRadius(uGrid, queryPoint.gridID, k, queryRadius, windowScale);
+                if (neighboringCells == null || nextRadius != radius) {
+                    radius = nextRadius;
+                    neighboringCells = (radius == queryRadius) ? queryRadiusCells : getNeighboringCells(radius);
+                }
+            }
+
+            if (neighboringCells.contains(p.gridID)) {
+                out.collect(Tuple2.of(p, radius));
+            }
+            else if (queryRadiusCells.contains(p.gridID)) {
+                // Farther than radius from the query point
+                ctx.output(ringPointTag, Tuple3.of(p, radius, subtaskKey));
+            }
+        }
+
+        @Override
+        public void processBroadcastElement(CellDensitySketch nextSketch, Context ctx, Collector<Tuple2<Point, Double>> out) throws Exception {
+            ctx.getBroadcastState(sketchDescriptor).put(SKETCH_KEY, nextSketch);
+        }
+
+        private CellBitmap getNeighboringCells(double r) {
+            Set<Long> guaranteedCells = uGrid.getGuaranteedNeighboringCells(r, queryPoint.gridID);
+            return new CellBitmap(guaranteedCells, uGrid.getCandidateNeighboringCells(r, queryPoint.gridID, guaranteedCells));
+        }
+    }
+}
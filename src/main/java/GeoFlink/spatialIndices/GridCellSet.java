@@ -0,0 +1,117 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialIndices;
+
+import GeoFlink.utils.HelperClass;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.LongConsumer;
+
+/*
+Virtual (read-only) set of the cells of a rectangular block of the grid, i.e., all the cells (x, y) with
+minXIndex <= x <= maxXIndex and minYIndex <= y <= maxYIndex. The cell keys are computed on demand, nothing is materialized
+*/
+public class GridCellSet extends AbstractSet<Long> implements Serializable {
+
+    private final int minXIndex;
+    private final int minYIndex;
+    private final int maxXIndex;
+    private final int maxYIndex;
+
+    public GridCellSet(int minXIndex, int minYIndex, int maxXIndex, int maxYIndex)
+    {
+        this.minXIndex = minXIndex;
+        this.minYIndex = minYIndex;
+        this.maxXIndex = maxXIndex;
+        this.maxYIndex = maxYIndex;
+    }
+
+    public int getMinXIndex() {return minXIndex;}
+    public int getMinYIndex() {return minYIndex;}
+    public int getMaxXIndex() {return maxXIndex;}
+    public int getMaxYIndex() {return maxYIndex;}
+
+    public long getNumCells()
+    {
+        if (maxXIndex < minXIndex || maxYIndex < minYIndex) {
+            return 0;
+        }
+        return ((long) maxXIndex - minXIndex + 1) * ((long) maxYIndex - minYIndex + 1);
+    }
+
+    public boolean contains(long cellKey)
+    {
+        int x = HelperClass.getCellXIndex(cellKey);
+        int y = HelperClass.getCellYIndex(cellKey);
+        return cellKey != UniformGrid.NO_CELL_KEY && x >= minXIndex && x <= maxXIndex && y >= minYIndex && y <= maxYIndex;
+    }
+
+    // Visits the cells without boxing them
+    public void forEachCell(LongConsumer action)
+    {
+        for (int x = minXIndex; x <= maxXIndex; x++) {
+            for (int y = minYIndex; y <= maxYIndex; y++) {
+                action.accept(HelperClass.getCellKey(x, y));
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return (o instanceof Long) && contains(((Long) o).longValue());
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(getNumCells(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<Long>() {
+
+            long remaining = getNumCells();
+            int x = minXIndex;
+            int y = minYIndex;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public Long next() {
+                if (remaining <= 0) {
+                    throw new NoSuchElementException();
+                }
+                long cellKey = HelperClass.getCellKey(x, y);
+                remaining--;
+                if (y < maxYIndex) {
+                    y++;
+                }
+                else {
+                    y = minYIndex;
+                    x++;
+                }
+                return cellKey;
+            }
+        };
+    }
+}
@@ -0,0 +1,176 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialIndices;
+
+import GeoFlink.spatialObjects.Point;
+import GeoFlink.spatialObjects.PointBatch;
+import org.apache.flink.api.common.functions.Partitioner;
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.runtime.state.KeyGroupRangeAssignment;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+Grid-aware partitioning of the cells to the subtasks
+The cells are ordered by their cell numbers (SpatialIndex.getCellNumber, e.g., along the Hilbert curve) and the order is cut into
+numPartitions contiguous ranges of about the same load, so neighboring cells mostly end up on the same subtask. The load of a cell is its measured weight (cellWeights) plus one,
+i.e., without measured weights every cell has the same load
+Flink keyed streams place a key by its hash (key groups), hence the keyed operators are keyed by a routing key of the cell,
+a key chosen such that Flink places it on the subtask assigned to the cell. The cell keys may take any long value (e.g., the
+negative indices of out-of-grid UniformGrid cells), hence a routing key is swapped with its cell: a cell unknown to the partitioner
+whose key equals a routing key is keyed by the cell of that routing key, any other unknown cell by its own key (i.e., hash partitioned).
+Routing keys are never keys of the known cells, so the keying is one-to-one and getCellKey restores every cell key
+*/
+public class GridPartitioner implements Partitioner<Long> {
+
+    private static final int MAX_ROUTING_KEY_TRIALS = 1 << 20;
+
+    private final int numPartitions;
+    private final int maxParallelism;
+    private final HashMap<Long, Integer> cellPartitions = new HashMap<Long, Integer>();
+    private final HashMap<Long, Long> routingKeys = new HashMap<Long, Long>();
+    private final HashMap<Long, Long> routingKeyCells = new HashMap<Long, Long>();
+    private final double[] partitionLoads;
+
+    // numPartitions: parallelism of the keyed operators, maxParallelism: max parallelism of the job (<= 0 for Flink's default)
+    public GridPartitioner(SpatialIndex uGrid, int numPartitions, int maxParallelism, Map<Long, Long> cellWeights)
+    {
+        if(numPartitions <= 0)
+        {
+            throw new IllegalArgumentException("numPartitions must be positive");
+        }
+
+        this.numPartitions = numPartitions;
+        this.maxParallelism = (maxParallelism > 0) ? maxParallelism : KeyGroupRangeAssignment.computeDefaultMaxParallelism(numPartitions);
+        this.partitionLoads = new double[numPartitions];
+
+        // Ordering the cells by their cell numbers
+        Long[] cells = uGrid.getGirdCellsSet().toArray(new Long[0]);
+        HashMap<Long, Long> cellNumbers = new HashMap<Long, Long>();
+        for(long cellKey: cells)
+        {
+            cellNumbers.put(cellKey, uGrid.getCellNumber(cellKey));
+        }
+        Arrays.sort(cells, (c1, c2) -> Long.compare(cellNumbers.get(c1), cellNumbers.get(c2)));
+
+        // Load model
+        double[] loads = new double[cells.length];
+        double totalLoad = 0;
+        for(int i = 0; i < cells.length; i++)
+        {
+            Long weight = (cellWeights == null) ? null : cellWeights.get(cells[i]);
+            loads[i] = 1 + ((weight == null) ? 0 : Math.max(weight, 0));
+            totalLoad += loads[i];
+        }
+
+        // Cutting the curve: a cell goes to the partition in which the midpoint of its load falls
+        double cumulativeLoad = 0;
+        for(int i = 0; i < cells.length; i++)
+        {
+            int partition = (int)Math.min(numPartitions - 1, Math.floor((cumulativeLoad + loads[i] / 2) * numPartitions / totalLoad));
+            cumulativeLoad += loads[i];
+            partitionLoads[partition] += loads[i];
+
+            long routingKey = findRoutingKey(i, partition, cellNumbers);
+            cellPartitions.put(cells[i], partition);
+            routingKeys.put(cells[i], routingKey);
+            routingKeyCells.put(routingKey, cells[i]);
+        }
+
+        System.out.println("GridPartitioner partition loads: " + Arrays.toString(partitionLoads));
+    }
+
+    // Searching for a key of the cell (ordinal: position on the curve) which Flink assigns to the partition and which is not a known cell key
+    private long findRoutingKey(int ordinal, int partition, Map<Long, ?> knownCells)
+    {
+        for(long trial = 0; trial < MAX_ROUTING_KEY_TRIALS; trial++)
+        {
+            long routingKey = ~((((long) ordinal) << 20) | trial);
+            if(!knownCells.containsKey(routingKey) && KeyGroupRangeAssignment.assignKeyToParallelOperator(routingKey, maxParallelism, numPartitions) == partition)
+            {
+                return routingKey;
+            }
+        }
+        throw new IllegalStateException("No routing key found for partition " + partition + ", check numPartitions and maxParallelism");
+    }
+
+    public int getNumPartitions() {return numPartitions;}
+    public int getMaxParallelism() {return maxParallelism;}
+    public double[] getPartitionLoads() {return partitionLoads;}
+
+    // Partition (subtask) of the cell, can be used with DataStream.partitionCustom
+    @Override
+    public int partition(Long cellKey, int numPartitions) {
+        Integer partition = cellPartitions.get(cellKey);
+        if(partition == null)
+        {
+            return Math.abs(cellKey.hashCode() % numPartitions);
+        }
+        return partition % numPartitions;
+    }
+
+    // Key to be used instead of the cell key by the keyed operators
+    public long getRoutingKey(long cellKey)
+    {
+        Long routingKey = routingKeys.get(cellKey);
+        if(routingKey != null)
+        {
+            return routingKey;
+        }
+        // An unknown cell colliding with a routing key is swapped with the cell of the routing key
+        Long swappedKey = routingKeyCells.get(cellKey);
+        return (swappedKey == null) ? cellKey : swappedKey;
+    }
+
+    // Cell key of a key returned by getRoutingKey; the swap is its own inverse
+    public long getCellKey(long routingKey)
+    {
+        return getRoutingKey(routingKey);
+    }
+
+    // Key selector, keying by the routing key if gridPartitioner is not null and by the cell key otherwise
+    public static class PointKeySelector implements KeySelector<Point, Long> {
+
+        private final GridPartitioner gridPartitioner;
+
+        public PointKeySelector(GridPartitioner gridPartitioner) {
+            this.gridPartitioner = gridPartitioner;
+        }
+
+        @Override
+        public Long getKey(Point p) throws Exception {
+            return (gridPartitioner == null) ? p.gridID : gridPartitioner.getRoutingKey(p.gridID);
+        }
+    }
+
+    // Key selector of the batched streams (SpatialStream.PointBatchStream), keying as PointKeySelector
+    public static class PointBatchKeySelector implements KeySelector<PointBatch, Long> {
+
+        private final GridPartitioner gridPartitioner;
+
+        public PointBatchKeySelector(GridPartitioner gridPartitioner) {
+            this.gridPartitioner = gridPartitioner;
+        }
+
+        @Override
+        public Long getKey(PointBatch batch) throws Exception {
+            return (gridPartitioner == null) ? batch.gridID : gridPartitioner.getRoutingKey(batch.gridID);
+        }
+    }
+}
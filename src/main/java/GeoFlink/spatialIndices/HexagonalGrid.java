@@ -0,0 +1,303 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialIndices;
+
+import GeoFlink.spatialObjects.Point;
+import GeoFlink.spatialObjects.Polygon;
+import GeoFlink.utils.HelperClass;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+/*
+Hexagonal grid: pointy-top hexagons of circumradius hexRadius, having the same area as the cells of the uniformGridRows x uniformGridRows UniformGrid
+A cell is identified by the cell key (HelperClass.getCellKey) of its (column, row) index, where the odd rows are shifted by half a hexagon to the right
+Cell (0, 0) is centered at (minX, minY). Neighborhoods are computed in axial coordinates (q, r), in which they do not depend on the query cell
+All the points of a hexagon lie within hexRadius of its center, hence for two cells with center distance d:
+guaranteed cell: d + 2 * hexRadius <= queryRadius, candidate cell: d - 2 * hexRadius <= queryRadius
+i.e., the neighborhood is a disc of hexagons instead of a square of cells
+*/
+public class HexagonalGrid implements SpatialIndex {
+
+    private static final double SQRT3 = Math.sqrt(3);
+
+    double minX;     //X - East-West longitude
+    double maxX;
+    double minY;     //Y - North-South latitude
+    double maxY;
+
+    double hexRadius;
+    double hexWidth;  // distance between the centers of two horizontally adjacent cells
+    double rowHeight; // distance between two rows
+    int numColumns;
+    int numRows;
+    GridCellSet girdCellsSet;
+
+    // Axial (q, r) offsets of the guaranteed and candidate cells, computed once per query radius
+    private final Map<Double, int[][]> neighboringCellOffsetsMap = new ConcurrentHashMap<>();
+
+    public HexagonalGrid(int uniformGridRows, double minX, double maxX, double minY, double maxY)
+    {
+        this.minX = minX;
+        this.maxX = maxX;
+        this.minY = minY;
+        this.maxY = maxY;
+
+        // Same cell area as the square cells: cellLength^2 = (3 * sqrt(3) / 2) * hexRadius^2
+        double cellLength = Math.max(maxX - minX, maxY - minY) / uniformGridRows;
+        this.hexRadius = cellLength * Math.sqrt(2 / (3 * SQRT3));
+        this.hexWidth = SQRT3 * hexRadius;
+        this.rowHeight = 1.5 * hexRadius;
+
+        this.numColumns = (int)Math.ceil((maxX - minX) / hexWidth) + 1;
+        this.numRows = (int)Math.ceil((maxY - minY) / rowHeight) + 1;
+        this.girdCellsSet = new GridCellSet(0, 0, numColumns - 1, numRows - 1);
+
+        System.out.println("hexRadius: " + hexRadius + ", columns: " + numColumns + ", rows: " + numRows);
+    }
+
+    public double getMinX() {return minX;}
+    public double getMinY() {return minY;}
+    public double getMaxX() {return maxX;}
+    public double getMaxY() {return maxY;}
+    public double getHexRadius() {return hexRadius;}
+    public int getNumColumns() {return numColumns;}
+    public int getNumRows() {return numRows;}
+    public Set<Long> getGirdCellsSet() {return girdCellsSet;}
+
+    public long getCellNumber(long cellKey)
+    {
+        int order = 32 - Integer.numberOfLeadingZeros(Math.max(Math.max(numColumns, numRows) - 1, 1));
+        return HelperClass.getHilbertIndex(order, HelperClass.getCellXIndex(cellKey), HelperClass.getCellYIndex(cellKey));
+    }
+
+    public boolean validKey(int column, int row){
+        return column >= 0 && row >= 0 && column < numColumns && row < numRows;
+    }
+
+    // Conversion between the (column, row) cell index and the axial (q, r) coordinates
+    private static int getAxialQ(int column, int row) {return column - (row - (row & 1)) / 2;}
+    private static int getColumn(int q, int r) {return q + (r - (r & 1)) / 2;}
+
+    // assigning grid cell ID
+    public long assignGridCellID(Coordinate coordinate) {
+
+        double x = coordinate.getX() - minX;
+        double y = coordinate.getY() - minY;
+
+        // Fractional axial coordinates, rounded to the hexagon in cube coordinates (q + r + s = 0)
+        double fq = (SQRT3 / 3 * x - y / 3) / hexRadius;
+        double fr = (2.0 / 3 * y) / hexRadius;
+        double fs = -fq - fr;
+
+        long q = Math.round(fq);
+        long r = Math.round(fr);
+        long s = Math.round(fs);
+        double qDiff = Math.abs(q - fq);
+        double rDiff = Math.abs(r - fr);
+        double sDiff = Math.abs(s - fs);
+
+        if(qDiff > rDiff && qDiff > sDiff) {
+            q = -r - s;
+        }
+        else if(rDiff > sDiff) {
+            r = -q - s;
+        }
+
+        if(Math.abs(q) >= Integer.MAX_VALUE || Math.abs(r) >= Integer.MAX_VALUE) {
+            return UniformGrid.NO_CELL_KEY;
+        }
+        int row = (int) r;
+        int column = getColumn((int) q, row);
+        if(!validKey(column, row)) {
+            return UniformGrid.NO_CELL_KEY;
+        }
+        return HelperClass.getCellKey(column, row);
+    }
+
+    // assigning grid cell ID - BoundingBox
+    // Cells whose center lies within hexRadius of the bounding box, i.e., a superset of the cells overlapping the bounding box
+    public HashSet<Long> assignGridCellID(Tuple2<Coordinate, Coordinate> bBox) {
+
+        HashSet<Long> gridCellIDs = new HashSet<Long>();
+
+        double x1 = bBox.f0.getX() - minX - hexRadius;
+        double y1 = bBox.f0.getY() - minY - hexRadius;
+        double x2 = bBox.f1.getX() - minX + hexRadius;
+        double y2 = bBox.f1.getY() - minY + hexRadius;
+
+        int row1 = Math.max((int)Math.floor(y1 / rowHeight), 0);
+        int row2 = Math.min((int)Math.ceil(y2 / rowHeight), numRows - 1);
+        for(int row = row1; row <= row2; row++)
+        {
+            double centerY = row * rowHeight;
+            if(centerY < y1 || centerY > y2) {
+                continue;
+            }
+            double shift = (row & 1) * hexWidth / 2;
+            int column1 = Math.max((int)Math.floor((x1 - shift) / hexWidth), 0);
+            int column2 = Math.min((int)Math.ceil((x2 - shift) / hexWidth), numColumns - 1);
+            for(int column = column1; column <= column2; column++)
+            {
+                double centerX = column * hexWidth + shift;
+                if(centerX >= x1 && centerX <= x2) {
+                    gridCellIDs.add(HelperClass.getCellKey(column, row));
+                }
+            }
+        }
+        return gridCellIDs;
+    }
+
+    // Returns the (cached) axial offsets {guaranteedOffsets, candidateOffsets} of the given query radius, stored as {q0, r0, q1, r1, ...}
+    private int[][] getNeighboringCellOffsets(double queryRadius)
+    {
+        int[][] offsets = neighboringCellOffsetsMap.get(queryRadius);
+        if(offsets != null)
+        {
+            return offsets;
+        }
+
+        // The centers of two cells k hexagons apart are at least 1.5 * k * hexRadius apart
+        int maxSteps = (int)Math.ceil((queryRadius + 2 * hexRadius) / rowHeight);
+        int[] guaranteed = new int[2 * (3 * maxSteps * (maxSteps + 1) + 1)];
+        int[] candidate = new int[guaranteed.length];
+        int numGuaranteed = 0;
+        int numCandidate = 0;
+
+        for(int dq = -maxSteps; dq <= maxSteps; dq++)
+            for(int dr = Math.max(-maxSteps, -dq - maxSteps); dr <= Math.min(maxSteps, -dq + maxSteps); dr++)
+            {
+                double centerDistance = hexRadius * Math.sqrt(3.0 * (dq * dq + dq * dr + dr * dr));
+                if(centerDistance + 2 * hexRadius <= queryRadius)
+                {
+                    guaranteed[numGuaranteed++] = dq;
+                    guaranteed[numGuaranteed++] = dr;
+                }
+                else if(centerDistance - 2 * hexRadius <= queryRadius)
+                {
+                    candidate[numCandidate++] = dq;
+                    candidate[numCandidate++] = dr;
+                }
+            }
+
+        offsets = new int[][]{Arrays.copyOf(guaranteed, numGuaranteed), Arrays.copyOf(candidate, numCandidate)};
+        System.out.println("Hexagonal guaranteed cells: " + numGuaranteed / 2 + ", candidate cells: " + numCandidate / 2);
+        neighboringCellOffsetsMap.put(queryRadius, offsets);
+        return offsets;
+    }
+
+    private void forEachOffsetCell(long cellKey, int[] offsets, LongConsumer action)
+    {
+        int row = HelperClass.getCellYIndex(cellKey);
+        int q = getAxialQ(HelperClass.getCellXIndex(cellKey), row);
+
+        for(int i = 0; i < offsets.length; i += 2)
+        {
+            int neighborRow = row + offsets[i + 1];
+            int neighborColumn = getColumn(q + offsets[i], neighborRow);
+            if(validKey(neighborColumn, neighborRow))
+            {
+                action.accept(HelperClass.getCellKey(neighborColumn, neighborRow));
+            }
+        }
+    }
+
+    public HashSet<Long> getGuaranteedNeighboringCells(double queryRadius, long queryGridCellID)
+    {
+        HashSet<Long> guaranteedNeighboringCellsSet = new HashSet<Long>();
+        forEachGuaranteedNeighboringCell(queryRadius, queryGridCellID, guaranteedNeighboringCellsSet::add);
+        return guaranteedNeighboringCellsSet;
+    }
+
+    // Guaranteed Neighboring Cells of Polygon Query
+    public HashSet<Long> getGuaranteedNeighboringCells(double queryRadius, Polygon queryPolygon)
+    {
+        HashSet<Long> guaranteedNeighboringCellsSet = new HashSet<Long>();
+
+        for(Long cellID: queryPolygon.gridIDsSet) {
+            forEachGuaranteedNeighboringCell(queryRadius, cellID, guaranteedNeighboringCellsSet::add);
+        }
+        return guaranteedNeighboringCellsSet;
+    }
+
+    // Query Point
+    public HashSet<Long> getCandidateNeighboringCells(double queryRadius, long queryGridCellID, Set<Long> guaranteedNeighboringCellsSet)
+    {
+        HashSet<Long> candidateNeighboringCellsSet = new HashSet<Long>();
+
+        forEachCandidateNeighboringCell(queryRadius, queryGridCellID, cellKey -> {
+            // Add key if and only if it is not included in the guaranteed neighbors (of other query cells)
+            if(!guaranteedNeighboringCellsSet.contains(cellKey)) {
+                candidateNeighboringCellsSet.add(cellKey);
+            }
+        });
+        return candidateNeighboringCellsSet;
+    }
+
+    // Query Polygon
+    public HashSet<Long> getCandidateNeighboringCells(double queryRadius, Polygon queryPolygon, Set<Long> guaranteedNeighboringCellsSet)
+    {
+        HashSet<Long> candidateNeighboringCellsSet = new HashSet<Long>();
+
+        for(Long cellID: queryPolygon.gridIDsSet) {
+            candidateNeighboringCellsSet.addAll(getCandidateNeighboringCells(queryRadius, cellID, guaranteedNeighboringCellsSet));
+        }
+        return candidateNeighboringCellsSet;
+    }
+
+    // Return all the neighboring cells including candidate cells and guaranteed cells
+    public Set<Long> getNeighboringCells(double queryRadius, Point queryPoint)
+    {
+        // return the (virtual) set of all the cells
+        if(queryRadius == 0){
+            return this.girdCellsSet;
+        }
+
+        HashSet<Long> neighboringCellsSet = new HashSet<Long>();
+        forEachNeighboringCell(queryRadius, queryPoint.gridID, neighboringCellsSet::add);
+        return neighboringCellsSet;
+    }
+
+    public void forEachGuaranteedNeighboringCell(double queryRadius, long queryGridCellID, LongConsumer action)
+    {
+        forEachOffsetCell(queryGridCellID, getNeighboringCellOffsets(queryRadius)[0], action);
+    }
+
+    public void forEachCandidateNeighboringCell(double queryRadius, long queryGridCellID, LongConsumer action)
+    {
+        forEachOffsetCell(queryGridCellID, getNeighboringCellOffsets(queryRadius)[1], action);
+    }
+
+    // queryRadius == 0 visits all the cells in the grid
+    public void forEachNeighboringCell(double queryRadius, long queryGridCellID, LongConsumer action)
+    {
+        if(queryRadius == 0){
+            girdCellsSet.forEachCell(action);
+            return;
+        }
+
+        int[][] offsets = getNeighboringCellOffsets(queryRadius);
+        forEachOffsetCell(queryGridCellID, offsets[0], action);
+        forEachOffsetCell(queryGridCellID, offsets[1], action);
+    }
+}
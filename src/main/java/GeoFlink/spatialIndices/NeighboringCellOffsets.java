@@ -0,0 +1,78 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialIndices;
+
+import java.io.Serializable;
+
+/*
+Relative (x, y) cell index offsets of the neighborhood of a query cell for a fixed query radius.
+Offsets are stored as consecutive pairs: {x0, y0, x1, y1, ...}
+guaranteedOffsets: cells containing the guaranteed r-neighbors
+candidateOffsets: cells containing the candidate r-neighbors (mutually exclusive with guaranteedOffsets)
+neighboringOffsets: all the neighboring cells including the guaranteed and candidate cells
+*/
+public class NeighboringCellOffsets implements Serializable {
+
+    private final int guaranteedLayers;
+    private final int candidateLayers;
+    private final int[] guaranteedOffsets;
+    private final int[] candidateOffsets;
+    private final int[] neighboringOffsets;
+
+    public NeighboringCellOffsets(int guaranteedLayers, int candidateLayers, int neighboringLayers)
+    {
+        this.guaranteedLayers = guaranteedLayers;
+        this.candidateLayers = candidateLayers;
+
+        // if guaranteedLayers == -1, there is no guaranteed cell
+        this.guaranteedOffsets = getLayerOffsets(-1, guaranteedLayers);
+        this.candidateOffsets = getLayerOffsets(Math.max(guaranteedLayers, -1), candidateLayers);
+        this.neighboringOffsets = getLayerOffsets(-1, neighboringLayers);
+    }
+
+    public int getGuaranteedLayers() {return guaranteedLayers;}
+    public int getCandidateLayers() {return candidateLayers;}
+    public int[] getGuaranteedOffsets() {return guaranteedOffsets;}
+    public int[] getCandidateOffsets() {return candidateOffsets;}
+    public int[] getNeighboringOffsets() {return neighboringOffsets;}
+
+    // Offsets of all the cells lying in layers (innerLayer, outerLayer], where layer 0 is the query cell itself
+    private static int[] getLayerOffsets(int innerLayer, int outerLayer)
+    {
+        if(outerLayer <= innerLayer)
+        {
+            return new int[0];
+        }
+
+        int outerSide = 2 * outerLayer + 1;
+        int innerSide = Math.max(2 * innerLayer + 1, 0); // 0 if innerLayer == -1
+        int numCells = outerSide * outerSide - innerSide * innerSide;
+        int[] offsets = new int[2 * numCells];
+
+        int n = 0;
+        for(int i = -outerLayer; i <= outerLayer; i++)
+            for(int j = -outerLayer; j <= outerLayer; j++)
+            {
+                if(Math.max(Math.abs(i), Math.abs(j)) > innerLayer)
+                {
+                    offsets[n++] = i;
+                    offsets[n++] = j;
+                }
+            }
+        return offsets;
+    }
+}
@@ -0,0 +1,553 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialIndices;
+
+import GeoFlink.spatialObjects.Point;
+import GeoFlink.spatialObjects.Polygon;
+import GeoFlink.utils.HelperClass;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+/*
+Multi-resolution grid: a region quadtree whose leaves are the grid cells
+Every node is split into 4 quadrants until it reaches minDepth, and beyond minDepth (up to maxDepth) as long as it holds more
+than nodeCapacity sample points, i.e., dense regions are covered by smaller cells than the sparse ones
+A leaf is identified by the cell key (HelperClass.getCellKey) of its lower-left cell at the finest (maxDepth) resolution
+For the adaptive grid, adapt() derives the next layout from the observed per finest cell counts, see AdaptiveGrid
+*/
+public class QuadTree implements SpatialIndex {
+
+    double minX;     //X - East-West longitude
+    double maxX;
+    double minY;     //Y - North-South latitude
+    double maxY;
+
+    int minDepth;
+    int maxDepth;
+    long nodeCapacity;
+    int layoutVersion = 0;
+    int numFinestCells; // number of cells per axis at the finest resolution, i.e., 2^maxDepth
+    double finestCellLength;
+
+    // children[4 * node + quadrant] is the index of the child node, -1 for the leaf nodes. Node 0 is the root
+    // quadrant: 0 = lower-left, 1 = lower-right, 2 = upper-left, 3 = upper-right
+    int[] children;
+    HashSet<Long> girdCellsSet = new HashSet<Long>();
+    // leaf cell key -> leaf side length in finest cells
+    HashMap<Long, Integer> leafSizes = new HashMap<Long, Integer>();
+
+    // Guaranteed and candidate leaves are computed once per query radius and query leaf
+    private final Map<Double, Map<Long, NeighboringLeaves>> neighboringLeavesMap = new ConcurrentHashMap<>();
+
+    public QuadTree(int minDepth, int maxDepth, long nodeCapacity, double minX, double maxX, double minY, double maxY, List<Coordinate> sampleCoordinates)
+    {
+        if(minDepth < 0 || maxDepth < minDepth || maxDepth > 30)
+        {
+            throw new IllegalArgumentException("QuadTree depth must satisfy 0 <= minDepth <= maxDepth <= 30");
+        }
+
+        this.minDepth = minDepth;
+        this.maxDepth = maxDepth;
+        this.nodeCapacity = nodeCapacity;
+
+        double xAxisDiff = maxX - minX;
+        double yAxisDiff = maxY - minY;
+
+        // Adjusting coordinates to make square grid cells
+        if(xAxisDiff > yAxisDiff)
+        {
+            double diff = xAxisDiff - yAxisDiff;
+            maxY += diff / 2;
+            minY -= diff / 2;
+        }
+        else if(yAxisDiff > xAxisDiff)
+        {
+            double diff = yAxisDiff - xAxisDiff;
+            maxX += diff / 2;
+            minX -= diff / 2;
+        }
+
+        this.minX = minX;
+        this.maxX = maxX;
+        this.minY = minY;
+        this.maxY = maxY;
+
+        this.numFinestCells = 1 << maxDepth;
+        this.finestCellLength = (maxX - minX) / numFinestCells;
+
+        // Finest cell indices of the sample points lying within the grid
+        int[] sampleXs = new int[sampleCoordinates.size()];
+        int[] sampleYs = new int[sampleCoordinates.size()];
+        long[] sampleWeights = new long[sampleCoordinates.size()];
+        int numSamples = 0;
+        for(Coordinate c: sampleCoordinates)
+        {
+            long finestCellKey = getFinestCellKey(c);
+            if(finestCellKey != UniformGrid.NO_CELL_KEY)
+            {
+                sampleXs[numSamples] = HelperClass.getCellXIndex(finestCellKey);
+                sampleYs[numSamples] = HelperClass.getCellYIndex(finestCellKey);
+                sampleWeights[numSamples] = 1;
+                numSamples++;
+            }
+        }
+
+        build(sampleXs, sampleYs, sampleWeights, numSamples, null, nodeCapacity);
+    }
+
+    // Next layout of an adaptive grid, nodes holding more than splitThreshold points are split and the split nodes holding mergeThreshold or less points are merged
+    private QuadTree(QuadTree previousLayout, Map<Long, Long> finestCellCounts, long splitThreshold, long mergeThreshold)
+    {
+        this.minX = previousLayout.minX;
+        this.maxX = previousLayout.maxX;
+        this.minY = previousLayout.minY;
+        this.maxY = previousLayout.maxY;
+        this.minDepth = previousLayout.minDepth;
+        this.maxDepth = previousLayout.maxDepth;
+        this.nodeCapacity = splitThreshold;
+        this.layoutVersion = previousLayout.layoutVersion + 1;
+        this.numFinestCells = previousLayout.numFinestCells;
+        this.finestCellLength = previousLayout.finestCellLength;
+
+        int[] cellXs = new int[finestCellCounts.size()];
+        int[] cellYs = new int[finestCellCounts.size()];
+        long[] cellCounts = new long[finestCellCounts.size()];
+        int numCells = 0;
+        for(Map.Entry<Long, Long> entry: finestCellCounts.entrySet())
+        {
+            int x = HelperClass.getCellXIndex(entry.getKey());
+            int y = HelperClass.getCellYIndex(entry.getKey());
+            if(x >= 0 && y >= 0 && x < numFinestCells && y < numFinestCells)
+            {
+                cellXs[numCells] = x;
+                cellYs[numCells] = y;
+                cellCounts[numCells] = entry.getValue();
+                numCells++;
+            }
+        }
+
+        build(cellXs, cellYs, cellCounts, numCells, previousLayout, mergeThreshold);
+    }
+
+    // Returns the layout adapted to the observed counts, see the private constructor
+    public QuadTree adapt(Map<Long, Long> finestCellCounts, long splitThreshold, long mergeThreshold)
+    {
+        if(mergeThreshold > splitThreshold)
+        {
+            throw new IllegalArgumentException("mergeThreshold cannot be larger than splitThreshold");
+        }
+        return new QuadTree(this, finestCellCounts, splitThreshold, mergeThreshold);
+    }
+
+    private void build(int[] xs, int[] ys, long[] weights, int numSamples, QuadTree previousLayout, long mergeThreshold)
+    {
+        ArrayList<int[]> nodeChildren = new ArrayList<int[]>();
+        buildNode(nodeChildren, 0, 0, numFinestCells, 0, xs, ys, weights, numSamples, previousLayout, mergeThreshold);
+
+        this.children = new int[4 * nodeChildren.size()];
+        for(int i = 0; i < nodeChildren.size(); i++)
+        {
+            System.arraycopy(nodeChildren.get(i), 0, children, 4 * i, 4);
+        }
+        System.out.println("QuadTree leaves: " + girdCellsSet.size() + ", finest cellLength: " + finestCellLength + ", layout version: " + layoutVersion);
+    }
+
+    private int buildNode(ArrayList<int[]> nodeChildren, int x0, int y0, int size, int level, int[] xs, int[] ys, long[] weights, int numSamples, QuadTree previousLayout, long mergeThreshold)
+    {
+        int node = nodeChildren.size();
+        int[] childNodes = new int[]{-1, -1, -1, -1};
+        nodeChildren.add(childNodes);
+
+        long weight = 0;
+        for(int i = 0; i < numSamples; i++)
+            weight += weights[i];
+
+        // A node split in the previous layout remains split until its weight drops to mergeThreshold (hysteresis)
+        boolean split = (level < minDepth) || (weight > nodeCapacity) ||
+                (previousLayout != null && weight > mergeThreshold && previousLayout.isInternalNode(x0, y0, size));
+
+        if(level < maxDepth && split)
+        {
+            int half = size / 2;
+            for(int q = 0; q < 4; q++)
+            {
+                int qx0 = x0 + (q & 1) * half;
+                int qy0 = y0 + (q >> 1) * half;
+
+                // Samples lying in quadrant q
+                int qNumSamples = 0;
+                for(int i = 0; i < numSamples; i++)
+                {
+                    if(xs[i] >= qx0 && xs[i] < qx0 + half && ys[i] >= qy0 && ys[i] < qy0 + half)
+                        qNumSamples++;
+                }
+                int[] qXs = new int[qNumSamples];
+                int[] qYs = new int[qNumSamples];
+                long[] qWeights = new long[qNumSamples];
+                int n = 0;
+                for(int i = 0; i < numSamples; i++)
+                {
+                    if(xs[i] >= qx0 && xs[i] < qx0 + half && ys[i] >= qy0 && ys[i] < qy0 + half)
+                    {
+                        qXs[n] = xs[i];
+                        qYs[n] = ys[i];
+                        qWeights[n] = weights[i];
+                        n++;
+                    }
+                }
+
+                childNodes[q] = buildNode(nodeChildren, qx0, qy0, half, level + 1, qXs, qYs, qWeights, qNumSamples, previousLayout, mergeThreshold);
+            }
+        }
+        else
+        {
+            long leafKey = HelperClass.getCellKey(x0, y0);
+            girdCellsSet.add(leafKey);
+            leafSizes.put(leafKey, size);
+        }
+        return node;
+    }
+
+    // Whether the node with lower-left finest cell (x0, y0) and side length size exists and is split into quadrants
+    public boolean isInternalNode(int x0, int y0, int size)
+    {
+        int node = 0;
+        int nx0 = 0;
+        int ny0 = 0;
+        int nSize = numFinestCells;
+        while(children[4 * node] != -1)
+        {
+            if(nSize == size)
+            {
+                return (nx0 == x0 && ny0 == y0);
+            }
+            nSize /= 2;
+            int q = 0;
+            if(x0 >= nx0 + nSize) {q |= 1; nx0 += nSize;}
+            if(y0 >= ny0 + nSize) {q |= 2; ny0 += nSize;}
+            node = children[4 * node + q];
+        }
+        return false;
+    }
+
+    // Two layouts are the same if they have the same nodes
+    public boolean hasSameLayout(QuadTree other)
+    {
+        return other != null && numFinestCells == other.numFinestCells && Arrays.equals(children, other.children);
+    }
+
+    public double getMinX() {return minX;}
+    public double getMinY() {return minY;}
+    public double getMaxX() {return maxX;}
+    public double getMaxY() {return maxY;}
+    public int getMinDepth() {return minDepth;}
+    public int getMaxDepth() {return maxDepth;}
+    public double getFinestCellLength() {return finestCellLength;}
+    public int getLayoutVersion() {return layoutVersion;}
+    public Set<Long> getGirdCellsSet() {return girdCellsSet;}
+
+    // Leaves are numbered along the Hilbert curve of the finest resolution, a leaf covers a contiguous range of the curve
+    public long getCellNumber(long cellKey)
+    {
+        return HelperClass.getHilbertIndex(maxDepth, HelperClass.getCellXIndex(cellKey), HelperClass.getCellYIndex(cellKey));
+    }
+
+    // Side length of the leaf in finest cells, 0 if cellKey is not a leaf
+    public int getLeafSize(long cellKey)
+    {
+        Integer size = leafSizes.get(cellKey);
+        return (size == null) ? 0 : size;
+    }
+
+    // Key of the finest resolution cell containing the coordinate, NO_CELL_KEY if it lies outside the grid
+    public long getFinestCellKey(Coordinate coordinate)
+    {
+        int x = (int)(Math.floor((coordinate.getX() - minX) / finestCellLength));
+        int y = (int)(Math.floor((coordinate.getY() - minY) / finestCellLength));
+
+        if(x < 0 || y < 0 || x >= numFinestCells || y >= numFinestCells)
+        {
+            return UniformGrid.NO_CELL_KEY;
+        }
+        return HelperClass.getCellKey(x, y);
+    }
+
+    // assigning grid cell ID
+    public long assignGridCellID(Coordinate coordinate) {
+
+        long finestCellKey = getFinestCellKey(coordinate);
+        if(finestCellKey == UniformGrid.NO_CELL_KEY)
+        {
+            return UniformGrid.NO_CELL_KEY;
+        }
+        int x = HelperClass.getCellXIndex(finestCellKey);
+        int y = HelperClass.getCellYIndex(finestCellKey);
+
+        // Descend to the leaf containing the finest cell (x, y)
+        int node = 0;
+        int x0 = 0;
+        int y0 = 0;
+        int size = numFinestCells;
+        while(children[4 * node] != -1)
+        {
+            size /= 2;
+            int q = 0;
+            if(x >= x0 + size) {q |= 1; x0 += size;}
+            if(y >= y0 + size) {q |= 2; y0 += size;}
+            node = children[4 * node + q];
+        }
+        return HelperClass.getCellKey(x0, y0);
+    }
+
+    // assigning grid cell ID - BoundingBox
+    public HashSet<Long> assignGridCellID(Tuple2<Coordinate, Coordinate> bBox) {
+
+        HashSet<Long> gridCellIDs = new HashSet<Long>();
+
+        // bottom-left coordinate (min values)
+        int x1 = (int)(Math.floor((bBox.f0.getX() - minX) / finestCellLength));
+        int y1 = (int)(Math.floor((bBox.f0.getY() - minY) / finestCellLength));
+
+        // top-right coordinate (max values)
+        int x2 = (int)(Math.floor((bBox.f1.getX() - minX) / finestCellLength));
+        int y2 = (int)(Math.floor((bBox.f1.getY() - minY) / finestCellLength));
+
+        // Parts of the bounding box outside the grid are not assigned to any cell
+        x1 = Math.max(x1, 0);
+        y1 = Math.max(y1, 0);
+        x2 = Math.min(x2, numFinestCells - 1);
+        y2 = Math.min(y2, numFinestCells - 1);
+
+        if(x1 <= x2 && y1 <= y2)
+        {
+            addOverlappingLeaves(0, 0, 0, numFinestCells, x1, y1, x2, y2, gridCellIDs);
+        }
+        return gridCellIDs;
+    }
+
+    private void addOverlappingLeaves(int node, int x0, int y0, int size, int x1, int y1, int x2, int y2, Set<Long> gridCellIDs)
+    {
+        if(x0 > x2 || y0 > y2 || x0 + size <= x1 || y0 + size <= y1)
+        {
+            return;
+        }
+
+        if(children[4 * node] == -1)
+        {
+            gridCellIDs.add(HelperClass.getCellKey(x0, y0));
+            return;
+        }
+
+        int half = size / 2;
+        for(int q = 0; q < 4; q++)
+        {
+            addOverlappingLeaves(children[4 * node + q], x0 + (q & 1) * half, y0 + (q >> 1) * half, half, x1, y1, x2, y2, gridCellIDs);
+        }
+    }
+
+    public HashSet<Long> getGuaranteedNeighboringCells(double queryRadius, long queryGridCellID)
+    {
+        HashSet<Long> guaranteedNeighboringCellsSet = new HashSet<Long>();
+        forEachGuaranteedNeighboringCell(queryRadius, queryGridCellID, guaranteedNeighboringCellsSet::add);
+        return guaranteedNeighboringCellsSet;
+    }
+
+    // Guaranteed Neighboring Cells of Polygon Query
+    public HashSet<Long> getGuaranteedNeighboringCells(double queryRadius, Polygon queryPolygon)
+    {
+        HashSet<Long> guaranteedNeighboringCellsSet = new HashSet<Long>();
+
+        for(Long cellID: queryPolygon.gridIDsSet) {
+            forEachGuaranteedNeighboringCell(queryRadius, cellID, guaranteedNeighboringCellsSet::add);
+        }
+        return guaranteedNeighboringCellsSet;
+    }
+
+    // Query Point
+    public HashSet<Long> getCandidateNeighboringCells(double queryRadius, long queryGridCellID, Set<Long> guaranteedNeighboringCellsSet)
+    {
+        HashSet<Long> candidateNeighboringCellsSet = new HashSet<Long>();
+
+        forEachCandidateNeighboringCell(queryRadius, queryGridCellID, cellKey -> {
+            // Add key if and only if it is not included in the guaranteed neighbors (of other query cells)
+            if(!guaranteedNeighboringCellsSet.contains(cellKey)) {
+                candidateNeighboringCellsSet.add(cellKey);
+            }
+        });
+        return candidateNeighboringCellsSet;
+    }
+
+    // Query Polygon
+    public HashSet<Long> getCandidateNeighboringCells(double queryRadius, Polygon queryPolygon, Set<Long> guaranteedNeighboringCellsSet)
+    {
+        HashSet<Long> candidateNeighboringCellsSet = new HashSet<Long>();
+
+        for(Long cellID: queryPolygon.gridIDsSet) {
+            candidateNeighboringCellsSet.addAll(getCandidateNeighboringCells(queryRadius, cellID, guaranteedNeighboringCellsSet));
+        }
+        return candidateNeighboringCellsSet;
+    }
+
+    // Return all the neighboring cells including candidate cells and guaranteed cells
+    public Set<Long> getNeighboringCells(double queryRadius, Point queryPoint)
+    {
+        // return all the cells in the set
+        if(queryRadius == 0){
+            return this.girdCellsSet;
+        }
+
+        HashSet<Long> neighboringCellsSet = new HashSet<Long>();
+        forEachNeighboringCell(queryRadius, queryPoint.gridID, neighboringCellsSet::add);
+        return neighboringCellsSet;
+    }
+
+    public void forEachGuaranteedNeighboringCell(double queryRadius, long queryGridCellID, LongConsumer action)
+    {
+        for(long cellKey: getNeighboringLeaves(queryRadius, queryGridCellID).guaranteedCells) {
+            action.accept(cellKey);
+        }
+    }
+
+    public void forEachCandidateNeighboringCell(double queryRadius, long queryGridCellID, LongConsumer action)
+    {
+        for(long cellKey: getNeighboringLeaves(queryRadius, queryGridCellID).candidateCells) {
+            action.accept(cellKey);
+        }
+    }
+
+    // queryRadius == 0 visits all the cells in the grid
+    public void forEachNeighboringCell(double queryRadius, long queryGridCellID, LongConsumer action)
+    {
+        if(queryRadius == 0){
+            for(Long cellKey: girdCellsSet) {
+                action.accept(cellKey);
+            }
+            return;
+        }
+
+        NeighboringLeaves neighboringLeaves = getNeighboringLeaves(queryRadius, queryGridCellID);
+        for(long cellKey: neighboringLeaves.guaranteedCells) {
+            action.accept(cellKey);
+        }
+        for(long cellKey: neighboringLeaves.candidateCells) {
+            action.accept(cellKey);
+        }
+    }
+
+    private NeighboringLeaves getNeighboringLeaves(double queryRadius, long queryGridCellID)
+    {
+        Map<Long, NeighboringLeaves> radiusNeighboringLeaves = neighboringLeavesMap.get(queryRadius);
+        if(radiusNeighboringLeaves == null)
+        {
+            radiusNeighboringLeaves = new ConcurrentHashMap<>();
+            neighboringLeavesMap.put(queryRadius, radiusNeighboringLeaves);
+        }
+
+        NeighboringLeaves neighboringLeaves = radiusNeighboringLeaves.get(queryGridCellID);
+        if(neighboringLeaves == null)
+        {
+            neighboringLeaves = computeNeighboringLeaves(queryRadius, queryGridCellID);
+            radiusNeighboringLeaves.put(queryGridCellID, neighboringLeaves);
+        }
+        return neighboringLeaves;
+    }
+
+    /*
+    A leaf is guaranteed if its maximum distance from the query leaf is within queryRadius,
+    and candidate if only its minimum distance from the query leaf is within queryRadius
+    */
+    private NeighboringLeaves computeNeighboringLeaves(double queryRadius, long queryGridCellID)
+    {
+        ArrayList<Long> guaranteedCells = new ArrayList<Long>();
+        ArrayList<Long> candidateCells = new ArrayList<Long>();
+        int querySize = getLeafSize(queryGridCellID);
+
+        // queryRadius == 0 has no guaranteed and candidate cells (as of UniformGrid), and a non-leaf key has no neighbors
+        if(queryRadius > 0 && querySize > 0)
+        {
+            double qMinX = HelperClass.getCellXIndex(queryGridCellID) * finestCellLength;
+            double qMinY = HelperClass.getCellYIndex(queryGridCellID) * finestCellLength;
+            double qMaxX = qMinX + querySize * finestCellLength;
+            double qMaxY = qMinY + querySize * finestCellLength;
+
+            addNeighboringLeaves(0, 0, 0, numFinestCells, qMinX, qMinY, qMaxX, qMaxY, queryRadius, guaranteedCells, candidateCells);
+        }
+        return new NeighboringLeaves(guaranteedCells, candidateCells);
+    }
+
+    private void addNeighboringLeaves(int node, int x0, int y0, int size, double qMinX, double qMinY, double qMaxX, double qMaxY, double queryRadius, List<Long> guaranteedCells, List<Long> candidateCells)
+    {
+        // Node extent relative to the grid origin
+        double nMinX = x0 * finestCellLength;
+        double nMinY = y0 * finestCellLength;
+        double nMaxX = nMinX + size * finestCellLength;
+        double nMaxY = nMinY + size * finestCellLength;
+
+        double minDistX = Math.max(0, Math.max(nMinX - qMaxX, qMinX - nMaxX));
+        double minDistY = Math.max(0, Math.max(nMinY - qMaxY, qMinY - nMaxY));
+        if(Math.sqrt(minDistX * minDistX + minDistY * minDistY) > queryRadius)
+        {
+            return; // pruning the node and all its descendants
+        }
+
+        if(children[4 * node] == -1)
+        {
+            double maxDistX = Math.max(qMaxX - nMinX, nMaxX - qMinX);
+            double maxDistY = Math.max(qMaxY - nMinY, nMaxY - qMinY);
+            long leafKey = HelperClass.getCellKey(x0, y0);
+
+            if(Math.sqrt(maxDistX * maxDistX + maxDistY * maxDistY) <= queryRadius)
+                guaranteedCells.add(leafKey);
+            else
+                candidateCells.add(leafKey);
+            return;
+        }
+
+        int half = size / 2;
+        for(int q = 0; q < 4; q++)
+        {
+            addNeighboringLeaves(children[4 * node + q], x0 + (q & 1) * half, y0 + (q >> 1) * half, half, qMinX, qMinY, qMaxX, qMaxY, queryRadius, guaranteedCells, candidateCells);
+        }
+    }
+
+    private static class NeighboringLeaves implements Serializable {
+        final long[] guaranteedCells;
+        final long[] candidateCells;
+
+        NeighboringLeaves(List<Long> guaranteedCells, List<Long> candidateCells)
+        {
+            this.guaranteedCells = new long[guaranteedCells.size()];
+            for(int i = 0; i < guaranteedCells.size(); i++)
+                this.guaranteedCells[i] = guaranteedCells.get(i);
+
+            this.candidateCells = new long[candidateCells.size()];
+            for(int i = 0; i < candidateCells.size(); i++)
+                this.candidateCells[i] = candidateCells.get(i);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialIndices;
+
+import GeoFlink.spatialObjects.Point;
+import GeoFlink.spatialObjects.Polygon;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+/*
+Cell-based spatial index used by the spatial streams and operators to key objects by cell and to prune cells w.r.t. a query
+Cells are identified by long keys (see HelperClass.getCellKey)
+getGuaranteedNeighboringCells: returns the cells containing the guaranteed r-neighbors
+getCandidateNeighboringCells: returns the cells containing the candidate r-neighbors and require distance computation
+getNeighboringCells: returns all the cells containing guaranteed or candidate r-neighbors
+*/
+public interface SpatialIndex extends Serializable {
+
+    double getMinX();
+    double getMinY();
+    double getMaxX();
+    double getMaxY();
+
+    // Set of all the cells of the index
+    Set<Long> getGirdCellsSet();
+
+    // assigning grid cell ID
+    long assignGridCellID(Coordinate coordinate);
+
+    // assigning grid cell ID - BoundingBox
+    HashSet<Long> assignGridCellID(Tuple2<Coordinate, Coordinate> bBox);
+
+    // Position of the cell along the cell numbering curve of the index, spatially adjacent cells get close numbers
+    long getCellNumber(long cellKey);
+
+    HashSet<Long> getGuaranteedNeighboringCells(double queryRadius, long queryGridCellID);
+    HashSet<Long> getGuaranteedNeighboringCells(double queryRadius, Polygon queryPolygon);
+    HashSet<Long> getCandidateNeighboringCells(double queryRadius, long queryGridCellID, Set<Long> guaranteedNeighboringCellsSet);
+    HashSet<Long> getCandidateNeighboringCells(double queryRadius, Polygon queryPolygon, Set<Long> guaranteedNeighboringCellsSet);
+    // queryRadius == 0 returns all the cells
+    Set<Long> getNeighboringCells(double queryRadius, Point queryPoint);
+
+    // Set-free counterparts of the above functions, used by the query replication which runs once per query object
+    void forEachGuaranteedNeighboringCell(double queryRadius, long queryGridCellID, LongConsumer action);
+    void forEachCandidateNeighboringCell(double queryRadius, long queryGridCellID, LongConsumer action);
+    void forEachNeighboringCell(double queryRadius, long queryGridCellID, LongConsumer action);
+}
@@ -21,29 +21,52 @@ import GeoFlink.spatialObjects.Polygon;
 import GeoFlink.utils.HelperClass;
 import org.apache.flink.api.common.functions.RichFilterFunction;
 import org.apache.flink.api.java.tuple.Tuple2;
+import org.locationtech.jts.geom.Coordinate;
 
-import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
 
-public class UniformGrid implements Serializable {
+public class UniformGrid implements SpatialIndex {
 
     double minX;     //X - East-West longitude
     double maxX;
     double minY;     //Y - North-South latitude
     double maxY;
 
-    final private int CELLINDEXSTRLENGTH = 5;
+    public static final int CELLINDEXSTRLENGTH = 5;
+    // Cell key of the objects which are not assigned to any grid cell
+    public static final long NO_CELL_KEY = Long.MIN_VALUE;
     double cellLength;
     int numGridPartitions;
     double cellLengthMeters;
-    HashSet<String> girdCellsSet = new HashSet<String>();
+    // Virtual set of all the cells in the grid
+    GridCellSet girdCellsSet;
+    // Cell numbering: RowMajor, ZOrder or Hilbert
+    String cellNumbering;
+    int curveOrder; // number of bits per cell index
+    // Neighboring cell offsets are computed once per query radius and reused for every query cell
+    private final Map<Double, NeighboringCellOffsets> neighboringCellOffsetsMap = new ConcurrentHashMap<>();
 
     //TODO: Remove variable cellLengthMeters (Deprecated)
 
     public UniformGrid(int uniformGridRows, double minX, double maxX, double minY, double maxY)
     {
+        this(uniformGridRows, minX, maxX, minY, maxY, "Hilbert");
+    }
+
+    public UniformGrid(int uniformGridRows, double minX, double maxX, double minY, double maxY, String cellNumbering)
+    {
+        if(!cellNumbering.equals("RowMajor") && !cellNumbering.equals("ZOrder") && !cellNumbering.equals("Hilbert"))
+        {
+            throw new IllegalArgumentException("Unknown cellNumbering: " + cellNumbering);
+        }
+        this.cellNumbering = cellNumbering;
+        this.curveOrder = 32 - Integer.numberOfLeadingZeros(Math.max(uniformGridRows - 1, 1));
+
         this.minX = minX;     //X - East-West longitude
         this.maxX = maxX;
         this.minY = minY;     //Y - North-South latitude
@@ -72,13 +95,8 @@ public class UniformGrid implements Serializable {
         System.out.println("cellLength: " + cellLength);
         this.cellLengthMeters = HelperClass.computeHaverSine(minX, minY, minX + cellLength, minY);
 
-        // Populating the girdCellset - contains all the cells in the grid
-        for (int i = 0; i < uniformGridRows; i++) {
-            for (int j = 0; j < uniformGridRows; j++) {
-                String cellKey = HelperClass.padLeadingZeroesToInt(i, CELLINDEXSTRLENGTH) + HelperClass.padLeadingZeroesToInt(j, CELLINDEXSTRLENGTH);
-                girdCellsSet.add(cellKey);
-            }
-        }
+        // girdCellsSet - contains all the cells in the grid, computed on demand
+        this.girdCellsSet = new GridCellSet(0, 0, uniformGridRows - 1, uniformGridRows - 1);
     }
 
     public double getMinX() {return minX;}
@@ -93,53 +111,88 @@ public class UniformGrid implements Serializable {
     }
     public double getCellLength() {return cellLength;}
     public double getCellLengthInMeters() {return cellLengthMeters;}
-    public HashSet<String> getGirdCellsSet() {return girdCellsSet;}
+    public GridCellSet getGirdCellsSet() {return girdCellsSet;}
+    public String getCellNumbering() {return cellNumbering;}
+
+    // Range partitioning on the cell numbers keeps adjacent cells together, except for RowMajor which only keeps the cells of a row together
+    public long getCellNumber(long cellKey)
+    {
+        int xCellIndex = HelperClass.getCellXIndex(cellKey);
+        int yCellIndex = HelperClass.getCellYIndex(cellKey);
+
+        if(cellNumbering.equals("Hilbert"))
+        {
+            return HelperClass.getHilbertIndex(curveOrder, xCellIndex, yCellIndex);
+        }
+        else if(cellNumbering.equals("ZOrder"))
+        {
+            return HelperClass.getZOrderIndex(xCellIndex, yCellIndex);
+        }
+        else
+        {
+            return ((long) yCellIndex) * numGridPartitions + xCellIndex;
+        }
+    }
+
+    // assigning grid cell ID
+    public long assignGridCellID(Coordinate coordinate) {
+
+        // Direct approach to compute the cellIDs (Key)
+        int xCellIndex = (int)(Math.floor((coordinate.getX() - minX)/cellLength));
+        int yCellIndex = (int)(Math.floor((coordinate.getY() - minY)/cellLength));
+
+        return HelperClass.getCellKey(xCellIndex, yCellIndex);
+    }
+
+    // assigning grid cell ID - BoundingBox
+    public HashSet<Long> assignGridCellID(Tuple2<Coordinate, Coordinate> bBox) {
+
+        HashSet<Long> gridCellIDs = new HashSet<Long>();
+
+        // bottom-left coordinate (min values)
+        int xCellIndex1 = (int) (Math.floor((bBox.f0.getX() - minX) / cellLength));
+        int yCellIndex1 = (int) (Math.floor((bBox.f0.getY() - minY) / cellLength));
+
+        // top-right coordinate (max values)
+        int xCellIndex2 = (int) (Math.floor((bBox.f1.getX() - minX) / cellLength));
+        int yCellIndex2 = (int) (Math.floor((bBox.f1.getY() - minY) / cellLength));
+
+        for(int x = xCellIndex1; x <= xCellIndex2; x++)
+            for(int y = yCellIndex1; y <= yCellIndex2; y++)
+            {
+                gridCellIDs.add(HelperClass.getCellKey(x, y));
+            }
+
+        return gridCellIDs;
+    }
 
     /*
     getGuaranteedNeighboringCells: returns the cells containing the guaranteed r-neighbors
     getCandidateNeighboringCells: returns the cells containing the candidate r-neighbors and require distance computation
     The output set of the above two functions are mutually exclusive
     */
-    public HashSet<String> getGuaranteedNeighboringCells(double queryRadius, String queryGridCellID)
+    public HashSet<Long> getGuaranteedNeighboringCells(double queryRadius, long queryGridCellID)
     {
         //queryRadius = CoordinatesConversion.metersToDD(queryRadius,cellLength,cellLengthMeters); //UNCOMMENT FOR HAVERSINE (METERS)
         //System.out.println("queryRadius in Lat/Lon: "+ queryRadius);
-        //String queryCellID = queryPoint.gridID;
-
-        HashSet<String> guaranteedNeighboringCellsSet = new HashSet<String>();
-        int guaranteedNeighboringLayers = getGuaranteedNeighboringLayers(queryRadius);
 
         // if guaranteedNeighboringLayers == -1, there is no GuaranteedNeighboringCells
-        if(guaranteedNeighboringLayers == 0)
-        {
-            guaranteedNeighboringCellsSet.add(queryGridCellID);
-        }
-        else if(guaranteedNeighboringLayers > 0)
-        {
-            ArrayList<Integer> queryCellIndices = HelperClass.getIntCellIndices(queryGridCellID);       //converts cellID String->Integer
+        int[] guaranteedOffsets = getNeighboringCellOffsets(queryRadius).getGuaranteedOffsets();
+        HashSet<Long> guaranteedNeighboringCellsSet = new HashSet<Long>(guaranteedOffsets.length);
+        addOffsetCells(queryGridCellID, guaranteedOffsets, guaranteedNeighboringCellsSet);
 
-            for(int i = queryCellIndices.get(0) - guaranteedNeighboringLayers; i <= queryCellIndices.get(0) + guaranteedNeighboringLayers; i++)
-                for(int j = queryCellIndices.get(1) - guaranteedNeighboringLayers; j <= queryCellIndices.get(1) + guaranteedNeighboringLayers; j++)
-                {
-                    if(validKey(i,j))
-                    {
-                        String neighboringCellKey = HelperClass.padLeadingZeroesToInt(i, CELLINDEXSTRLENGTH) + HelperClass.padLeadingZeroesToInt(j, CELLINDEXSTRLENGTH);
-                        guaranteedNeighboringCellsSet.add(neighboringCellKey);
-                    }
-                }
-        }
         return guaranteedNeighboringCellsSet;
     }
 
     // Guaranteed Neighboring Cells of Polygon Query
-    public HashSet<String> getGuaranteedNeighboringCells(double queryRadius, Polygon queryPolygon)
+    public HashSet<Long> getGuaranteedNeighboringCells(double queryRadius, Polygon queryPolygon)
     {
-        HashSet<String> gridIDsSet = queryPolygon.gridIDsSet;
-        HashSet<String> guaranteedNeighboringCellsSet = new HashSet<String>();
+        HashSet<Long> gridIDsSet = queryPolygon.gridIDsSet;
+        HashSet<Long> guaranteedNeighboringCellsSet = new HashSet<Long>();
 
-        for(String cellID:gridIDsSet) {
+        for(Long cellID:gridIDsSet) {
 
-            HashSet<String> guaranteedNeighbors = getGuaranteedNeighboringCells(queryRadius, cellID);
+            HashSet<Long> guaranteedNeighbors = getGuaranteedNeighboringCells(queryRadius, cellID);
             guaranteedNeighboringCellsSet.addAll(guaranteedNeighbors);
         }
 
@@ -154,12 +207,16 @@ public class UniformGrid implements Serializable {
         {return false;}
     }
 
+    public boolean validKey(long cellKey){
+        return validKey(HelperClass.getCellXIndex(cellKey), HelperClass.getCellYIndex(cellKey));
+    }
+
     // Return all the neighboring cells up to the given grid layer
-    public HashSet<String> getNeighboringCellsByLayer(Point p, int numNeighboringLayers)
+    public HashSet<Long> getNeighboringCellsByLayer(Point p, int numNeighboringLayers)
     {
         //queryRadius = CoordinatesConversion.metersToDD(queryRadius,cellLength,cellLengthMeters); // UNCOMMENT FOR HAVERSINE (METERS)
-        String givenCellID = p.gridID;
-        HashSet<String> neighboringCellsSet = new HashSet<String>();
+        long givenCellID = p.gridID;
+        HashSet<Long> neighboringCellsSet = new HashSet<Long>();
 
         if(numNeighboringLayers <= 0)
         {
@@ -168,15 +225,15 @@ public class UniformGrid implements Serializable {
         }
         else //numNeighboringLayers > 0
         {
-            ArrayList<Integer> cellIndices = HelperClass.getIntCellIndices(givenCellID);
+            int cellXIndex = HelperClass.getCellXIndex(givenCellID);
+            int cellYIndex = HelperClass.getCellYIndex(givenCellID);
 
-            for(int i = cellIndices.get(0) - numNeighboringLayers; i <= cellIndices.get(0) + numNeighboringLayers; i++)
-                for(int j = cellIndices.get(1) - numNeighboringLayers; j <= cellIndices.get(1) + numNeighboringLayers; j++)
+            for(int i = cellXIndex - numNeighboringLayers; i <= cellXIndex + numNeighboringLayers; i++)
+                for(int j = cellYIndex - numNeighboringLayers; j <= cellYIndex + numNeighboringLayers; j++)
                 {
                     if(validKey(i,j))
                     {
-                        String neighboringCellKey = HelperClass.padLeadingZeroesToInt(i, CELLINDEXSTRLENGTH) + HelperClass.padLeadingZeroesToInt(j, CELLINDEXSTRLENGTH);
-                        neighboringCellsSet.add(neighboringCellKey);
+                        neighboringCellsSet.add(HelperClass.getCellKey(i, j));
                     }
                 }
         }
@@ -185,80 +242,58 @@ public class UniformGrid implements Serializable {
     }
 
     // Return all the neighboring cells including candidate cells and guaranteed cells
-    public HashSet<String> getNeighboringCells(double queryRadius, Point queryPoint)
+    public Set<Long> getNeighboringCells(double queryRadius, Point queryPoint)
     {
-        // return all the cells in the set
+        // return the (virtual) set of all the cells
         if(queryRadius == 0){
             return this.girdCellsSet;
         }
 
         //queryRadius = CoordinatesConversion.metersToDD(queryRadius,cellLength,cellLengthMeters); // UNCOMMENT FOR HAVERSINE (METERS)
-        String queryCellID = queryPoint.gridID;
-        HashSet<String> neighboringCellsSet = new HashSet<String>();
-        int numNeighboringLayers = getCandidateNeighboringLayers(queryRadius);
+        NeighboringCellOffsets offsets = getNeighboringCellOffsets(queryRadius);
 
-        if(numNeighboringLayers <= 0)
+        if(offsets.getCandidateLayers() <= 0)
         {
             System.out.println("candidateNeighboringLayers cannot be 0 or less");
             System.exit(1); // Unsuccessful termination
         }
-        else //numNeighboringLayers > 0
-        {
-            ArrayList<Integer> queryCellIndices = HelperClass.getIntCellIndices(queryCellID);
 
-            for(int i = queryCellIndices.get(0) - numNeighboringLayers; i <= queryCellIndices.get(0) + numNeighboringLayers; i++)
-                for(int j = queryCellIndices.get(1) - numNeighboringLayers; j <= queryCellIndices.get(1) + numNeighboringLayers; j++)
-                {
-                    if(validKey(i,j))
-                    {
-                        String neighboringCellKey = HelperClass.padLeadingZeroesToInt(i, CELLINDEXSTRLENGTH) + HelperClass.padLeadingZeroesToInt(j, CELLINDEXSTRLENGTH);
-                        neighboringCellsSet.add(neighboringCellKey);
-                    }
-                }
+        int[] neighboringOffsets = offsets.getNeighboringOffsets();
+        HashSet<Long> neighboringCellsSet = new HashSet<Long>(neighboringOffsets.length);
+        addOffsetCells(queryPoint.gridID, neighboringOffsets, neighboringCellsSet);
 
-        }
         return neighboringCellsSet;
     }
 
     // Query Point
-    public HashSet<String> getCandidateNeighboringCells(double queryRadius, String queryGridCellID, Set<String> guaranteedNeighboringCellsSet)
+    public HashSet<Long> getCandidateNeighboringCells(double queryRadius, long queryGridCellID, Set<Long> guaranteedNeighboringCellsSet)
     {
         // queryRadius = CoordinatesConversion.metersToDD(queryRadius,cellLength,cellLengthMeters);  //UNCOMMENT FOR HAVERSINE (METERS)
-        //String queryCellID = queryPoint.gridID;
-        HashSet<String> candidateNeighboringCellsSet = new HashSet<String>();
-        int candidateNeighboringLayers = getCandidateNeighboringLayers(queryRadius);
+        // Candidate offsets exclude the guaranteed layers of the query cell itself
+        int[] candidateOffsets = getNeighboringCellOffsets(queryRadius).getCandidateOffsets();
+        HashSet<Long> candidateNeighboringCellsSet = new HashSet<Long>(candidateOffsets.length);
 
-        if(candidateNeighboringLayers > 0)
+        for(int i = 0; i < candidateOffsets.length; i += 2)
         {
-            ArrayList<Integer> queryCellIndices = HelperClass.getIntCellIndices(queryGridCellID);
-            //int count = 0;
-
-            for(int i = queryCellIndices.get(0) - candidateNeighboringLayers; i <= queryCellIndices.get(0) + candidateNeighboringLayers; i++)
-                for(int j = queryCellIndices.get(1) - candidateNeighboringLayers; j <= queryCellIndices.get(1) + candidateNeighboringLayers; j++)
-                {
-                    if(validKey(i,j)) {
-                        String neighboringCellKey = HelperClass.padLeadingZeroesToInt(i, CELLINDEXSTRLENGTH) + HelperClass.padLeadingZeroesToInt(j, CELLINDEXSTRLENGTH);
-                        if (!guaranteedNeighboringCellsSet.contains(neighboringCellKey)) // Add key if and only if it exist in the gridCell and is not included in the guaranteed neighbors
-                        {
-                            //count++;
-                            candidateNeighboringCellsSet.add(neighboringCellKey);
-                        }
-                    }
-                }
-            //System.out.println("Candidate neighbouring cells: " + count);
+            long neighboringCellKey = getOffsetCellKey(queryGridCellID, candidateOffsets[i], candidateOffsets[i + 1]);
+            // Add key if and only if it exist in the gridCell and is not included in the guaranteed neighbors (of other query cells)
+            if(neighboringCellKey != NO_CELL_KEY && !guaranteedNeighboringCellsSet.contains(neighboringCellKey))
+            {
+                candidateNeighboringCellsSet.add(neighboringCellKey);
+            }
         }
         return candidateNeighboringCellsSet;
     }
 
 
     // Query Polygon
-    public HashSet<String> getCandidateNeighboringCells(double queryRadius, Polygon queryPolygon, Set<String> guaranteedNeighboringCellsSet)
+    public HashSet<Long> getCandidateNeighboringCells(double queryRadius, Polygon queryPolygon, Set<Long> guaranteedNeighboringCellsSet)
     {
-        HashSet<String> candidateNeighboringCellsSet = new HashSet<String>();
-        HashSet<String> gridIDsSet = queryPolygon.gridIDsSet;
+        HashSet<Long> candidateNeighboringCellsSet = new HashSet<Long>();
+        HashSet<Long> gridIDsSet = queryPolygon.gridIDsSet;
 
-        for(String cellID:gridIDsSet) {
-            HashSet<String> candidateNeighbors = getCandidateNeighboringCells(queryRadius, cellID, guaranteedNeighboringCellsSet);
+        for(Long cellID:gridIDsSet) {
+            HashSet<Long> candidateNeighbors = getCandidateNeighboringCells(queryRadius, cellID, guaranteedNeighboringCellsSet);
             candidateNeighboringCellsSet.addAll(candidateNeighbors);
         }
 
@@ -266,6 +301,74 @@ public class UniformGrid implements Serializable {
         return candidateNeighboringCellsSet;
     }
 
+    public void forEachGuaranteedNeighboringCell(double queryRadius, long queryGridCellID, LongConsumer action)
+    {
+        forEachOffsetCell(queryGridCellID, getNeighboringCellOffsets(queryRadius).getGuaranteedOffsets(), action);
+    }
+
+    public void forEachCandidateNeighboringCell(double queryRadius, long queryGridCellID, LongConsumer action)
+    {
+        forEachOffsetCell(queryGridCellID, getNeighboringCellOffsets(queryRadius).getCandidateOffsets(), action);
+    }
+
+    // queryRadius == 0 visits all the cells in the grid
+    public void forEachNeighboringCell(double queryRadius, long queryGridCellID, LongConsumer action)
+    {
+        if(queryRadius == 0){
+            girdCellsSet.forEachCell(action);
+            return;
+        }
+        forEachOffsetCell(queryGridCellID, getNeighboringCellOffsets(queryRadius).getNeighboringOffsets(), action);
+    }
+
+    // Returns the (cached) guaranteed, candidate and neighboring cell offsets of the given query radius
+    public NeighboringCellOffsets getNeighboringCellOffsets(double queryRadius)
+    {
+        NeighboringCellOffsets offsets = neighboringCellOffsetsMap.get(queryRadius);
+        if(offsets == null)
+        {
+            // queryRadius == 0 (the whole grid) is served by girdCellsSet, not by the offsets
+            int candidateLayers = getCandidateNeighboringLayers(queryRadius);
+            offsets = new NeighboringCellOffsets(getGuaranteedNeighboringLayers(queryRadius), candidateLayers, candidateLayers);
+            neighboringCellOffsetsMap.put(queryRadius, offsets);
+        }
+        return offsets;
+    }
+
+    // Returns the key of the cell at the given offset from cellKey, or NO_CELL_KEY if it lies outside the grid
+    public long getOffsetCellKey(long cellKey, int xOffset, int yOffset)
+    {
+        int x = HelperClass.getCellXIndex(cellKey) + xOffset;
+        int y = HelperClass.getCellYIndex(cellKey) + yOffset;
+
+        if(validKey(x, y))
+        {
+            return HelperClass.getCellKey(x, y);
+        }
+        return NO_CELL_KEY;
+    }
+
+    private void addOffsetCells(long cellKey, int[] offsets, Set<Long> cellsSet)
+    {
+        forEachOffsetCell(cellKey, offsets, cellsSet::add);
+    }
+
+    private void forEachOffsetCell(long cellKey, int[] offsets, LongConsumer action)
+    {
+        int cellXIndex = HelperClass.getCellXIndex(cellKey);
+        int cellYIndex = HelperClass.getCellYIndex(cellKey);
+
+        for(int i = 0; i < offsets.length; i += 2)
+        {
+            int x = cellXIndex + offsets[i];
+            int y = cellYIndex + offsets[i + 1];
+            if(validKey(x, y))
+            {
+                action.accept(HelperClass.getCellKey(x, y));
+            }
+        }
+    }
+
     private int getGuaranteedNeighboringLayers(double queryRadius)
     {
 
@@ -285,49 +388,33 @@ public class UniformGrid implements Serializable {
         return numberOfLayers;
     }
 
-    public HashSet<String> getNeighboringLayerCells(Point queryPoint, int layerNumber)
+    public HashSet<Long> getNeighboringLayerCells(Point queryPoint, int layerNumber)
     {
-        String queryCellID = queryPoint.gridID;
-        HashSet<String> neighboringLayerCellsSet = new HashSet<String>();
-        HashSet<String> neighboringLayerCellsToExcludeSet = new HashSet<String>();
-        ArrayList<Integer> queryCellIndices = HelperClass.getIntCellIndices(queryCellID);       //converts cellID String->Integer
-
-        //Get the cells to exclude, iff layerNumber is greater than 0
-        if(layerNumber > 0)
-        {
-            for(int i = queryCellIndices.get(0) - layerNumber + 1; i <= queryCellIndices.get(0) + layerNumber - 1; i++)
-                for(int j = queryCellIndices.get(1) - layerNumber + 1; j <= queryCellIndices.get(1) + layerNumber -1; j++)
-                {
-                    if(validKey(i,j)) {
-                        String neighboringCellKey = HelperClass.padLeadingZeroesToInt(i, CELLINDEXSTRLENGTH) + HelperClass.padLeadingZeroesToInt(j, CELLINDEXSTRLENGTH);
-                        neighboringLayerCellsToExcludeSet.add(neighboringCellKey);
-                    }
-                }
-        }
+        long queryCellID = queryPoint.gridID;
+        HashSet<Long> neighboringLayerCellsSet = new HashSet<Long>();
+        int queryCellXIndex = HelperClass.getCellXIndex(queryCellID);
+        int queryCellYIndex = HelperClass.getCellYIndex(queryCellID);
 
-        for(int i = queryCellIndices.get(0) - layerNumber; i <= queryCellIndices.get(0) + layerNumber; i++)
-            for(int j = queryCellIndices.get(1) - layerNumber; j <= queryCellIndices.get(1) + layerNumber; j++)
+        for(int i = queryCellXIndex - layerNumber; i <= queryCellXIndex + layerNumber; i++)
+            for(int j = queryCellYIndex - layerNumber; j <= queryCellYIndex + layerNumber; j++)
             {
-                if(validKey(i,j))
+                // Add key if and only if it exist in the gridCell and lies exactly on the given layer
+                if(validKey(i,j) && Math.max(Math.abs(i - queryCellXIndex), Math.abs(j - queryCellYIndex)) == layerNumber)
                 {
-                    String neighboringCellKey = HelperClass.padLeadingZeroesToInt(i, CELLINDEXSTRLENGTH) + HelperClass.padLeadingZeroesToInt(j, CELLINDEXSTRLENGTH);
-                    if (!neighboringLayerCellsToExcludeSet.contains(neighboringCellKey)) // Add key if and only if it exist in the gridCell
-                    {
-                        neighboringLayerCellsSet.add(neighboringCellKey);
-                    }
+                    neighboringLayerCellsSet.add(HelperClass.getCellKey(i, j));
                 }
             }
         return neighboringLayerCellsSet;
     }
 
     // Returns all the neighboring layers of point p, where each layer consists of a number of cells
-    public ArrayList<HashSet<String>> getAllNeighboringLayers(Point p)
+    public ArrayList<HashSet<Long>> getAllNeighboringLayers(Point p)
     {
-        ArrayList<HashSet<String>> listOfSets = new ArrayList<HashSet<String>>();
+        ArrayList<HashSet<Long>> listOfSets = new ArrayList<HashSet<Long>>();
 
         for(int i = 0; i < numGridPartitions; i++)
         {
-            HashSet<String> neighboringLayerCellSet = getNeighboringLayerCells(p, i);
+            HashSet<Long> neighboringLayerCellSet = getNeighboringLayerCells(p, i);
 
             if(neighboringLayerCellSet.size() > 0)
             {
@@ -342,18 +429,18 @@ public class UniformGrid implements Serializable {
     }
 
 
-    public static class getCellsFilteredByLayer extends RichFilterFunction<Tuple2<String, Integer>>
+    public static class getCellsFilteredByLayer extends RichFilterFunction<Tuple2<Long, Integer>>
     {
-        private final HashSet<String> CellIDs; // CellIDs are input parameters
+        private final HashSet<Long> CellIDs; // CellIDs are input parameters
 
         //ctor
-        public getCellsFilteredByLayer(HashSet<String> CellIDs)
+        public getCellsFilteredByLayer(HashSet<Long> CellIDs)
         {
             this.CellIDs = CellIDs;
         }
 
         @Override
-        public boolean filter(Tuple2<String, Integer> cellIDCount) throws Exception
+        public boolean filter(Tuple2<Long, Integer> cellIDCount) throws Exception
         {
             return CellIDs.contains(cellIDCount.f0);
         }
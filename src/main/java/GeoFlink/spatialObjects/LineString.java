@@ -1,7 +1,9 @@
 package GeoFlink.spatialObjects;
 
+import GeoFlink.spatialIndices.SpatialIndex;
 import GeoFlink.spatialIndices.UniformGrid;
 import GeoFlink.utils.HelperClass;
+import org.apache.flink.api.common.typeinfo.TypeInfo;
 import org.apache.flink.api.java.tuple.Tuple2;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
@@ -10,17 +12,19 @@ import java.io.Serializable;
 import java.util.HashSet;
 import java.util.List;
 
+// Serialized by LineStringSerializer instead of Kryo
+@TypeInfo(SpatialObjectTypeInfo.LineStringTypeInfoFactory.class)
 public class LineString extends SpatialObject implements Serializable {
 
-    public HashSet<String> gridIDsSet;
-    public String gridID;
+    public HashSet<Long> gridIDsSet;
+    public long gridID;
     public Tuple2<Coordinate, Coordinate> boundingBox;
     public org.locationtech.jts.geom.LineString lineString;
 
     public LineString() {}; // required for POJO
 
 
-    public LineString(String objID, List<Coordinate> coordinates, HashSet<String> gridIDsSet, String gridID, Tuple2<Coordinate, Coordinate> boundingBox) {
+    public LineString(String objID, List<Coordinate> coordinates, HashSet<Long> gridIDsSet, long gridID, Tuple2<Coordinate, Coordinate> boundingBox) {
         GeometryFactory geofact = new GeometryFactory();
         //create geotools point object
         lineString = geofact.createLineString(coordinates.toArray(new Coordinate[0]));
@@ -30,24 +34,24 @@ public class LineString extends SpatialObject implements Serializable {
         this.boundingBox = boundingBox;
     }
 
-    public LineString(String objID, org.locationtech.jts.geom.LineString lineString, UniformGrid uGrid) {
+    public LineString(String objID, org.locationtech.jts.geom.LineString lineString, SpatialIndex uGrid) {
         if (lineString.getNumPoints() > 1) {
             GeometryFactory geofact = new GeometryFactory();
             //lineString = geofact.createLineString(coordinates.toArray(new Coordinate[0]));
             this.boundingBox = HelperClass.getBoundingBox(lineString);
             this.gridIDsSet = HelperClass.assignGridCellID(this.boundingBox, uGrid);
-            this.gridID = "";
+            this.gridID = UniformGrid.NO_CELL_KEY;
             this.objID = objID;
         }
     }
 
-    public LineString(String objID, List<Coordinate> coordinates, UniformGrid uGrid) {
+    public LineString(String objID, List<Coordinate> coordinates, SpatialIndex uGrid) {
         if (coordinates.size() > 1) { // LineString can only be made with 2 or more points
             GeometryFactory geofact = new GeometryFactory();
             lineString = geofact.createLineString(coordinates.toArray(new Coordinate[0]));
             this.boundingBox = HelperClass.getBoundingBox(lineString);
             this.gridIDsSet = HelperClass.assignGridCellID(this.boundingBox, uGrid);
-            this.gridID = "";
+            this.gridID = UniformGrid.NO_CELL_KEY;
             this.objID = objID;
         }
     }
@@ -58,7 +62,29 @@ public class LineString extends SpatialObject implements Serializable {
             lineString = geofact.createLineString(coordinates.toArray(new Coordinate[0]));
             this.boundingBox = HelperClass.getBoundingBox(lineString);
             this.gridIDsSet = null;
-            this.gridID = "";
+            this.gridID = UniformGrid.NO_CELL_KEY;
+            this.objID = objID;
+        }
+    }
+
+    public LineString(String objID, TrajectoryBuffer trajectory, SpatialIndex uGrid) {
+        if (trajectory.size() > 1) { // LineString can only be made with 2 or more points
+            GeometryFactory geofact = new GeometryFactory();
+            lineString = geofact.createLineString(trajectory.getCoordinates());
+            this.boundingBox = HelperClass.getBoundingBox(lineString);
+            this.gridIDsSet = HelperClass.assignGridCellID(this.boundingBox, uGrid);
+            this.gridID = UniformGrid.NO_CELL_KEY;
+            this.objID = objID;
+        }
+    }
+
+    public LineString(String objID, TrajectoryBuffer trajectory) {
+        if (trajectory.size() > 1) { // LineString can only be made with 2 or more points
+            GeometryFactory geofact = new GeometryFactory();
+            lineString = geofact.createLineString(trajectory.getCoordinates());
+            this.boundingBox = HelperClass.getBoundingBox(lineString);
+            this.gridIDsSet = null;
+            this.gridID = UniformGrid.NO_CELL_KEY;
             this.objID = objID;
         }
     }
@@ -0,0 +1,89 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialObjects;
+
+import org.apache.flink.api.common.typeutils.SimpleTypeSerializerSnapshot;
+import org.apache.flink.api.common.typeutils.TypeSerializerSnapshot;
+import org.apache.flink.core.memory.DataInputView;
+import org.apache.flink.core.memory.DataOutputView;
+
+import java.io.IOException;
+
+/*
+Serializer of LineString: objID, timeStampMillisec, gridID, gridIDsSet, boundingBox and the coordinates of the line string
+*/
+public final class LineStringSerializer extends SpatialObjectSerializer<LineString> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final LineStringSerializer INSTANCE = new LineStringSerializer();
+
+    @Override
+    public LineString createInstance() {
+        return new LineString();
+    }
+
+    @Override
+    public LineString copy(LineString from) {
+        LineString ls = new LineString();
+        ls.objID = from.objID;
+        ls.timeStampMillisec = from.timeStampMillisec;
+        ls.gridID = from.gridID;
+        ls.gridIDsSet = copyCellSet(from.gridIDsSet);
+        ls.boundingBox = copyBoundingBox(from.boundingBox);
+        ls.lineString = (from.lineString == null) ? null : (org.locationtech.jts.geom.LineString) from.lineString.copy();
+        return ls;
+    }
+
+    @Override
+    public void serialize(LineString ls, DataOutputView target) throws IOException {
+        writeString(ls.objID, target);
+        target.writeLong(ls.timeStampMillisec);
+        target.writeLong(ls.gridID);
+        writeCellSet(ls.gridIDsSet, target);
+        writeBoundingBox(ls.boundingBox, target);
+        target.writeBoolean(ls.lineString != null);
+        if (ls.lineString != null) {
+            writeCoordinates(ls.lineString.getCoordinateSequence(), target);
+        }
+    }
+
+    @Override
+    public LineString deserialize(DataInputView source) throws IOException {
+        LineString ls = new LineString();
+        ls.objID = readString(source);
+        ls.timeStampMillisec = source.readLong();
+        ls.gridID = source.readLong();
+        ls.gridIDsSet = readCellSet(source);
+        ls.boundingBox = readBoundingBox(source);
+        if (source.readBoolean()) {
+            ls.lineString = geometryFactory.createLineString(readCoordinates(source));
+        }
+        return ls;
+    }
+
+    @Override
+    public TypeSerializerSnapshot<LineString> snapshotConfiguration() {
+        return new LineStringSerializerSnapshot();
+    }
+
+    public static final class LineStringSerializerSnapshot extends SimpleTypeSerializerSnapshot<LineString> {
+        public LineStringSerializerSnapshot() {
+            super(() -> INSTANCE);
+        }
+    }
+}
@@ -16,12 +16,14 @@ limitations under the License.
 
 package GeoFlink.spatialObjects;
 
+import GeoFlink.spatialIndices.SpatialIndex;
 import GeoFlink.spatialIndices.UniformGrid;
 import GeoFlink.utils.HelperClass;
 import org.apache.flink.api.common.functions.MapFunction;
 import org.apache.flink.api.common.functions.ReduceFunction;
 import org.apache.flink.api.common.functions.RichMapFunction;
 import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.api.common.typeinfo.TypeInfo;
 import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.api.java.tuple.Tuple4;
 import org.apache.flink.configuration.Configuration;
@@ -34,80 +36,103 @@ import org.locationtech.jts.geom.GeometryFactory;
 
 import java.io.Serializable;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.List;
 
+// Serialized by PointSerializer instead of Kryo
+@TypeInfo(SpatialObjectTypeInfo.PointTypeInfoFactory.class)
 public class Point extends SpatialObject implements Serializable {
-    public String gridID;
-    public org.locationtech.jts.geom.Point point;
-    public Long ingestionTime;
+    public long gridID;
+    // Coordinates are kept as primitives, the JTS point is only created by getPoint() when a predicate needs a geometry
+    public double x;
+    public double y;
+    private transient org.locationtech.jts.geom.Point point;
+    public long ingestionTime;
+    // Dense integer id of objID, assigned by ObjectIDDictionary (-1 if the point is not encoded)
+    public int objKey = -1;
     //public String eventID;
     //public String deviceID;
     //public String userID;
     //Date date = new Date();
 
-    public Point() {}; // required for POJO
+    private static final GeometryFactory geometryFactory = new GeometryFactory();
 
-    public Point(double x, double y, String gridID) {
-        Date date = new Date();
-        GeometryFactory geofact = new GeometryFactory();
-        //create geotools point object
-        point = geofact.createPoint(new Coordinate(x, y));
+    // required for POJO; the cell is unset until assigned (0 is the key of the cell (0, 0))
+    public Point() {
+        this.gridID = UniformGrid.NO_CELL_KEY;
+    };
+
+    public Point(double x, double y, long gridID) {
+        this.x = x;
+        this.y = y;
         this.gridID = gridID;
-        this.ingestionTime = date.getTime();
+        this.ingestionTime = System.currentTimeMillis();
     }
 
-    public Point(double x, double y, UniformGrid uGrid) {
-        Date date = new Date();
-        GeometryFactory geofact = new GeometryFactory();
-        point = geofact.createPoint(new Coordinate(x, y));
-        //assignGridID(uGrid);
-        this.gridID = HelperClass.assignGridCellID(point.getCoordinate(), uGrid);
-        this.ingestionTime = date.getTime();
+    public Point(double x, double y, SpatialIndex uGrid) {
+        this.x = x;
+        this.y = y;
+        this.gridID = HelperClass.assignGridCellID(new Coordinate(x, y), uGrid);
+        this.ingestionTime = System.currentTimeMillis();
     }
 
-    public Point(double x, double y, long timeStampMillisec, UniformGrid uGrid) {
-        Date date = new Date();
-        GeometryFactory geofact = new GeometryFactory();
-        //create geotools point object
-        point = geofact.createPoint(new Coordinate(x, y));
+    public Point(double x, double y, long timeStampMillisec, SpatialIndex uGrid) {
+        this.x = x;
+        this.y = y;
         this.timeStampMillisec = timeStampMillisec;
-        //assignGridID(uGrid);
-        this.gridID = HelperClass.assignGridCellID(point.getCoordinate(), uGrid);
-        this.ingestionTime = date.getTime();
+        this.gridID = HelperClass.assignGridCellID(new Coordinate(x, y), uGrid);
+        this.ingestionTime = System.currentTimeMillis();
     }
 
     public Point(String objID, double x, double y, long timeStampMillisec) {
-        Date date = new Date();
-        GeometryFactory geofact = new GeometryFactory();
-        //create geotools point object
-        point = geofact.createPoint(new Coordinate(x, y));
+        this.x = x;
+        this.y = y;
         this.objID = objID;
         this.timeStampMillisec = timeStampMillisec;
-        this.gridID = "";
-        this.ingestionTime = date.getTime();
+        this.gridID = UniformGrid.NO_CELL_KEY;
+        this.ingestionTime = System.currentTimeMillis();
     }
 
-    public Point(String objID, double x, double y, long timeStampMillisec, UniformGrid uGrid) {
-        Date date = new Date();
-        GeometryFactory geofact = new GeometryFactory();
-        //create geotools point object
-        point = geofact.createPoint(new Coordinate(x, y));
+    public Point(String objID, double x, double y, long timeStampMillisec, SpatialIndex uGrid) {
+        this.x = x;
+        this.y = y;
         this.objID = objID;
         this.timeStampMillisec = timeStampMillisec;
-        this.gridID = HelperClass.assignGridCellID(point.getCoordinate(), uGrid);
-        this.ingestionTime = date.getTime();
+        this.gridID = HelperClass.assignGridCellID(new Coordinate(x, y), uGrid);
+        this.ingestionTime = System.currentTimeMillis();
     }
 
-    public Point(String objID, double x, double y, long timeStampMillisec, String gridID) {
-        Date date = new Date();
-        GeometryFactory geofact = new GeometryFactory();
-        //create geotools point object
-        point = geofact.createPoint(new Coordinate(x, y));
+    public Point(String objID, double x, double y, long timeStampMillisec, long gridID) {
+        this.x = x;
+        this.y = y;
         this.objID = objID;
         this.timeStampMillisec = timeStampMillisec;
         this.gridID = gridID;
-        this.ingestionTime = date.getTime();
+        this.ingestionTime = System.currentTimeMillis();
+    }
+
+    // Overwrites the point, used by the parsers which reuse a mutable Point per subtask (object reuse mode)
+    public Point set(String objID, double x, double y, long timeStampMillisec, long gridID) {
+        this.objID = objID;
+        this.x = x;
+        this.y = y;
+        this.timeStampMillisec = timeStampMillisec;
+        this.gridID = gridID;
+        this.ingestionTime = System.currentTimeMillis();
+        this.objKey = -1;
+        this.point = null;
+        return this;
+    }
+
+    // JTS point of the coordinates, created on first use
+    public org.locationtech.jts.geom.Point getPoint() {
+        if (point == null) {
+            point = geometryFactory.createPoint(new Coordinate(x, y));
+        }
+        return point;
+    }
+
+    public Coordinate getCoordinate() {
+        return new Coordinate(x, y);
     }
 
     // Point for DEIM App
@@ -129,7 +154,7 @@ public class Point extends SpatialObject implements Serializable {
     // To print the point coordinates
     @Override
     public String toString() {
-        return "[ObjID: " + this.objID + ", " + point.getX() + ", " + point.getY() + ", " + this.gridID + ", " + this.timeStampMillisec  + ", " + this.ingestionTime + "]";
+        return "[ObjID: " + this.objID + ", " + this.x + ", " + this.y + ", " + HelperClass.getCellIDStr(this.gridID) + ", " + this.timeStampMillisec  + ", " + this.ingestionTime + "]";
         // For DEIM App
         // return "[eventID " + this.eventID + ", deviceID: " + this.deviceID + ", userID " + this.userID + ", " + this.timeStampMillisec + "]";
     }
@@ -139,30 +164,30 @@ public class Point extends SpatialObject implements Serializable {
     public static class getX implements MapFunction<Point, Double> {
         @Override
         public Double map(Point p) throws Exception {
-            return p.point.getX();
+            return p.x;
         }
     }
 
     public static class getY implements MapFunction<Point, Double> {
         @Override
         public Double map(Point p) throws Exception {
-            return p.point.getY();
+            return p.y;
         }
     }
 
 
-    public static class getGridID implements MapFunction<Point, String> {
+    public static class getGridID implements MapFunction<Point, Long> {
         @Override
-        public String map(Point p) throws Exception {
+        public Long map(Point p) throws Exception {
             return p.gridID;
 
         }
     }
 
     // rolling grid-wise sum of spatial objects
-    public static class addSummer implements MapFunction<Point, Tuple2<String, Integer>> {
+    public static class addSummer implements MapFunction<Point, Tuple2<Long, Integer>> {
         @Override
-        public Tuple2<String, Integer> map(Point p) throws Exception {
+        public Tuple2<Long, Integer> map(Point p) throws Exception {
             return Tuple2.of(p.gridID, 1);
         }
     }
@@ -171,7 +196,7 @@ public class Point extends SpatialObject implements Serializable {
     public static class maxY implements ReduceFunction<Point> {
         @Override
         public Point reduce(Point p, Point p1) {
-            if (p.point.getY() > p1.point.getY()) {
+            if (p.y > p1.y) {
                 return p;
             } else
                 return p1;
@@ -181,7 +206,7 @@ public class Point extends SpatialObject implements Serializable {
     public static class minY implements ReduceFunction<Point> {
         @Override
         public Point reduce(Point p, Point p1) {
-            if (p.point.getY() < p1.point.getY()) {
+            if (p.y < p1.y) {
                 return p;
             } else
                 return p1;
@@ -191,7 +216,7 @@ public class Point extends SpatialObject implements Serializable {
     public static class maxX implements ReduceFunction<Point> {
         @Override
         public Point reduce(Point p, Point p1) {
-            if (p.point.getX() > p1.point.getX()) {
+            if (p.x > p1.x) {
                 return p;
             } else
                 return p1;
@@ -201,16 +226,16 @@ public class Point extends SpatialObject implements Serializable {
     public static class minX implements ReduceFunction<Point> {
         @Override
         public Point reduce(Point p, Point p1) {
-            if (p.point.getX() < p1.point.getX()) {
+            if (p.x < p1.x) {
                 return p;
             } else
                 return p1;
         }
     }
 
-    public static class gridIDKeySelector implements KeySelector<Point,String> {
+    public static class gridIDKeySelector implements KeySelector<Point,Long> {
         @Override
-        public String getKey(Point p) throws Exception {
+        public Long getKey(Point p) throws Exception {
             return p.gridID;
         }
     }
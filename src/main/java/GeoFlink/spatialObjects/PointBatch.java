@@ -0,0 +1,129 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialObjects;
+
+import org.apache.flink.api.common.typeinfo.TypeInfo;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/*
+Points of a single grid cell transported as one record (see SpatialStream.PointBatchStream), in parallel arrays of the Point fields,
+so that the operators pay the per-record costs (serialization, key extraction, collector calls) once per batch and evaluate
+their predicates in loops over the coordinates. Points are only materialized by getPoint(i), e.g., when unbatched at the sink
+*/
+// Serialized by PointBatchSerializer instead of Kryo
+@TypeInfo(SpatialObjectTypeInfo.PointBatchTypeInfoFactory.class)
+public class PointBatch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    public long gridID;
+    // Range of the point timestamps, used to assign the batch to event-time windows
+    public long minTimeStampMillisec = Long.MAX_VALUE;
+    public long maxTimeStampMillisec = Long.MIN_VALUE;
+
+    String[] objID;
+    double[] x;
+    double[] y;
+    long[] timeStampMillisec;
+    long[] ingestionTime;
+    int size;
+
+    public PointBatch() {
+        this(0L, DEFAULT_CAPACITY);
+    }
+
+    public PointBatch(long gridID, int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.gridID = gridID;
+        this.objID = new String[capacity];
+        this.x = new double[capacity];
+        this.y = new double[capacity];
+        this.timeStampMillisec = new long[capacity];
+        this.ingestionTime = new long[capacity];
+        this.size = 0;
+    }
+
+    public void add(String objID, double x, double y, long timeStampMillisec, long ingestionTime) {
+        if (size == this.x.length) {
+            int capacity = size + (size >> 1) + 1;
+            this.objID = Arrays.copyOf(this.objID, capacity);
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.timeStampMillisec = Arrays.copyOf(this.timeStampMillisec, capacity);
+            this.ingestionTime = Arrays.copyOf(this.ingestionTime, capacity);
+        }
+        this.objID[size] = objID;
+        this.x[size] = x;
+        this.y[size] = y;
+        this.timeStampMillisec[size] = timeStampMillisec;
+        this.ingestionTime[size] = ingestionTime;
+        minTimeStampMillisec = Math.min(minTimeStampMillisec, timeStampMillisec);
+        maxTimeStampMillisec = Math.max(maxTimeStampMillisec, timeStampMillisec);
+        size++;
+    }
+
+    public void add(Point p) {
+        add(p.objID, p.x, p.y, p.timeStampMillisec, p.ingestionTime);
+    }
+
+    // Adds the i-th point of another batch, e.g., a point of a batch satisfying a predicate
+    public void add(PointBatch other, int i) {
+        add(other.objID[i], other.x[i], other.y[i], other.timeStampMillisec[i], other.ingestionTime[i]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public String getObjID(int i) {
+        return objID[i];
+    }
+
+    public double getX(int i) {
+        return x[i];
+    }
+
+    public double getY(int i) {
+        return y[i];
+    }
+
+    public long getTimeStampMillisec(int i) {
+        return timeStampMillisec[i];
+    }
+
+    public long getIngestionTime(int i) {
+        return ingestionTime[i];
+    }
+
+    public Point getPoint(int i) {
+        Point p = new Point(objID[i], x[i], y[i], timeStampMillisec[i], gridID);
+        p.ingestionTime = ingestionTime[i];
+        return p;
+    }
+
+    @Override
+    public String toString() {
+        return "PointBatch{gridID=" + gridID + ", size=" + size + "}";
+    }
+}
@@ -0,0 +1,110 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialObjects;
+
+import org.apache.flink.api.common.typeutils.SimpleTypeSerializerSnapshot;
+import org.apache.flink.api.common.typeutils.TypeSerializerSnapshot;
+import org.apache.flink.core.memory.DataInputView;
+import org.apache.flink.core.memory.DataOutputView;
+
+import java.io.IOException;
+
+/*
+Serializer of PointBatch: gridID, the timestamp range and the number of points followed by the columns of the points
+*/
+public final class PointBatchSerializer extends SpatialObjectSerializer<PointBatch> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final PointBatchSerializer INSTANCE = new PointBatchSerializer();
+
+    @Override
+    public PointBatch createInstance() {
+        return new PointBatch();
+    }
+
+    @Override
+    public PointBatch copy(PointBatch from) {
+        PointBatch batch = new PointBatch(from.gridID, from.size);
+        for (int i = 0; i < from.size; i++) {
+            batch.add(from, i);
+        }
+        return batch;
+    }
+
+    @Override
+    public void serialize(PointBatch batch, DataOutputView target) throws IOException {
+        target.writeLong(batch.gridID);
+        target.writeLong(batch.minTimeStampMillisec);
+        target.writeLong(batch.maxTimeStampMillisec);
+        target.writeInt(batch.size);
+        for (int i = 0; i < batch.size; i++) {
+            writeString(batch.objID[i], target);
+        }
+        for (int i = 0; i < batch.size; i++) {
+            target.writeDouble(batch.x[i]);
+        }
+        for (int i = 0; i < batch.size; i++) {
+            target.writeDouble(batch.y[i]);
+        }
+        for (int i = 0; i < batch.size; i++) {
+            target.writeLong(batch.timeStampMillisec[i]);
+        }
+        for (int i = 0; i < batch.size; i++) {
+            target.writeLong(batch.ingestionTime[i]);
+        }
+    }
+
+    @Override
+    public PointBatch deserialize(DataInputView source) throws IOException {
+        long gridID = source.readLong();
+        long minTimeStampMillisec = source.readLong();
+        long maxTimeStampMillisec = source.readLong();
+        int size = source.readInt();
+        PointBatch batch = new PointBatch(gridID, size);
+        for (int i = 0; i < size; i++) {
+            batch.objID[i] = readString(source);
+        }
+        for (int i = 0; i < size; i++) {
+            batch.x[i] = source.readDouble();
+        }
+        for (int i = 0; i < size; i++) {
+            batch.y[i] = source.readDouble();
+        }
+        for (int i = 0; i < size; i++) {
+            batch.timeStampMillisec[i] = source.readLong();
+        }
+        for (int i = 0; i < size; i++) {
+            batch.ingestionTime[i] = source.readLong();
+        }
+        batch.minTimeStampMillisec = minTimeStampMillisec;
+        batch.maxTimeStampMillisec = maxTimeStampMillisec;
+        batch.size = size;
+        return batch;
+    }
+
+    @Override
+    public TypeSerializerSnapshot<PointBatch> snapshotConfiguration() {
+        return new PointBatchSerializerSnapshot();
+    }
+
+    public static final class PointBatchSerializerSnapshot extends SimpleTypeSerializerSnapshot<PointBatch> {
+        public PointBatchSerializerSnapshot() {
+            super(() -> INSTANCE);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialObjects;
+
+import org.apache.flink.api.common.typeutils.SimpleTypeSerializerSnapshot;
+import org.apache.flink.api.common.typeutils.TypeSerializerSnapshot;
+import org.apache.flink.core.memory.DataInputView;
+import org.apache.flink.core.memory.DataOutputView;
+
+import java.io.IOException;
+
+/*
+Serializer of Point: objID, timeStampMillisec, gridID, x, y, ingestionTime and objKey
+*/
+public final class PointSerializer extends SpatialObjectSerializer<Point> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final PointSerializer INSTANCE = new PointSerializer();
+
+    @Override
+    public Point createInstance() {
+        return new Point();
+    }
+
+    @Override
+    public Point copy(Point from) {
+        Point p = new Point();
+        p.objID = from.objID;
+        p.timeStampMillisec = from.timeStampMillisec;
+        p.gridID = from.gridID;
+        p.x = from.x;
+        p.y = from.y;
+        p.ingestionTime = from.ingestionTime;
+        p.objKey = from.objKey;
+        return p;
+    }
+
+    @Override
+    public void serialize(Point p, DataOutputView target) throws IOException {
+        writeString(p.objID, target);
+        target.writeLong(p.timeStampMillisec);
+        target.writeLong(p.gridID);
+        target.writeDouble(p.x);
+        target.writeDouble(p.y);
+        target.writeLong(p.ingestionTime);
+        target.writeInt(p.objKey);
+    }
+
+    @Override
+    public Point deserialize(DataInputView source) throws IOException {
+        Point p = new Point();
+        p.objID = readString(source);
+        p.timeStampMillisec = source.readLong();
+        p.gridID = source.readLong();
+        p.x = source.readDouble();
+        p.y = source.readDouble();
+        p.ingestionTime = source.readLong();
+        p.objKey = source.readInt();
+        return p;
+    }
+
+    @Override
+    public TypeSerializerSnapshot<Point> snapshotConfiguration() {
+        return new PointSerializerSnapshot();
+    }
+
+    public static final class PointSerializerSnapshot extends SimpleTypeSerializerSnapshot<Point> {
+        public PointSerializerSnapshot() {
+            super(() -> INSTANCE);
+        }
+    }
+}
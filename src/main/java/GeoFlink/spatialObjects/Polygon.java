@@ -1,60 +1,208 @@
 package GeoFlink.spatialObjects;
 
+import GeoFlink.spatialIndices.SpatialIndex;
 import GeoFlink.spatialIndices.UniformGrid;
 import GeoFlink.utils.HelperClass;
+import org.apache.flink.api.common.typeinfo.TypeInfo;
 import org.apache.flink.api.java.tuple.Tuple2;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Location;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.geom.prep.PreparedPolygon;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 
+// Serialized by PolygonSerializer instead of Kryo
+@TypeInfo(SpatialObjectTypeInfo.PolygonTypeInfoFactory.class)
 public class Polygon extends SpatialObject implements Serializable {
 
-    public HashSet<String> gridIDsSet;
-    public String gridID;
+    public HashSet<Long> gridIDsSet;
+    public long gridID;
     public long objID;
     public Tuple2<Coordinate, Coordinate> boundingBox;
-    public org.locationtech.jts.geom.Polygon polygon;
+    // Shell coordinates packed as x0, y0, x1, y1, ..., shared (read-only) by the replicas of the polygon
+    public double[] coordinates;
+    // Shell coordinates before simplify if kept, null otherwise; used to refine the points near the simplified shell
+    public double[] originalCoordinates;
+    // Upper bound of the distance between the simplified and the original shell, 0 if the polygon is not simplified
+    public double simplificationTolerance;
+    // Built from the packed coordinates on first use
+    private transient org.locationtech.jts.geom.Polygon polygon;
+    private transient PreparedGeometry preparedPolygon;
+    private transient PreparedGeometry originalPreparedPolygon;
+
+    private static final GeometryFactory geometryFactory = new GeometryFactory();
 
     public Polygon() {}; // required for POJO
 
-    public Polygon(List<Coordinate> coordinates, long objID, HashSet<String> gridIDsSet, String gridID, Tuple2<Coordinate, Coordinate> boundingBox) {
-        GeometryFactory geofact = new GeometryFactory();
-        //create geotools point object
-        polygon = geofact.createPolygon(coordinates.toArray(new Coordinate[0]));
+    public Polygon(List<Coordinate> coordinates, long objID, HashSet<Long> gridIDsSet, long gridID, Tuple2<Coordinate, Coordinate> boundingBox) {
+        this(packCoordinates(coordinates), objID, gridIDsSet, gridID, boundingBox);
+    }
+
+    public Polygon(double[] coordinates, long objID, HashSet<Long> gridIDsSet, long gridID, Tuple2<Coordinate, Coordinate> boundingBox) {
+        this.coordinates = coordinates;
         this.gridIDsSet = gridIDsSet;
         this.gridID = gridID;
         this.objID = objID;
         this.boundingBox = boundingBox;
     }
 
-    public Polygon(List<Coordinate> coordinates, UniformGrid uGrid) {
+    public Polygon(List<Coordinate> coordinates, SpatialIndex uGrid) {
         if (coordinates.size() > 1) {
-            GeometryFactory geofact = new GeometryFactory();
-            polygon = geofact.createPolygon(coordinates.toArray(new Coordinate[0]));
-            this.boundingBox = HelperClass.getBoundingBox(polygon);
+            this.coordinates = packCoordinates(coordinates);
+            this.boundingBox = getBoundingBox(this.coordinates);
             this.gridIDsSet = HelperClass.assignGridCellID(this.boundingBox, uGrid);
-            this.gridID = "";
+            this.gridID = UniformGrid.NO_CELL_KEY;
             this.objID = -1;
         }
     }
 
-    public Polygon(List<Coordinate> coordinates, long timeStampMillisec, UniformGrid uGrid) {
+    // coordinates packed as x0, y0, x1, y1, ..., e.g., as parsed from the Kafka records by GeoJSONDeserializationSchema
+    public Polygon(double[] coordinates, SpatialIndex uGrid) {
+        if (coordinates.length > 2) {
+            this.coordinates = coordinates;
+            this.boundingBox = getBoundingBox(this.coordinates);
+            this.gridIDsSet = HelperClass.assignGridCellID(this.boundingBox, uGrid);
+            this.gridID = UniformGrid.NO_CELL_KEY;
+            this.objID = -1;
+        }
+    }
+
+    public Polygon(List<Coordinate> coordinates, long timeStampMillisec, SpatialIndex uGrid) {
         if (coordinates.size() > 1) {
-            GeometryFactory geofact = new GeometryFactory();
-            polygon = geofact.createPolygon(coordinates.toArray(new Coordinate[0]));
-            this.boundingBox = HelperClass.getBoundingBox(polygon);
+            this.coordinates = packCoordinates(coordinates);
+            this.boundingBox = getBoundingBox(this.coordinates);
             this.timeStampMillisec = timeStampMillisec;
             this.gridIDsSet = HelperClass.assignGridCellID(this.boundingBox, uGrid);
-            this.gridID = "";
+            this.gridID = UniformGrid.NO_CELL_KEY;
             this.objID = -1;
         }
     }
 
+    private static double[] packCoordinates(List<Coordinate> coordinates) {
+        double[] packed = new double[2 * coordinates.size()];
+        int i = 0;
+        for (Coordinate coordinate : coordinates) {
+            packed[i++] = coordinate.x;
+            packed[i++] = coordinate.y;
+        }
+        return packed;
+    }
+
+    // return 2 coordinates, smaller first and larger second
+    private static Tuple2<Coordinate, Coordinate> getBoundingBox(double[] coordinates) {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < coordinates.length; i += 2) {
+            minX = Math.min(minX, coordinates[i]);
+            maxX = Math.max(maxX, coordinates[i]);
+            minY = Math.min(minY, coordinates[i + 1]);
+            maxY = Math.max(maxY, coordinates[i + 1]);
+        }
+        return Tuple2.of(new Coordinate(minX, minY, 0), new Coordinate(maxX, maxY, 0));
+    }
+
+    public int getNumCoordinates() {
+        return (coordinates == null) ? 0 : coordinates.length / 2;
+    }
+
+    public Coordinate[] getCoordinates() {
+        return (coordinates == null) ? new Coordinate[0] : unpackCoordinates(coordinates);
+    }
+
+    private static Coordinate[] unpackCoordinates(double[] coordinates) {
+        Coordinate[] shell = new Coordinate[coordinates.length / 2];
+        for (int i = 0; i < shell.length; i++) {
+            shell[i] = new Coordinate(coordinates[2 * i], coordinates[2 * i + 1]);
+        }
+        return shell;
+    }
+
+    // JTS polygon, null if the polygon has no coordinates
+    public org.locationtech.jts.geom.Polygon getPolygon() {
+        if (polygon == null && coordinates != null) {
+            polygon = geometryFactory.createPolygon(getCoordinates());
+        }
+        return polygon;
+    }
+
+    public PreparedGeometry getPreparedPolygon() {
+        if (preparedPolygon == null && getPolygon() != null) {
+            preparedPolygon = PreparedGeometryFactory.prepare(polygon);
+        }
+        return preparedPolygon;
+    }
+
+    // Whether (x, y) is in the interior of the polygon, i.e., the same as polygon.contains(point)
+    // The bounding box is checked first, the point is then located by the indexed locator of the prepared polygon
+    // For a simplified polygon with its original shell, the points within simplificationTolerance of the simplified shell are located in the original shell
+    public boolean containsPoint(double x, double y) {
+        if (boundingBox != null && (x < boundingBox.f0.x || y < boundingBox.f0.y || x > boundingBox.f1.x || y > boundingBox.f1.y)) {
+            return false;
+        }
+        if (originalCoordinates != null && isNearShell(x, y, simplificationTolerance)) {
+            if (originalPreparedPolygon == null) {
+                originalPreparedPolygon = PreparedGeometryFactory.prepare(geometryFactory.createPolygon(unpackCoordinates(originalCoordinates)));
+            }
+            return locate(originalPreparedPolygon, x, y);
+        }
+        return locate(getPreparedPolygon(), x, y);
+    }
+
+    private static boolean locate(PreparedGeometry prepared, double x, double y) {
+        if (prepared instanceof PreparedPolygon) {
+            return ((PreparedPolygon) prepared).getPointLocator().locate(new Coordinate(x, y)) == Location.INTERIOR;
+        }
+        return prepared != null && prepared.contains(geometryFactory.createPoint(new Coordinate(x, y)));
+    }
+
+    // Topology-preserving Douglas-Peucker simplification of the shell (JTS TopologyPreservingSimplifier): the removed vertices are within
+    // tolerance of the simplified shell, which remains a valid polygon. The bounding box and cells of the original shell are kept, hence the
+    // cell pruning and the bounding box distances (HelperClass) are unchanged; keepOriginal: keep the original shell for containsPoint
+    // Polygons that do not lose a vertex are left as they are
+    public void simplify(double tolerance, boolean keepOriginal) {
+        if (tolerance <= 0 || getNumCoordinates() < 5 || simplificationTolerance > 0) {
+            return;
+        }
+        Geometry simplified = TopologyPreservingSimplifier.simplify(getPolygon(), tolerance);
+        if (!(simplified instanceof org.locationtech.jts.geom.Polygon) || simplified.isEmpty()) {
+            return;
+        }
+        Coordinate[] shell = ((org.locationtech.jts.geom.Polygon) simplified).getExteriorRing().getCoordinates();
+        if (shell.length >= getNumCoordinates()) {
+            return;
+        }
+        this.originalCoordinates = keepOriginal ? this.coordinates : null;
+        this.coordinates = packCoordinates(Arrays.asList(shell));
+        this.simplificationTolerance = tolerance;
+        this.polygon = null;
+        this.preparedPolygon = null;
+        this.originalPreparedPolygon = null;
+    }
+
+    // Whether (x, y) is within distance of a segment of the shell
+    private boolean isNearShell(double x, double y, double distance) {
+        double squaredDistance = distance * distance;
+        for (int i = 0; i + 3 < coordinates.length; i += 2) {
+            double x1 = coordinates[i], y1 = coordinates[i + 1], x2 = coordinates[i + 2], y2 = coordinates[i + 3];
+            double dx = x2 - x1, dy = y2 - y1;
+            double lengthSquared = dx * dx + dy * dy;
+            double t = (lengthSquared == 0) ? 0 : Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / lengthSquared));
+            double px = x1 + t * dx - x, py = y1 + t * dy - y;
+            if (px * px + py * py <= squaredDistance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 
     //{"geometry": {"coordinates": [[[[-73.817854, 40.81909], [-73.817924, 40.819207], [-73.817791, 40.819253], [-73.817785, 40.819255], [-73.817596, 40.81932], [-73.81752, 40.819194], [-73.817521, 40.819193], [-73.817735, 40.819119], [-73.817755, 40.819113], [-73.817771, 40.819107], [-73.817798, 40.819098], [-73.817848, 40.81908], [-73.817852, 40.819087], [-73.817854, 40.81909]]]], "type": "MultiPolygon"}, "type": "Feature"}
 
@@ -63,7 +211,7 @@ public class Polygon extends SpatialObject implements Serializable {
     public String toString() {
         try{
             String str = "{\"geometry\":{\"coordinates\": [[[";
-            Coordinate[] coordinates = polygon.getCoordinates();
+            Coordinate[] coordinates = getCoordinates();
             for(Coordinate coordinate: coordinates)
                 str = str + "[" + coordinate.getX()  + ", " + coordinate.getY() + "],";
             str = str + "]]], \"type\": \"MultiPolygon\"}}";
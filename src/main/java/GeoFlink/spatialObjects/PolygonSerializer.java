@@ -0,0 +1,94 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialObjects;
+
+import org.apache.flink.api.common.typeutils.SimpleTypeSerializerSnapshot;
+import org.apache.flink.api.common.typeutils.TypeSerializerSnapshot;
+import org.apache.flink.core.memory.DataInputView;
+import org.apache.flink.core.memory.DataOutputView;
+
+import java.io.IOException;
+
+/*
+Serializer of Polygon: the SpatialObject fields, objID, gridID, gridIDsSet, boundingBox, the packed shell coordinates and,
+for a simplified polygon, the simplification tolerance and original shell coordinates
+*/
+public final class PolygonSerializer extends SpatialObjectSerializer<Polygon> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final PolygonSerializer INSTANCE = new PolygonSerializer();
+
+    @Override
+    public Polygon createInstance() {
+        return new Polygon();
+    }
+
+    @Override
+    public Polygon copy(Polygon from) {
+        Polygon poly = new Polygon();
+        ((SpatialObject) poly).objID = ((SpatialObject) from).objID;
+        poly.timeStampMillisec = from.timeStampMillisec;
+        poly.objID = from.objID;
+        poly.gridID = from.gridID;
+        poly.gridIDsSet = copyCellSet(from.gridIDsSet);
+        poly.boundingBox = copyBoundingBox(from.boundingBox);
+        poly.coordinates = from.coordinates; // read-only, shared in the same way as between the replicas of a polygon
+        poly.originalCoordinates = from.originalCoordinates;
+        poly.simplificationTolerance = from.simplificationTolerance;
+        return poly;
+    }
+
+    @Override
+    public void serialize(Polygon poly, DataOutputView target) throws IOException {
+        writeString(((SpatialObject) poly).objID, target);
+        target.writeLong(poly.timeStampMillisec);
+        target.writeLong(poly.objID);
+        target.writeLong(poly.gridID);
+        writeCellSet(poly.gridIDsSet, target);
+        writeBoundingBox(poly.boundingBox, target);
+        writePackedCoordinates(poly.coordinates, target);
+        target.writeDouble(poly.simplificationTolerance);
+        writePackedCoordinates(poly.originalCoordinates, target);
+    }
+
+    @Override
+    public Polygon deserialize(DataInputView source) throws IOException {
+        Polygon poly = new Polygon();
+        ((SpatialObject) poly).objID = readString(source);
+        poly.timeStampMillisec = source.readLong();
+        poly.objID = source.readLong();
+        poly.gridID = source.readLong();
+        poly.gridIDsSet = readCellSet(source);
+        poly.boundingBox = readBoundingBox(source);
+        poly.coordinates = readPackedCoordinates(source);
+        poly.simplificationTolerance = source.readDouble();
+        poly.originalCoordinates = readPackedCoordinates(source);
+        return poly;
+    }
+
+    @Override
+    public TypeSerializerSnapshot<Polygon> snapshotConfiguration() {
+        return new PolygonSerializerSnapshot();
+    }
+
+    public static final class PolygonSerializerSnapshot extends SimpleTypeSerializerSnapshot<Polygon> {
+        public PolygonSerializerSnapshot() {
+            super(() -> INSTANCE);
+        }
+    }
+}
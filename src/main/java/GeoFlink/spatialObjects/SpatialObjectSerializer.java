@@ -0,0 +1,163 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialObjects;
+
+import org.apache.flink.api.common.typeutils.base.TypeSerializerSingleton;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.core.memory.DataInputView;
+import org.apache.flink.core.memory.DataOutputView;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.io.IOException;
+import java.util.HashSet;
+
+/*
+Base of the spatial object serializers: compact binary encoding of the fields shared by the spatial objects
+Geometries are written as their x, y coordinates only (the z ordinates are not used by the operators), cell keys as longs.
+Nullable fields are preceded by a presence flag
+*/
+public abstract class SpatialObjectSerializer<T> extends TypeSerializerSingleton<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    protected static final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @Override
+    public boolean isImmutableType() {
+        return false;
+    }
+
+    @Override
+    public int getLength() {
+        return -1;
+    }
+
+    @Override
+    public T copy(T from, T reuse) {
+        return copy(from);
+    }
+
+    @Override
+    public T deserialize(T reuse, DataInputView source) throws IOException {
+        return deserialize(source);
+    }
+
+    @Override
+    public void copy(DataInputView source, DataOutputView target) throws IOException {
+        serialize(deserialize(source), target);
+    }
+
+    //--------------- Field encoders -----------------//
+    protected static void writeString(String value, DataOutputView target) throws IOException {
+        target.writeBoolean(value != null);
+        if (value != null) {
+            target.writeUTF(value);
+        }
+    }
+
+    protected static String readString(DataInputView source) throws IOException {
+        return source.readBoolean() ? source.readUTF() : null;
+    }
+
+    protected static void writeCellSet(HashSet<Long> cells, DataOutputView target) throws IOException {
+        target.writeInt(cells == null ? -1 : cells.size());
+        if (cells != null) {
+            for (long cellKey : cells) {
+                target.writeLong(cellKey);
+            }
+        }
+    }
+
+    protected static HashSet<Long> readCellSet(DataInputView source) throws IOException {
+        int size = source.readInt();
+        if (size < 0) {
+            return null;
+        }
+        HashSet<Long> cells = new HashSet<Long>(size * 2);
+        for (int i = 0; i < size; i++) {
+            cells.add(source.readLong());
+        }
+        return cells;
+    }
+
+    protected static void writeBoundingBox(Tuple2<Coordinate, Coordinate> boundingBox, DataOutputView target) throws IOException {
+        target.writeBoolean(boundingBox != null);
+        if (boundingBox != null) {
+            target.writeDouble(boundingBox.f0.x);
+            target.writeDouble(boundingBox.f0.y);
+            target.writeDouble(boundingBox.f1.x);
+            target.writeDouble(boundingBox.f1.y);
+        }
+    }
+
+    protected static Tuple2<Coordinate, Coordinate> readBoundingBox(DataInputView source) throws IOException {
+        if (!source.readBoolean()) {
+            return null;
+        }
+        Coordinate minCoordinate = new Coordinate(source.readDouble(), source.readDouble());
+        Coordinate maxCoordinate = new Coordinate(source.readDouble(), source.readDouble());
+        return Tuple2.of(minCoordinate, maxCoordinate);
+    }
+
+    protected static Tuple2<Coordinate, Coordinate> copyBoundingBox(Tuple2<Coordinate, Coordinate> boundingBox) {
+        return (boundingBox == null) ? null : Tuple2.of(new Coordinate(boundingBox.f0), new Coordinate(boundingBox.f1));
+    }
+
+    protected static HashSet<Long> copyCellSet(HashSet<Long> cells) {
+        return (cells == null) ? null : new HashSet<Long>(cells);
+    }
+
+    protected static void writePackedCoordinates(double[] coordinates, DataOutputView target) throws IOException {
+        target.writeInt(coordinates == null ? -1 : coordinates.length);
+        if (coordinates != null) {
+            for (double ordinate : coordinates) {
+                target.writeDouble(ordinate);
+            }
+        }
+    }
+
+    protected static double[] readPackedCoordinates(DataInputView source) throws IOException {
+        int length = source.readInt();
+        if (length < 0) {
+            return null;
+        }
+        double[] coordinates = new double[length];
+        for (int i = 0; i < length; i++) {
+            coordinates[i] = source.readDouble();
+        }
+        return coordinates;
+    }
+
+    protected static void writeCoordinates(CoordinateSequence coordinates, DataOutputView target) throws IOException {
+        int size = coordinates.size();
+        target.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            target.writeDouble(coordinates.getX(i));
+            target.writeDouble(coordinates.getY(i));
+        }
+    }
+
+    protected static Coordinate[] readCoordinates(DataInputView source) throws IOException {
+        Coordinate[] coordinates = new Coordinate[source.readInt()];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = new Coordinate(source.readDouble(), source.readDouble());
+        }
+        return coordinates;
+    }
+}
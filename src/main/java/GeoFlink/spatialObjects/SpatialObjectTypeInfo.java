@@ -0,0 +1,139 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialObjects;
+
+import org.apache.flink.api.common.ExecutionConfig;
+import org.apache.flink.api.common.typeinfo.TypeInfoFactory;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/*
+Type information of the spatial objects, binding them to their dedicated serializers instead of Kryo
+The spatial object classes are annotated with @TypeInfo(<factory>), hence the type extraction of the operators picks it up
+*/
+public class SpatialObjectTypeInfo<T> extends TypeInformation<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final SpatialObjectTypeInfo<Point> POINT_TYPE_INFO = new SpatialObjectTypeInfo<Point>(Point.class, PointSerializer.INSTANCE);
+    public static final SpatialObjectTypeInfo<Polygon> POLYGON_TYPE_INFO = new SpatialObjectTypeInfo<Polygon>(Polygon.class, PolygonSerializer.INSTANCE);
+    public static final SpatialObjectTypeInfo<LineString> LINESTRING_TYPE_INFO = new SpatialObjectTypeInfo<LineString>(LineString.class, LineStringSerializer.INSTANCE);
+    public static final SpatialObjectTypeInfo<TrajectoryBuffer> TRAJECTORY_BUFFER_TYPE_INFO = new SpatialObjectTypeInfo<TrajectoryBuffer>(TrajectoryBuffer.class, TrajectoryBufferSerializer.INSTANCE);
+    public static final SpatialObjectTypeInfo<PointBatch> POINT_BATCH_TYPE_INFO = new SpatialObjectTypeInfo<PointBatch>(PointBatch.class, PointBatchSerializer.INSTANCE);
+
+    private final Class<T> typeClass;
+    private final TypeSerializer<T> serializer;
+
+    private SpatialObjectTypeInfo(Class<T> typeClass, TypeSerializer<T> serializer) {
+        this.typeClass = typeClass;
+        this.serializer = serializer;
+    }
+
+    @Override
+    public boolean isBasicType() {
+        return false;
+    }
+
+    @Override
+    public boolean isTupleType() {
+        return false;
+    }
+
+    @Override
+    public int getArity() {
+        return 1;
+    }
+
+    @Override
+    public int getTotalFields() {
+        return 1;
+    }
+
+    @Override
+    public Class<T> getTypeClass() {
+        return typeClass;
+    }
+
+    @Override
+    public boolean isKeyType() {
+        return false;
+    }
+
+    @Override
+    public TypeSerializer<T> createSerializer(ExecutionConfig config) {
+        return serializer;
+    }
+
+    @Override
+    public String toString() {
+        return "SpatialObjectTypeInfo<" + typeClass.getSimpleName() + ">";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return (obj instanceof SpatialObjectTypeInfo) && ((SpatialObjectTypeInfo<?>) obj).canEqual(this) && typeClass == ((SpatialObjectTypeInfo<?>) obj).typeClass;
+    }
+
+    @Override
+    public int hashCode() {
+        return typeClass.hashCode();
+    }
+
+    @Override
+    public boolean canEqual(Object obj) {
+        return obj instanceof SpatialObjectTypeInfo;
+    }
+
+    //--------------- Factories used by the @TypeInfo annotations -----------------//
+    public static class PointTypeInfoFactory extends TypeInfoFactory<Point> {
+        @Override
+        public TypeInformation<Point> createTypeInfo(Type t, Map<String, TypeInformation<?>> genericParameters) {
+            return POINT_TYPE_INFO;
+        }
+    }
+
+    public static class PolygonTypeInfoFactory extends TypeInfoFactory<Polygon> {
+        @Override
+        public TypeInformation<Polygon> createTypeInfo(Type t, Map<String, TypeInformation<?>> genericParameters) {
+            return POLYGON_TYPE_INFO;
+        }
+    }
+
+    public static class LineStringTypeInfoFactory extends TypeInfoFactory<LineString> {
+        @Override
+        public TypeInformation<LineString> createTypeInfo(Type t, Map<String, TypeInformation<?>> genericParameters) {
+            return LINESTRING_TYPE_INFO;
+        }
+    }
+
+    public static class TrajectoryBufferTypeInfoFactory extends TypeInfoFactory<TrajectoryBuffer> {
+        @Override
+        public TypeInformation<TrajectoryBuffer> createTypeInfo(Type t, Map<String, TypeInformation<?>> genericParameters) {
+            return TRAJECTORY_BUFFER_TYPE_INFO;
+        }
+    }
+
+    public static class PointBatchTypeInfoFactory extends TypeInfoFactory<PointBatch> {
+        @Override
+        public TypeInformation<PointBatch> createTypeInfo(Type t, Map<String, TypeInformation<?>> genericParameters) {
+            return POINT_BATCH_TYPE_INFO;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialObjects;
+
+import GeoFlink.spatialIndices.SpatialIndex;
+import org.apache.flink.api.common.typeinfo.TypeInfo;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/*
+Growable columnar buffer of the points of a trajectory: parallel arrays of x, y and timestamp
+A buffered point takes 24 bytes instead of a Coordinate object and a list node; the JTS geometry is only built by toLineString
+The trajectory windows keep a buffer per object and window as their state (TFilterQuery.TrajectoryBufferAggregateFunction),
+instead of the Point records of the window
+*/
+// Serialized by TrajectoryBufferSerializer instead of Kryo
+@TypeInfo(SpatialObjectTypeInfo.TrajectoryBufferTypeInfoFactory.class)
+public class TrajectoryBuffer implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    double[] x;
+    double[] y;
+    long[] timeStampMillisec;
+    int size;
+
+    public TrajectoryBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TrajectoryBuffer(int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.x = new double[capacity];
+        this.y = new double[capacity];
+        this.timeStampMillisec = new long[capacity];
+        this.size = 0;
+    }
+
+    public void add(double x, double y, long timeStampMillisec) {
+        if (size == this.x.length) {
+            grow(size + 1);
+        }
+        this.x[size] = x;
+        this.y[size] = y;
+        this.timeStampMillisec[size] = timeStampMillisec;
+        size++;
+    }
+
+    public void add(Point p) {
+        add(p.x, p.y, p.timeStampMillisec);
+    }
+
+    // Appends all the points of another buffer, e.g., when merging the partial trajectories of a window
+    public void addAll(TrajectoryBuffer other) {
+        if (size + other.size > x.length) {
+            grow(size + other.size);
+        }
+        System.arraycopy(other.x, 0, x, size, other.size);
+        System.arraycopy(other.y, 0, y, size, other.size);
+        System.arraycopy(other.timeStampMillisec, 0, timeStampMillisec, size, other.size);
+        size += other.size;
+    }
+
+    // Capacity grows by half, at least to minCapacity
+    private void grow(int minCapacity) {
+        int capacity = Math.max(x.length + (x.length >> 1), minCapacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        timeStampMillisec = Arrays.copyOf(timeStampMillisec, capacity);
+    }
+
+    // Keeps the allocated arrays, so that a buffer can be reused across windows
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double getX(int i) {
+        return x[i];
+    }
+
+    public double getY(int i) {
+        return y[i];
+    }
+
+    public long getTimeStampMillisec(int i) {
+        return timeStampMillisec[i];
+    }
+
+    public Coordinate[] getCoordinates() {
+        Coordinate[] coordinates = new Coordinate[size];
+        for (int i = 0; i < size; i++) {
+            coordinates[i] = new Coordinate(x[i], y[i]);
+        }
+        return coordinates;
+    }
+
+    // LineString of the buffered points, without the grid cells
+    public LineString toLineString(String objID) {
+        return new LineString(objID, this);
+    }
+
+    public LineString toLineString(String objID, SpatialIndex uGrid) {
+        return new LineString(objID, this, uGrid);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            str.append(i == 0 ? "" : ", ").append("[").append(x[i]).append(", ").append(y[i]).append(", ").append(timeStampMillisec[i]).append("]");
+        }
+        return str.append("]").toString();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialObjects;
+
+import org.apache.flink.api.common.typeutils.SimpleTypeSerializerSnapshot;
+import org.apache.flink.api.common.typeutils.TypeSerializerSnapshot;
+import org.apache.flink.core.memory.DataInputView;
+import org.apache.flink.core.memory.DataOutputView;
+
+import java.io.IOException;
+
+/*
+Serializer of TrajectoryBuffer: the number of points followed by the x, y and timestamp columns (the unused capacity is not written)
+*/
+public final class TrajectoryBufferSerializer extends SpatialObjectSerializer<TrajectoryBuffer> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final TrajectoryBufferSerializer INSTANCE = new TrajectoryBufferSerializer();
+
+    @Override
+    public TrajectoryBuffer createInstance() {
+        return new TrajectoryBuffer();
+    }
+
+    @Override
+    public TrajectoryBuffer copy(TrajectoryBuffer from) {
+        TrajectoryBuffer trajectory = new TrajectoryBuffer(from.size);
+        trajectory.addAll(from);
+        return trajectory;
+    }
+
+    @Override
+    public void serialize(TrajectoryBuffer trajectory, DataOutputView target) throws IOException {
+        target.writeInt(trajectory.size);
+        for (int i = 0; i < trajectory.size; i++) {
+            target.writeDouble(trajectory.x[i]);
+        }
+        for (int i = 0; i < trajectory.size; i++) {
+            target.writeDouble(trajectory.y[i]);
+        }
+        for (int i = 0; i < trajectory.size; i++) {
+            target.writeLong(trajectory.timeStampMillisec[i]);
+        }
+    }
+
+    @Override
+    public TrajectoryBuffer deserialize(DataInputView source) throws IOException {
+        int size = source.readInt();
+        TrajectoryBuffer trajectory = new TrajectoryBuffer(size);
+        for (int i = 0; i < size; i++) {
+            trajectory.x[i] = source.readDouble();
+        }
+        for (int i = 0; i < size; i++) {
+            trajectory.y[i] = source.readDouble();
+        }
+        for (int i = 0; i < size; i++) {
+            trajectory.timeStampMillisec[i] = source.readLong();
+        }
+        trajectory.size = size;
+        return trajectory;
+    }
+
+    @Override
+    public TypeSerializerSnapshot<TrajectoryBuffer> snapshotConfiguration() {
+        return new TrajectoryBufferSerializerSnapshot();
+    }
+
+    public static final class TrajectoryBufferSerializerSnapshot extends SimpleTypeSerializerSnapshot<TrajectoryBuffer> {
+        public TrajectoryBufferSerializerSnapshot() {
+            super(() -> INSTANCE);
+        }
+    }
+}
@@ -16,7 +16,9 @@ limitations under the License.
 
 package GeoFlink.spatialOperators;
 
-import GeoFlink.spatialIndices.UniformGrid;
+import GeoFlink.spatialIndices.CellDensitySketch;
+import GeoFlink.spatialIndices.GridPartitioner;
+import GeoFlink.spatialIndices.SpatialIndex;
 import GeoFlink.spatialObjects.Point;
 import GeoFlink.spatialObjects.Polygon;
 import GeoFlink.utils.HelperClass;
@@ -29,33 +31,29 @@ import org.apache.flink.streaming.api.windowing.assigners.SlidingProcessingTimeW
 import org.apache.flink.streaming.api.windowing.time.Time;
 import org.apache.flink.util.Collector;
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
 public class JoinQuery implements Serializable {
 
     //--------------- GRID-BASED JOIN QUERY - POINT-POINT -----------------//
-    public static DataStream<Tuple2<String, String>> SpatialJoinQuery(DataStream<Point> ordinaryPointStream, DataStream<Point> queryPointStream, double queryRadius, int windowSize, int slideStep, UniformGrid uGrid){
+    public static DataStream<Tuple2<Long, Long>> SpatialJoinQuery(DataStream<Point> ordinaryPointStream, DataStream<Point> queryPointStream, double queryRadius, int windowSize, int slideStep, SpatialIndex uGrid){
+        return SpatialJoinQuery(ordinaryPointStream, queryPointStream, queryRadius, windowSize, slideStep, uGrid, (GridPartitioner) null);
+    }
+
+    // gridPartitioner: cell to subtask assignment of the windowed join, hash partitioning of the cells if null
+    public static DataStream<Tuple2<Long, Long>> SpatialJoinQuery(DataStream<Point> ordinaryPointStream, DataStream<Point> queryPointStream, double queryRadius, int windowSize, int slideStep, SpatialIndex uGrid, GridPartitioner gridPartitioner){
 
         DataStream<Point> replicatedQueryStream = JoinQuery.getReplicatedQueryStream(queryPointStream, queryRadius, uGrid);
 
-        DataStream<Tuple2<String, String>> joinOutput = ordinaryPointStream.join(replicatedQueryStream)
-                .where(new KeySelector<Point, String>() {
-                    @Override
-                    public String getKey(Point p) throws Exception {
-                        return p.gridID;
-                    }
-                }).equalTo(new KeySelector<Point, String>() {
+        DataStream<Tuple2<Long, Long>> joinOutput = ordinaryPointStream.join(replicatedQueryStream)
+                .where(new GridPartitioner.PointKeySelector(gridPartitioner))
+                .equalTo(new GridPartitioner.PointKeySelector(gridPartitioner))
+                .window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(slideStep)))
+                .apply(new JoinFunction<Point, Point, Tuple2<Long,Long>>() {
                     @Override
-                    public String getKey(Point q) throws Exception {
-                        return q.gridID;
-                    }
-                }).window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(slideStep)))
-                .apply(new JoinFunction<Point, Point, Tuple2<String,String>>() {
-                    @Override
-                    public Tuple2<String, String> join(Point p, Point q) {
-                        if (HelperClass.getPointPointEuclideanDistance(p.point.getX(), p.point.getY(), q.point.getX(), q.point.getY()) <= queryRadius) {
+                    public Tuple2<Long, Long> join(Point p, Point q) {
+                        if (HelperClass.getPointPointEuclideanDistance(p.x, p.y, q.x, q.y) <= queryRadius) {
                             return Tuple2.of(p.gridID, q.gridID);
                         } else {
                             return Tuple2.of(null, null);
@@ -63,37 +61,60 @@ public class JoinQuery implements Serializable {
                     }
                 });
 
-        return joinOutput.filter(new FilterFunction<Tuple2<String, String>>() {
+        return joinOutput.filter(new FilterFunction<Tuple2<Long, Long>>() {
             @Override
-            public boolean filter(Tuple2<String, String> value) throws Exception {
+            public boolean filter(Tuple2<Long, Long> value) throws Exception {
                 return value.f1 != null;
             }
         });
     }
 
 
+    // The stream to be replicated to the neighboring cells is chosen by the density sketches of the two streams (e.g., measured by an earlier run),
+    // i.e., the ordinary stream is replicated instead of the query stream if it is expected to create fewer replicas
+    public static DataStream<Tuple2<Long, Long>> SpatialJoinQuery(DataStream<Point> ordinaryPointStream, DataStream<Point> queryPointStream, double queryRadius, int windowSize, int slideStep, SpatialIndex uGrid, GridPartitioner gridPartitioner, CellDensitySketch ordinaryDensity, CellDensitySketch queryDensity){
+
+        double ordinaryReplicationCost = ordinaryDensity.estimateReplicationCost(uGrid, queryRadius);
+        double queryReplicationCost = queryDensity.estimateReplicationCost(uGrid, queryRadius);
+        System.out.println("Join replication cost, ordinary stream: " + ordinaryReplicationCost + ", query stream: " + queryReplicationCost);
+
+        if (queryReplicationCost <= ordinaryReplicationCost) {
+            return SpatialJoinQuery(ordinaryPointStream, queryPointStream, queryRadius, windowSize, slideStep, uGrid, gridPartitioner);
+        }
+
+        // The distance predicate is symmetric, the roles of the streams are swapped and the output is swapped back
+        return SpatialJoinQuery(queryPointStream, ordinaryPointStream, queryRadius, windowSize, slideStep, uGrid, gridPartitioner)
+                .map(new MapFunction<Tuple2<Long, Long>, Tuple2<Long, Long>>() {
+                    @Override
+                    public Tuple2<Long, Long> map(Tuple2<Long, Long> value) throws Exception {
+                        return Tuple2.of(value.f1, value.f0);
+                    }
+                });
+    }
+
+
     //--------------- GRID-BASED JOIN QUERY - POINT-POLYGON -----------------//
-    public static DataStream<Tuple2<String, String>> SpatialJoinQuery(DataStream<Polygon> polygonStream, DataStream<Point> queryPointStream, double queryRadius, UniformGrid uGrid, int windowSize, int slideStep){
+    public static DataStream<Tuple2<Long, Long>> SpatialJoinQuery(DataStream<Polygon> polygonStream, DataStream<Point> queryPointStream, double queryRadius, SpatialIndex uGrid, int windowSize, int slideStep){
 
         DataStream<Point> replicatedQueryStream = JoinQuery.getReplicatedQueryStream(queryPointStream, queryRadius, uGrid);
-        DataStream<Polygon> replicatedPolygonStream = polygonStream.flatMap(new HelperClass.ReplicatePolygonStream());
+        DataStream<Polygon> replicatedPolygonStream = polygonStream.flatMap(new HelperClass.ReplicatePolygonStream(true));
 
-        DataStream<Tuple2<String, String>> joinOutput = replicatedPolygonStream.join(replicatedQueryStream)
-                .where(new KeySelector<Polygon, String>() {
+        DataStream<Tuple2<Long, Long>> joinOutput = replicatedPolygonStream.join(replicatedQueryStream)
+                .where(new KeySelector<Polygon, Long>() {
                     @Override
-                    public String getKey(Polygon poly) throws Exception {
+                    public Long getKey(Polygon poly) throws Exception {
                         return poly.gridID;
                     }
-                }).equalTo(new KeySelector<Point, String>() {
+                }).equalTo(new KeySelector<Point, Long>() {
                     @Override
-                    public String getKey(Point q) throws Exception {
+                    public Long getKey(Point q) throws Exception {
                         return q.gridID;
                     }
                 }).window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(slideStep)))
-                .apply(new JoinFunction<Polygon, Point, Tuple2<String,String>>() {
+                .apply(new JoinFunction<Polygon, Point, Tuple2<Long,Long>>() {
                     @Override
-                    public Tuple2<String, String> join(Polygon poly, Point q) {
-                        if (HelperClass.getPointPolygonMinEuclideanDistance(q, poly) <= queryRadius) {
+                    public Tuple2<Long, Long> join(Polygon poly, Point q) {
+                        if (HelperClass.getPointPolygonMinEuclideanDistance(q, poly) <= queryRadius && HelperClass.isReferenceCell(poly.gridID, poly, q, uGrid)) {
                             return Tuple2.of(poly.gridID, q.gridID);
                         } else {
                             return Tuple2.of(null, null);
@@ -101,35 +122,38 @@ public class JoinQuery implements Serializable {
                     }
                 });
 
-        return joinOutput.filter(new FilterFunction<Tuple2<String, String>>() {
+        return joinOutput.filter(new FilterFunction<Tuple2<Long, Long>>() {
             @Override
-            public boolean filter(Tuple2<String, String> value) throws Exception {
+            public boolean filter(Tuple2<Long, Long> value) throws Exception {
                 return value.f1 != null;
             }
         });
     }
 
     //--------------- (MODIFIED) GRID-BASED JOIN QUERY - POINT-POLYGON -----------------//
-    public static DataStream<Tuple2<String, String>> SpatialJoinQueryOptimized(DataStream<Polygon> polygonStream, DataStream<Point> queryPointStream, double queryRadius, UniformGrid uGrid, int windowSize, int slideStep){
+    public static DataStream<Tuple2<Long, Long>> SpatialJoinQueryOptimized(DataStream<Polygon> polygonStream, DataStream<Point> queryPointStream, double queryRadius, SpatialIndex uGrid, int windowSize, int slideStep){
 
         DataStream<Tuple2<Point,Boolean>> replicatedQueryStream = JoinQuery.getReplicatedQueryStreamModified(queryPointStream, queryRadius, uGrid);
-        DataStream<Polygon> replicatedPolygonStream = polygonStream.flatMap(new HelperClass.ReplicatePolygonStream());
+        DataStream<Polygon> replicatedPolygonStream = polygonStream.flatMap(new HelperClass.ReplicatePolygonStream(true));
 
-        DataStream<Tuple2<String, String>> joinOutput = replicatedPolygonStream.join(replicatedQueryStream)
-                .where(new KeySelector<Polygon, String>() {
+        DataStream<Tuple2<Long, Long>> joinOutput = replicatedPolygonStream.join(replicatedQueryStream)
+                .where(new KeySelector<Polygon, Long>() {
                     @Override
-                    public String getKey(Polygon poly) throws Exception {
+                    public Long getKey(Polygon poly) throws Exception {
                         return poly.gridID;
                     }
-                }).equalTo(new KeySelector<Tuple2<Point,Boolean>, String>() {
+                }).equalTo(new KeySelector<Tuple2<Point,Boolean>, Long>() {
                     @Override
-                    public String getKey(Tuple2<Point,Boolean> q) throws Exception {
+                    public Long getKey(Tuple2<Point,Boolean> q) throws Exception {
                         return q.f0.gridID;
                     }
                 }).window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(slideStep)))
-                .apply(new JoinFunction<Polygon, Tuple2<Point,Boolean>, Tuple2<String,String>>() {
+                .apply(new JoinFunction<Polygon, Tuple2<Point,Boolean>, Tuple2<Long,Long>>() {
                     @Override
-                    public Tuple2<String, String> join(Polygon poly, Tuple2<Point,Boolean> q) {
+                    public Tuple2<Long, Long> join(Polygon poly, Tuple2<Point,Boolean> q) {
+                        if (!HelperClass.isReferenceCell(poly.gridID, poly, q.f0, uGrid)) { // reported by the cell of the reference point
+                            return Tuple2.of(null, null);
+                        }
                         if (q.f1 == true) {  // guaranteed neighbors
                             return Tuple2.of(poly.gridID, q.f0.gridID);
                         } else { // candidate neighbors
@@ -142,9 +166,9 @@ public class JoinQuery implements Serializable {
                     }
                 });
 
-        return joinOutput.filter(new FilterFunction<Tuple2<String, String>>() {
+        return joinOutput.filter(new FilterFunction<Tuple2<Long, Long>>() {
             @Override
-            public boolean filter(Tuple2<String, String> value) throws Exception {
+            public boolean filter(Tuple2<Long, Long> value) throws Exception {
                 return value.f1 != null;
             }
         });
@@ -152,26 +176,26 @@ public class JoinQuery implements Serializable {
 
 
     //--------------- GRID-BASED JOIN QUERY - POLYGON-POLYGON -----------------//
-    public static DataStream<Tuple2<String,String>> SpatialJoinQuery(DataStream<Polygon> polygonStream, DataStream<Polygon> queryPolygonStream, int slideStep, int windowSize, double queryRadius, UniformGrid uGrid){
+    public static DataStream<Tuple2<Long,Long>> SpatialJoinQuery(DataStream<Polygon> polygonStream, DataStream<Polygon> queryPolygonStream, int slideStep, int windowSize, double queryRadius, SpatialIndex uGrid){
         DataStream<Polygon> replicatedQueryStream = JoinQuery.getReplicatedQueryStream(queryPolygonStream, uGrid, queryRadius);
-        DataStream<Polygon> replicatedPolygonStream = polygonStream.flatMap(new HelperClass.ReplicatePolygonStream());
+        DataStream<Polygon> replicatedPolygonStream = polygonStream.flatMap(new HelperClass.ReplicatePolygonStream(true));
 
-        DataStream<Tuple2<String, String>> joinOutput = replicatedPolygonStream.join(replicatedQueryStream)
-                .where(new KeySelector<Polygon, String>() {
+        DataStream<Tuple2<Long, Long>> joinOutput = replicatedPolygonStream.join(replicatedQueryStream)
+                .where(new KeySelector<Polygon, Long>() {
                     @Override
-                    public String getKey(Polygon poly) throws Exception {
+                    public Long getKey(Polygon poly) throws Exception {
                         return poly.gridID;
                     }
-                }).equalTo(new KeySelector<Polygon, String>() {
+                }).equalTo(new KeySelector<Polygon, Long>() {
                     @Override
-                    public String getKey(Polygon query) throws Exception {
+                    public Long getKey(Polygon query) throws Exception {
                         return query.gridID;
                     }
                 }).window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(slideStep)))
-                .apply(new JoinFunction<Polygon, Polygon, Tuple2<String,String>>() {
+                .apply(new JoinFunction<Polygon, Polygon, Tuple2<Long,Long>>() {
                     @Override
-                    public Tuple2<String, String> join(Polygon poly, Polygon query) {
-                        if (HelperClass.getPolygonPolygonMinEuclideanDistance(query, poly) <= queryRadius) {
+                    public Tuple2<Long, Long> join(Polygon poly, Polygon query) {
+                        if (HelperClass.getPolygonPolygonMinEuclideanDistance(query, poly) <= queryRadius && HelperClass.isReferenceCell(poly.gridID, poly, query, uGrid)) {
                             return Tuple2.of(poly.gridID, query.gridID);
                         } else {
                             return Tuple2.of(null, null);
@@ -179,34 +203,37 @@ public class JoinQuery implements Serializable {
                     }
                 });
 
-        return joinOutput.filter(new FilterFunction<Tuple2<String, String>>() {
+        return joinOutput.filter(new FilterFunction<Tuple2<Long, Long>>() {
             @Override
-            public boolean filter(Tuple2<String, String> value) throws Exception {
+            public boolean filter(Tuple2<Long, Long> value) throws Exception {
                 return value.f1 != null;
             }
         });
     }
 
     //--------------- (MODIFIED) GRID-BASED JOIN QUERY - POLYGON-POLYGON -----------------//
-    public static DataStream<Tuple2<String,String>> SpatialJoinQueryOptimized(DataStream<Polygon> polygonStream, DataStream<Polygon> queryPolygonStream, int slideStep, int windowSize, double queryRadius, UniformGrid uGrid){
+    public static DataStream<Tuple2<Long,Long>> SpatialJoinQueryOptimized(DataStream<Polygon> polygonStream, DataStream<Polygon> queryPolygonStream, int slideStep, int windowSize, double queryRadius, SpatialIndex uGrid){
         DataStream<Tuple2<Polygon,Boolean>> replicatedQueryStream = JoinQuery.getReplicatedQueryStreamModified(queryPolygonStream, uGrid, queryRadius);
-        DataStream<Polygon> replicatedPolygonStream = polygonStream.flatMap(new HelperClass.ReplicatePolygonStream());
+        DataStream<Polygon> replicatedPolygonStream = polygonStream.flatMap(new HelperClass.ReplicatePolygonStream(true));
 
-        DataStream<Tuple2<String, String>> joinOutput = replicatedPolygonStream.join(replicatedQueryStream)
-                .where(new KeySelector<Polygon, String>() {
+        DataStream<Tuple2<Long, Long>> joinOutput = replicatedPolygonStream.join(replicatedQueryStream)
+                .where(new KeySelector<Polygon, Long>() {
                     @Override
-                    public String getKey(Polygon poly) throws Exception {
+                    public Long getKey(Polygon poly) throws Exception {
                         return poly.gridID;
                     }
-                }).equalTo(new KeySelector<Tuple2<Polygon,Boolean>, String>() {
+                }).equalTo(new KeySelector<Tuple2<Polygon,Boolean>, Long>() {
                     @Override
-                    public String getKey(Tuple2<Polygon,Boolean> query) throws Exception {
+                    public Long getKey(Tuple2<Polygon,Boolean> query) throws Exception {
                         return query.f0.gridID;
                     }
                 }).window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(slideStep)))
-                .apply(new JoinFunction<Polygon, Tuple2<Polygon,Boolean>, Tuple2<String,String>>() {
+                .apply(new JoinFunction<Polygon, Tuple2<Polygon,Boolean>, Tuple2<Long,Long>>() {
                     @Override
-                    public Tuple2<String, String> join(Polygon poly, Tuple2<Polygon,Boolean> query) {
+                    public Tuple2<Long, Long> join(Polygon poly, Tuple2<Polygon,Boolean> query) {
+                        if (!HelperClass.isReferenceCell(poly.gridID, poly, query.f0, uGrid)) { // reported by the cell of the reference point
+                            return Tuple2.of(null, null);
+                        }
                         if (query.f1 == true) {  // guaranteed neighbors
                             return Tuple2.of(poly.gridID, query.f0.gridID);
                         } else { // candidate neighbors
@@ -219,9 +246,9 @@ public class JoinQuery implements Serializable {
                     }
                 });
 
-        return joinOutput.filter(new FilterFunction<Tuple2<String, String>>() {
+        return joinOutput.filter(new FilterFunction<Tuple2<Long, Long>>() {
             @Override
-            public boolean filter(Tuple2<String, String> value) throws Exception {
+            public boolean filter(Tuple2<Long, Long> value) throws Exception {
                 return value.f1 != null;
             }
         });
@@ -233,54 +260,53 @@ public class JoinQuery implements Serializable {
 
 
     //Replicate Query Point Stream for each Neighbouring Grid ID
-    public static DataStream<Point> getReplicatedQueryStream(DataStream<Point> queryPoints, double queryRadius, UniformGrid uGrid){
+    public static DataStream<Point> getReplicatedQueryStream(DataStream<Point> queryPoints, double queryRadius, SpatialIndex uGrid){
 
         return queryPoints.flatMap(new FlatMapFunction<Point, Point>() {
             @Override
             public void flatMap(Point queryPoint, Collector<Point> out) throws Exception {
 
                 // Neighboring cells contain all the cells including Candidate cells, Guaranteed Cells and the query point cell itself
-                HashSet<String> neighboringCells = uGrid.getNeighboringCells(queryRadius, queryPoint);
-
                 // Create duplicated query points
-                for (String gridID: neighboringCells) {
-                    Point p = new Point(queryPoint.point.getX(), queryPoint.point.getY(), gridID);
+                uGrid.forEachNeighboringCell(queryRadius, queryPoint.gridID, gridID -> {
+                    Point p = new Point(queryPoint.x, queryPoint.y, gridID);
                     out.collect(p);
-                }
+                });
             }
         });
     }
 
     //Replicate Query Point Stream for each Candidate and Guaranteed Grid ID
-    public static DataStream<Tuple2<Point,Boolean>> getReplicatedQueryStreamModified(DataStream<Point> queryPoints, double queryRadius, UniformGrid uGrid){
+    public static DataStream<Tuple2<Point,Boolean>> getReplicatedQueryStreamModified(DataStream<Point> queryPoints, double queryRadius, SpatialIndex uGrid){
 
         return queryPoints.flatMap(new FlatMapFunction<Point, Tuple2<Point,Boolean>>() {
             @Override
             public void flatMap(Point queryPoint, Collector<Tuple2<Point,Boolean>> out) throws Exception {
 
-                Set<String> guaranteedNeighboringCells = uGrid.getGuaranteedNeighboringCells(queryRadius, queryPoint.gridID);
-                Set<String> candidateNeighboringCells = uGrid.getCandidateNeighboringCells(queryRadius, queryPoint.gridID, guaranteedNeighboringCells);
-
                 // Create duplicated query points for Guaranteed Neighbors
-                for (String gridID: guaranteedNeighboringCells) {
-                    Point p = new Point(queryPoint.point.getX(), queryPoint.point.getY(), gridID);
+                uGrid.forEachGuaranteedNeighboringCell(queryRadius, queryPoint.gridID, gridID -> {
+                    Point p = new Point(queryPoint.x, queryPoint.y, gridID);
                     out.collect(Tuple2.of(p,true));
-                }
+                });
 
                 // Create duplicated query points for Candidate Neighbors
-                for (String gridID: candidateNeighboringCells) {
-                    Point p = new Point(queryPoint.point.getX(), queryPoint.point.getY(), gridID);
+                uGrid.forEachCandidateNeighboringCell(queryRadius, queryPoint.gridID, gridID -> {
+                    Point p = new Point(queryPoint.x, queryPoint.y, gridID);
                     out.collect(Tuple2.of(p,false));
-                }
+                });
             }
         });
     }
 
     //Replicate Query Polygon Stream for each Neighbouring Grid ID
-    public static DataStream<Polygon> getReplicatedQueryStream(DataStream<Polygon> queryPolygons, UniformGrid uGrid, double queryRadius){
+    //The replicas carry the envelope and id only, the joins compare bounding boxes
+    public static DataStream<Polygon> getReplicatedQueryStream(DataStream<Polygon> queryPolygons, SpatialIndex uGrid, double queryRadius){
         return queryPolygons.flatMap(new RichFlatMapFunction<Polygon, Polygon>() {
             private long parallelism;
             private int uniqueObjID;
+            // Cells of the current polygon, cleared per polygon
+            private final Set<Long> guaranteedNeighboringCells = new HashSet<Long>();
+            private final Set<Long> candidateNeighboringCells = new HashSet<Long>();
 
             @Override
             public void open(Configuration parameters) {
@@ -291,18 +317,11 @@ public class JoinQuery implements Serializable {
 
             @Override
             public void flatMap(Polygon poly, Collector<Polygon> out) throws Exception {
-                Set<String> guaranteedNeighboringCells = uGrid.getGuaranteedNeighboringCells(queryRadius, poly);
-                Set<String> candidateNeighboringCells = uGrid.getCandidateNeighboringCells(queryRadius, poly, guaranteedNeighboringCells);
+                int objID = uniqueObjID;
 
                 // Create duplicated polygon stream for all neighbouring cells based on GridIDs
-                for (String gridID: guaranteedNeighboringCells) {
-                    Polygon p = new Polygon(Arrays.asList(poly.polygon.getCoordinates()), uniqueObjID, poly.gridIDsSet, gridID, poly.boundingBox);
-                    out.collect(p);
-                }
-                for (String gridID: candidateNeighboringCells) {
-                    Polygon p = new Polygon(Arrays.asList(poly.polygon.getCoordinates()), uniqueObjID, poly.gridIDsSet, gridID, poly.boundingBox);
-                    out.collect(p);
-                }
+                forEachReplicaCell(poly, uGrid, queryRadius, guaranteedNeighboringCells, candidateNeighboringCells, (gridID, guaranteed) ->
+                        out.collect(HelperClass.getThinReplica(poly, objID, gridID)));
 
                 // Generating unique ID for each polygon, so that all the replicated tuples are assigned the same unique id
                 uniqueObjID += parallelism;
@@ -311,10 +330,13 @@ public class JoinQuery implements Serializable {
     }
 
     //Replicate Query Polygon Stream for each Candidate and Guaranteed Grid ID
-    public static DataStream<Tuple2<Polygon,Boolean>> getReplicatedQueryStreamModified(DataStream<Polygon> queryPolygons, UniformGrid uGrid, double queryRadius){
+    public static DataStream<Tuple2<Polygon,Boolean>> getReplicatedQueryStreamModified(DataStream<Polygon> queryPolygons, SpatialIndex uGrid, double queryRadius){
         return queryPolygons.flatMap(new RichFlatMapFunction<Polygon, Tuple2<Polygon,Boolean>>() {
             private long parallelism;
             private int uniqueObjID;
+            // Cells of the current polygon, cleared per polygon
+            private final Set<Long> guaranteedNeighboringCells = new HashSet<Long>();
+            private final Set<Long> candidateNeighboringCells = new HashSet<Long>();
 
             @Override
             public void open(Configuration parameters) {
@@ -325,18 +347,11 @@ public class JoinQuery implements Serializable {
 
             @Override
             public void flatMap(Polygon poly, Collector<Tuple2<Polygon,Boolean>> out) throws Exception {
-                Set<String> guaranteedNeighboringCells = uGrid.getGuaranteedNeighboringCells(queryRadius, poly);
-                Set<String> candidateNeighboringCells = uGrid.getCandidateNeighboringCells(queryRadius, poly, guaranteedNeighboringCells);
+                int objID = uniqueObjID;
 
                 // Create duplicated polygon stream based on GridIDs
-                for (String gridID: guaranteedNeighboringCells) {
-                    Polygon p = new Polygon(Arrays.asList(poly.polygon.getCoordinates()), uniqueObjID, poly.gridIDsSet, gridID, poly.boundingBox);
-                    out.collect(Tuple2.of(p,true));
-                }
-                for (String gridID: candidateNeighboringCells) {
-                    Polygon p = new Polygon(Arrays.asList(poly.polygon.getCoordinates()), uniqueObjID, poly.gridIDsSet, gridID, poly.boundingBox);
-                    out.collect(Tuple2.of(p,false));
-                }
+                forEachReplicaCell(poly, uGrid, queryRadius, guaranteedNeighboringCells, candidateNeighboringCells, (gridID, guaranteed) ->
+                        out.collect(Tuple2.of(HelperClass.getThinReplica(poly, objID, gridID), guaranteed)));
 
                 // Generating unique ID for each polygon, so that all the replicated tuples are assigned the same unique id
                 uniqueObjID += parallelism;
@@ -344,7 +359,30 @@ public class JoinQuery implements Serializable {
         });
     }
 
+    // Visits the guaranteed, then the candidate neighboring cells of the cells of a polygon, each cell once; the sets are cleared and
+    // reused by the caller, so that the polygon replication does not build the neighboring cell sets of every polygon cell
+    private static void forEachReplicaCell(Polygon poly, SpatialIndex uGrid, double queryRadius, Set<Long> guaranteedNeighboringCells, Set<Long> candidateNeighboringCells, ReplicaCellConsumer action) {
+        guaranteedNeighboringCells.clear();
+        candidateNeighboringCells.clear();
 
-}
-
+        for (Long cellID : poly.gridIDsSet) {
+            uGrid.forEachGuaranteedNeighboringCell(queryRadius, cellID, gridID -> {
+                if (guaranteedNeighboringCells.add(gridID)) {
+                    action.accept(gridID, true);
+                }
+            });
+        }
+        // Candidate cells of a polygon cell may be guaranteed cells of another polygon cell
+        for (Long cellID : poly.gridIDsSet) {
+            uGrid.forEachCandidateNeighboringCell(queryRadius, cellID, gridID -> {
+                if (!guaranteedNeighboringCells.contains(gridID) && candidateNeighboringCells.add(gridID)) {
+                    action.accept(gridID, false);
+                }
+            });
+        }
+    }
 
+    private interface ReplicaCellConsumer {
+        void accept(long gridID, boolean guaranteed);
+    }
+}
@@ -16,21 +16,32 @@ limitations under the License.
 
 package GeoFlink.spatialOperators;
 
-import GeoFlink.spatialIndices.UniformGrid;
+import GeoFlink.spatialIndices.AdaptiveGrid;
+import GeoFlink.spatialIndices.CellBitmap;
+import GeoFlink.spatialIndices.CellDensitySketch;
+import GeoFlink.spatialIndices.GridPartitioner;
+import GeoFlink.spatialIndices.QuadTree;
+import GeoFlink.spatialIndices.SpatialIndex;
 import GeoFlink.spatialObjects.Point;
+import GeoFlink.spatialObjects.PointBatch;
 import GeoFlink.spatialObjects.Polygon;
 import GeoFlink.utils.Comparators;
 import GeoFlink.utils.HelperClass;
+import GeoFlink.utils.OffHeapCellWindow;
 import GeoFlink.utils.SpatialDistanceComparator;
+import org.apache.flink.api.common.functions.AggregateFunction;
 import org.apache.flink.api.common.functions.FilterFunction;
 import org.apache.flink.api.common.functions.FlatMapFunction;
+import org.apache.flink.api.common.functions.MapFunction;
 import org.apache.flink.api.java.functions.KeySelector;
 import org.apache.flink.api.java.tuple.Tuple;
 import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.api.java.tuple.Tuple3;
 import org.apache.flink.api.java.tuple.Tuple5;
 import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.datastream.DataStreamUtils;
 import org.apache.flink.streaming.api.datastream.IterativeStream;
+import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
 import org.apache.flink.streaming.api.functions.windowing.AllWindowFunction;
 import org.apache.flink.streaming.api.functions.windowing.WindowFunction;
 import org.apache.flink.streaming.api.windowing.assigners.SlidingProcessingTimeWindows;
@@ -44,10 +55,13 @@ import java.util.*;
 
 public class KNNQuery implements Serializable {
 
+    // Cell key of the feedback (control) tuple of the iterative kNN
+    private static final long CONTROL_TUPLE_CELL_KEY = Long.MAX_VALUE;
+
     public KNNQuery() {}
 
     //--------------- GRID-BASED kNN QUERY - POINT - Iterative Distributed -----------------//
-    public static DataStream<PriorityQueue<Tuple2<Point, Double>>> SpatialIterativeKNNQuery(DataStream<Point> pointStream, Point queryPoint, Integer k, int windowSize, int windowSlideStep, UniformGrid uGrid) throws IOException {
+    public static DataStream<PriorityQueue<Tuple2<Point, Double>>> SpatialIterativeKNNQuery(DataStream<Point> pointStream, Point queryPoint, Integer k, int windowSize, int windowSlideStep, SpatialIndex uGrid) throws IOException {
 
         // Control tuple oID = -99999
         IterativeStream<Point> iterativeKeyedStream = pointStream.iterate();
@@ -55,27 +69,25 @@ public class KNNQuery implements Serializable {
         // Iteration Body
         DataStream<Point> filteredStream = iterativeKeyedStream.filter(new FilterFunction<Point>() {
 
-            int filterationNeighboringLayers = 0;
+            CellBitmap filterationCells = null;
             double queryRadiusMultFactor = 1.5;
-            ArrayList<Integer> queryCellIndices = HelperClass.getIntCellIndices(queryPoint.gridID);
 
             @Override
             public boolean filter(Point p) throws Exception {
 
-                // Recompute filterationCellsSet on the arrival of control tuple
-                if(p.gridID.equals("9999999999")){
-                    filterationNeighboringLayers = uGrid.getCandidateNeighboringLayers(p.point.getX() * queryRadiusMultFactor);
+                // Recompute filterationCells on the arrival of control tuple
+                if(p.gridID == CONTROL_TUPLE_CELL_KEY){
+                    filterationCells = new CellBitmap(uGrid.getNeighboringCells(p.x * queryRadiusMultFactor, queryPoint));
                     //System.out.println("Received feedback tuple");
                     return false;
                 }
 
                 // Filtering out the kNN out of range tuples
-                if(filterationNeighboringLayers == 0){
+                if(filterationCells == null){
                     return true;
                 }
                 else {
-                    ArrayList<Integer> pointCellIndices = HelperClass.getIntCellIndices(p.gridID);
-                    return (HelperClass.pointWithinQueryRange(pointCellIndices, queryCellIndices, filterationNeighboringLayers));
+                    return filterationCells.contains(p.gridID);
                 }
             }
         });
@@ -95,11 +107,11 @@ public class KNNQuery implements Serializable {
                         for (Point p : inputTuples) {
 
                             if (kNNPQ.size() < k) {
-                                double distance = HelperClass.getPointPointEuclideanDistance(p.point.getX(), p.point.getY(), queryPoint.point.getX(), queryPoint.point.getY());
+                                double distance = HelperClass.getPointPointEuclideanDistance(p.x, p.y, queryPoint.x, queryPoint.y);
                                 kNNPQ.offer(new Tuple2<Point, Double>(p, distance));
                             } else {
-                                double distance = HelperClass.getPointPointEuclideanDistance(p.point.getX(), p.point.getY(), queryPoint.point.getX(), queryPoint.point.getY());
-                                double largestDistInPQ = HelperClass.getPointPointEuclideanDistance(kNNPQ.peek().f0.point.getX(), kNNPQ.peek().f0.point.getY(), queryPoint.point.getX(), queryPoint.point.getY());
+                                double distance = HelperClass.getPointPointEuclideanDistance(p.x, p.y, queryPoint.x, queryPoint.y);
+                                double largestDistInPQ = HelperClass.getPointPointEuclideanDistance(kNNPQ.peek().f0.x, kNNPQ.peek().f0.y, queryPoint.x, queryPoint.y);
 
                                 if (largestDistInPQ > distance) { // remove element with the largest distance and add the new element
                                     kNNPQ.poll();
@@ -152,7 +164,7 @@ public class KNNQuery implements Serializable {
                         // Adding the control tuple
                         double largestDistInkNNPQ = kNNPQWinAll.peek().f1;
                         //Point feedbackTuple = new Point(-99999, largestDistInkNNPQ, largestDistInkNNPQ, "9999999999" );
-                        Point feedbackTuple = new Point(largestDistInkNNPQ, largestDistInkNNPQ, "9999999999" );
+                        Point feedbackTuple = new Point(largestDistInkNNPQ, largestDistInkNNPQ, CONTROL_TUPLE_CELL_KEY );
                         controlPQ.offer(new Tuple2<Point, Double>(feedbackTuple, -99999.99999));
 
                         output.collect(controlPQ);
@@ -184,41 +196,239 @@ public class KNNQuery implements Serializable {
     }
 
     //--------------- GRID-BASED kNN QUERY - POINT -----------------//
-    public static DataStream<Tuple3<Long, Long, PriorityQueue<Tuple2<Point, Double>>>> SpatialKNNQuery(DataStream<Point> pointStream, Point queryPoint, double queryRadius, Integer k, int windowSize, int windowSlideStep, UniformGrid uGrid) throws IOException {
+    public static DataStream<Tuple3<Long, Long, PriorityQueue<Tuple2<Point, Double>>>> SpatialKNNQuery(DataStream<Point> pointStream, Point queryPoint, double queryRadius, Integer k, int windowSize, int windowSlideStep, SpatialIndex uGrid) throws IOException {
+        return SpatialKNNQuery(pointStream, queryPoint, queryRadius, k, windowSize, windowSlideStep, uGrid, (GridPartitioner) null);
+    }
+
+    // gridPartitioner: cell to subtask assignment of the cell-wise kNN, hash partitioning of the cells if null
+    public static DataStream<Tuple3<Long, Long, PriorityQueue<Tuple2<Point, Double>>>> SpatialKNNQuery(DataStream<Point> pointStream, Point queryPoint, double queryRadius, Integer k, int windowSize, int windowSlideStep, SpatialIndex uGrid, GridPartitioner gridPartitioner) throws IOException {
+        return SpatialKNNQuery(pointStream, queryPoint, queryRadius, k, windowSize, windowSlideStep, uGrid, gridPartitioner, false);
+    }
+
+    // offHeapWindow: the cell-wise kNN keeps the window contents as binary records in direct memory (OffHeapCellWindow)
+    public static DataStream<Tuple3<Long, Long, PriorityQueue<Tuple2<Point, Double>>>> SpatialKNNQuery(DataStream<Point> pointStream, Point queryPoint, double queryRadius, Integer k, int windowSize, int windowSlideStep, SpatialIndex uGrid, GridPartitioner gridPartitioner, boolean offHeapWindow) throws IOException {
+
+        Set<Long> guaranteedNeighboringCells = uGrid.getGuaranteedNeighboringCells(queryRadius, queryPoint.gridID);
+        Set<Long> candidateNeighboringCells = uGrid.getCandidateNeighboringCells(queryRadius, queryPoint.gridID, guaranteedNeighboringCells);
+
+        // Cell bitmaps used by the filters
+        CellBitmap neighboringCellsBitmap = new CellBitmap(guaranteedNeighboringCells, candidateNeighboringCells);
+        CellBitmap guaranteedCellsBitmap = new CellBitmap(guaranteedNeighboringCells);
+
+        DataStream<Point> filteredPoints = pointStream.filter(new HelperClass.CellPruningFilter(guaranteedCellsBitmap, neighboringCellsBitmap, uGrid));
+
+        return getWindowedKNN(filteredPoints, queryPoint, k, windowSize, windowSlideStep, gridPartitioner, offHeapWindow);
+    }
+
+    //--------------- GRID-BASED kNN QUERY - POINT - BATCHED -----------------//
+    // Batches of SpatialStream.PointBatchStream, pruned by their cell; the cell-wise kNN loops over the batch coordinates and only
+    // materializes the points entering the PQ, the integrated kNN is the same as of the point streams
+    public static DataStream<Tuple3<Long, Long, PriorityQueue<Tuple2<Point, Double>>>> SpatialKNNQueryBatched(DataStream<PointBatch> batchStream, Point queryPoint, double queryRadius, Integer k, int windowSize, int windowSlideStep, SpatialIndex uGrid, GridPartitioner gridPartitioner) throws IOException {
 
-        Set<String> guaranteedNeighboringCells = uGrid.getGuaranteedNeighboringCells(queryRadius, queryPoint.gridID);
-        Set<String> candidateNeighboringCells = uGrid.getCandidateNeighboringCells(queryRadius, queryPoint.gridID, guaranteedNeighboringCells);
+        Set<Long> guaranteedNeighboringCells = uGrid.getGuaranteedNeighboringCells(queryRadius, queryPoint.gridID);
+        Set<Long> candidateNeighboringCells = uGrid.getCandidateNeighboringCells(queryRadius, queryPoint.gridID, guaranteedNeighboringCells);
+        CellBitmap neighboringCellsBitmap = new CellBitmap(guaranteedNeighboringCells, candidateNeighboringCells);
 
-        DataStream<Point> filteredPoints = pointStream.filter(new FilterFunction<Point>() {
+        DataStream<PriorityQueue<Tuple2<Point, Double>>> windowedKNN = batchStream.filter(new FilterFunction<PointBatch>() {
             @Override
-            public boolean filter(Point point) throws Exception {
-                return ((candidateNeighboringCells.contains(point.gridID)) || (guaranteedNeighboringCells.contains(point.gridID)));
+            public boolean filter(PointBatch batch) throws Exception {
+                return neighboringCellsBitmap.contains(batch.gridID);
             }
-        });
+        }).keyBy(new GridPartitioner.PointBatchKeySelector(gridPartitioner))
+                .window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(windowSlideStep)))
+                .apply(new WindowFunction<PointBatch, PriorityQueue<Tuple2<Point, Double>>, Long, TimeWindow>() {
+                    @Override
+                    public void apply(Long key, TimeWindow timeWindow, Iterable<PointBatch> batches, Collector<PriorityQueue<Tuple2<Point, Double>>> outputStream) throws Exception {
+                        PriorityQueue<Tuple2<Point, Double>> kNNPQ = new PriorityQueue<Tuple2<Point, Double>>(k, new Comparators.inTuplePointDistanceComparator());
+
+                        for (PointBatch batch : batches) {
+                            for (int i = 0; i < batch.size(); i++) {
+                                double dx = batch.getX(i) - queryPoint.x;
+                                double dy = batch.getY(i) - queryPoint.y;
+                                // Unboxed equivalent of HelperClass.getPointPointEuclideanDistance
+                                double distance = Math.sqrt(dy * dy + dx * dx);
+                                if (kNNPQ.size() < k) {
+                                    kNNPQ.offer(new Tuple2<Point, Double>(batch.getPoint(i), distance));
+                                } else if (kNNPQ.peek().f1 > distance) { // remove element with the largest distance and add the new element
+                                    kNNPQ.poll();
+                                    kNNPQ.offer(new Tuple2<Point, Double>(batch.getPoint(i), distance));
+                                }
+                            }
+                        }
+
+                        outputStream.collect(kNNPQ);
+                    }
+                }).name("Windowed (Apply) Grid Based Batched");
+
+        return getWindowAllKNN(windowedKNN, k, windowSize, windowSlideStep);
+    }
 
-        DataStream<PriorityQueue<Tuple2<Point, Double>>> windowedKNN = filteredPoints.keyBy(new KeySelector<Point, String>() {
+    //--------------- GRID-BASED kNN QUERY - POINT - ADAPTIVE GRID -----------------//
+    public static DataStream<Tuple3<Long, Long, PriorityQueue<Tuple2<Point, Double>>>> SpatialKNNQuery(DataStream<Point> pointStream, Point queryPoint, double queryRadius, Integer k, int windowSize, int windowSlideStep, QuadTree initialLayout, DataStream<QuadTree> layoutStream) throws IOException {
+
+        // Points of the guaranteed and candidate cells w.r.t. the latest layout
+        DataStream<Point> filteredPoints = pointStream.connect(layoutStream.broadcast(AdaptiveGrid.layoutDescriptor))
+                .process(new AdaptiveGrid.AssignNeighboringCells(initialLayout, queryPoint, queryRadius))
+                .map(new MapFunction<Tuple2<Point, Boolean>, Point>() {
+                    @Override
+                    public Point map(Tuple2<Point, Boolean> p) throws Exception {
+                        return p.f0;
+                    }
+                });
+
+        return getWindowedKNN(filteredPoints, queryPoint, k, windowSize, windowSlideStep, null, false);
+    }
+
+    //--------------- GRID-BASED kNN QUERY - POINT - DENSITY-BASED RADIUS -----------------//
+    // Only the points of the cells within the radius r_e estimated to hold k points of a window under the latest density sketch
+    // (updateInterval, decayFactor: see CellDensitySketch.getSketchStream) go through the cell-wise windows. The points of the other
+    // cells within queryRadius are farther than r_e; each filter subtask keeps the k nearest of them per window locally (no shuffle).
+    // The kNN of the r_e cells is exact if it holds k points within the smallest r_e of the window, otherwise the kNN is re-run
+    // including the local k nearest of the other cells, i.e., over all the cells within queryRadius
+    public static DataStream<Tuple3<Long, Long, PriorityQueue<Tuple2<Point, Double>>>> SpatialKNNQuery(DataStream<Point> pointStream, Point queryPoint, double queryRadius, Integer k, int windowSize, int windowSlideStep, SpatialIndex uGrid, DataStream<CellDensitySketch> sketchStream, int updateInterval, double decayFactor) throws IOException {
+
+        double windowScale = CellDensitySketch.getWindowScale(windowSize, updateInterval, decayFactor);
+        SingleOutputStreamOperator<Tuple2<Point, Double>> filteredPoints = pointStream.connect(sketchStream.broadcast(CellDensitySketch.sketchDescriptor))
+                .process(new CellDensitySketch.KNNRadiusFilter(uGrid, queryPoint, queryRadius, k, windowScale));
+
+        // Cell-wise kNN of the r_e cells: (kNN, smallest r_e, true)
+        DataStream<Tuple3<PriorityQueue<Tuple2<Point, Double>>, Double, Boolean>> windowedKNN = filteredPoints.keyBy(new KeySelector<Tuple2<Point, Double>, Long>() {
             @Override
-            public String getKey(Point p) throws Exception {
-                return p.gridID;
+            public Long getKey(Tuple2<Point, Double> p) throws Exception {
+                return p.f0.gridID;
             }
         }).window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(windowSlideStep)))
-                .apply(new WindowFunction<Point, PriorityQueue<Tuple2<Point, Double>>, String, TimeWindow>() {
+                .apply(new WindowFunction<Tuple2<Point, Double>, Tuple3<PriorityQueue<Tuple2<Point, Double>>, Double, Boolean>, Long, TimeWindow>() {
+                    @Override
+                    public void apply(Long gridID, TimeWindow timeWindow, Iterable<Tuple2<Point, Double>> inputTuples, Collector<Tuple3<PriorityQueue<Tuple2<Point, Double>>, Double, Boolean>> outputStream) throws Exception {
+                        PriorityQueue<Tuple2<Point, Double>> kNNPQ = new PriorityQueue<Tuple2<Point, Double>>(k, new Comparators.inTuplePointDistanceComparator());
+                        // The estimated radius may change within a window
+                        double minEstimatedRadius = Double.MAX_VALUE;
+
+                        for (Tuple2<Point, Double> p : inputTuples) {
+                            minEstimatedRadius = Math.min(minEstimatedRadius, p.f1);
+                            double distance = HelperClass.getPointPointEuclideanDistance(p.f0.x, p.f0.y, queryPoint.x, queryPoint.y);
+                            offerKNN(kNNPQ, Tuple2.of(p.f0, distance), k);
+                        }
+
+                        outputStream.collect(Tuple3.of(kNNPQ, minEstimatedRadius, true));
+                    }
+                }).name("Windowed (Apply) Density Based");
+
+        // Local kNN of the other cells per filter subtask: (kNN, smallest r_e, false), the stream is already partitioned by subtaskKey
+        DataStream<Tuple3<PriorityQueue<Tuple2<Point, Double>>, Double, Boolean>> ringKNN = DataStreamUtils.reinterpretAsKeyedStream(
+                filteredPoints.getSideOutput(CellDensitySketch.KNNRadiusFilter.ringPointTag), new KeySelector<Tuple3<Point, Double, Long>, Long>() {
+                    @Override
+                    public Long getKey(Tuple3<Point, Double, Long> p) throws Exception {
+                        return p.f2;
+                    }
+                }).window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(windowSlideStep)))
+                .aggregate(new RingKNNAggregateFunction(queryPoint, k)).name("Windowed (Aggregate) Density Based Ring");
+
+        return windowedKNN.union(ringKNN).windowAll(SlidingProcessingTimeWindows.of(Time.seconds(windowSize),Time.seconds(windowSlideStep)))
+                .apply(new AllWindowFunction<Tuple3<PriorityQueue<Tuple2<Point, Double>>, Double, Boolean>, Tuple3<Long, Long, PriorityQueue<Tuple2<Point, Double>>>, TimeWindow>() {
+                    @Override
+                    public void apply(TimeWindow timeWindow, Iterable<Tuple3<PriorityQueue<Tuple2<Point, Double>>, Double, Boolean>> input, Collector<Tuple3<Long, Long, PriorityQueue<Tuple2<Point, Double>>>> output) throws Exception {
+                        PriorityQueue<Tuple2<Point, Double>> kNNPQWinAll = new PriorityQueue<Tuple2<Point, Double>>(k, new Comparators.inTuplePointDistanceComparator());
+                        double minEstimatedRadius = Double.MAX_VALUE;
+
+                        for (Tuple3<PriorityQueue<Tuple2<Point, Double>>, Double, Boolean> pq : input) {
+                            minEstimatedRadius = Math.min(minEstimatedRadius, pq.f1);
+                            if (pq.f2) {
+                                for (Tuple2<Point, Double> pqTuple : pq.f0) {
+                                    offerKNN(kNNPQWinAll, pqTuple, k);
+                                }
+                            }
+                        }
+
+                        // A point of the other cells may be nearer than the k-th neighbor within r_e, re-run with queryRadius
+                        if (kNNPQWinAll.size() < k || kNNPQWinAll.peek().f1 > minEstimatedRadius) {
+                            for (Tuple3<PriorityQueue<Tuple2<Point, Double>>, Double, Boolean> pq : input) {
+                                if (!pq.f2) {
+                                    for (Tuple2<Point, Double> pqTuple : pq.f0) {
+                                        offerKNN(kNNPQWinAll, pqTuple, k);
+                                    }
+                                }
+                            }
+                        }
+
+                        output.collect(Tuple3.of(timeWindow.getStart(), timeWindow.getEnd(), kNNPQWinAll));
+                    }
+                }).name("Windowed (Apply) All Density Based");
+    }
+
+    // k nearest points of a window and the smallest estimated radius of the points
+    public static class RingKNNAggregateFunction implements AggregateFunction<Tuple3<Point, Double, Long>, Tuple3<PriorityQueue<Tuple2<Point, Double>>, Double, Boolean>, Tuple3<PriorityQueue<Tuple2<Point, Double>>, Double, Boolean>> {
+
+        private final Point queryPoint;
+        private final int k;
+
+        public RingKNNAggregateFunction(Point queryPoint, int k) {
+            this.queryPoint = queryPoint;
+            this.k = k;
+        }
+
+        @Override
+        public Tuple3<PriorityQueue<Tuple2<Point, Double>>, Double, Boolean> createAccumulator() {
+            return Tuple3.of(new PriorityQueue<Tuple2<Point, Double>>(k, new Comparators.inTuplePointDistanceComparator()), Double.MAX_VALUE, false);
+        }
+
+        @Override
+        public Tuple3<PriorityQueue<Tuple2<Point, Double>>, Double, Boolean> add(Tuple3<Point, Double, Long> p, Tuple3<PriorityQueue<Tuple2<Point, Double>>, Double, Boolean> kNN) {
+            double distance = HelperClass.getPointPointEuclideanDistance(p.f0.x, p.f0.y, queryPoint.x, queryPoint.y);
+            offerKNN(kNN.f0, Tuple2.of(p.f0, distance), k);
+            kNN.f1 = Math.min(kNN.f1, p.f1);
+            return kNN;
+        }
+
+        @Override
+        public Tuple3<PriorityQueue<Tuple2<Point, Double>>, Double, Boolean> getResult(Tuple3<PriorityQueue<Tuple2<Point, Double>>, Double, Boolean> kNN) {
+            return kNN;
+        }
+
+        @Override
+        public Tuple3<PriorityQueue<Tuple2<Point, Double>>, Double, Boolean> merge(Tuple3<PriorityQueue<Tuple2<Point, Double>>, Double, Boolean> kNN1, Tuple3<PriorityQueue<Tuple2<Point, Double>>, Double, Boolean> kNN2) {
+            for (Tuple2<Point, Double> pqTuple : kNN2.f0) {
+                offerKNN(kNN1.f0, pqTuple, k);
+            }
+            kNN1.f1 = Math.min(kNN1.f1, kNN2.f1);
+            return kNN1;
+        }
+    }
+
+    // Offers a point to a kNN PQ maintained in descending order of the distances
+    private static void offerKNN(PriorityQueue<Tuple2<Point, Double>> kNNPQ, Tuple2<Point, Double> pqTuple, int k) {
+        if (kNNPQ.size() < k) {
+            kNNPQ.offer(pqTuple);
+        }
+        else if (kNNPQ.peek().f1 > pqTuple.f1) { // remove element with the largest distance and add the new element
+            kNNPQ.poll();
+            kNNPQ.offer(pqTuple);
+        }
+    }
+
+    // Cell-wise kNN followed by the integrated kNN of each window
+    private static DataStream<Tuple3<Long, Long, PriorityQueue<Tuple2<Point, Double>>>> getWindowedKNN(DataStream<Point> filteredPoints, Point queryPoint, Integer k, int windowSize, int windowSlideStep, GridPartitioner gridPartitioner, boolean offHeapWindow) {
+
+        DataStream<PriorityQueue<Tuple2<Point, Double>>> windowedKNN = offHeapWindow ? getOffHeapWindowedKNN(filteredPoints, queryPoint, k, windowSize, windowSlideStep, gridPartitioner) : filteredPoints.keyBy(new GridPartitioner.PointKeySelector(gridPartitioner))
+                .window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(windowSlideStep)))
+                .apply(new WindowFunction<Point, PriorityQueue<Tuple2<Point, Double>>, Long, TimeWindow>() {
 
                     //PriorityQueue<Tuple2<Point, Double>> kNNPQ = new PriorityQueue<Tuple2<Point, Double>>(k, new SpatialDistanceComparator(queryPoint));
                     PriorityQueue<Tuple2<Point, Double>> kNNPQ = new PriorityQueue<Tuple2<Point, Double>>(k, new Comparators.inTuplePointDistanceComparator());
 
                     @Override
-                    public void apply(String gridID, TimeWindow timeWindow, Iterable<Point> inputTuples, Collector<PriorityQueue<Tuple2<Point, Double>>> outputStream) throws Exception {
+                    public void apply(Long gridID, TimeWindow timeWindow, Iterable<Point> inputTuples, Collector<PriorityQueue<Tuple2<Point, Double>>> outputStream) throws Exception {
                         kNNPQ.clear();
 
                         for (Point p : inputTuples) {
 
                             if (kNNPQ.size() < k) {
-                                double distance = HelperClass.getPointPointEuclideanDistance(p.point.getX(), p.point.getY(), queryPoint.point.getX(), queryPoint.point.getY());
+                                double distance = HelperClass.getPointPointEuclideanDistance(p.x, p.y, queryPoint.x, queryPoint.y);
                                 kNNPQ.offer(new Tuple2<Point, Double>(p, distance));
                             } else {
-                                double distance = HelperClass.getPointPointEuclideanDistance(p.point.getX(), p.point.getY(), queryPoint.point.getX(), queryPoint.point.getY());
-                                //double largestDistInPQ = HelperClass.getPointPointEuclideanDistance(kNNPQ.peek().f0.point.getX(), kNNPQ.peek().f0.point.getY(), queryPoint.point.getX(), queryPoint.point.getY());
+                                double distance = HelperClass.getPointPointEuclideanDistance(p.x, p.y, queryPoint.x, queryPoint.y);
+                                //double largestDistInPQ = HelperClass.getPointPointEuclideanDistance(kNNPQ.peek().f0.x, kNNPQ.peek().f0.y, queryPoint.x, queryPoint.y);
                                 // PQ is maintained in descending order with the object with the largest distance from query point at the top/peek
                                 double largestDistInPQ = kNNPQ.peek().f1;
 
@@ -234,8 +444,12 @@ public class KNNQuery implements Serializable {
                     }
                 }).name("Windowed (Apply) Grid Based");
 
+        return getWindowAllKNN(windowedKNN, k, windowSize, windowSlideStep);
+    }
+
+    // windowAll to Generate integrated kNN of the cell-wise kNN
+    private static DataStream<Tuple3<Long, Long, PriorityQueue<Tuple2<Point, Double>>>> getWindowAllKNN(DataStream<PriorityQueue<Tuple2<Point, Double>>> windowedKNN, Integer k, int windowSize, int windowSlideStep) {
 
-        // windowAll to Generate integrated kNN -
         DataStream<Tuple3<Long, Long, PriorityQueue<Tuple2<Point, Double>>>> windowAllKNN = windowedKNN
                 .windowAll(SlidingProcessingTimeWindows.of(Time.seconds(windowSize),Time.seconds(windowSlideStep)))
                 .apply(new AllWindowFunction<PriorityQueue<Tuple2<Point, Double>>, Tuple3<Long, Long, PriorityQueue<Tuple2<Point, Double>>>, TimeWindow>() {
@@ -245,7 +459,8 @@ public class KNNQuery implements Serializable {
 
                     @Override
                     public void apply(TimeWindow timeWindow, Iterable<PriorityQueue<Tuple2<Point, Double>>> input, Collector<Tuple3<Long, Long, PriorityQueue<Tuple2<Point, Double>>>> output) throws Exception {
-                        kNNPQWinAll.clear();
+                        // A new PQ per window, the emitted PQ goes to the downstream operators without a copy if object reuse is enabled
+                        kNNPQWinAll = new PriorityQueue<Tuple2<Point, Double>>(k, new Comparators.inTuplePointDistanceComparator());
                         // Iterate through all PriorityQueues
                         for (PriorityQueue<Tuple2<Point, Double>> pq : input) {
                             for(Tuple2<Point, Double> pqTuple: pq) {
@@ -272,37 +487,59 @@ public class KNNQuery implements Serializable {
     }
 
 
+    // Cell-wise kNN over the off-heap window records, only the k nearest points of a cell are materialized
+    private static DataStream<PriorityQueue<Tuple2<Point, Double>>> getOffHeapWindowedKNN(DataStream<Point> filteredPoints, Point queryPoint, Integer k, int windowSize, int windowSlideStep, GridPartitioner gridPartitioner) {
+
+        return OffHeapCellWindow.process(filteredPoints.keyBy(new GridPartitioner.PointKeySelector(gridPartitioner)),
+                new OffHeapCellWindow<PriorityQueue<Tuple2<Point, Double>>>(windowSize, windowSlideStep) {
+                    @Override
+                    public void evaluate(long key, long windowStart, long windowEnd, OffHeapCellWindow.RecordCursor records, Collector<PriorityQueue<Tuple2<Point, Double>>> outputStream) throws Exception {
+                        PriorityQueue<Tuple2<Point, Double>> kNNPQ = new PriorityQueue<Tuple2<Point, Double>>(k, new Comparators.inTuplePointDistanceComparator());
+
+                        while (records.next()) {
+                            double distance = HelperClass.getPointPointEuclideanDistance(records.getX(), records.getY(), queryPoint.x, queryPoint.y);
+                            if (kNNPQ.size() < k) {
+                                kNNPQ.offer(new Tuple2<Point, Double>(records.toPoint(), distance));
+                            } else if (kNNPQ.peek().f1 > distance) { // remove element with the largest distance and add the new element
+                                kNNPQ.poll();
+                                kNNPQ.offer(new Tuple2<Point, Double>(records.toPoint(), distance));
+                            }
+                        }
+
+                        outputStream.collect(kNNPQ);
+                    }
+                }).name("Windowed (Off-heap) Grid Based");
+    }
+
+
     //--------------- GRID-BASED kNN QUERY - POINT-POLYGON -----------------//
     //Outputs a stream of winStartTime, winEndTime and a PQ
-    public static DataStream<Tuple3<Long, Long, PriorityQueue<Tuple2<Polygon, Double>>>> SpatialKNNQuery(DataStream<Polygon> polygonStream, Point queryPoint, double queryRadius, Integer k, UniformGrid uGrid, int windowSize, int windowSlideStep) throws IOException {
-
-        // Generate a replicated polygon stream to know the grid IDs of each polygon
-        DataStream<Polygon> replicatedPolygonStream = polygonStream.flatMap(new HelperClass.ReplicatePolygonStream());
+    public static DataStream<Tuple3<Long, Long, PriorityQueue<Tuple2<Polygon, Double>>>> SpatialKNNQuery(DataStream<Polygon> polygonStream, Point queryPoint, double queryRadius, Integer k, SpatialIndex uGrid, int windowSize, int windowSlideStep) throws IOException {
 
         // Compute the neighboring layers cells for filtering
-        Set<String> guaranteedNeighboringCells = uGrid.getGuaranteedNeighboringCells(queryRadius, queryPoint.gridID);
-        Set<String> candidateNeighboringCells = uGrid.getCandidateNeighboringCells(queryRadius, queryPoint.gridID, guaranteedNeighboringCells);
+        Set<Long> guaranteedNeighboringCells = uGrid.getGuaranteedNeighboringCells(queryRadius, queryPoint.gridID);
+        Set<Long> candidateNeighboringCells = uGrid.getCandidateNeighboringCells(queryRadius, queryPoint.gridID, guaranteedNeighboringCells);
+
+        // Cell bitmaps used by the filters
+        CellBitmap neighboringCellsBitmap = new CellBitmap(guaranteedNeighboringCells, candidateNeighboringCells);
+        CellBitmap guaranteedCellsBitmap = new CellBitmap(guaranteedNeighboringCells);
 
+        // Send each polygon once, to one of its cells in the query neighborhood, instead of replicating it to all its cells
         // Filter out the polygons which lie greater than queryRadius of the query point
-        DataStream<Polygon> filteredPolygons = replicatedPolygonStream.filter(new FilterFunction<Polygon>() {
-            @Override
-            public boolean filter(Polygon poly) throws Exception {
-                return ((candidateNeighboringCells.contains(poly.gridID)) || (guaranteedNeighboringCells.contains(poly.gridID)));
-            }
-        });
+        DataStream<Polygon> filteredPolygons = polygonStream.flatMap(new HelperClass.OwnerCellPolygonStream(guaranteedCellsBitmap, neighboringCellsBitmap));
 
-        DataStream<PriorityQueue<Tuple2<Polygon, Double>>> windowedKNN = filteredPolygons.keyBy(new KeySelector<Polygon, String>() {
+        DataStream<PriorityQueue<Tuple2<Polygon, Double>>> windowedKNN = filteredPolygons.keyBy(new KeySelector<Polygon, Long>() {
             @Override
-            public String getKey(Polygon poly) throws Exception {
+            public Long getKey(Polygon poly) throws Exception {
                 return poly.gridID;
             }
         }).window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(windowSlideStep)))
-                .apply(new WindowFunction<Polygon, PriorityQueue<Tuple2<Polygon, Double>>, String, TimeWindow>() {
+                .apply(new WindowFunction<Polygon, PriorityQueue<Tuple2<Polygon, Double>>, Long, TimeWindow>() {
 
                     PriorityQueue<Tuple2<Polygon, Double>> kNNPQ = new PriorityQueue<Tuple2<Polygon, Double>>(k, new Comparators.inTuplePolygonDistanceComparator());
 
                     @Override
-                    public void apply(String gridID, TimeWindow timeWindow, Iterable<Polygon> inputTuples, Collector<PriorityQueue<Tuple2<Polygon, Double>>> outputStream) throws Exception {
+                    public void apply(Long gridID, TimeWindow timeWindow, Iterable<Polygon> inputTuples, Collector<PriorityQueue<Tuple2<Polygon, Double>>> outputStream) throws Exception {
                         kNNPQ.clear();
 
                         for (Polygon poly : inputTuples) {
@@ -400,35 +637,32 @@ public class KNNQuery implements Serializable {
 
 
     //--------------- GRID-BASED kNN QUERY - POLYGON-POLYGON -----------------//
-    public static DataStream<Tuple3<Long, Long, PriorityQueue<Tuple2<Polygon, Double>>>> SpatialKNNQuery(DataStream<Polygon> polygonStream, Polygon queryPolygon, double queryRadius, Integer k, UniformGrid uGrid, int windowSize, int windowSlideStep) throws IOException {
-
-        // Generate a replicated polygon stream to know the grid IDs of each polygon
-        DataStream<Polygon> replicatedPolygonStream = polygonStream.flatMap(new HelperClass.ReplicatePolygonStream());
+    public static DataStream<Tuple3<Long, Long, PriorityQueue<Tuple2<Polygon, Double>>>> SpatialKNNQuery(DataStream<Polygon> polygonStream, Polygon queryPolygon, double queryRadius, Integer k, SpatialIndex uGrid, int windowSize, int windowSlideStep) throws IOException {
 
         // Compute the neighboring layers cells for filtering
-        Set<String> guaranteedNeighboringCells = uGrid.getGuaranteedNeighboringCells(queryRadius, queryPolygon);
-        Set<String> candidateNeighboringCells = uGrid.getCandidateNeighboringCells(queryRadius, queryPolygon, guaranteedNeighboringCells);
+        Set<Long> guaranteedNeighboringCells = uGrid.getGuaranteedNeighboringCells(queryRadius, queryPolygon);
+        Set<Long> candidateNeighboringCells = uGrid.getCandidateNeighboringCells(queryRadius, queryPolygon, guaranteedNeighboringCells);
+
+        // Cell bitmaps used by the filters
+        CellBitmap neighboringCellsBitmap = new CellBitmap(guaranteedNeighboringCells, candidateNeighboringCells);
+        CellBitmap guaranteedCellsBitmap = new CellBitmap(guaranteedNeighboringCells);
 
+        // Send each polygon once, to one of its cells in the query neighborhood, instead of replicating it to all its cells
         // Filter out the polygons which lie greater than queryRadius of the query point
-        DataStream<Polygon> filteredPolygons = replicatedPolygonStream.filter(new FilterFunction<Polygon>() {
-            @Override
-            public boolean filter(Polygon poly) throws Exception {
-                return ((candidateNeighboringCells.contains(poly.gridID)) || (guaranteedNeighboringCells.contains(poly.gridID)));
-            }
-        });
+        DataStream<Polygon> filteredPolygons = polygonStream.flatMap(new HelperClass.OwnerCellPolygonStream(guaranteedCellsBitmap, neighboringCellsBitmap));
 
-        DataStream<PriorityQueue<Tuple2<Polygon, Double>>> windowedKNN = filteredPolygons.keyBy(new KeySelector<Polygon, String>() {
+        DataStream<PriorityQueue<Tuple2<Polygon, Double>>> windowedKNN = filteredPolygons.keyBy(new KeySelector<Polygon, Long>() {
             @Override
-            public String getKey(Polygon poly) throws Exception {
+            public Long getKey(Polygon poly) throws Exception {
                 return poly.gridID;
             }
         }).window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(windowSlideStep)))
-                .apply(new WindowFunction<Polygon, PriorityQueue<Tuple2<Polygon, Double>>, String, TimeWindow>() {
+                .apply(new WindowFunction<Polygon, PriorityQueue<Tuple2<Polygon, Double>>, Long, TimeWindow>() {
 
                     PriorityQueue<Tuple2<Polygon, Double>> kNNPQ = new PriorityQueue<Tuple2<Polygon, Double>>(k, new Comparators.inTuplePolygonDistanceComparator());
 
                     @Override
-                    public void apply(String gridID, TimeWindow timeWindow, Iterable<Polygon> inputTuples, Collector<PriorityQueue<Tuple2<Polygon, Double>>> outputStream) throws Exception {
+                    public void apply(Long gridID, TimeWindow timeWindow, Iterable<Polygon> inputTuples, Collector<PriorityQueue<Tuple2<Polygon, Double>>> outputStream) throws Exception {
                         kNNPQ.clear();
 
                         for (Polygon poly : inputTuples) {
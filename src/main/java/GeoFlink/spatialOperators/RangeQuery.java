@@ -16,12 +16,19 @@ limitations under the License.
 
 package GeoFlink.spatialOperators;
 
-import GeoFlink.spatialIndices.UniformGrid;
+import GeoFlink.spatialIndices.AdaptiveGrid;
+import GeoFlink.spatialIndices.CellBitmap;
+import GeoFlink.spatialIndices.GridPartitioner;
+import GeoFlink.spatialIndices.QuadTree;
+import GeoFlink.spatialIndices.SpatialIndex;
 import GeoFlink.spatialObjects.Point;
+import GeoFlink.spatialObjects.PointBatch;
 import GeoFlink.spatialObjects.Polygon;
 import GeoFlink.utils.HelperClass;
+import GeoFlink.utils.OffHeapCellWindow;
 import org.apache.flink.api.common.functions.*;
 import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.streaming.api.datastream.DataStream;
 import org.apache.flink.streaming.api.functions.windowing.AllWindowFunction;
 import org.apache.flink.streaming.api.functions.windowing.WindowFunction;
@@ -33,7 +40,6 @@ import org.locationtech.jts.geom.Coordinate;
 import org.apache.flink.configuration.Configuration;
 
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -41,32 +47,51 @@ public class RangeQuery implements Serializable {
 
 
     //--------------- GRID-BASED RANGE QUERY - POINT -----------------//
-    public static DataStream<Point> SpatialRangeQuery(DataStream<Point> pointStream, Point queryPoint, double queryRadius, int windowSize, int slideStep, UniformGrid uGrid){
+    public static DataStream<Point> SpatialRangeQuery(DataStream<Point> pointStream, Point queryPoint, double queryRadius, int windowSize, int slideStep, SpatialIndex uGrid){
+        return SpatialRangeQuery(pointStream, queryPoint, queryRadius, windowSize, slideStep, uGrid, (GridPartitioner) null);
+    }
 
-        Set<String> guaranteedNeighboringCells = uGrid.getGuaranteedNeighboringCells(queryRadius, queryPoint.gridID);
-        Set<String> candidateNeighboringCells = uGrid.getCandidateNeighboringCells(queryRadius, queryPoint.gridID, guaranteedNeighboringCells);
+    // gridPartitioner: cell to subtask assignment of the windowed operator, hash partitioning of the cells if null
+    public static DataStream<Point> SpatialRangeQuery(DataStream<Point> pointStream, Point queryPoint, double queryRadius, int windowSize, int slideStep, SpatialIndex uGrid, GridPartitioner gridPartitioner){
+        return SpatialRangeQuery(pointStream, queryPoint, queryRadius, windowSize, slideStep, uGrid, gridPartitioner, false);
+    }
 
-        DataStream<Point> filteredPoints = pointStream.filter(new FilterFunction<Point>() {
-            @Override
-            public boolean filter(Point point) throws Exception {
-                return ((candidateNeighboringCells.contains(point.gridID)) || (guaranteedNeighboringCells.contains(point.gridID)));
-            }
-        });
+    // offHeapWindow: the window contents are kept as binary records in direct memory (OffHeapCellWindow) instead of Point objects
+    public static DataStream<Point> SpatialRangeQuery(DataStream<Point> pointStream, Point queryPoint, double queryRadius, int windowSize, int slideStep, SpatialIndex uGrid, GridPartitioner gridPartitioner, boolean offHeapWindow){
 
-        DataStream<Point> rangeQueryNeighbours = filteredPoints.keyBy(new KeySelector<Point, String>() {
-            @Override
-            public String getKey(Point p) throws Exception {
-                return p.gridID;
-            }
-        }).window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(slideStep)))
-                .apply(new WindowFunction<Point, Point, String, TimeWindow>() {
+        Set<Long> guaranteedNeighboringCells = uGrid.getGuaranteedNeighboringCells(queryRadius, queryPoint.gridID);
+        Set<Long> candidateNeighboringCells = uGrid.getCandidateNeighboringCells(queryRadius, queryPoint.gridID, guaranteedNeighboringCells);
+
+        // Cell bitmaps used by the filters
+        CellBitmap neighboringCellsBitmap = new CellBitmap(guaranteedNeighboringCells, candidateNeighboringCells);
+        CellBitmap guaranteedCellsBitmap = new CellBitmap(guaranteedNeighboringCells);
+
+        DataStream<Point> filteredPoints = pointStream.filter(new HelperClass.CellPruningFilter(guaranteedCellsBitmap, neighboringCellsBitmap, uGrid));
+
+        if (offHeapWindow) {
+            return OffHeapCellWindow.process(filteredPoints.keyBy(new GridPartitioner.PointKeySelector(gridPartitioner)),
+                    new OffHeapCellWindow<Point>(windowSize, slideStep) {
+                        @Override
+                        public void evaluate(long key, long windowStart, long windowEnd, OffHeapCellWindow.RecordCursor records, Collector<Point> neighbors) throws Exception {
+                            while (records.next()) {
+                                if (guaranteedCellsBitmap.contains(records.getGridID()) || HelperClass.getPointPointEuclideanDistance(queryPoint.x, queryPoint.y, records.getX(), records.getY()) <= queryRadius) {
+                                    neighbors.collect(records.toPoint());
+                                }
+                            }
+                        }
+                    }).name("Windowed (Off-heap) Grid Based");
+        }
+
+        DataStream<Point> rangeQueryNeighbours = filteredPoints.keyBy(new GridPartitioner.PointKeySelector(gridPartitioner))
+                .window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(slideStep)))
+                .apply(new WindowFunction<Point, Point, Long, TimeWindow>() {
                     @Override
-                    public void apply(String gridID, TimeWindow timeWindow, Iterable<Point> pointIterator, Collector<Point> neighbors) throws Exception {
+                    public void apply(Long gridID, TimeWindow timeWindow, Iterable<Point> pointIterator, Collector<Point> neighbors) throws Exception {
                         for (Point point : pointIterator) {
-                            if (guaranteedNeighboringCells.contains(point.gridID))
+                            if (guaranteedCellsBitmap.contains(point.gridID))
                                 neighbors.collect(point);
                             else {
-                                Double distance = HelperClass.getPointPointEuclideanDistance(queryPoint.point.getX(), queryPoint.point.getY(), point.point.getX(),point.point.getY());
+                                Double distance = HelperClass.getPointPointEuclideanDistance(queryPoint.x, queryPoint.y, point.x,point.y);
                                 if (distance <= queryRadius)
                                 { neighbors.collect(point);}
                             }
@@ -86,36 +111,109 @@ public class RangeQuery implements Serializable {
         return rangeQueryNeighbours;
     }
 
-    //--------------- GRID-BASED RANGE QUERY - POINT - POLYGON -----------------//
-    public static DataStream<Polygon> SpatialRangeQuery(DataStream<Polygon> polygonStream, Point queryPoint, double queryRadius, UniformGrid uGrid, int windowSize, int slideStep ) {
+    //--------------- GRID-BASED RANGE QUERY - POINT - BATCHED -----------------//
+    // Batches of SpatialStream.PointBatchStream: a batch is pruned or kept by its cell, the batches of the guaranteed cells are emitted
+    // as they are and the points of the candidate cells are filtered into a new batch, see SpatialStream.UnbatchedPointStream for the points
+    public static DataStream<PointBatch> SpatialRangeQueryBatched(DataStream<PointBatch> batchStream, Point queryPoint, double queryRadius, int windowSize, int slideStep, SpatialIndex uGrid, GridPartitioner gridPartitioner){
 
-        Set<String> guaranteedNeighboringCells = uGrid.getGuaranteedNeighboringCells(queryRadius, queryPoint.gridID);
-        Set<String> candidateNeighboringCells = uGrid.getCandidateNeighboringCells(queryRadius, queryPoint.gridID, guaranteedNeighboringCells);
+        Set<Long> guaranteedNeighboringCells = uGrid.getGuaranteedNeighboringCells(queryRadius, queryPoint.gridID);
+        Set<Long> candidateNeighboringCells = uGrid.getCandidateNeighboringCells(queryRadius, queryPoint.gridID, guaranteedNeighboringCells);
 
-        DataStream<Polygon> replicatedPolygonStream = polygonStream.flatMap(new HelperClass.ReplicatePolygonStream());
+        // Cell bitmaps used by the filters
+        CellBitmap neighboringCellsBitmap = new CellBitmap(guaranteedNeighboringCells, candidateNeighboringCells);
+        CellBitmap guaranteedCellsBitmap = new CellBitmap(guaranteedNeighboringCells);
 
-        // Filtering out the polygons which lie greater than queryRadius of the query point
-        DataStream<Polygon> filteredPolygons = replicatedPolygonStream.filter(new FilterFunction<Polygon>() {
+        DataStream<PointBatch> filteredBatches = batchStream.filter(new FilterFunction<PointBatch>() {
             @Override
-            public boolean filter(Polygon poly) throws Exception {
-                return ((candidateNeighboringCells.contains(poly.gridID)) || (guaranteedNeighboringCells.contains(poly.gridID)));
+            public boolean filter(PointBatch batch) throws Exception {
+                return neighboringCellsBitmap.contains(batch.gridID);
             }
         });
 
-        DataStream<Polygon> rangeQueryNeighbours = filteredPolygons.keyBy(new KeySelector<Polygon, String>() {
+        return filteredBatches.keyBy(new GridPartitioner.PointBatchKeySelector(gridPartitioner))
+                .window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(slideStep)))
+                .apply(new WindowFunction<PointBatch, PointBatch, Long, TimeWindow>() {
+                    @Override
+                    public void apply(Long key, TimeWindow timeWindow, Iterable<PointBatch> batchIterator, Collector<PointBatch> neighbors) throws Exception {
+                        for (PointBatch batch : batchIterator) {
+                            if (guaranteedCellsBitmap.contains(batch.gridID)) {
+                                neighbors.collect(batch);
+                                continue;
+                            }
+                            PointBatch batchNeighbors = new PointBatch(batch.gridID, batch.size());
+                            for (int i = 0; i < batch.size(); i++) {
+                                double dx = batch.getX(i) - queryPoint.x;
+                                double dy = batch.getY(i) - queryPoint.y;
+                                // Unboxed equivalent of HelperClass.getPointPointEuclideanDistance
+                                if (Math.sqrt(dy * dy + dx * dx) <= queryRadius) {
+                                    batchNeighbors.add(batch, i);
+                                }
+                            }
+                            if (!batchNeighbors.isEmpty()) {
+                                neighbors.collect(batchNeighbors);
+                            }
+                        }
+                    }
+                }).name("Windowed (Apply) Grid Based Batched");
+    }
+
+    //--------------- GRID-BASED RANGE QUERY - POINT - ADAPTIVE GRID -----------------//
+    public static DataStream<Point> SpatialRangeQuery(DataStream<Point> pointStream, Point queryPoint, double queryRadius, int windowSize, int slideStep, QuadTree initialLayout, DataStream<QuadTree> layoutStream){
+
+        // Points of the guaranteed (true) and candidate (false) cells w.r.t. the latest layout
+        DataStream<Tuple2<Point, Boolean>> filteredPoints = pointStream.connect(layoutStream.broadcast(AdaptiveGrid.layoutDescriptor))
+                .process(new AdaptiveGrid.AssignNeighboringCells(initialLayout, queryPoint, queryRadius));
+
+        return filteredPoints.keyBy(new KeySelector<Tuple2<Point, Boolean>, Long>() {
+            @Override
+            public Long getKey(Tuple2<Point, Boolean> p) throws Exception {
+                return p.f0.gridID;
+            }
+        }).window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(slideStep)))
+                .apply(new WindowFunction<Tuple2<Point, Boolean>, Point, Long, TimeWindow>() {
+                    @Override
+                    public void apply(Long gridID, TimeWindow timeWindow, Iterable<Tuple2<Point, Boolean>> pointIterator, Collector<Point> neighbors) throws Exception {
+                        for (Tuple2<Point, Boolean> p : pointIterator) {
+                            if (p.f1)
+                                neighbors.collect(p.f0);
+                            else {
+                                Double distance = HelperClass.getPointPointEuclideanDistance(queryPoint.x, queryPoint.y, p.f0.x, p.f0.y);
+                                if (distance <= queryRadius)
+                                { neighbors.collect(p.f0);}
+                            }
+                        }
+                    }
+                }).name("Windowed (Apply) Adaptive Grid Based");
+    }
+
+    //--------------- GRID-BASED RANGE QUERY - POINT - POLYGON -----------------//
+    public static DataStream<Polygon> SpatialRangeQuery(DataStream<Polygon> polygonStream, Point queryPoint, double queryRadius, SpatialIndex uGrid, int windowSize, int slideStep ) {
+
+        Set<Long> guaranteedNeighboringCells = uGrid.getGuaranteedNeighboringCells(queryRadius, queryPoint.gridID);
+        Set<Long> candidateNeighboringCells = uGrid.getCandidateNeighboringCells(queryRadius, queryPoint.gridID, guaranteedNeighboringCells);
+
+        // Cell bitmaps used by the filters
+        CellBitmap neighboringCellsBitmap = new CellBitmap(guaranteedNeighboringCells, candidateNeighboringCells);
+        CellBitmap guaranteedCellsBitmap = new CellBitmap(guaranteedNeighboringCells);
+
+        // Each polygon is sent once, to one of its cells in the query neighborhood, instead of being replicated to all its cells
+        // Filtering out the polygons which lie greater than queryRadius of the query point
+        DataStream<Polygon> filteredPolygons = polygonStream.flatMap(new HelperClass.OwnerCellPolygonStream(guaranteedCellsBitmap, neighboringCellsBitmap));
+
+        DataStream<Polygon> rangeQueryNeighbours = filteredPolygons.keyBy(new KeySelector<Polygon, Long>() {
             @Override
-            public String getKey(Polygon poly) throws Exception {
+            public Long getKey(Polygon poly) throws Exception {
                 return poly.gridID;
             }
         }).window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(slideStep)))
-                .apply(new WindowFunction<Polygon, Polygon, String, TimeWindow>() {
+                .apply(new WindowFunction<Polygon, Polygon, Long, TimeWindow>() {
                     @Override
-                    public void apply(String gridID, TimeWindow timeWindow, Iterable<Polygon> pointIterator, Collector<Polygon> neighbors) throws Exception {
+                    public void apply(Long gridID, TimeWindow timeWindow, Iterable<Polygon> pointIterator, Collector<Polygon> neighbors) throws Exception {
                         for (Polygon poly : pointIterator) {
-                            if (guaranteedNeighboringCells.contains(poly.gridID))
+                            if (guaranteedCellsBitmap.contains(poly.gridID))
                                 neighbors.collect(poly);
                             else {
-                                //Double distance = HelperClass.computeEuclideanDistance(queryPoint.point.getX(), queryPoint.point.getY(), poly.point.getX(),poly.point.getY());
+                                //Double distance = HelperClass.computeEuclideanDistance(queryPoint.x, queryPoint.y, poly.x,poly.y);
                                 Double distance = HelperClass.getPointPolygonMinEuclideanDistance(queryPoint, poly);
                                 //System.out.println("Distance: " + distance);
                                 if (distance <= queryRadius){
@@ -131,32 +229,30 @@ public class RangeQuery implements Serializable {
 
 
     //--------------- GRID-BASED RANGE QUERY - POLYGON - POLYGON -----------------//
-    public static DataStream<Polygon> SpatialRangeQuery(DataStream<Polygon> polygonStream, Polygon queryPolygon, double queryRadius, UniformGrid uGrid, int windowSize, int slideStep ) {
+    public static DataStream<Polygon> SpatialRangeQuery(DataStream<Polygon> polygonStream, Polygon queryPolygon, double queryRadius, SpatialIndex uGrid, int windowSize, int slideStep ) {
 
-        Set<String> guaranteedNeighboringCells = uGrid.getGuaranteedNeighboringCells(queryRadius, queryPolygon);
-        Set<String> candidateNeighboringCells = uGrid.getCandidateNeighboringCells(queryRadius, queryPolygon, guaranteedNeighboringCells);
+        Set<Long> guaranteedNeighboringCells = uGrid.getGuaranteedNeighboringCells(queryRadius, queryPolygon);
+        Set<Long> candidateNeighboringCells = uGrid.getCandidateNeighboringCells(queryRadius, queryPolygon, guaranteedNeighboringCells);
 
-        DataStream<Polygon> replicatedPolygonStream = polygonStream.flatMap(new HelperClass.ReplicatePolygonStream());
+        // Cell bitmaps used by the filters
+        CellBitmap neighboringCellsBitmap = new CellBitmap(guaranteedNeighboringCells, candidateNeighboringCells);
+        CellBitmap guaranteedCellsBitmap = new CellBitmap(guaranteedNeighboringCells);
 
+        // Each polygon is sent once, to one of its cells in the query neighborhood, instead of being replicated to all its cells
         // Filtering out the polygons which lie greater than queryRadius of the query point
-        DataStream<Polygon> filteredPolygons = replicatedPolygonStream.filter(new FilterFunction<Polygon>() {
-            @Override
-            public boolean filter(Polygon poly) throws Exception {
-                return ((candidateNeighboringCells.contains(poly.gridID)) || (guaranteedNeighboringCells.contains(poly.gridID)));
-            }
-        });
+        DataStream<Polygon> filteredPolygons = polygonStream.flatMap(new HelperClass.OwnerCellPolygonStream(guaranteedCellsBitmap, neighboringCellsBitmap));
 
-        DataStream<Polygon> rangeQueryNeighbours = filteredPolygons.keyBy(new KeySelector<Polygon, String>() {
+        DataStream<Polygon> rangeQueryNeighbours = filteredPolygons.keyBy(new KeySelector<Polygon, Long>() {
             @Override
-            public String getKey(Polygon poly) throws Exception {
+            public Long getKey(Polygon poly) throws Exception {
                 return poly.gridID;
             }
         }).window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(slideStep)))
-                .apply(new WindowFunction<Polygon, Polygon, String, TimeWindow>() {
+                .apply(new WindowFunction<Polygon, Polygon, Long, TimeWindow>() {
                     @Override
-                    public void apply(String gridID, TimeWindow timeWindow, Iterable<Polygon> pointIterator, Collector<Polygon> neighbors) throws Exception {
+                    public void apply(Long gridID, TimeWindow timeWindow, Iterable<Polygon> pointIterator, Collector<Polygon> neighbors) throws Exception {
                         for (Polygon poly : pointIterator) {
-                            if (guaranteedNeighboringCells.contains(poly.gridID))
+                            if (guaranteedCellsBitmap.contains(poly.gridID))
                                 neighbors.collect(poly);
                             else {
                                 Double distance = HelperClass.getPolygonPolygonMinEuclideanDistance(queryPolygon, poly);
@@ -191,8 +287,8 @@ public class RangeQuery implements Serializable {
         public void flatMap(Polygon poly, Collector<Polygon> out) throws Exception {
 
             // Create duplicated polygon stream based on GridIDs
-            for (String gridID: poly.gridIDsSet) {
-                Polygon p = new Polygon(Arrays.asList(poly.polygon.getCoordinates()), uniqueObjID, poly.gridIDsSet, gridID, poly.boundingBox);
+            for (Long gridID: poly.gridIDsSet) {
+                Polygon p = new Polygon(poly.coordinates, uniqueObjID, poly.gridIDsSet, gridID, poly.boundingBox);
                 out.collect(p);
             }
 
@@ -1,14 +1,23 @@
 package GeoFlink.spatialOperators;
 
+import GeoFlink.spatialIndices.GridPartitioner;
+import GeoFlink.spatialIndices.UniformGrid;
 import GeoFlink.spatialObjects.Point;
+import GeoFlink.spatialObjects.PointBatch;
+import GeoFlink.spatialStreams.SpatialStream;
 import GeoFlink.utils.HelperClass;
+import GeoFlink.utils.ObjectIDDictionary;
+import org.apache.flink.api.common.ExecutionConfig;
 import org.apache.flink.api.common.functions.FilterFunction;
+import org.apache.flink.api.common.functions.MapFunction;
 import org.apache.flink.api.common.functions.RichMapFunction;
 import org.apache.flink.api.common.state.MapState;
 import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.state.ReadOnlyBroadcastState;
 import org.apache.flink.api.common.state.ValueState;
 import org.apache.flink.api.common.state.ValueStateDescriptor;
 import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
 import org.apache.flink.api.java.functions.KeySelector;
 import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.api.java.tuple.Tuple3;
@@ -16,30 +25,43 @@ import org.apache.flink.api.java.tuple.Tuple4;
 import org.apache.flink.api.java.tuple.Tuple5;
 import org.apache.flink.configuration.Configuration;
 import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
 import org.apache.flink.streaming.api.functions.timestamps.BoundedOutOfOrdernessTimestampExtractor;
 import org.apache.flink.streaming.api.functions.windowing.ProcessWindowFunction;
 import org.apache.flink.streaming.api.windowing.assigners.SlidingEventTimeWindows;
+import org.apache.flink.streaming.api.windowing.assigners.WindowAssigner;
 import org.apache.flink.streaming.api.windowing.time.Time;
+import org.apache.flink.streaming.api.windowing.triggers.EventTimeTrigger;
+import org.apache.flink.streaming.api.windowing.triggers.Trigger;
 import org.apache.flink.streaming.api.windowing.windows.GlobalWindow;
 import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
 import org.apache.flink.util.Collector;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class TAggregateQuery implements Serializable {
 
     //--------------- TSpatialHeatmapAggregateQuery Windowed -----------------//
     //Outputs only when there is a positive value
-    public static DataStream<Tuple5<String, Integer, Long, Long, HashMap<String, Long>>> TSpatialHeatmapAggregateQuery(DataStream<Point> pointStream, String aggregateFunction, String windowType, long windowSize, long windowSlideStep) {
+    public static DataStream<Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>> TSpatialHeatmapAggregateQuery(DataStream<Point> pointStream, String aggregateFunction, String windowType, long windowSize, long windowSlideStep) {
+        return TSpatialHeatmapAggregateQuery(pointStream, aggregateFunction, windowType, windowSize, windowSlideStep, null);
+    }
+
+    // gridPartitioner: cell to subtask assignment of the windowed aggregate, hash partitioning of the cells if null
+    public static DataStream<Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>> TSpatialHeatmapAggregateQuery(DataStream<Point> pointStream, String aggregateFunction, String windowType, long windowSize, long windowSlideStep, GridPartitioner gridPartitioner) {
 
         // Filtering out the cells which do not fall into the grid cells
         DataStream<Point> spatialStreamWithoutNullCellID = pointStream.filter(new FilterFunction<Point>() {
             @Override
             public boolean filter(Point p) throws Exception {
-                return (p.gridID != null);
+                return (p.gridID != UniformGrid.NO_CELL_KEY);
             }
         }).startNewChain();
 
@@ -55,62 +77,139 @@ public class TAggregateQuery implements Serializable {
 
         if(windowType.equalsIgnoreCase("COUNT")){
 
-            DataStream<Tuple5<String, Integer, Long, Long, HashMap<String, Long>>> cWindowedCellBasedStayTime = spatialStreamWithTsAndWm
-                    .keyBy(new gridCellKeySelector())
+            DataStream<Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>> cWindowedCellBasedStayTime = spatialStreamWithTsAndWm
+                    .keyBy(new GridPartitioner.PointKeySelector(gridPartitioner))
                     .countWindow(windowSize, windowSlideStep)
                     .process(new CountWindowProcessFunction(aggregateFunction)).name("Count Window");
 
-            return cWindowedCellBasedStayTime;
+            return getCellKeyedOutput(cWindowedCellBasedStayTime, gridPartitioner);
 
         }
         else { // Default TIME Window
 
-            DataStream<Tuple5<String, Integer, Long, Long, HashMap<String, Long>>> tWindowedCellBasedStayTime = spatialStreamWithTsAndWm
-                    .keyBy(new gridCellKeySelector())
+            DataStream<Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>> tWindowedCellBasedStayTime = spatialStreamWithTsAndWm
+                    .keyBy(new GridPartitioner.PointKeySelector(gridPartitioner))
                     //.window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(windowSlideStep)))
                     .window(SlidingEventTimeWindows.of(Time.seconds(windowSize), Time.seconds(windowSlideStep)))
                     .process(new TimeWindowProcessFunction(aggregateFunction)).name("Time Window");
 
-            return tWindowedCellBasedStayTime;
+            return getCellKeyedOutput(tWindowedCellBasedStayTime, gridPartitioner);
+        }
+    }
+
+    //--------------- TSpatialHeatmapAggregateQuery Windowed - Batched -----------------//
+    // Batches of SpatialStream.PointBatchStream. The event time of a batch is its earliest point, the batch is assigned to all the time
+    // windows overlapping its points (SlidingEventTimeBatchWindows) and each window aggregates the points within its bounds.
+    // Count windows are defined on the points, hence these are evaluated on the unbatched points
+    public static DataStream<Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>> TSpatialHeatmapAggregateQueryBatched(DataStream<PointBatch> batchStream, String aggregateFunction, String windowType, long windowSize, long windowSlideStep, GridPartitioner gridPartitioner) {
+
+        if(windowType.equalsIgnoreCase("COUNT")){
+            return TSpatialHeatmapAggregateQuery(SpatialStream.UnbatchedPointStream(batchStream), aggregateFunction, windowType, windowSize, windowSlideStep, gridPartitioner);
+        }
+
+        // Filtering out the batches of the points which do not fall into the grid cells
+        DataStream<PointBatch> batchStreamWithoutNullCellID = batchStream.filter(new FilterFunction<PointBatch>() {
+            @Override
+            public boolean filter(PointBatch batch) throws Exception {
+                return (batch.gridID != UniformGrid.NO_CELL_KEY);
+            }
+        }).startNewChain();
+
+        // Max Allowed Lateness: windowSize
+        DataStream<PointBatch> batchStreamWithTsAndWm =
+                batchStreamWithoutNullCellID.assignTimestampsAndWatermarks(new BoundedOutOfOrdernessTimestampExtractor<PointBatch>(Time.seconds(windowSize)) {
+                    @Override
+                    public long extractTimestamp(PointBatch batch) {
+                        return batch.minTimeStampMillisec;
+                    }
+                });
+
+        DataStream<Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>> tWindowedCellBasedStayTime = batchStreamWithTsAndWm
+                .keyBy(new GridPartitioner.PointBatchKeySelector(gridPartitioner))
+                .window(new SlidingEventTimeBatchWindows(Time.seconds(windowSize).toMilliseconds(), Time.seconds(windowSlideStep).toMilliseconds()))
+                .process(new TimeWindowBatchProcessFunction(aggregateFunction)).name("Time Window Batched");
+
+        return getCellKeyedOutput(tWindowedCellBasedStayTime, gridPartitioner);
+    }
+
+    // The window functions output their key, replacing the routing keys of the gridPartitioner with the cell keys
+    private static DataStream<Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>> getCellKeyedOutput(DataStream<Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>> windowedOutput, GridPartitioner gridPartitioner) {
+
+        if(gridPartitioner == null){
+            return windowedOutput;
         }
+
+        return windowedOutput.map(new MapFunction<Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>, Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>>() {
+            @Override
+            public Tuple5<Long, Integer, Long, Long, HashMap<String, Long>> map(Tuple5<Long, Integer, Long, Long, HashMap<String, Long>> cellAggregate) throws Exception {
+                cellAggregate.f0 = gridPartitioner.getCellKey(cellAggregate.f0);
+                return cellAggregate;
+            }
+        });
     }
 
     //--------------- TSpatialHeatmapAggregateQuery Inception -----------------//
     // Outputs a tuple containing cellID, number of objects in the cell and its requested aggregate
     //public static DataStream<Tuple3<String, Integer, HashMap<String, Long>>> TSpatialHeatmapAggregateQuery(DataStream<Point> pointStream, String aggregateFunction) {
-    public static DataStream<Tuple4<String, Integer, HashMap<String, Long>, Long>> TSpatialHeatmapAggregateQuery(DataStream<Point> pointStream, String aggregateFunction, Long inactiveTrajDeletionThreshold) {
+    public static DataStream<Tuple4<Long, Integer, HashMap<String, Long>, Long>> TSpatialHeatmapAggregateQuery(DataStream<Point> pointStream, String aggregateFunction, Long inactiveTrajDeletionThreshold) {
+        return TSpatialHeatmapAggregateQuery(pointStream, aggregateFunction, inactiveTrajDeletionThreshold, null);
+    }
+
+    // gridPartitioner: cell to subtask assignment of the aggregate, hash partitioning of the cells if null
+    public static DataStream<Tuple4<Long, Integer, HashMap<String, Long>, Long>> TSpatialHeatmapAggregateQuery(DataStream<Point> pointStream, String aggregateFunction, Long inactiveTrajDeletionThreshold, GridPartitioner gridPartitioner) {
 
         // Filtering out the cells which do not fall into the grid cells
         DataStream<Point> spatialStreamWithoutNullCellID = pointStream.filter(new FilterFunction<Point>() {
             @Override
             public boolean filter(Point p) throws Exception {
-                return (p.gridID != null);
+                return (p.gridID != UniformGrid.NO_CELL_KEY);
             }
         }).startNewChain();
 
+        // The per-cell trajectory state is keyed by the dictionary-encoded objIDs, decoded at the output
+        // The entries of the objects expire with their trajectories
+        SingleOutputStreamOperator<Point> encodedStream = ObjectIDDictionary.encode(spatialStreamWithoutNullCellID, inactiveTrajDeletionThreshold);
+
         //DataStream<Tuple3<String, Integer, HashMap<String, Long>>> cWindowedCellBasedStayTime = spatialStreamWithoutNullCellID
-        DataStream<Tuple4<String, Integer, HashMap<String, Long>, Long>> cWindowedCellBasedStayTime = spatialStreamWithoutNullCellID
-                .keyBy(new gridCellKeySelector())
+        DataStream<Tuple4<Long, Integer, HashMap<Integer, Long>, Long>> cWindowedCellBasedStayTime = encodedStream
+                .keyBy(new GridPartitioner.PointKeySelector(gridPartitioner))
                 .map(new THeatmapAggregateQueryMapFunction(aggregateFunction, inactiveTrajDeletionThreshold));
 
-        return cWindowedCellBasedStayTime;
+        return ObjectIDDictionary.decode(cWindowedCellBasedStayTime, encodedStream.getSideOutput(ObjectIDDictionary.dictionaryEntryTag), new THeatmapAggregateQueryDecoder());
+    }
+
+    // Replaces the objKeys of the aggregate by the objIDs
+    public static class THeatmapAggregateQueryDecoder extends ObjectIDDictionary.Decoder<Tuple4<Long, Integer, HashMap<Integer, Long>, Long>, Tuple4<Long, Integer, HashMap<String, Long>, Long>> {
+
+        @Override
+        public Tuple4<Long, Integer, HashMap<String, Long>, Long> decode(Tuple4<Long, Integer, HashMap<Integer, Long>, Long> encoded, ReadOnlyBroadcastState<Integer, String> dictionary) throws Exception {
+            HashMap<String, Long> trackerIDTrajLength = new HashMap<String, Long>();
+            for (Map.Entry<Integer, Long> entry : encoded.f2.entrySet()) {
+                String objID = ObjectIDDictionary.getObjID(entry.getKey(), dictionary);
+                if (objID == null) {
+                    return null;
+                }
+                trackerIDTrajLength.put(objID, entry.getValue());
+            }
+            return Tuple4.of(encoded.f0, encoded.f1, trackerIDTrajLength, encoded.f3);
+        }
     }
 
 
     // User Defined Classes
     // Key selector
-    public static class gridCellKeySelector implements KeySelector<Point,String> {
+    public static class gridCellKeySelector implements KeySelector<Point,Long> {
         @Override
-        public String getKey(Point p) throws Exception {
+        public Long getKey(Point p) throws Exception {
             return p.gridID;
         }
     }
 
     //public static class THeatmapAggregateQueryMapFunction extends RichMapFunction<Point, Tuple3<String, Integer, HashMap<String, Long>>> {
-    public static class THeatmapAggregateQueryMapFunction extends RichMapFunction<Point, Tuple4<String, Integer, HashMap<String, Long>, Long>> {
+    public static class THeatmapAggregateQueryMapFunction extends RichMapFunction<Point, Tuple4<Long, Integer, HashMap<Integer, Long>, Long>> {
 
-        private MapState<String, Long> minTimestampTrackerIDMapState;
-        private MapState<String, Long> maxTimestampTrackerIDMapState;
+        private MapState<Integer, Long> minTimestampTrackerIDMapState;
+        private MapState<Integer, Long> maxTimestampTrackerIDMapState;
 
         //ctor
         public  THeatmapAggregateQueryMapFunction() {};
@@ -124,13 +223,13 @@ public class TAggregateQuery implements Serializable {
 
         @Override
         public void open(Configuration config) {
-            MapStateDescriptor<String, Long> minTimestampTrackerIDDescriptor = new MapStateDescriptor<String, Long>(
+            MapStateDescriptor<Integer, Long> minTimestampTrackerIDDescriptor = new MapStateDescriptor<Integer, Long>(
                     "minTimestampTrackerIDDescriptor", // state name
-                    BasicTypeInfo.STRING_TYPE_INFO, BasicTypeInfo.LONG_TYPE_INFO);
+                    BasicTypeInfo.INT_TYPE_INFO, BasicTypeInfo.LONG_TYPE_INFO);
 
-            MapStateDescriptor<String, Long> maxTimestampTrackerIDDescriptor = new MapStateDescriptor<String, Long>(
+            MapStateDescriptor<Integer, Long> maxTimestampTrackerIDDescriptor = new MapStateDescriptor<Integer, Long>(
                     "maxTimestampTrackerIDDescriptor", // state name
-                    BasicTypeInfo.STRING_TYPE_INFO, BasicTypeInfo.LONG_TYPE_INFO);
+                    BasicTypeInfo.INT_TYPE_INFO, BasicTypeInfo.LONG_TYPE_INFO);
 
             this.minTimestampTrackerIDMapState = getRuntimeContext().getMapState(minTimestampTrackerIDDescriptor);
             this.maxTimestampTrackerIDMapState = getRuntimeContext().getMapState(maxTimestampTrackerIDDescriptor);
@@ -139,13 +238,13 @@ public class TAggregateQuery implements Serializable {
         @Override
         // Outputs a tuple containing cellID, number of objects in the cell and its requested aggregate
         //public Tuple3<String, Integer, HashMap<String, Long>> map(Point p) throws Exception {
-        public Tuple4<String, Integer, HashMap<String, Long>, Long> map(Point p) throws Exception {
+        public Tuple4<Long, Integer, HashMap<Integer, Long>, Long> map(Point p) throws Exception {
 
             // HashMap<TrackerID, timestamp>
             //HashMap<String, Long> minTimestampTrackerID = new HashMap<String, Long>();
             //HashMap<String, Long> maxTimestampTrackerID = new HashMap<String, Long>();
             // HashMap <TrackerID, TrajLength>
-            HashMap<String, Long> trackerIDTrajLength = new HashMap<String, Long>();
+            HashMap<Integer, Long> trackerIDTrajLength = new HashMap<Integer, Long>();
 
 
             // Restoring states from MapStates (if exist)
@@ -164,8 +263,8 @@ public class TAggregateQuery implements Serializable {
             // Updating maps using new data/point
             //Long currMinTimestamp_ = minTimestampTrackerID.get(p.objID);
             //Long currMaxTimestamp_ = maxTimestampTrackerID.get(p.objID);
-            Long currMinTimestamp_ = minTimestampTrackerIDMapState.get(p.objID);
-            Long currMaxTimestamp_ = maxTimestampTrackerIDMapState.get(p.objID);
+            Long currMinTimestamp_ = minTimestampTrackerIDMapState.get(p.objKey);
+            Long currMaxTimestamp_ = maxTimestampTrackerIDMapState.get(p.objKey);
 
 
             /*
@@ -185,16 +284,16 @@ public class TAggregateQuery implements Serializable {
 
             if (currMinTimestamp_ != null) { // If exists update else insert
                 if (p.timeStampMillisec < currMinTimestamp_) {
-                    minTimestampTrackerIDMapState.put(p.objID, p.timeStampMillisec);
+                    minTimestampTrackerIDMapState.put(p.objKey, p.timeStampMillisec);
                 }
 
                 if (p.timeStampMillisec > currMaxTimestamp_) {
-                    maxTimestampTrackerIDMapState.put(p.objID, p.timeStampMillisec);
+                    maxTimestampTrackerIDMapState.put(p.objKey, p.timeStampMillisec);
                 }
 
             } else {
-                minTimestampTrackerIDMapState.put(p.objID, p.timeStampMillisec);
-                maxTimestampTrackerIDMapState.put(p.objID, p.timeStampMillisec);
+                minTimestampTrackerIDMapState.put(p.objKey, p.timeStampMillisec);
+                maxTimestampTrackerIDMapState.put(p.objKey, p.timeStampMillisec);
             }
 
             Date date = new Date();
@@ -211,12 +310,14 @@ public class TAggregateQuery implements Serializable {
             if(this.aggregateFunction.equalsIgnoreCase("ALL")){
 
                 trackerIDTrajLength.clear();
-                for (Map.Entry<String, Long> entry : minTimestampTrackerIDMapState.entries()) {
-                    String objID = entry.getKey();
+                for (Map.Entry<Integer, Long> entry : minTimestampTrackerIDMapState.entries()) {
+                    Integer objID = entry.getKey();
                     Long currMinTimestamp = entry.getValue();
                     Long currMaxTimestamp = maxTimestampTrackerIDMapState.get(objID);
-                    // Deleting halted trajectories
-                    deleteHaltedTrajectories(currMaxTimestamp, inactiveTrajDeletionThreshold, objID);
+                    // Deleting halted trajectories, not reported as their dictionary entries expire
+                    if (deleteHaltedTrajectories(currMaxTimestamp, inactiveTrajDeletionThreshold, objID)) {
+                        continue;
+                    }
                     //Populating results
                     trackerIDTrajLength.put(objID, (currMaxTimestamp-currMinTimestamp));
                 }
@@ -229,26 +330,28 @@ public class TAggregateQuery implements Serializable {
                 trackerIDTrajLength.clear();
                 Long sumTrajLength = 0L;
                 int counter = 0;
-                for (Map.Entry<String, Long> entry : minTimestampTrackerIDMapState.entries()) {
-                    String objID = entry.getKey();
+                for (Map.Entry<Integer, Long> entry : minTimestampTrackerIDMapState.entries()) {
+                    Integer objID = entry.getKey();
                     Long currMinTimestamp = entry.getValue();
                     Long currMaxTimestamp = maxTimestampTrackerIDMapState.get(objID);
-                    // Deleting halted trajectories
-                    deleteHaltedTrajectories(currMaxTimestamp, inactiveTrajDeletionThreshold, objID);
+                    // Deleting halted trajectories, not reported as their dictionary entries expire
+                    if (deleteHaltedTrajectories(currMaxTimestamp, inactiveTrajDeletionThreshold, objID)) {
+                        continue;
+                    }
                     counter++;
                     sumTrajLength += (currMaxTimestamp-currMinTimestamp);
                 }
 
                 if(this.aggregateFunction.equalsIgnoreCase("SUM"))
                 {
-                    trackerIDTrajLength.put("", sumTrajLength);
+                    trackerIDTrajLength.put(ObjectIDDictionary.NO_OBJ_KEY, sumTrajLength);
                     //return Tuple3.of(p.gridID, counter, trackerIDTrajLength);
                     return Tuple4.of(p.gridID, counter, trackerIDTrajLength, latency);
                 }
                 else // AVG
                 {
                     Long avgTrajLength = (Long)Math.round((sumTrajLength * 1.0)/(counter * 1.0));
-                    trackerIDTrajLength.put("", avgTrajLength);
+                    trackerIDTrajLength.put(ObjectIDDictionary.NO_OBJ_KEY, avgTrajLength);
                     //return Tuple3.of(p.gridID, counter, trackerIDTrajLength);
                     return Tuple4.of(p.gridID, counter, trackerIDTrajLength, latency);
                 }
@@ -256,16 +359,18 @@ public class TAggregateQuery implements Serializable {
             else if(this.aggregateFunction.equalsIgnoreCase("MIN")){
 
                 Long minTrajLength = Long.MAX_VALUE;
-                String minTrajLengthObjID = "";
+                Integer minTrajLengthObjID = ObjectIDDictionary.NO_OBJ_KEY;
                 trackerIDTrajLength.clear();
                 int counter = 0;
 
-                for (Map.Entry<String, Long> entry : minTimestampTrackerIDMapState.entries()) {
-                    String objID = entry.getKey();
+                for (Map.Entry<Integer, Long> entry : minTimestampTrackerIDMapState.entries()) {
+                    Integer objID = entry.getKey();
                     Long currMinTimestamp = entry.getValue();
                     Long currMaxTimestamp = maxTimestampTrackerIDMapState.get(objID);
-                    // Deleting halted trajectories
-                    deleteHaltedTrajectories(currMaxTimestamp, inactiveTrajDeletionThreshold, objID);
+                    // Deleting halted trajectories, not reported as their dictionary entries expire
+                    if (deleteHaltedTrajectories(currMaxTimestamp, inactiveTrajDeletionThreshold, objID)) {
+                        continue;
+                    }
                     counter++;
                     Long trajLength = currMaxTimestamp-currMinTimestamp;
 
@@ -282,16 +387,18 @@ public class TAggregateQuery implements Serializable {
             else if(this.aggregateFunction.equalsIgnoreCase("MAX")){
 
                 Long maxTrajLength = Long.MIN_VALUE;
-                String maxTrajLengthObjID = "";
+                Integer maxTrajLengthObjID = ObjectIDDictionary.NO_OBJ_KEY;
                 trackerIDTrajLength.clear();
                 int counter = 0;
 
-                for (Map.Entry<String, Long> entry : minTimestampTrackerIDMapState.entries()) {
-                    String objID = entry.getKey();
+                for (Map.Entry<Integer, Long> entry : minTimestampTrackerIDMapState.entries()) {
+                    Integer objID = entry.getKey();
                     Long currMinTimestamp = entry.getValue();
                     Long currMaxTimestamp = maxTimestampTrackerIDMapState.get(objID);
-                    // Deleting halted trajectories
-                    deleteHaltedTrajectories(currMaxTimestamp, inactiveTrajDeletionThreshold, objID);
+                    // Deleting halted trajectories, not reported as their dictionary entries expire
+                    if (deleteHaltedTrajectories(currMaxTimestamp, inactiveTrajDeletionThreshold, objID)) {
+                        continue;
+                    }
                     counter++;
                     Long trajLength = currMaxTimestamp-currMinTimestamp;
 
@@ -307,8 +414,8 @@ public class TAggregateQuery implements Serializable {
             }
             else{
                 trackerIDTrajLength.clear();
-                for (Map.Entry<String, Long> entry : minTimestampTrackerIDMapState.entries()) {
-                    String objID = entry.getKey();
+                for (Map.Entry<Integer, Long> entry : minTimestampTrackerIDMapState.entries()) {
+                    Integer objID = entry.getKey();
                     Long currMinTimestamp = entry.getValue();
                     Long currMaxTimestamp = maxTimestampTrackerIDMapState.get(objID);
 
@@ -413,7 +520,7 @@ public class TAggregateQuery implements Serializable {
             */
         }
 
-        boolean deleteHaltedTrajectories(Long maxTimestamp, Long maxAllowedLateness, String objID) throws Exception {
+        boolean deleteHaltedTrajectories(Long maxTimestamp, Long maxAllowedLateness, Integer objID) throws Exception {
             Date date = new Date();
 
             if (date.getTime() - maxTimestamp > maxAllowedLateness){
@@ -427,7 +534,7 @@ public class TAggregateQuery implements Serializable {
 
     // Count Window Process Function
     //ProcessWindowFunction<IN, OUT, KEY, W extends Window>
-    public static class CountWindowProcessFunction extends ProcessWindowFunction<Point, Tuple5<String, Integer, Long, Long, HashMap<String, Long>>, String, GlobalWindow> {
+    public static class CountWindowProcessFunction extends ProcessWindowFunction<Point, Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>, Long, GlobalWindow> {
 
         // HashMap<ObjectID, timestamp>
         HashMap<String, Long> minTimestampTrackerID = new HashMap<String, Long>();
@@ -443,12 +550,13 @@ public class TAggregateQuery implements Serializable {
 
         @Override
         // KEY key, Context context, Iterable<IN> elements, Collector<OUT> out
-        public void process(String key, Context context, Iterable<Point> input, Collector<Tuple5<String, Integer, Long, Long, HashMap<String, Long>>> output) throws Exception {
+        public void process(Long key, Context context, Iterable<Point> input, Collector<Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>> output) throws Exception {
 
             minTimestampTrackerID.clear();
             maxTimestampTrackerID.clear();
-            trackerIDTrajLength.clear();
-            trackerIDTrajLengthOutput.clear();
+            // The emitted maps are not cleared but re-allocated, as with object reuse the downstream operators receive them without a copy
+            trackerIDTrajLength = new HashMap<String, Long>();
+            trackerIDTrajLengthOutput = new HashMap<String, Long>();
             Long minTrajLength = Long.MAX_VALUE;
             String minTrajLengthObjID = "";
             Long maxTrajLength = Long.MIN_VALUE;
@@ -503,13 +611,13 @@ public class TAggregateQuery implements Serializable {
 
             // Tuple5<Key/CellID, #ObjectsInCell, windowStartTime, windowEndTime, Map<TrajId, TrajLength>>
             if(this.aggregateFunction.equalsIgnoreCase("ALL")){
-                output.collect(new Tuple5<String, Integer, Long, Long, HashMap<String, Long>>(key,
+                output.collect(new Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>(key,
                         trackerIDTrajLength.size(), context.window().maxTimestamp(), context.window().maxTimestamp(), trackerIDTrajLength));
             }
             else if(this.aggregateFunction.equalsIgnoreCase("SUM")){
                 if(sumTrajLength > 0) {
                     trackerIDTrajLengthOutput.put("", sumTrajLength);
-                    output.collect(new Tuple5<String, Integer, Long, Long, HashMap<String, Long>>(key,
+                    output.collect(new Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>(key,
                             trackerIDTrajLength.size(), context.window().maxTimestamp(), context.window().maxTimestamp(), trackerIDTrajLengthOutput));
                 }
             }
@@ -517,26 +625,26 @@ public class TAggregateQuery implements Serializable {
                 if(sumTrajLength > 0) {
                     Long avgTrajLength = (Long) Math.round((sumTrajLength * 1.0) / (trackerIDTrajLength.size() * 1.0));
                     trackerIDTrajLengthOutput.put("", avgTrajLength);
-                    output.collect(new Tuple5<String, Integer, Long, Long, HashMap<String, Long>>(key,
+                    output.collect(new Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>(key,
                             trackerIDTrajLength.size(), context.window().maxTimestamp(), context.window().maxTimestamp(), trackerIDTrajLengthOutput));
                 }
             }
             else if(this.aggregateFunction.equalsIgnoreCase("MIN")){
                 if(minTrajLength != Long.MAX_VALUE) {
                     trackerIDTrajLengthOutput.put(minTrajLengthObjID, minTrajLength);
-                    output.collect(new Tuple5<String, Integer, Long, Long, HashMap<String, Long>>(key,
+                    output.collect(new Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>(key,
                             trackerIDTrajLength.size(), context.window().maxTimestamp(), context.window().maxTimestamp(), trackerIDTrajLengthOutput));
                 }
             }
             else if(this.aggregateFunction.equalsIgnoreCase("MAX")){
                 if(maxTrajLength != Long.MIN_VALUE) {
                     trackerIDTrajLengthOutput.put(maxTrajLengthObjID, maxTrajLength);
-                    output.collect(new Tuple5<String, Integer, Long, Long, HashMap<String, Long>>(key,
+                    output.collect(new Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>(key,
                             trackerIDTrajLength.size(), context.window().maxTimestamp(), context.window().maxTimestamp(), trackerIDTrajLengthOutput));
                 }
             }
             else{
-                output.collect(new Tuple5<String, Integer, Long, Long, HashMap<String, Long>>(key,
+                output.collect(new Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>(key,
                         trackerIDTrajLength.size(), context.window().maxTimestamp(), context.window().maxTimestamp(), trackerIDTrajLength));
             }
         }
@@ -544,7 +652,7 @@ public class TAggregateQuery implements Serializable {
 
     //Time Window Process Function
     //ProcessWindowFunction<IN, OUT, KEY, W extends Window>
-    public static class TimeWindowProcessFunction extends ProcessWindowFunction<Point, Tuple5<String, Integer, Long, Long, HashMap<String, Long>>, String, TimeWindow> {
+    public static class TimeWindowProcessFunction extends ProcessWindowFunction<Point, Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>, Long, TimeWindow> {
 
         // HashMap<TrackerID, timestamp>
         HashMap<String, Long> minTimestampTrackerID = new HashMap<String, Long>();
@@ -552,6 +660,11 @@ public class TAggregateQuery implements Serializable {
         // HashMap <TrackerID, TrajLength>
         HashMap<String, Long> trackerIDTrajLength = new HashMap<String, Long>();
         HashMap<String, Long> trackerIDTrajLengthOutput = new HashMap<String, Long>();
+        Long minTrajLength;
+        String minTrajLengthObjID;
+        Long maxTrajLength;
+        String maxTrajLengthObjID;
+        Long sumTrajLength;
 
         String aggregateFunction;
         public TimeWindowProcessFunction(String aggregateFunction){
@@ -560,114 +673,192 @@ public class TAggregateQuery implements Serializable {
 
         @Override
         // KEY key, Context context, Iterable<IN> elements, Collector<OUT> out
-        public void process(String key, Context context, Iterable<Point> input, Collector<Tuple5<String, Integer, Long, Long, HashMap<String, Long>>> output) throws Exception {
+        public void process(Long key, Context context, Iterable<Point> input, Collector<Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>> output) throws Exception {
 
-            minTimestampTrackerID.clear();
-            maxTimestampTrackerID.clear();
-            trackerIDTrajLength.clear();
-            trackerIDTrajLengthOutput.clear();
-            Long minTrajLength = Long.MAX_VALUE;
-            String minTrajLengthObjID = "";
-            Long maxTrajLength = Long.MIN_VALUE;
-            String maxTrajLengthObjID = "";
-            Long sumTrajLength = 0L;
+            startWindow();
 
             // Iterate through all the points corresponding to a single grid-cell within the scope of the window
             for (Point p : input) {
-                Long currMinTimestamp = minTimestampTrackerID.get(p.objID);
-                Long currMaxTimestamp = maxTimestampTrackerID.get(p.objID);
-                Long minTimestamp = currMinTimestamp;
-                Long maxTimestamp = currMaxTimestamp;
+                addPoint(p.objID, p.timeStampMillisec);
+            }
 
-                //System.out.println("point timestamp " + p.timeStampMillisec + " Window bounds: " + context.window().getStart() + ", " + context.window().getEnd());
+            emitWindow(key, context.window().getStart(), context.window().getEnd(), output);
+        }
 
-                if (currMinTimestamp != null) { // If exists replace else insert
-                    if (p.timeStampMillisec < currMinTimestamp) {
-                        minTimestampTrackerID.replace(p.objID, p.timeStampMillisec);
-                        minTimestamp = p.timeStampMillisec;
-                    }
+        // The aggregation steps of process, also used by the batched query (TimeWindowBatchProcessFunction)
+        void startWindow() {
+            minTimestampTrackerID.clear();
+            maxTimestampTrackerID.clear();
+            // The emitted maps are not cleared but re-allocated, as with object reuse the downstream operators receive them without a copy
+            trackerIDTrajLength = new HashMap<String, Long>();
+            trackerIDTrajLengthOutput = new HashMap<String, Long>();
+            minTrajLength = Long.MAX_VALUE;
+            minTrajLengthObjID = "";
+            maxTrajLength = Long.MIN_VALUE;
+            maxTrajLengthObjID = "";
+            sumTrajLength = 0L;
+        }
 
-                    if (p.timeStampMillisec > currMaxTimestamp) {
-                        maxTimestampTrackerID.replace(p.objID, p.timeStampMillisec);
-                        maxTimestamp = p.timeStampMillisec;
-                    }
+        void addPoint(String objID, long timeStampMillisec) {
+            Long currMinTimestamp = minTimestampTrackerID.get(objID);
+            Long currMaxTimestamp = maxTimestampTrackerID.get(objID);
+            Long minTimestamp = currMinTimestamp;
+            Long maxTimestamp = currMaxTimestamp;
 
-                    // Compute the trajectory length and update the map if needed
-                    Long currTrajLength = trackerIDTrajLength.get(p.objID);
-                    Long trajLength = maxTimestamp - minTimestamp;
+            if (currMinTimestamp != null) { // If exists replace else insert
+                if (timeStampMillisec < currMinTimestamp) {
+                    minTimestampTrackerID.replace(objID, timeStampMillisec);
+                    minTimestamp = timeStampMillisec;
+                }
 
-                    if (!currTrajLength.equals(trajLength)) {
-                        trackerIDTrajLength.replace(p.objID, trajLength);
-                        sumTrajLength -= currTrajLength;
-                        sumTrajLength += trajLength;
-                    }
+                if (timeStampMillisec > currMaxTimestamp) {
+                    maxTimestampTrackerID.replace(objID, timeStampMillisec);
+                    maxTimestamp = timeStampMillisec;
+                }
 
-                    // Computing MAX Trajectory Length
-                    if(trajLength > maxTrajLength){
-                        maxTrajLength = trajLength;
-                        maxTrajLengthObjID = p.objID;
-                    }
+                // Compute the trajectory length and update the map if needed
+                Long currTrajLength = trackerIDTrajLength.get(objID);
+                Long trajLength = maxTimestamp - minTimestamp;
 
-                    // Computing MIN Trajectory Length
-                    if(trajLength < minTrajLength){
-                        minTrajLength = trajLength;
-                        minTrajLengthObjID = p.objID;
-                    }
+                if (!currTrajLength.equals(trajLength)) {
+                    trackerIDTrajLength.replace(objID, trajLength);
+                    sumTrajLength -= currTrajLength;
+                    sumTrajLength += trajLength;
+                }
 
-                } else {
-                    minTimestampTrackerID.put(p.objID, p.timeStampMillisec);
-                    maxTimestampTrackerID.put(p.objID, p.timeStampMillisec);
-                    trackerIDTrajLength.put(p.objID, 0L);
+                // Computing MAX Trajectory Length
+                if(trajLength > maxTrajLength){
+                    maxTrajLength = trajLength;
+                    maxTrajLengthObjID = objID;
+                }
+
+                // Computing MIN Trajectory Length
+                if(trajLength < minTrajLength){
+                    minTrajLength = trajLength;
+                    minTrajLengthObjID = objID;
                 }
+
+            } else {
+                minTimestampTrackerID.put(objID, timeStampMillisec);
+                maxTimestampTrackerID.put(objID, timeStampMillisec);
+                trackerIDTrajLength.put(objID, 0L);
             }
+        }
+
+        void emitWindow(Long key, long windowStart, long windowEnd, Collector<Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>> output) {
 
             // Tuple5<Key/CellID, #ObjectsInCell, windowStartTime, windowEndTime, Map<TrajId, TrajLength>>
             if(this.aggregateFunction.equalsIgnoreCase("ALL")){
-                output.collect(new Tuple5<String, Integer, Long, Long, HashMap<String, Long>>(key,
-                        trackerIDTrajLength.size(), context.window().getStart(), context.window().getEnd(), trackerIDTrajLength));
+                output.collect(new Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>(key,
+                        trackerIDTrajLength.size(), windowStart, windowEnd, trackerIDTrajLength));
             }
             else if(this.aggregateFunction.equalsIgnoreCase("SUM")){
                 if(sumTrajLength > 0) {
                     trackerIDTrajLengthOutput.put("", sumTrajLength);
-                    output.collect(new Tuple5<String, Integer, Long, Long, HashMap<String, Long>>(key,
-                            trackerIDTrajLength.size(), context.window().getStart(), context.window().getEnd(), trackerIDTrajLengthOutput));
+                    output.collect(new Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>(key,
+                            trackerIDTrajLength.size(), windowStart, windowEnd, trackerIDTrajLengthOutput));
                 }
             }
             else if(this.aggregateFunction.equalsIgnoreCase("AVG")){
                 if(sumTrajLength > 0) {
                     Long avgTrajLength = (Long) Math.round((sumTrajLength * 1.0) / (trackerIDTrajLength.size() * 1.0));
                     trackerIDTrajLengthOutput.put("", avgTrajLength);
-                    output.collect(new Tuple5<String, Integer, Long, Long, HashMap<String, Long>>(key,
-                            trackerIDTrajLength.size(), context.window().getStart(), context.window().getEnd(), trackerIDTrajLengthOutput));
+                    output.collect(new Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>(key,
+                            trackerIDTrajLength.size(), windowStart, windowEnd, trackerIDTrajLengthOutput));
                 }
             }
             else if(this.aggregateFunction.equalsIgnoreCase("MIN")){
                 if(minTrajLength != Long.MAX_VALUE) {
                     trackerIDTrajLengthOutput.put(minTrajLengthObjID, minTrajLength);
-                    output.collect(new Tuple5<String, Integer, Long, Long, HashMap<String, Long>>(key,
-                            trackerIDTrajLength.size(), context.window().getStart(), context.window().getEnd(), trackerIDTrajLengthOutput));
+                    output.collect(new Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>(key,
+                            trackerIDTrajLength.size(), windowStart, windowEnd, trackerIDTrajLengthOutput));
                 }
             }
             else if(this.aggregateFunction.equalsIgnoreCase("MAX")){
                 if(maxTrajLength != Long.MIN_VALUE) {
                     trackerIDTrajLengthOutput.put(maxTrajLengthObjID, maxTrajLength);
-                    output.collect(new Tuple5<String, Integer, Long, Long, HashMap<String, Long>>(key,
-                            trackerIDTrajLength.size(), context.window().getStart(), context.window().getEnd(), trackerIDTrajLengthOutput));
+                    output.collect(new Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>(key,
+                            trackerIDTrajLength.size(), windowStart, windowEnd, trackerIDTrajLengthOutput));
                 }
             }
             else{
-                output.collect(new Tuple5<String, Integer, Long, Long, HashMap<String, Long>>(key,
-                        trackerIDTrajLength.size(), context.window().getStart(), context.window().getEnd(), trackerIDTrajLength));
+                output.collect(new Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>(key,
+                        trackerIDTrajLength.size(), windowStart, windowEnd, trackerIDTrajLength));
             }
         }
     }
 
+    //Time Window Process Function of the point batches (TSpatialHeatmapAggregateQueryBatched)
+    //A batch is assigned to all the windows overlapping its timestamps, hence only its points within the window are aggregated
+    public static class TimeWindowBatchProcessFunction extends ProcessWindowFunction<PointBatch, Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>, Long, TimeWindow> {
+
+        TimeWindowProcessFunction aggregator;
+        public TimeWindowBatchProcessFunction(String aggregateFunction){
+            this.aggregator = new TimeWindowProcessFunction(aggregateFunction);
+        }
+
+        @Override
+        public void process(Long key, Context context, Iterable<PointBatch> input, Collector<Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>> output) throws Exception {
+
+            long windowStart = context.window().getStart();
+            long windowEnd = context.window().getEnd();
+            aggregator.startWindow();
+
+            for (PointBatch batch : input) {
+                for (int i = 0; i < batch.size(); i++) {
+                    long timeStampMillisec = batch.getTimeStampMillisec(i);
+                    if (timeStampMillisec >= windowStart && timeStampMillisec < windowEnd) {
+                        aggregator.addPoint(batch.getObjID(i), timeStampMillisec);
+                    }
+                }
+            }
+
+            aggregator.emitWindow(key, windowStart, windowEnd, output);
+        }
+    }
 
+    // Sliding event time windows of the point batches: a batch belongs to every window overlapping [minTimeStampMillisec, maxTimeStampMillisec]
+    public static class SlidingEventTimeBatchWindows extends WindowAssigner<Object, TimeWindow> {
+
+        private final long size;
+        private final long slide;
+
+        public SlidingEventTimeBatchWindows(long size, long slide) {
+            this.size = size;
+            this.slide = slide;
+        }
+
+        @Override
+        public Collection<TimeWindow> assignWindows(Object element, long timestamp, WindowAssignerContext context) {
+            PointBatch batch = (PointBatch) element;
+            List<TimeWindow> windows = new ArrayList<TimeWindow>();
+            long lastStart = TimeWindow.getWindowStartWithOffset(batch.maxTimeStampMillisec, 0, slide);
+            for (long start = lastStart; start > batch.minTimeStampMillisec - size; start -= slide) {
+                windows.add(new TimeWindow(start, start + size));
+            }
+            return windows;
+        }
+
+        @Override
+        public Trigger<Object, TimeWindow> getDefaultTrigger(StreamExecutionEnvironment env) {
+            return EventTimeTrigger.create();
+        }
+
+        @Override
+        public TypeSerializer<TimeWindow> getWindowSerializer(ExecutionConfig executionConfig) {
+            return new TimeWindow.Serializer();
+        }
+
+        @Override
+        public boolean isEventTime() {
+            return true;
+        }
+    }
 
     /*
     //Time Window Process Function
     //ProcessWindowFunction<IN, OUT, KEY, W extends Window>
-    public static class TimeWindowProcessFunction extends ProcessWindowFunction<Point, Tuple5<String, Integer, Long, Long, HashMap<String, Long>>, String, TimeWindow> {
+    public static class TimeWindowProcessFunction extends ProcessWindowFunction<Point, Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>, Long, TimeWindow> {
 
         // HashMap<TrackerID, timestamp>
         HashMap<String, Long> minTimestampTrackerID = new HashMap<String, Long>();
@@ -694,7 +885,7 @@ public class TAggregateQuery implements Serializable {
 
         @Override
         // KEY key, Context context, Iterable<IN> elements, Collector<OUT> out
-        public void process(String key, Context context, Iterable<Point> input, Collector<Tuple5<String, Integer, Long, Long, HashMap<String, Long>>> output) throws Exception {
+        public void process(Long key, Context context, Iterable<Point> input, Collector<Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>> output) throws Exception {
 
             minTimestampTrackerID.clear();
             maxTimestampTrackerID.clear();
@@ -737,7 +928,7 @@ public class TAggregateQuery implements Serializable {
 
                     trackerIDTrajLength.put(objID, (currMaxTimestamp-currMinTimestamp));
                 }
-                output.collect(new Tuple5<String, Integer, Long, Long, HashMap<String, Long>>(key,
+                output.collect(new Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>(key,
                         minTimestampTrackerID.size(), context.window().getStart(), context.window().getEnd(), trackerIDTrajLength));
             }
             else if(this.aggregateFunction.equalsIgnoreCase("SUM") || this.aggregateFunction.equalsIgnoreCase("AVG")){
@@ -755,14 +946,14 @@ public class TAggregateQuery implements Serializable {
                 if(this.aggregateFunction.equalsIgnoreCase("SUM"))
                 {
                     trackerIDTrajLength.put("", sumTrajLength);
-                    output.collect(new Tuple5<String, Integer, Long, Long, HashMap<String, Long>>(key,
+                    output.collect(new Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>(key,
                             minTimestampTrackerID.size(), context.window().getStart(), context.window().getEnd(), trackerIDTrajLength));
                 }
                 else // AVG
                 {
                     Long avgTrajLength = (Long)Math.round((sumTrajLength * 1.0)/(minTimestampTrackerID.size() * 1.0));
                     trackerIDTrajLength.put("", avgTrajLength);
-                    output.collect(new Tuple5<String, Integer, Long, Long, HashMap<String, Long>>(key,
+                    output.collect(new Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>(key,
                             minTimestampTrackerID.size(), context.window().getStart(), context.window().getEnd(), trackerIDTrajLength));
                 }
             }
@@ -786,7 +977,7 @@ public class TAggregateQuery implements Serializable {
                 }
 
                 trackerIDTrajLength.put(minTrajLengthObjID, minTrajLength);
-                output.collect(new Tuple5<String, Integer, Long, Long, HashMap<String, Long>>(key,
+                output.collect(new Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>(key,
                         minTimestampTrackerID.size(), context.window().getStart(), context.window().getEnd(), trackerIDTrajLength));
             }
             else if(this.aggregateFunction.equalsIgnoreCase("MAX")){
@@ -809,7 +1000,7 @@ public class TAggregateQuery implements Serializable {
                 }
 
                 trackerIDTrajLength.put(maxTrajLengthObjID, maxTrajLength);
-                output.collect(new Tuple5<String, Integer, Long, Long, HashMap<String, Long>>(key,
+                output.collect(new Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>(key,
                         minTimestampTrackerID.size(), context.window().getStart(), context.window().getEnd(), trackerIDTrajLength));
             }
             else{
@@ -821,7 +1012,7 @@ public class TAggregateQuery implements Serializable {
 
                     trackerIDTrajLength.put(objID, (currMaxTimestamp-currMinTimestamp));
                 }
-                output.collect(new Tuple5<String, Integer, Long, Long, HashMap<String, Long>>(key,
+                output.collect(new Tuple5<Long, Integer, Long, Long, HashMap<String, Long>>(key,
                         trackerIDTrajLength.size(), context.window().getStart(), context.window().getEnd(), trackerIDTrajLength));
             }
         }
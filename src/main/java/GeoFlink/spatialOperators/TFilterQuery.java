@@ -1,6 +1,8 @@
 package GeoFlink.spatialOperators;
 import GeoFlink.spatialObjects.LineString;
 import GeoFlink.spatialObjects.Point;
+import GeoFlink.spatialObjects.TrajectoryBuffer;
+import org.apache.flink.api.common.functions.AggregateFunction;
 import org.apache.flink.api.common.functions.FilterFunction;
 import org.apache.flink.api.java.functions.KeySelector;
 import org.apache.flink.api.java.tuple.Tuple2;
@@ -12,12 +14,9 @@ import org.apache.flink.streaming.api.windowing.assigners.SlidingProcessingTimeW
 import org.apache.flink.streaming.api.windowing.time.Time;
 import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
 import org.apache.flink.util.Collector;
-import org.locationtech.jts.geom.Coordinate;
 
 import java.io.Serializable;
 import java.util.Date;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Set;
 
 public class TFilterQuery implements Serializable {
@@ -70,20 +69,47 @@ public class TFilterQuery implements Serializable {
                 return p.objID;
             }
         }).window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(windowSlideStep)))
-                .apply(new WindowFunction<Point, LineString, String, TimeWindow>() {
-                    List<Coordinate> coordinateList = new LinkedList<>();
-                    @Override
-                    public void apply(String objID, TimeWindow timeWindow, Iterable<Point> pointIterator, Collector<LineString> trajectory) throws Exception {
-
-                        coordinateList.clear();
-                        for (Point p : pointIterator) {
-                            coordinateList.add(new Coordinate(p.point.getX(), p.point.getY()));
-                        }
-                        LineString ls = new LineString(objID, coordinateList);
-                        trajectory.collect(ls);
-                    }
-                }).name("TrajIDFilterWindowedQuery");
+                // The window state is the trajectory buffer of the object instead of its points
+                .aggregate(new TrajectoryBufferAggregateFunction(), new TrajectoryBufferWindowFunction())
+                .name("TrajIDFilterWindowedQuery");
 
         return  windowedTrajectories;
     }
+
+    // Appends the points of an object to its trajectory buffer, the accumulator (window state) of the trajectory windows
+    public static class TrajectoryBufferAggregateFunction implements AggregateFunction<Point, TrajectoryBuffer, TrajectoryBuffer> {
+
+        @Override
+        public TrajectoryBuffer createAccumulator() {
+            return new TrajectoryBuffer();
+        }
+
+        @Override
+        public TrajectoryBuffer add(Point p, TrajectoryBuffer trajectoryBuffer) {
+            trajectoryBuffer.add(p);
+            return trajectoryBuffer;
+        }
+
+        @Override
+        public TrajectoryBuffer getResult(TrajectoryBuffer trajectoryBuffer) {
+            return trajectoryBuffer;
+        }
+
+        @Override
+        public TrajectoryBuffer merge(TrajectoryBuffer trajectoryBuffer1, TrajectoryBuffer trajectoryBuffer2) {
+            trajectoryBuffer1.addAll(trajectoryBuffer2);
+            return trajectoryBuffer1;
+        }
+    }
+
+    // LineString of the trajectory buffer of a window
+    public static class TrajectoryBufferWindowFunction implements WindowFunction<TrajectoryBuffer, LineString, String, TimeWindow> {
+
+        @Override
+        public void apply(String objID, TimeWindow timeWindow, Iterable<TrajectoryBuffer> trajectoryBuffers, Collector<LineString> trajectory) throws Exception {
+            for (TrajectoryBuffer trajectoryBuffer : trajectoryBuffers) {
+                trajectory.collect(trajectoryBuffer.toLineString(objID));
+            }
+        }
+    }
 }
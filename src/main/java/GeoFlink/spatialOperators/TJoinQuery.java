@@ -1,6 +1,6 @@
 package GeoFlink.spatialOperators;
 
-import GeoFlink.spatialIndices.UniformGrid;
+import GeoFlink.spatialIndices.SpatialIndex;
 import GeoFlink.spatialObjects.Point;
 import GeoFlink.spatialObjects.Polygon;
 import GeoFlink.utils.HelperClass;
@@ -26,19 +26,19 @@ import java.util.*;
 public class TJoinQuery implements Serializable {
 
     //--------------- Spatial Trajectory  JOIN QUERY -----------------//
-    public static DataStream<Tuple2<Point, Point>> TSpatialJoinQuery(DataStream<Point> ordinaryPointStream, DataStream<Point> queryPointStream, double joinDistance, int windowSize, UniformGrid uGrid) {
+    public static DataStream<Tuple2<Point, Point>> TSpatialJoinQuery(DataStream<Point> ordinaryPointStream, DataStream<Point> queryPointStream, double joinDistance, int windowSize, SpatialIndex uGrid) {
 
         /*
-        KeyedStream<Point, String> replicatedKeyedQueryStream = JoinQuery.getReplicatedQueryStream(queryPointStream, joinDistance, uGrid).keyBy(new KeySelector<Point, String>() {
+        KeyedStream<Point, Long> replicatedKeyedQueryStream = JoinQuery.getReplicatedQueryStream(queryPointStream, joinDistance, uGrid).keyBy(new KeySelector<Point, Long>() {
             @Override
-            public String getKey(Point p) throws Exception {
+            public Long getKey(Point p) throws Exception {
                 return p.gridID;
             }
         });
 
-        KeyedStream<Point, String> ordinaryKeyedQueryStream = ordinaryPointStream.keyBy(new KeySelector<Point, String>() {
+        KeyedStream<Point, Long> ordinaryKeyedQueryStream = ordinaryPointStream.keyBy(new KeySelector<Point, Long>() {
             @Override
-            public String getKey(Point q) throws Exception {
+            public Long getKey(Point q) throws Exception {
                 return q.gridID;
             }});
          */
@@ -65,22 +65,22 @@ public class TJoinQuery implements Serializable {
         DataStream<Point> replicatedQueryStream = getReplicatedQueryStream(queryStreamWithTsAndWm, joinDistance, uGrid);
 
         DataStream<Tuple2<Point, Point>> joinOutput = ordinaryStreamWithTsAndWm.join(replicatedQueryStream)
-                .where(new KeySelector<Point, String>() {
+                .where(new KeySelector<Point, Long>() {
                     @Override
-                    public String getKey(Point p) throws Exception {
+                    public Long getKey(Point p) throws Exception {
                         return p.gridID;
                     }
-                }).equalTo(new KeySelector<Point, String>() {
+                }).equalTo(new KeySelector<Point, Long>() {
                     @Override
-                    public String getKey(Point q) throws Exception {
+                    public Long getKey(Point q) throws Exception {
                         return q.gridID;
                     }
                 }).window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(windowSize)))
                 .apply(new JoinFunction<Point, Point, Tuple2<Point,Point>>() {
                     @Override
                     public Tuple2<Point, Point> join(Point p, Point q) {
-                        //System.out.println(HelperClass.getPointPointEuclideanDistance(p.point.getX(), p.point.getY(), q.point.getX(), q.point.getY()));
-                        if (HelperClass.getPointPointEuclideanDistance(p.point.getX(), p.point.getY(), q.point.getX(), q.point.getY()) <= joinDistance) {
+                        //System.out.println(HelperClass.getPointPointEuclideanDistance(p.x, p.y, q.x, q.y));
+                        if (HelperClass.getPointPointEuclideanDistance(p.x, p.y, q.x, q.y) <= joinDistance) {
                             return Tuple2.of(p, q);
                         } else {
                             return Tuple2.of(null, null);
@@ -176,8 +176,8 @@ public class TJoinQuery implements Serializable {
                 .apply(new JoinFunction<Point, Point, Tuple2<Point,Point>>() {
                     @Override
                     public Tuple2<Point, Point> join(Point p, Point q) {
-                        //System.out.println(HelperClass.getPointPointEuclideanDistance(p.point.getX(), p.point.getY(), q.point.getX(), q.point.getY()));
-                        if (HelperClass.getPointPointEuclideanDistance(p.point.getX(), p.point.getY(), q.point.getX(), q.point.getY()) <= joinDistance) {
+                        //System.out.println(HelperClass.getPointPointEuclideanDistance(p.x, p.y, q.x, q.y));
+                        if (HelperClass.getPointPointEuclideanDistance(p.x, p.y, q.x, q.y) <= joinDistance) {
                             return Tuple2.of(p, q);
                         } else {
                             return Tuple2.of(null, null);
@@ -235,20 +235,18 @@ public class TJoinQuery implements Serializable {
     }
 
     //Replicate Query Point Stream for each Neighbouring Grid ID
-    public static DataStream<Point> getReplicatedQueryStream(DataStream<Point> queryPoints, double queryRadius, UniformGrid uGrid){
+    public static DataStream<Point> getReplicatedQueryStream(DataStream<Point> queryPoints, double queryRadius, SpatialIndex uGrid){
 
         return queryPoints.flatMap(new FlatMapFunction<Point, Point>() {
             @Override
             public void flatMap(Point queryPoint, Collector<Point> out) throws Exception {
 
                 // Neighboring cells contain all the cells including Candidate cells, Guaranteed Cells and the query point cell itself
-                HashSet<String> neighboringCells = uGrid.getNeighboringCells(queryRadius, queryPoint);
-
                 // Create duplicated query points
-                for (String gridID: neighboringCells) {
-                    Point p = new Point(queryPoint.objID, queryPoint.point.getX(), queryPoint.point.getY(), queryPoint.timeStampMillisec, gridID);
+                uGrid.forEachNeighboringCell(queryRadius, queryPoint.gridID, gridID -> {
+                    Point p = new Point(queryPoint.objID, queryPoint.x, queryPoint.y, queryPoint.timeStampMillisec, gridID);
                     out.collect(p);
-                }
+                });
             }
         });
     }
@@ -1,9 +1,11 @@
 package GeoFlink.spatialOperators;
 
-import GeoFlink.spatialIndices.UniformGrid;
+import GeoFlink.spatialIndices.CellBitmap;
+import GeoFlink.spatialIndices.SpatialIndex;
 import GeoFlink.spatialObjects.LineString;
 import GeoFlink.spatialObjects.Point;
 import GeoFlink.spatialObjects.Polygon;
+import GeoFlink.spatialObjects.TrajectoryBuffer;
 import GeoFlink.utils.Comparators;
 import GeoFlink.utils.HelperClass;
 import org.apache.flink.api.common.functions.FilterFunction;
@@ -32,9 +34,9 @@ import java.util.stream.Collectors;
 public class TKNNQuery implements Serializable {
 
     //--------------- TKNNQuery - Real-time -----------------//
-    public static DataStream<Tuple3<String, LineString, Double>> TSpatialKNNQuery(DataStream<Point> pointStream, Point queryPoint, double queryRadius, Integer k, int windowSize, int windowSlideStep, UniformGrid uGrid) {
+    public static DataStream<Tuple3<String, LineString, Double>> TSpatialKNNQuery(DataStream<Point> pointStream, Point queryPoint, double queryRadius, Integer k, int windowSize, int windowSlideStep, SpatialIndex uGrid) {
 
-        Set<String> neighboringCells = uGrid.getNeighboringCells(queryRadius, queryPoint);
+        CellBitmap neighboringCells = new CellBitmap(uGrid.getNeighboringCells(queryRadius, queryPoint));
 
         // Spatial stream with Timestamps and Watermarks
         // Max Allowed Lateness: windowSize
@@ -54,20 +56,20 @@ public class TKNNQuery implements Serializable {
         });
 
         // Output objID and its distance from point p
-        DataStream<Tuple2<String, Double>> windowedKNN = filteredPoints.keyBy(new KeySelector<Point, String>() {
+        DataStream<Tuple2<String, Double>> windowedKNN = filteredPoints.keyBy(new KeySelector<Point, Long>() {
             @Override
-            public String getKey(Point p) throws Exception {
+            public Long getKey(Point p) throws Exception {
                 return p.gridID;
             }
         }).window(SlidingEventTimeWindows.of(Time.seconds(windowSize), Time.seconds(windowSlideStep)))
-                .apply(new WindowFunction<Point, Tuple2<String, Double>, String, TimeWindow>() {
+                .apply(new WindowFunction<Point, Tuple2<String, Double>, Long, TimeWindow>() {
 
 
                     Map<String, Double> objMap = new HashMap<String, Double>();
                     HashMap<String, Double> sortedObjMap = new LinkedHashMap<>();
 
                     @Override
-                    public void apply(String gridID, TimeWindow timeWindow, Iterable<Point> inputTuples, Collector<Tuple2<String, Double>> outputStream) throws Exception {
+                    public void apply(Long gridID, TimeWindow timeWindow, Iterable<Point> inputTuples, Collector<Tuple2<String, Double>> outputStream) throws Exception {
 
                         objMap.clear();
                         sortedObjMap.clear();
@@ -75,7 +77,7 @@ public class TKNNQuery implements Serializable {
                         // compute the distance of all trajectory points w.r.t. query point and return the kNN (trajectory ID, distance) pairs
                         for (Point p : inputTuples) {
 
-                            Double newDistance = HelperClass.getPointPointEuclideanDistance(p.point.getX(), p.point.getY(), queryPoint.point.getX(), queryPoint.point.getY());
+                            Double newDistance = HelperClass.getPointPointEuclideanDistance(p.x, p.y, queryPoint.x, queryPoint.y);
                             Double existingDistance = objMap.get(p.objID);
 
                             if (existingDistance == null) { // if object with the given ObjID does not already exist
@@ -136,7 +138,7 @@ public class TKNNQuery implements Serializable {
                 .apply(new AllWindowFunction<Tuple3<String, Point, Double>, Tuple3<String, LineString, Double>, TimeWindow>() {
 
                     //Map of objID and LineString
-                    Map<String, List<Coordinate>> trajectories = new HashMap<>();
+                    Map<String, TrajectoryBuffer> trajectories = new HashMap<>();
                     Map<String, Double> objDistFromQueryPoint = new HashMap<>();
 
                     @Override
@@ -150,12 +152,11 @@ public class TKNNQuery implements Serializable {
 
                         for (Tuple3<String, Point, Double> e : input) {
 
-                            List<Coordinate> coordinateListIf = new ArrayList<Coordinate>();
-                            if ((coordinateListIf = trajectories.get(e.f0)) != null) // if trajectory exist
+                            TrajectoryBuffer trajectoryIf = trajectories.get(e.f0);
+                            if (trajectoryIf != null) // if trajectory exist
                             {
                                 // Updating trajectory
-                                coordinateListIf.add(new Coordinate(e.f1.point.getX(), e.f1.point.getY()));
-                                trajectories.replace(e.f0, coordinateListIf);
+                                trajectoryIf.add(e.f1);
 
                                 // Updating the object distance
                                 Double existingTrajDist = objDistFromQueryPoint.get(e.f0);
@@ -164,10 +165,10 @@ public class TKNNQuery implements Serializable {
 
                             } else // Create a lineString with one point if does not exist already
                             {
-                                List<Coordinate> coordinateListElse = new ArrayList<Coordinate>();
-                                coordinateListElse.add(new Coordinate(e.f1.point.getX(), e.f1.point.getY()));
+                                TrajectoryBuffer trajectoryElse = new TrajectoryBuffer();
+                                trajectoryElse.add(e.f1);
                                 // Inserting trajectory
-                                trajectories.put(e.f0, coordinateListElse);
+                                trajectories.put(e.f0, trajectoryElse);
                                 // Inserting traj distance
                                 objDistFromQueryPoint.put(e.f0, e.f2);
                             }
@@ -187,9 +188,9 @@ public class TKNNQuery implements Serializable {
                         for (Map.Entry<String, Double> entry : sortedobjDistFromQueryPoint.entrySet()) {
                             if (counter == k) break; // to guarantee that only k outputs are generated
 
-                            List<Coordinate> coordinateList = trajectories.get(entry.getKey());
-                            if(coordinateList.size() > 1) { // for linestring creation, at-least 2 points are required
-                                LineString ls = new LineString(entry.getKey(), coordinateList, uGrid);
+                            TrajectoryBuffer trajectory = trajectories.get(entry.getKey());
+                            if(trajectory.size() > 1) { // for linestring creation, at-least 2 points are required
+                                LineString ls = trajectory.toLineString(entry.getKey(), uGrid);
                                 output.collect(Tuple3.of(entry.getKey(), ls, entry.getValue()));
                                 counter++;
                             }
@@ -214,20 +215,20 @@ public class TKNNQuery implements Serializable {
                 });
 
         // Output objID and its distance from point p
-        DataStream<Tuple2<String, Double>> windowedKNN = pointStreamWithTsAndWm.keyBy(new KeySelector<Point, String>() {
+        DataStream<Tuple2<String, Double>> windowedKNN = pointStreamWithTsAndWm.keyBy(new KeySelector<Point, Long>() {
             @Override
-            public String getKey(Point p) throws Exception {
+            public Long getKey(Point p) throws Exception {
                 return p.gridID;
             }
         }).window(SlidingEventTimeWindows.of(Time.seconds(windowSize), Time.seconds(windowSlideStep)))
-                .apply(new WindowFunction<Point, Tuple2<String, Double>, String, TimeWindow>() {
+                .apply(new WindowFunction<Point, Tuple2<String, Double>, Long, TimeWindow>() {
 
 
                     Map<String, Double> objMap = new HashMap<String, Double>();
                     HashMap<String, Double> sortedObjMap = new LinkedHashMap<>();
 
                     @Override
-                    public void apply(String gridID, TimeWindow timeWindow, Iterable<Point> inputTuples, Collector<Tuple2<String, Double>> outputStream) throws Exception {
+                    public void apply(Long gridID, TimeWindow timeWindow, Iterable<Point> inputTuples, Collector<Tuple2<String, Double>> outputStream) throws Exception {
 
                         objMap.clear();
                         sortedObjMap.clear();
@@ -235,7 +236,7 @@ public class TKNNQuery implements Serializable {
                         // compute the distance of all trajectory points w.r.t. query point and return the kNN (trajectory ID, distance) pairs
                         for (Point p : inputTuples) {
 
-                            Double newDistance = HelperClass.getPointPointEuclideanDistance(p.point.getX(), p.point.getY(), queryPoint.point.getX(), queryPoint.point.getY());
+                            Double newDistance = HelperClass.getPointPointEuclideanDistance(p.x, p.y, queryPoint.x, queryPoint.y);
                             Double existingDistance = objMap.get(p.objID);
 
                             if (existingDistance == null) { // if object with the given ObjID does not already exist
@@ -296,7 +297,7 @@ public class TKNNQuery implements Serializable {
                 .apply(new AllWindowFunction<Tuple3<String, Point, Double>, Tuple3<String, LineString, Double>, TimeWindow>() {
 
                     //Map of objID and LineString
-                    Map<String, List<Coordinate>> trajectories = new HashMap<>();
+                    Map<String, TrajectoryBuffer> trajectories = new HashMap<>();
                     Map<String, Double> objDistFromQueryPoint = new HashMap<>();
 
                     @Override
@@ -310,12 +311,11 @@ public class TKNNQuery implements Serializable {
 
                         for (Tuple3<String, Point, Double> e : input) {
 
-                            List<Coordinate> coordinateListIf = new ArrayList<Coordinate>();
-                            if ((coordinateListIf = trajectories.get(e.f0)) != null) // if trajectory exist
+                            TrajectoryBuffer trajectoryIf = trajectories.get(e.f0);
+                            if (trajectoryIf != null) // if trajectory exist
                             {
                                 // Updating trajectory
-                                coordinateListIf.add(new Coordinate(e.f1.point.getX(), e.f1.point.getY()));
-                                trajectories.replace(e.f0, coordinateListIf);
+                                trajectoryIf.add(e.f1);
 
                                 // Updating the object distance
                                 Double existingTrajDist = objDistFromQueryPoint.get(e.f0);
@@ -324,10 +324,10 @@ public class TKNNQuery implements Serializable {
 
                             } else // Create a lineString with one point if does not exist already
                             {
-                                List<Coordinate> coordinateListElse = new ArrayList<Coordinate>();
-                                coordinateListElse.add(new Coordinate(e.f1.point.getX(), e.f1.point.getY()));
+                                TrajectoryBuffer trajectoryElse = new TrajectoryBuffer();
+                                trajectoryElse.add(e.f1);
                                 // Inserting trajectory
-                                trajectories.put(e.f0, coordinateListElse);
+                                trajectories.put(e.f0, trajectoryElse);
                                 // Inserting traj distance
                                 objDistFromQueryPoint.put(e.f0, e.f2);
                             }
@@ -347,9 +347,9 @@ public class TKNNQuery implements Serializable {
                         for (Map.Entry<String, Double> entry : sortedobjDistFromQueryPoint.entrySet()) {
                             if (counter == k) break; // to guarantee that only k outputs are generated
 
-                            List<Coordinate> coordinateList = trajectories.get(entry.getKey());
-                            if(coordinateList.size() > 1) { // for linestring creation, at-least 2 points are required
-                                LineString ls = new LineString(entry.getKey(), coordinateList);
+                            TrajectoryBuffer trajectory = trajectories.get(entry.getKey());
+                            if(trajectory.size() > 1) { // for linestring creation, at-least 2 points are required
+                                LineString ls = trajectory.toLineString(entry.getKey());
                                 output.collect(Tuple3.of(entry.getKey(), ls, entry.getValue()));
                                 counter++;
                             }
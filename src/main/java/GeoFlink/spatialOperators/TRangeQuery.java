@@ -1,5 +1,6 @@
 package GeoFlink.spatialOperators;
 
+import GeoFlink.spatialIndices.CellBitmap;
 import GeoFlink.spatialObjects.LineString;
 import GeoFlink.spatialObjects.Point;
 import GeoFlink.spatialObjects.Polygon;
@@ -29,7 +30,7 @@ public class TRangeQuery implements Serializable {
     //--------------- TSpatialRangeQuery Naive -----------------//
     public static DataStream<Point> TSpatialRangeQuery(Set<Polygon> polygonSet, DataStream<Point> pointStream){
 
-        HashSet<String> polygonsGridCellIDs = new HashSet<>();
+        HashSet<Long> polygonsGridCellIDs = new HashSet<>();
         // Making an integrated set of all the polygon's grid cell IDs
         for (Polygon poly: polygonSet) {
             polygonsGridCellIDs.addAll(poly.gridIDsSet);
@@ -45,7 +46,7 @@ public class TRangeQuery implements Serializable {
             @Override
             public boolean filter(Point p) throws Exception {
                 for (Polygon poly: polygonSet) {
-                    if (poly.polygon.contains(p.point.getEnvelope())) // Polygon contains the point
+                    if (poly.containsPoint(p.x, p.y)) // Polygon contains the point
                         return true;
                 }
                 return false; // Polygon does not contain the point
@@ -59,17 +60,18 @@ public class TRangeQuery implements Serializable {
     //--------------- TSpatialRangeQuery - Realtime -----------------//
     public static DataStream<Point> TSpatialRangeQuery(DataStream<Point> pointStream, Set<Polygon> polygonSet){
 
-        HashSet<String> polygonsGridCellIDs = new HashSet<>();
+        HashSet<Long> polygonsGridCellIDs = new HashSet<>();
         // Making an integrated set of all the polygon's grid cell IDs
         for (Polygon poly: polygonSet) {
             polygonsGridCellIDs.addAll(poly.gridIDsSet);
         }
+        CellBitmap polygonsGridCellsBitmap = new CellBitmap(polygonsGridCellIDs);
 
         // Filtering based on grid-cell ID
         DataStream<Point> filteredStream = pointStream.filter(new FilterFunction<Point>() {
             @Override
             public boolean filter(Point p) throws Exception {
-                return ((polygonsGridCellIDs.contains(p.gridID)));
+                return (polygonsGridCellsBitmap.contains(p.gridID));
             }
         });
 
@@ -83,7 +85,7 @@ public class TRangeQuery implements Serializable {
             @Override
             public boolean filter(Point p) throws Exception {
                 for (Polygon poly: polygonSet) {
-                    if (poly.polygon.contains(p.point.getEnvelope())) // Polygon contains the point
+                    if (poly.containsPoint(p.x, p.y)) // Polygon contains the point
                         return true;
                 }
                 return false; // Polygon does not contain the point
@@ -96,7 +98,7 @@ public class TRangeQuery implements Serializable {
     //--------------- TSpatialRangeQuery - Window-based - outputs a trajectory consisting of only the points which lie within given region -----------------//
     public static DataStream<LineString> TSpatialRangeQuery(DataStream<Point> pointStream, Set<Polygon> polygonSet, int windowSize, int windowSlideStep){
 
-        HashSet<String> polygonsGridCellIDs = new HashSet<>();
+        HashSet<Long> polygonsGridCellIDs = new HashSet<>();
 
         // Making an integrated set of all the polygon's grid cell IDs
         for (Polygon poly: polygonSet) {
@@ -136,8 +138,8 @@ public class TRangeQuery implements Serializable {
                         coordinateList.clear();
                         for (Point p : pointIterator) {
                             for (Polygon poly: polygonSet) {
-                                if (poly.polygon.contains(p.point.getEnvelope())) { // Polygon contains the point
-                                    coordinateList.add(new Coordinate(p.point.getX(), p.point.getY()));
+                                if (poly.containsPoint(p.x, p.y)) { // Polygon contains the point
+                                    coordinateList.add(new Coordinate(p.x, p.y));
                                     break;
                                 }
                             }
@@ -152,12 +154,13 @@ public class TRangeQuery implements Serializable {
     //--------------- TSpatialRangeQuery - Window-based - outputs a trajectory consisting of a complete sub-trajectory if any of its point lie within given region -----------------//
     public static DataStream<LineString> TSpatialRangeQuery(DataStream<Point> pointStream, Set<Polygon> polygonSet, int windowSize, int windowSlideStep){
 
-        HashSet<String> polygonsGridCellIDs = new HashSet<>();
+        HashSet<Long> polygonsGridCellIDs = new HashSet<>();
 
         // Making an integrated set of all the polygon's grid cell IDs
         for (Polygon poly: polygonSet) {
             polygonsGridCellIDs.addAll(poly.gridIDsSet);
         }
+        CellBitmap polygonsGridCellsBitmap = new CellBitmap(polygonsGridCellIDs);
 
         // Spatial stream with Timestamps and Watermarks
         // Max Allowed Lateness: windowSize
@@ -173,7 +176,7 @@ public class TRangeQuery implements Serializable {
         DataStream<Point> filteredStream = pointStreamWithTsAndWm.filter(new FilterFunction<Point>() {
             @Override
             public boolean filter(Point p) throws Exception {
-                return ((polygonsGridCellIDs.contains(p.gridID)));
+                return (polygonsGridCellsBitmap.contains(p.gridID));
             }
         });
 
@@ -217,17 +220,7 @@ public class TRangeQuery implements Serializable {
                    return p.objID;
                }
                }).window(SlidingProcessingTimeWindows.of(Time.seconds(windowSize), Time.seconds(windowSlideStep)))
-                 .apply(new WindowFunction<Point, LineString, String, TimeWindow>() {
-                    List<Coordinate> coordinateList = new LinkedList<>();
-                    @Override
-                    public void apply(String objID, TimeWindow timeWindow, Iterable<Point> pointIterator, Collector<LineString> trajectory) throws Exception {
-                        coordinateList.clear();
-                        for (Point p : pointIterator) {
-                            coordinateList.add(new Coordinate(p.point.getX(), p.point.getY()));
-                            }
-                        LineString ls = new LineString(objID, coordinateList);
-                        trajectory.collect(ls);
-                        }
-                    });
+                 // The window state is the trajectory buffer of the object instead of its points
+                 .aggregate(new TFilterQuery.TrajectoryBufferAggregateFunction(), new TFilterQuery.TrajectoryBufferWindowFunction());
     }
 }
@@ -0,0 +1,221 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialStreams;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+
+/*
+Byte-level parser of CSV point records, e.g., the raw Kafka record values: parse(record) only locates the fields of the
+configured columns, which are then converted in place by getX, getY and getTimeStampMillisec, without intermediate Strings.
+The whitespace around the delimiters is ignored, as by split("\\s*,\\s*")
+The parser keeps the offsets of the current record, hence an instance must not be shared by concurrent tasks
+*/
+public class CSVPointParser implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    // Larger mantissas are not exact as double, these are parsed by Double.parseDouble
+    private static final int MAX_FAST_DIGITS = 15;
+
+    public static final int NO_COLUMN = -1;
+
+    private final int xColumn;
+    private final int yColumn;
+    private final int timestampColumn;
+    private final int objIDColumn;
+    private final byte delimiter;
+    private final int numColumns;
+
+    private transient byte[] record;
+    private transient int[] fieldStart;
+    private transient int[] fieldEnd;
+
+    public CSVPointParser(int xColumn, int yColumn) {
+        this(xColumn, yColumn, NO_COLUMN, NO_COLUMN);
+    }
+
+    public CSVPointParser(int xColumn, int yColumn, int timestampColumn, int objIDColumn) {
+        this(xColumn, yColumn, timestampColumn, objIDColumn, ',');
+    }
+
+    public CSVPointParser(int xColumn, int yColumn, int timestampColumn, int objIDColumn, char delimiter) {
+        this.xColumn = xColumn;
+        this.yColumn = yColumn;
+        this.timestampColumn = timestampColumn;
+        this.objIDColumn = objIDColumn;
+        this.delimiter = (byte) delimiter;
+        this.numColumns = Math.max(Math.max(xColumn, yColumn), Math.max(timestampColumn, objIDColumn)) + 1;
+    }
+
+    // ATC shopping mall data, e.g., 1351039728.980,9471001,-22366,2452,1261.421,780.711,-2.415,-2.441
+    // time [s.ms], person id, position x [mm], position y [mm], position z (height) [mm], velocity [mm/s], angle of motion [rad], facing angle [rad]
+    public static CSVPointParser ATCFormat() {
+        return new CSVPointParser(2, 3, 0, 1);
+    }
+
+    // Column indices as "x,y[,timestamp,objID]"
+    public static CSVPointParser fromColumns(String columns) {
+        String[] indices = columns.split(",");
+        int xColumn = Integer.parseInt(indices[0].trim());
+        int yColumn = Integer.parseInt(indices[1].trim());
+        if (indices.length < 4) {
+            return new CSVPointParser(xColumn, yColumn);
+        }
+        return new CSVPointParser(xColumn, yColumn, Integer.parseInt(indices[2].trim()), Integer.parseInt(indices[3].trim()));
+    }
+
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    public boolean hasTimestamp() {
+        return timestampColumn != NO_COLUMN;
+    }
+
+    public boolean hasObjID() {
+        return objIDColumn != NO_COLUMN;
+    }
+
+    // Locates the fields of the record up to the last configured column, false if the record has fewer columns
+    public boolean parse(byte[] record) {
+        if (fieldStart == null) {
+            fieldStart = new int[numColumns];
+            fieldEnd = new int[numColumns];
+        }
+        this.record = record;
+
+        int i = 0;
+        int end = record.length;
+        for (int column = 0; column < numColumns; column++) {
+            int start = i;
+            while (i < end && record[i] != delimiter && record[i] != '\n' && record[i] != '\r') {
+                i++;
+            }
+            int fieldEndOffset = i;
+            while (start < fieldEndOffset && record[start] <= ' ') {
+                start++;
+            }
+            while (fieldEndOffset > start && record[fieldEndOffset - 1] <= ' ') {
+                fieldEndOffset--;
+            }
+            fieldStart[column] = start;
+            fieldEnd[column] = fieldEndOffset;
+
+            if (column < numColumns - 1) {
+                if (i >= end || record[i] != delimiter) {
+                    return false;
+                }
+                i++;
+            }
+        }
+        return true;
+    }
+
+    public double getX() {
+        return parseDouble(xColumn);
+    }
+
+    public double getY() {
+        return parseDouble(yColumn);
+    }
+
+    // Timestamp in seconds, with an optional fraction (milliseconds are kept, further digits are truncated)
+    public long getTimeStampMillisec() {
+        int i = fieldStart[timestampColumn];
+        int end = fieldEnd[timestampColumn];
+        long seconds = 0;
+        int digits = 0;
+        for (; i < end && isDigit(record[i]); i++) {
+            seconds = seconds * 10 + (record[i] - '0');
+            digits++;
+        }
+        long millis = 0;
+        if (i < end && record[i] == '.') {
+            i++;
+            int fractionDigits = 0;
+            for (; i < end && isDigit(record[i]); i++, fractionDigits++) {
+                if (fractionDigits < 3) {
+                    millis = millis * 10 + (record[i] - '0');
+                }
+            }
+            for (; fractionDigits < 3; fractionDigits++) {
+                millis *= 10;
+            }
+        }
+        if (i < end || digits == 0 || digits > 15) { // sign, exponent or malformed
+            return (long) (Double.parseDouble(getField(timestampColumn)) * 1000);
+        }
+        return seconds * 1000 + millis;
+    }
+
+    // Timestamp formatted as by the DateFormat of the parser, read from the record bytes
+    public long getTimeStampMillisec(TimestampParser timestampParser) throws ParseException {
+        return timestampParser.parse(record, fieldStart[timestampColumn], fieldEnd[timestampColumn]);
+    }
+
+    public String getObjID() {
+        return getField(objIDColumn);
+    }
+
+    // String of a field, e.g., the objID
+    public String getField(int column) {
+        return new String(record, fieldStart[column], fieldEnd[column] - fieldStart[column], StandardCharsets.UTF_8);
+    }
+
+    // Decimal numbers of up to 15 digits are exact as a long mantissa, hence mantissa / 10^fractionDigits is correctly rounded
+    private double parseDouble(int column) {
+        int i = fieldStart[column];
+        int end = fieldEnd[column];
+        boolean negative = false;
+        if (i < end && (record[i] == '-' || record[i] == '+')) {
+            negative = (record[i] == '-');
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            byte b = record[i];
+            if (isDigit(b)) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (fraction) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+
+        if (i < end || digits == 0 || digits > MAX_FAST_DIGITS) { // exponent, long mantissa or malformed
+            return Double.parseDouble(getField(column));
+        }
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
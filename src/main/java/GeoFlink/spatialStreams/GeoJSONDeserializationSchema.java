@@ -0,0 +1,268 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialStreams;
+
+import GeoFlink.spatialIndices.SpatialIndex;
+import GeoFlink.spatialObjects.Point;
+import GeoFlink.spatialObjects.Polygon;
+import GeoFlink.spatialObjects.SpatialObjectTypeInfo;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.core.JsonFactory;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.core.JsonParser;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.core.JsonToken;
+import org.apache.flink.streaming.connectors.kafka.KafkaDeserializationSchema;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.util.Arrays;
+
+/*
+Kafka deserialization of GeoJSON features directly into spatial objects, replacing JSONKeyValueDeserializationSchema
+followed by the SpatialStream GeoJSON parsers: the record value is read by a streaming parser in a single pass, without
+building the ObjectNode tree; the geometry coordinates are copied into a reusable buffer, the properties which are not
+needed are skipped, and the grid cells are assigned when the object is created.
+Same semantics as GeoJSONToSpatial, GeoJSONToTSpatial and GeoJSONToSpatialPolygon; records without a value or a geometry are dropped
+*/
+public abstract class GeoJSONDeserializationSchema<T> implements KafkaDeserializationSchema<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final SpatialIndex uGrid;
+    private transient JsonFactory jsonFactory;
+    // Packed x, y of the positions of the current feature
+    protected transient double[] coordinates;
+    protected transient int numCoordinates;
+
+    protected GeoJSONDeserializationSchema(SpatialIndex uGrid) {
+        this.uGrid = uGrid;
+    }
+
+    // Spatial object of the parsed feature, null if the feature has no (valid) geometry
+    protected abstract T toSpatialObject() throws Exception;
+
+    // Called before parsing each feature
+    protected void reset() {
+        numCoordinates = 0;
+    }
+
+    // Whether readProperty is called for the fields of properties, otherwise properties is skipped as a whole
+    protected boolean readsProperties() {
+        return false;
+    }
+
+    // Called with the parser on the value of a field of properties; the value must be consumed or skipped (skipChildren)
+    protected void readProperty(String name, JsonParser parser) throws Exception {
+        parser.skipChildren();
+    }
+
+    @Override
+    public T deserialize(ConsumerRecord<byte[], byte[]> record) throws Exception {
+        if (record.value() == null) {
+            return null;
+        }
+        if (jsonFactory == null) {
+            jsonFactory = new JsonFactory();
+            coordinates = new double[64];
+        }
+        reset();
+
+        try (JsonParser parser = jsonFactory.createParser(record.value())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_OBJECT && field.equals("geometry")) {
+                    readGeometry(parser);
+                } else if (token == JsonToken.START_OBJECT && field.equals("properties") && readsProperties()) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = parser.getCurrentName();
+                        parser.nextToken();
+                        readProperty(name, parser);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return toSpatialObject();
+    }
+
+    private void readGeometry(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.START_ARRAY && field.equals("coordinates")) {
+                readCoordinates(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    // Reads the coordinates array (the parser is on its START_ARRAY): the position of a Point, or the first ring of the first
+    // polygon of a Polygon/MultiPolygon; the holes and the other polygons are skipped
+    private void readCoordinates(JsonParser parser) throws IOException {
+        int openArrays = 1;
+        JsonToken token = parser.nextToken();
+        while (token == JsonToken.START_ARRAY) {
+            openArrays++;
+            token = parser.nextToken();
+        }
+
+        // token is the first ordinate of the first position, unless the array is empty
+        while (token != null && token.isNumeric()) {
+            double x = parser.getDoubleValue();
+            parser.nextToken();
+            addCoordinate(x, parser.getDoubleValue());
+            do { // z, m
+                token = parser.nextToken();
+            } while (token != null && token != JsonToken.END_ARRAY);
+            openArrays--;
+            if (openArrays == 0) { // Point
+                return;
+            }
+            token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                openArrays++;
+                token = parser.nextToken();
+            }
+        }
+        if (token == JsonToken.END_ARRAY) { // end of the ring
+            openArrays--;
+        }
+
+        while (openArrays > 0 && (token = parser.nextToken()) != null) {
+            if (token == JsonToken.START_ARRAY || token == JsonToken.START_OBJECT) {
+                parser.skipChildren();
+            } else if (token == JsonToken.END_ARRAY) {
+                openArrays--;
+            }
+        }
+    }
+
+    private void addCoordinate(double x, double y) {
+        if (2 * numCoordinates + 2 > coordinates.length) {
+            coordinates = Arrays.copyOf(coordinates, 2 * coordinates.length);
+        }
+        coordinates[2 * numCoordinates] = x;
+        coordinates[2 * numCoordinates + 1] = y;
+        numCoordinates++;
+    }
+
+    @Override
+    public boolean isEndOfStream(T nextElement) {
+        return false;
+    }
+
+    //---- Points (same as GeoJSONToSpatial) ----//
+    public static class PointSchema extends GeoJSONDeserializationSchema<Point> {
+
+        public PointSchema(SpatialIndex uGrid) {
+            super(uGrid);
+        }
+
+        @Override
+        protected Point toSpatialObject() {
+            if (numCoordinates < 1) {
+                return null;
+            }
+            return new Point(coordinates[0], coordinates[1], uGrid);
+        }
+
+        @Override
+        public TypeInformation<Point> getProducedType() {
+            return SpatialObjectTypeInfo.POINT_TYPE_INFO;
+        }
+    }
+
+    //---- Trajectory points (same as GeoJSONToTSpatial): only oID and timestamp are read from properties ----//
+    public static class TPointSchema extends GeoJSONDeserializationSchema<Point> {
+
+        private final TimestampParser timestampParser;
+        private transient String objID;
+        private transient long timeStampMillisec;
+
+        // dateFormat: null if the timestamps are in milliseconds
+        public TPointSchema(SpatialIndex uGrid, DateFormat dateFormat) {
+            super(uGrid);
+            this.timestampParser = (dateFormat == null) ? null : new TimestampParser(dateFormat);
+        }
+
+        @Override
+        protected void reset() {
+            super.reset();
+            objID = null;
+            timeStampMillisec = 0;
+        }
+
+        @Override
+        protected boolean readsProperties() {
+            return true;
+        }
+
+        @Override
+        protected void readProperty(String name, JsonParser parser) throws Exception {
+            if (name.equals("oID")) {
+                objID = parser.getText();
+            } else if (name.equals("timestamp")) {
+                if (timestampParser == null) {
+                    timeStampMillisec = parser.getValueAsLong();
+                } else { // parsed from the text buffer of the parser
+                    timeStampMillisec = timestampParser.parse(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        @Override
+        protected Point toSpatialObject() {
+            if (numCoordinates < 1) {
+                return null;
+            }
+            return new Point(objID, coordinates[0], coordinates[1], timeStampMillisec, uGrid);
+        }
+
+        @Override
+        public TypeInformation<Point> getProducedType() {
+            return SpatialObjectTypeInfo.POINT_TYPE_INFO;
+        }
+    }
+
+    //---- Polygons (same as GeoJSONToSpatialPolygon): the shell of a Polygon, or of the first polygon of a MultiPolygon ----//
+    public static class PolygonSchema extends GeoJSONDeserializationSchema<Polygon> {
+
+        public PolygonSchema(SpatialIndex uGrid) {
+            super(uGrid);
+        }
+
+        @Override
+        protected Polygon toSpatialObject() {
+            if (numCoordinates < 2) {
+                return null;
+            }
+            return new Polygon(Arrays.copyOf(coordinates, 2 * numCoordinates), uGrid);
+        }
+
+        @Override
+        public TypeInformation<Polygon> getProducedType() {
+            return SpatialObjectTypeInfo.POLYGON_TYPE_INFO;
+        }
+    }
+}
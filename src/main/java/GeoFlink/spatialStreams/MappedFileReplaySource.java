@@ -0,0 +1,315 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialStreams;
+
+import GeoFlink.spatialObjects.Point;
+import GeoFlink.spatialObjects.Polygon;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.typeinfo.TypeHint;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.tuple.Tuple3;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.functions.source.RichParallelSourceFunction;
+import org.apache.flink.streaming.connectors.kafka.KafkaDeserializationSchema;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Parallel source replaying a file of SpatialBinaryFormat records, e.g., a dataset converted once by convert or convertCSV, without a broker.
+The records are emitted as byte arrays, i.e., the "Binary" inputType of SpatialStream (PointStream, TrajectoryStream, PolygonStream).
+
+File layout: a header (MAGIC, VERSION, blockSize, number of records, minimum timestamp) followed by blocks of blockSize bytes,
+each holding [int length][record] entries; a record does not cross a block boundary, a length of 0 pads the rest of a block.
+The subtasks read the blocks round-robin (block i by subtask i % parallelism), each block memory-mapped, hence the split readers
+advance through a time-ordered file together.
+replaySpeed > 0 paces the records by their timestamps, replaySpeed times faster than recorded (1: real time), relative to the
+minimum timestamp of the file (of the first record after a restore); records without a timestamp and replaySpeed = 0 are emitted
+as fast as possible.
+Checkpointing: the read position of a subtask, (block, offset within the block, block stride), is operator list state updated under
+the checkpoint lock with each record; after a restore the reading resumes from it. After rescaling, a subtask may hold several positions
+(read in block order) or none
+*/
+public class MappedFileReplaySource extends RichParallelSourceFunction<byte[]> implements CheckpointedFunction {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int MAGIC = 0x47465250; // "GFRP"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 22;
+
+    private final String path;
+    private final double replaySpeed;
+    private volatile boolean running = true;
+    // (block, offset, stride) per read position of the subtask
+    private transient List<Tuple3<Long, Integer, Integer>> positions;
+    private transient ListState<Tuple3<Long, Integer, Integer>> positionsLState;
+    private transient boolean restored;
+
+    public MappedFileReplaySource(String path) {
+        this(path, 0);
+    }
+
+    public MappedFileReplaySource(String path, double replaySpeed) {
+        this.path = path;
+        this.replaySpeed = replaySpeed;
+    }
+
+    @Override
+    public void initializeState(FunctionInitializationContext context) throws Exception {
+        positions = new ArrayList<Tuple3<Long, Integer, Integer>>();
+        positionsLState = context.getOperatorStateStore().getListState(new ListStateDescriptor<Tuple3<Long, Integer, Integer>>(
+                "replayPositions", TypeInformation.of(new TypeHint<Tuple3<Long, Integer, Integer>>() {})));
+
+        restored = context.isRestored();
+        if (restored) {
+            for (Tuple3<Long, Integer, Integer> position : positionsLState.get()) {
+                positions.add(position);
+            }
+        } else {
+            positions.add(Tuple3.of((long) getRuntimeContext().getIndexOfThisSubtask(), 0, getRuntimeContext().getNumberOfParallelSubtasks()));
+        }
+    }
+
+    @Override
+    public void snapshotState(FunctionSnapshotContext context) throws Exception {
+        positionsLState.clear();
+        for (Tuple3<Long, Integer, Integer> position : positions) {
+            positionsLState.add(position.copy());
+        }
+    }
+
+    @Override
+    public void run(SourceContext<byte[]> ctx) throws Exception {
+
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {}
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a replay file: " + path);
+            }
+            int blockSize = header.getInt();
+            header.getInt(); // reserved
+            header.getLong(); // number of records
+            // After a restore, the pacing starts at the first record read
+            long minTimeStampMillisec = restored ? Long.MIN_VALUE : header.getLong();
+
+            long fileSize = channel.size();
+            long numBlocks = (fileSize - HEADER_SIZE + blockSize - 1) / blockSize;
+            long startNanos = System.nanoTime();
+
+            Tuple3<Long, Integer, Integer> readPosition;
+            while (running && (readPosition = nextReadPosition(numBlocks)) != null) {
+                long block = readPosition.f0;
+                long blockStart = HEADER_SIZE + block * blockSize;
+                int blockLength = (int) Math.min(blockSize, fileSize - blockStart);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, blockStart, blockLength);
+
+                int position = readPosition.f1;
+                while (running && position + 4 <= blockLength) {
+                    int length = buffer.getInt(position);
+                    if (length == 0) { // padding
+                        break;
+                    }
+                    byte[] record = new byte[length];
+                    buffer.position(position + 4);
+                    buffer.get(record);
+                    position += 4 + length;
+
+                    if (replaySpeed > 0) {
+                        long timeStampMillisec = SpatialBinaryFormat.getTimeStampMillisec(record);
+                        if (timeStampMillisec != 0) {
+                            if (minTimeStampMillisec == Long.MIN_VALUE) {
+                                minTimeStampMillisec = timeStampMillisec;
+                            }
+                            long dueNanos = startNanos + (long) ((timeStampMillisec - minTimeStampMillisec) * 1e6 / replaySpeed);
+                            long waitMillis = (dueNanos - System.nanoTime()) / 1000000;
+                            if (waitMillis > 0) {
+                                Thread.sleep(waitMillis);
+                            }
+                        }
+                    }
+
+                    synchronized (ctx.getCheckpointLock()) {
+                        ctx.collect(record);
+                        readPosition.f1 = position;
+                    }
+                }
+
+                if (running) { // end of the block
+                    synchronized (ctx.getCheckpointLock()) {
+                        readPosition.f0 = block + readPosition.f2;
+                        readPosition.f1 = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    // Read position with the lowest block, null if all the positions are past the last block
+    private Tuple3<Long, Integer, Integer> nextReadPosition(long numBlocks) {
+        Tuple3<Long, Integer, Integer> nextPosition = null;
+        for (Tuple3<Long, Integer, Integer> position : positions) {
+            if (position.f0 < numBlocks && (nextPosition == null || position.f0 < nextPosition.f0)) {
+                nextPosition = position;
+            }
+        }
+        return nextPosition;
+    }
+
+    @Override
+    public void cancel() {
+        running = false;
+    }
+
+    //---- Conversion ----//
+
+    // Text file of GeoJSON features, one per line, deserialized as the Kafka record values by the schema
+    // (GeoJSONDeserializationSchema.PointSchema, TPointSchema or PolygonSchema); returns the number of records
+    public static long convert(String textFile, KafkaDeserializationSchema<?> schema, String replayFile) throws Exception {
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(textFile), StandardCharsets.UTF_8);
+             Writer writer = new Writer(replayFile)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                Object spatialObject = schema.deserialize(new ConsumerRecord<byte[], byte[]>(textFile, 0, 0L, null, line.getBytes(StandardCharsets.UTF_8)));
+                if (spatialObject instanceof Point) {
+                    writer.writePoint((Point) spatialObject);
+                } else if (spatialObject instanceof Polygon) {
+                    writer.writePolygon((Polygon) spatialObject, false);
+                }
+            }
+            return writer.getNumRecords();
+        }
+    }
+
+    // Text file of CSV points, one per line; timestampParser: null if the timestamps are in seconds (see CSVPointParser.getTimeStampMillisec)
+    public static long convertCSV(String csvFile, CSVPointParser csvParser, TimestampParser timestampParser, String replayFile) throws Exception {
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(csvFile), StandardCharsets.UTF_8);
+             Writer writer = new Writer(replayFile)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!csvParser.parse(line.getBytes(StandardCharsets.UTF_8))) {
+                    continue;
+                }
+                Point point;
+                try {
+                    long timeStampMillisec = !csvParser.hasTimestamp() ? 0 : (timestampParser == null) ? csvParser.getTimeStampMillisec() : csvParser.getTimeStampMillisec(timestampParser);
+                    point = new Point(csvParser.hasObjID() ? csvParser.getObjID() : null, csvParser.getX(), csvParser.getY(), timeStampMillisec);
+                } catch (NumberFormatException e) { // e.g., a header row
+                    continue;
+                }
+                writer.writePoint(point);
+            }
+            return writer.getNumRecords();
+        }
+    }
+
+    // Writes a replay file, the header is completed by close
+    public static class Writer implements Closeable {
+
+        private final FileChannel channel;
+        private final ByteBuffer block;
+        private long numRecords = 0;
+        private long minTimeStampMillisec = Long.MAX_VALUE;
+
+        public Writer(String path) throws IOException {
+            this(path, DEFAULT_BLOCK_SIZE);
+        }
+
+        public Writer(String path, int blockSize) throws IOException {
+            this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.channel.position(HEADER_SIZE);
+            this.block = ByteBuffer.allocate(blockSize);
+        }
+
+        public void write(byte[] record) throws IOException {
+            if (record.length == 0 || 4 + record.length > block.capacity()) {
+                throw new IllegalArgumentException("Record of " + record.length + " bytes does not fit a block of " + block.capacity() + " bytes");
+            }
+            if (block.remaining() < 4 + record.length) {
+                writeBlock(block.capacity()); // padded with 0
+            }
+            block.putInt(record.length);
+            block.put(record);
+
+            numRecords++;
+            long timeStampMillisec = SpatialBinaryFormat.getTimeStampMillisec(record);
+            if (timeStampMillisec != 0) {
+                minTimeStampMillisec = Math.min(minTimeStampMillisec, timeStampMillisec);
+            }
+        }
+
+        public void writePoint(Point p) throws IOException {
+            write(SpatialBinaryFormat.encodePoint(p));
+        }
+
+        public void writePolygon(Polygon poly, boolean deltaRing) throws IOException {
+            write(SpatialBinaryFormat.encodePolygon(poly, deltaRing));
+        }
+
+        public long getNumRecords() {
+            return numRecords;
+        }
+
+        private void writeBlock(int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(block.array(), 0, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            Arrays.fill(block.array(), (byte) 0);
+            block.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (block.position() > 0) {
+                    writeBlock(block.position());
+                }
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(block.capacity()).putInt(0).putLong(numRecords).putLong(minTimeStampMillisec);
+                header.flip();
+                long position = 0;
+                while (header.hasRemaining()) {
+                    position += channel.write(header, position);
+                }
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialStreams;
+
+import GeoFlink.spatialIndices.SpatialIndex;
+import GeoFlink.spatialObjects.Point;
+import GeoFlink.spatialObjects.Polygon;
+import GeoFlink.spatialObjects.SpatialObject;
+import GeoFlink.spatialObjects.SpatialObjectTypeInfo;
+import GeoFlink.utils.HelperClass;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.streaming.connectors.kafka.KafkaDeserializationSchema;
+import org.apache.flink.streaming.connectors.kafka.KafkaSerializationSchema;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.locationtech.jts.geom.Coordinate;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+Compact binary record format of the spatial streams (the "Binary" inputType of SpatialStream), one object per Kafka record:
+
+    type (1 byte: POINT, POLYGON) | flags (1 byte: HAS_TIMESTAMP, HAS_OBJID, DELTA_RING)
+    [timestamp: zigzag varint, milliseconds] [objID: varint length + UTF-8 bytes]
+    point:   x, y as 8-byte big-endian doubles
+    polygon: varint number of shell coordinates, then either the x, y doubles, or with DELTA_RING the zigzag varint
+             differences of the coordinates in units of 1/COORDINATE_SCALE (the first relative to 0)
+
+A trajectory point takes 18 bytes plus its timestamp (6 bytes for epoch milliseconds) and objID; a delta-encoded ring vertex
+takes 2 to 6 bytes instead of 16 at the cost of rounding the coordinates to 1/COORDINATE_SCALE
+*/
+public class SpatialBinaryFormat implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final byte POINT = 1;
+    public static final byte POLYGON = 2;
+
+    public static final byte HAS_TIMESTAMP = 1;
+    public static final byte HAS_OBJID = 2;
+    public static final byte DELTA_RING = 4;
+
+    // 1e-7 degrees, about 1 cm
+    public static final double COORDINATE_SCALE = 1e7;
+
+    //---- Encoding ----//
+
+    // The timestamp is written if not 0, the objID if not null
+    public static byte[] encodePoint(Point p) {
+        Writer writer = new Writer(32);
+        writeHeader(writer, POINT, p.timeStampMillisec, p.objID, (byte) 0);
+        writer.writeDouble(p.x);
+        writer.writeDouble(p.y);
+        return writer.toByteArray();
+    }
+
+    public static byte[] encodePolygon(Polygon poly, boolean deltaRing) {
+        int numCoordinates = poly.getNumCoordinates();
+        Writer writer = new Writer(16 + (deltaRing ? 6 : 16) * numCoordinates);
+        writeHeader(writer, POLYGON, poly.timeStampMillisec, ((SpatialObject) poly).objID, deltaRing ? DELTA_RING : 0);
+        writer.writeVarLong(numCoordinates);
+        if (deltaRing) {
+            long previousX = 0;
+            long previousY = 0;
+            for (int i = 0; i < numCoordinates; i++) {
+                long x = Math.round(poly.coordinates[2 * i] * COORDINATE_SCALE);
+                long y = Math.round(poly.coordinates[2 * i + 1] * COORDINATE_SCALE);
+                writer.writeZigZagVarLong(x - previousX);
+                writer.writeZigZagVarLong(y - previousY);
+                previousX = x;
+                previousY = y;
+            }
+        } else {
+            for (int i = 0; i < 2 * numCoordinates; i++) {
+                writer.writeDouble(poly.coordinates[i]);
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    private static void writeHeader(Writer writer, byte type, long timeStampMillisec, String objID, byte flags) {
+        if (timeStampMillisec != 0) {
+            flags |= HAS_TIMESTAMP;
+        }
+        if (objID != null) {
+            flags |= HAS_OBJID;
+        }
+        writer.writeByte(type);
+        writer.writeByte(flags);
+        if (timeStampMillisec != 0) {
+            writer.writeZigZagVarLong(timeStampMillisec);
+        }
+        if (objID != null) {
+            byte[] objIDBytes = objID.getBytes(StandardCharsets.UTF_8);
+            writer.writeVarLong(objIDBytes.length);
+            writer.writeBytes(objIDBytes);
+        }
+    }
+
+    //---- Decoding ----//
+
+    public static byte getType(byte[] record) {
+        return record[0];
+    }
+
+    // Timestamp of a point or polygon record, 0 if the record has none
+    public static long getTimeStampMillisec(byte[] record) {
+        Reader reader = new Reader(record);
+        reader.readByte();
+        byte flags = reader.readByte();
+        return ((flags & HAS_TIMESTAMP) != 0) ? reader.readZigZagVarLong() : 0;
+    }
+
+    // Overwrites point (see Point.set) and assigns its grid cell
+    public static Point decodePoint(byte[] record, Point point, SpatialIndex uGrid) {
+        Reader reader = new Reader(record);
+        if (reader.readByte() != POINT) {
+            throw new IllegalArgumentException("Not a binary point record, type " + record[0]);
+        }
+        byte flags = reader.readByte();
+        long timeStampMillisec = ((flags & HAS_TIMESTAMP) != 0) ? reader.readZigZagVarLong() : 0;
+        String objID = ((flags & HAS_OBJID) != 0) ? reader.readString() : null;
+        double x = reader.readDouble();
+        double y = reader.readDouble();
+        return point.set(objID, x, y, timeStampMillisec, HelperClass.assignGridCellID(new Coordinate(x, y), uGrid));
+    }
+
+    public static Polygon decodePolygon(byte[] record, SpatialIndex uGrid) {
+        Reader reader = new Reader(record);
+        if (reader.readByte() != POLYGON) {
+            throw new IllegalArgumentException("Not a binary polygon record, type " + record[0]);
+        }
+        byte flags = reader.readByte();
+        long timeStampMillisec = ((flags & HAS_TIMESTAMP) != 0) ? reader.readZigZagVarLong() : 0;
+        String objID = ((flags & HAS_OBJID) != 0) ? reader.readString() : null;
+
+        int numCoordinates = (int) reader.readVarLong();
+        double[] coordinates = new double[2 * numCoordinates];
+        if ((flags & DELTA_RING) != 0) {
+            long x = 0;
+            long y = 0;
+            for (int i = 0; i < numCoordinates; i++) {
+                x += reader.readZigZagVarLong();
+                y += reader.readZigZagVarLong();
+                coordinates[2 * i] = x / COORDINATE_SCALE;
+                coordinates[2 * i + 1] = y / COORDINATE_SCALE;
+            }
+        } else {
+            for (int i = 0; i < 2 * numCoordinates; i++) {
+                coordinates[i] = reader.readDouble();
+            }
+        }
+
+        Polygon poly = new Polygon(coordinates, uGrid);
+        poly.timeStampMillisec = timeStampMillisec;
+        ((SpatialObject) poly).objID = objID;
+        return poly;
+    }
+
+    //---- Kafka schemas ----//
+
+    public static class PointSerializationSchema implements KafkaSerializationSchema<Point> {
+
+        private final String topic;
+
+        public PointSerializationSchema(String topic) {
+            this.topic = topic;
+        }
+
+        @Override
+        public ProducerRecord<byte[], byte[]> serialize(Point element, @Nullable Long timestamp) {
+            return new ProducerRecord<byte[], byte[]>(topic, encodePoint(element));
+        }
+    }
+
+    public static class PolygonSerializationSchema implements KafkaSerializationSchema<Polygon> {
+
+        private final String topic;
+        private final boolean deltaRing;
+
+        public PolygonSerializationSchema(String topic, boolean deltaRing) {
+            this.topic = topic;
+            this.deltaRing = deltaRing;
+        }
+
+        @Override
+        public ProducerRecord<byte[], byte[]> serialize(Polygon element, @Nullable Long timestamp) {
+            return new ProducerRecord<byte[], byte[]>(topic, encodePolygon(element, deltaRing));
+        }
+    }
+
+    // Points (with the objID and timestamp if present, hence also the trajectory points), decoded in the source
+    public static class PointDeserializationSchema implements KafkaDeserializationSchema<Point> {
+
+        private final SpatialIndex uGrid;
+
+        public PointDeserializationSchema(SpatialIndex uGrid) {
+            this.uGrid = uGrid;
+        }
+
+        @Override
+        public Point deserialize(ConsumerRecord<byte[], byte[]> record) {
+            return (record.value() == null) ? null : decodePoint(record.value(), new Point(), uGrid);
+        }
+
+        @Override
+        public boolean isEndOfStream(Point nextElement) {
+            return false;
+        }
+
+        @Override
+        public TypeInformation<Point> getProducedType() {
+            return SpatialObjectTypeInfo.POINT_TYPE_INFO;
+        }
+    }
+
+    public static class PolygonDeserializationSchema implements KafkaDeserializationSchema<Polygon> {
+
+        private final SpatialIndex uGrid;
+
+        public PolygonDeserializationSchema(SpatialIndex uGrid) {
+            this.uGrid = uGrid;
+        }
+
+        @Override
+        public Polygon deserialize(ConsumerRecord<byte[], byte[]> record) {
+            return (record.value() == null) ? null : decodePolygon(record.value(), uGrid);
+        }
+
+        @Override
+        public boolean isEndOfStream(Polygon nextElement) {
+            return false;
+        }
+
+        @Override
+        public TypeInformation<Polygon> getProducedType() {
+            return SpatialObjectTypeInfo.POLYGON_TYPE_INFO;
+        }
+    }
+
+    //---- Byte array writer and reader ----//
+
+    private static class Writer {
+
+        private byte[] buffer;
+        private int position;
+
+        Writer(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        private void ensureCapacity(int bytes) {
+            if (position + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, position + bytes));
+            }
+        }
+
+        void writeByte(int b) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) b;
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        void writeDouble(double value) {
+            ensureCapacity(8);
+            long bits = Double.doubleToLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (bits >>> shift);
+            }
+        }
+
+        // 7 bits per byte, least significant first, the high bit set on all but the last byte
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        // Small negative values (e.g., coordinate differences) take as few bytes as small positive values
+        void writeZigZagVarLong(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    private static class Reader {
+
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            return buffer[position++];
+        }
+
+        double readDouble() {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | (buffer[position++] & 0xFF);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        long readZigZagVarLong() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
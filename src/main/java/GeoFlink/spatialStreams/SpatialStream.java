@@ -16,15 +16,30 @@ limitations under the License.
 
 package GeoFlink.spatialStreams;
 
-import GeoFlink.spatialIndices.UniformGrid;
+import GeoFlink.spatialIndices.SpatialIndex;
 import GeoFlink.spatialObjects.Point;
+import GeoFlink.spatialObjects.PointBatch;
 import GeoFlink.spatialObjects.Polygon;
+import GeoFlink.spatialObjects.SpatialObjectTypeInfo;
+import GeoFlink.utils.HelperClass;
 import com.typesafe.config.ConfigException;
+import org.apache.flink.api.common.functions.FlatMapFunction;
+import org.apache.flink.api.common.functions.RichFlatMapFunction;
 import org.apache.flink.api.common.functions.RichMapFunction;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
 import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
 import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.JsonNode;
 import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.operators.StreamingRuntimeContext;
+import org.apache.flink.streaming.runtime.tasks.ProcessingTimeCallback;
+import org.apache.flink.streaming.runtime.tasks.ProcessingTimeService;
+import org.apache.flink.util.Collector;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.locationtech.jts.geom.Coordinate;
@@ -36,29 +51,64 @@ import java.util.*;
 public class SpatialStream implements Serializable {
 
 
-    public static DataStream<Point> PointStream(DataStream inputStream, String inputType, UniformGrid uGrid){
+    public static DataStream<Point> PointStream(DataStream inputStream, String inputType, SpatialIndex uGrid){
+        return PointStream(inputStream, inputType, uGrid, false);
+    }
+
+    // reuseObjects: the parser overwrites and emits a single Point instance, to be used with object reuse enabled (ExecutionConfig.enableObjectReuse)
+    public static DataStream<Point> PointStream(DataStream inputStream, String inputType, SpatialIndex uGrid, boolean reuseObjects){
+        return PointStream(inputStream, inputType, uGrid, reuseObjects, new CSVPointParser(0, 1));
+    }
+
+    // csvParser: columns of the CSV records, used if the input stream contains the raw record values (RawBytesDeserializationSchema)
+    public static DataStream<Point> PointStream(DataStream inputStream, String inputType, SpatialIndex uGrid, boolean reuseObjects, CSVPointParser csvParser){
 
         DataStream<Point> pointStream = null;
 
         if(inputType.equals("GeoJSON")) {
-            pointStream = inputStream.map(new GeoJSONToSpatial(uGrid));
+            pointStream = inputStream.map(new GeoJSONToSpatial(uGrid, reuseObjects));
+        }
+        else if (inputType.equals("CSV") && RawBytesDeserializationSchema.isRawBytesStream(inputStream)){
+            pointStream = inputStream.map(new CSVBytesToSpatial(csvParser, uGrid, reuseObjects));
+        }
+        else if (inputType.equals("Binary")){
+            pointStream = inputStream.map(new BinaryToSpatial(uGrid, reuseObjects));
         }
         else if (inputType.equals("CSV")){
-            pointStream = inputStream.map(new CSVToSpatial(uGrid));
+            pointStream = inputStream.map(new CSVToSpatial(uGrid, reuseObjects));
         }
 
         return pointStream;
     }
 
-    public static DataStream<Point> TrajectoryStream(DataStream inputStream, String inputType, DateFormat dateFormat, UniformGrid uGrid){
+    public static DataStream<Point> TrajectoryStream(DataStream inputStream, String inputType, DateFormat dateFormat, SpatialIndex uGrid){
+        return TrajectoryStream(inputStream, inputType, dateFormat, uGrid, false);
+    }
+
+    public static DataStream<Point> TrajectoryStream(DataStream inputStream, String inputType, DateFormat dateFormat, SpatialIndex uGrid, boolean reuseObjects){
+        return TrajectoryStream(inputStream, inputType, dateFormat, uGrid, reuseObjects, CSVPointParser.ATCFormat());
+    }
+
+    // csvParser: columns of the CSV records, used if the input stream contains the raw record values (RawBytesDeserializationSchema)
+    // A stream of points, e.g., parsed by GeoJSONDeserializationSchema.TPointSchema in the source, is returned as is
+    public static DataStream<Point> TrajectoryStream(DataStream inputStream, String inputType, DateFormat dateFormat, SpatialIndex uGrid, boolean reuseObjects, CSVPointParser csvParser){
 
         DataStream<Point> trajectoryStream = null;
 
-        if(inputType.equals("GeoJSON")) {
-            trajectoryStream = inputStream.map(new GeoJSONToTSpatial(uGrid, dateFormat));
+        if(SpatialObjectTypeInfo.POINT_TYPE_INFO.equals(inputStream.getType())) {
+            trajectoryStream = (DataStream<Point>) inputStream;
+        }
+        else if(inputType.equals("GeoJSON")) {
+            trajectoryStream = inputStream.map(new GeoJSONToTSpatial(uGrid, dateFormat, reuseObjects));
+        }
+        else if (inputType.equals("CSV") && RawBytesDeserializationSchema.isRawBytesStream(inputStream)){
+            trajectoryStream = inputStream.map(new CSVBytesToTSpatial(csvParser, uGrid, dateFormat, reuseObjects));
+        }
+        else if (inputType.equals("Binary")){ // the timestamps are epoch milliseconds, dateFormat is not used
+            trajectoryStream = inputStream.map(new BinaryToSpatial(uGrid, reuseObjects));
         }
         else if (inputType.equals("CSV")){
-            trajectoryStream = inputStream.map(new CSVToTSpatial(uGrid, dateFormat));
+            trajectoryStream = inputStream.map(new CSVToTSpatial(uGrid, dateFormat, reuseObjects));
         }
         // TODO Delete DEIM Checkin
         /*
@@ -70,57 +120,227 @@ public class SpatialStream implements Serializable {
     }
 
 
+    //---- Batched points ----//
+
+    // Groups the points of each parallel instance by grid cell into PointBatch records of up to batchSize points, emitted when full or
+    // maxBatchDelay milliseconds (processing time) after the first point of the batch. The batches are built before the shuffle (chained
+    // to the parser); the delay is enforced by a processing-time timer of the instance, i.e., also when the input is idle
+    public static DataStream<PointBatch> PointBatchStream(DataStream<Point> pointStream, int batchSize, long maxBatchDelay){
+        return pointStream.flatMap(new PointsToBatches(batchSize, maxBatchDelay)).name("Point Batches");
+    }
+
+    // Points of the batches, e.g., of the batched range query output at the sink
+    public static DataStream<Point> UnbatchedPointStream(DataStream<PointBatch> batchStream){
+        return batchStream.flatMap(new FlatMapFunction<PointBatch, Point>() {
+            @Override
+            public void flatMap(PointBatch batch, Collector<Point> out) throws Exception {
+                for (int i = 0; i < batch.size(); i++) {
+                    out.collect(batch.getPoint(i));
+                }
+            }
+        }).name("Unbatched Points");
+    }
+
+    // The open batches are checkpointed as operator state and, after a restore, emitted by the first timer after the first point
+    public static class PointsToBatches extends RichFlatMapFunction<Point, PointBatch> implements CheckpointedFunction, ProcessingTimeCallback {
+
+        int batchSize;
+        long maxBatchDelay;
+        // Open batch and its creation time (processing time) per cell
+        private transient HashMap<Long, PointBatch> batches;
+        private transient HashMap<Long, Long> batchStartTimes;
+        private transient ListState<PointBatch> batchesLState;
+        private transient ProcessingTimeService timerService;
+        // Due time of the registered timer, Long.MIN_VALUE if none
+        private transient long timerDueTime;
+        // Output of the flatMap, used by the timer; both run under the checkpoint lock
+        private transient Collector<PointBatch> out;
+
+        //ctor
+        public  PointsToBatches() {};
+        public  PointsToBatches(int batchSize, long maxBatchDelay)
+        {
+            this.batchSize = batchSize;
+            this.maxBatchDelay = maxBatchDelay;
+        };
+
+        @Override
+        public void initializeState(FunctionInitializationContext context) throws Exception {
+            batches = new HashMap<Long, PointBatch>();
+            batchStartTimes = new HashMap<Long, Long>();
+            batchesLState = context.getOperatorStateStore().getListState(new ListStateDescriptor<PointBatch>("openPointBatches", SpatialObjectTypeInfo.POINT_BATCH_TYPE_INFO));
+
+            if (context.isRestored()) {
+                for (PointBatch batch : batchesLState.get()) {
+                    // Batches of a cell may come from several instances after rescaling
+                    PointBatch openBatch = batches.get(batch.gridID);
+                    if (openBatch == null) {
+                        batches.put(batch.gridID, batch);
+                    } else {
+                        for (int i = 0; i < batch.size(); i++) {
+                            openBatch.add(batch, i);
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void open(Configuration parameters) {
+            timerService = ((StreamingRuntimeContext) getRuntimeContext()).getProcessingTimeService();
+            timerDueTime = Long.MIN_VALUE;
+
+            long now = timerService.getCurrentProcessingTime();
+            for (Long gridID : batches.keySet()) {
+                batchStartTimes.put(gridID, now - maxBatchDelay);
+            }
+            if (!batches.isEmpty()) {
+                registerTimer(now);
+            }
+        }
+
+        @Override
+        public void flatMap(Point p, Collector<PointBatch> out) throws Exception {
+
+            this.out = out;
+            PointBatch batch = batches.get(p.gridID);
+            if (batch == null) {
+                long now = timerService.getCurrentProcessingTime();
+                batch = new PointBatch(p.gridID, batchSize);
+                batches.put(p.gridID, batch);
+                batchStartTimes.put(p.gridID, now);
+                if (timerDueTime == Long.MIN_VALUE) {
+                    registerTimer(now + maxBatchDelay);
+                }
+            }
+            // The fields are copied, hence the parsers may reuse the point
+            batch.add(p);
+
+            if (batch.size() >= batchSize) {
+                out.collect(batch);
+                batches.remove(p.gridID);
+                batchStartTimes.remove(p.gridID);
+            }
+        }
+
+        @Override
+        public void onProcessingTime(long timestamp) throws Exception {
+
+            timerDueTime = Long.MIN_VALUE;
+            long now = timerService.getCurrentProcessingTime();
+            if (out == null) {
+                // Restored batches, emitted once the first point has provided the output
+                registerTimer(now + maxBatchDelay);
+                return;
+            }
+
+            long nextDueTime = Long.MAX_VALUE;
+
+            Iterator<Map.Entry<Long, Long>> it = batchStartTimes.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, Long> entry = it.next();
+                long dueTime = entry.getValue() + maxBatchDelay;
+                if (dueTime <= now) {
+                    out.collect(batches.remove(entry.getKey()));
+                    it.remove();
+                } else {
+                    nextDueTime = Math.min(nextDueTime, dueTime);
+                }
+            }
+
+            if (nextDueTime != Long.MAX_VALUE) {
+                registerTimer(nextDueTime);
+            }
+        }
+
+        @Override
+        public void snapshotState(FunctionSnapshotContext context) throws Exception {
+            // Records emitted here would follow the checkpoint barrier, hence the open batches are stored instead of flushed
+            batchesLState.clear();
+            for (PointBatch batch : batches.values()) {
+                batchesLState.add(batch);
+            }
+        }
+
+        private void registerTimer(long dueTime) {
+            timerDueTime = dueTime;
+            timerService.registerTimer(dueTime, this);
+        }
+    }
+
     public static class GeoJSONToSpatial extends RichMapFunction<ObjectNode, Point> {
 
-        UniformGrid uGrid;
+        SpatialIndex uGrid;
+        boolean reuseObjects;
+        Point reusablePoint = new Point();
 
         //ctor
         public  GeoJSONToSpatial() {};
-        public  GeoJSONToSpatial(UniformGrid uGrid)
+        public  GeoJSONToSpatial(SpatialIndex uGrid)
+        {
+            this(uGrid, false);
+        };
+        public  GeoJSONToSpatial(SpatialIndex uGrid, boolean reuseObjects)
         {
             this.uGrid = uGrid;
+            this.reuseObjects = reuseObjects;
         };
 
         @Override
         public Point map(ObjectNode jsonObj) throws Exception {
 
-            Point spatialPoint = new Point(jsonObj.get("value").get("geometry").get("coordinates").get(0).asDouble(), jsonObj.get("value").get("geometry").get("coordinates").get(1).asDouble(), uGrid);
+            double x = jsonObj.get("value").get("geometry").get("coordinates").get(0).asDouble();
+            double y = jsonObj.get("value").get("geometry").get("coordinates").get(1).asDouble();
+            if (reuseObjects) {
+                return reusablePoint.set(null, x, y, 0, HelperClass.assignGridCellID(new Coordinate(x, y), uGrid));
+            }
+            Point spatialPoint = new Point(x, y, uGrid);
             return spatialPoint;
         }
     }
 
     public static class GeoJSONToTSpatial extends RichMapFunction<ObjectNode, Point> {
 
-        UniformGrid uGrid;
+        SpatialIndex uGrid;
         DateFormat dateFormat;
+        TimestampParser timestampParser;
+        boolean reuseObjects;
+        Point reusablePoint = new Point();
 
         //ctor
         public  GeoJSONToTSpatial() {};
-        public  GeoJSONToTSpatial(UniformGrid uGrid, DateFormat dateFormat)
+        public  GeoJSONToTSpatial(SpatialIndex uGrid, DateFormat dateFormat)
+        {
+            this(uGrid, dateFormat, false);
+        };
+        public  GeoJSONToTSpatial(SpatialIndex uGrid, DateFormat dateFormat, boolean reuseObjects)
         {
 
             this.uGrid = uGrid;
             this.dateFormat = dateFormat;
+            this.timestampParser = (dateFormat == null) ? null : new TimestampParser(dateFormat);
+            this.reuseObjects = reuseObjects;
         };
 
         @Override
         public Point map(ObjectNode jsonObj) throws Exception {
 
-            Point spatialPoint;
-            Date date = new Date();
-
+            String objID = jsonObj.get("value").get("properties").get("oID").asText();
+            double x = jsonObj.get("value").get("geometry").get("coordinates").get(0).asDouble();
+            double y = jsonObj.get("value").get("geometry").get("coordinates").get(1).asDouble();
+            long timeStampMillisec;
 
             if (this.dateFormat == null) {
-                spatialPoint = new Point(jsonObj.get("value").get("properties").get("oID").asText(), jsonObj.get("value").get("geometry").get("coordinates").get(0).asDouble(), jsonObj.get("value").get("geometry").get("coordinates").get(1).asDouble(), jsonObj.get("value").get("properties").get("timestamp").asLong(), uGrid);
-                //spatialPoint = new Point(jsonObj.get("value").get("properties").get("oID").asText(), jsonObj.get("value").get("geometry").get("coordinates").get(0).asDouble(), jsonObj.get("value").get("geometry").get("coordinates").get(1).asDouble(), date.getTime(), uGrid);
+                timeStampMillisec = jsonObj.get("value").get("properties").get("timestamp").asLong();
             }
             else {
-                Date dateTime = this.dateFormat.parse(jsonObj.get("value").get("properties").get("timestamp").asText());
-                long timeStampMillisec = dateTime.getTime();
-                spatialPoint = new Point(jsonObj.get("value").get("properties").get("oID").asText(), jsonObj.get("value").get("geometry").get("coordinates").get(0).asDouble(), jsonObj.get("value").get("geometry").get("coordinates").get(1).asDouble(), timeStampMillisec, uGrid);
+                timeStampMillisec = this.timestampParser.parse(jsonObj.get("value").get("properties").get("timestamp").asText());
             }
 
-            return spatialPoint;
+            if (reuseObjects) {
+                return reusablePoint.set(objID, x, y, timeStampMillisec, HelperClass.assignGridCellID(new Coordinate(x, y), uGrid));
+            }
+            return new Point(objID, x, y, timeStampMillisec, uGrid);
         }
     }
 
@@ -128,38 +348,158 @@ public class SpatialStream implements Serializable {
     // Assuming that csv string contains longitude and latitude at positions 0 and 1, respectively
     public static class CSVToSpatial extends RichMapFunction<ObjectNode, Point> {
 
-        UniformGrid uGrid;
+        SpatialIndex uGrid;
+        boolean reuseObjects;
+        Point reusablePoint = new Point();
 
         //ctor
         public  CSVToSpatial() {};
-        public  CSVToSpatial(UniformGrid uGrid)
+        public  CSVToSpatial(SpatialIndex uGrid)
+        {
+            this(uGrid, false);
+        };
+        public  CSVToSpatial(SpatialIndex uGrid, boolean reuseObjects)
         {
             this.uGrid = uGrid;
+            this.reuseObjects = reuseObjects;
         };
 
         @Override
         public Point map(ObjectNode strTuple) throws Exception {
 
             List<String> strArrayList = Arrays.asList(strTuple.toString().split("\\s*,\\s*"));
-            Point spatialPoint = new Point(Double.parseDouble(strArrayList.get(0)), Double.parseDouble(strArrayList.get(1)), uGrid);
+            double x = Double.parseDouble(strArrayList.get(0));
+            double y = Double.parseDouble(strArrayList.get(1));
+            if (reuseObjects) {
+                return reusablePoint.set(null, x, y, 0, HelperClass.assignGridCellID(new Coordinate(x, y), uGrid));
+            }
+            Point spatialPoint = new Point(x, y, uGrid);
 
             return spatialPoint;
         }
     }
 
+    // Raw CSV record values, parsed at the byte level by csvParser (the x, y columns)
+    public static class CSVBytesToSpatial extends RichMapFunction<byte[], Point> {
+
+        CSVPointParser csvParser;
+        SpatialIndex uGrid;
+        boolean reuseObjects;
+        Point reusablePoint = new Point();
+
+        //ctor
+        public  CSVBytesToSpatial() {};
+        public  CSVBytesToSpatial(CSVPointParser csvParser, SpatialIndex uGrid, boolean reuseObjects)
+        {
+            this.csvParser = csvParser;
+            this.uGrid = uGrid;
+            this.reuseObjects = reuseObjects;
+        };
+
+        @Override
+        public Point map(byte[] record) throws Exception {
+
+            if (!csvParser.parse(record)) {
+                throw new IllegalArgumentException("CSV record with less than " + csvParser.getNumColumns() + " columns: " + new String(record));
+            }
+            double x = csvParser.getX();
+            double y = csvParser.getY();
+            if (reuseObjects) {
+                return reusablePoint.set(null, x, y, 0, HelperClass.assignGridCellID(new Coordinate(x, y), uGrid));
+            }
+            return new Point(x, y, uGrid);
+        }
+    }
+
+    // Raw CSV record values, parsed at the byte level by csvParser (the x, y, timestamp and objID columns), e.g., CSVPointParser.ATCFormat()
+    // Without dateFormat the timestamps are in seconds, with an optional fraction
+    public static class CSVBytesToTSpatial extends RichMapFunction<byte[], Point> {
+
+        CSVPointParser csvParser;
+        SpatialIndex uGrid;
+        DateFormat dateFormat;
+        TimestampParser timestampParser;
+        boolean reuseObjects;
+        Point reusablePoint = new Point();
+
+        //ctor
+        public  CSVBytesToTSpatial() {};
+        public  CSVBytesToTSpatial(CSVPointParser csvParser, SpatialIndex uGrid, DateFormat dateFormat, boolean reuseObjects)
+        {
+            this.csvParser = csvParser;
+            this.uGrid = uGrid;
+            this.dateFormat = dateFormat;
+            this.timestampParser = (dateFormat == null) ? null : new TimestampParser(dateFormat);
+            this.reuseObjects = reuseObjects;
+        };
+
+        @Override
+        public Point map(byte[] record) throws Exception {
+
+            if (!csvParser.parse(record)) {
+                throw new IllegalArgumentException("CSV record with less than " + csvParser.getNumColumns() + " columns: " + new String(record));
+            }
+
+            long timeStampMillisec;
+            if (this.dateFormat == null) {
+                timeStampMillisec = csvParser.getTimeStampMillisec();
+            }
+            else {
+                timeStampMillisec = csvParser.getTimeStampMillisec(this.timestampParser);
+            }
+
+            double x = csvParser.getX();
+            double y = csvParser.getY();
+            if (reuseObjects) {
+                return reusablePoint.set(csvParser.getObjID(), x, y, timeStampMillisec, HelperClass.assignGridCellID(new Coordinate(x, y), uGrid));
+            }
+            return new Point(csvParser.getObjID(), x, y, timeStampMillisec, uGrid);
+        }
+    }
+
+    // Raw record values in SpatialBinaryFormat (RawBytesDeserializationSchema): points, with the objID and timestamp of the trajectory points
+    public static class BinaryToSpatial extends RichMapFunction<byte[], Point> {
+
+        SpatialIndex uGrid;
+        boolean reuseObjects;
+        Point reusablePoint = new Point();
+
+        //ctor
+        public  BinaryToSpatial() {};
+        public  BinaryToSpatial(SpatialIndex uGrid, boolean reuseObjects)
+        {
+            this.uGrid = uGrid;
+            this.reuseObjects = reuseObjects;
+        };
+
+        @Override
+        public Point map(byte[] record) throws Exception {
+            return SpatialBinaryFormat.decodePoint(record, reuseObjects ? reusablePoint : new Point(), uGrid);
+        }
+    }
+
     // Assuming that csv string contains longitude and latitude at positions 0 and 1, respectively
     public static class CSVToTSpatial extends RichMapFunction<ObjectNode, Point> {
 
-        UniformGrid uGrid;
+        SpatialIndex uGrid;
         DateFormat dateFormat;
+        TimestampParser timestampParser;
+        boolean reuseObjects;
+        Point reusablePoint = new Point();
 
         //ctor
         public  CSVToTSpatial() {};
-        public  CSVToTSpatial(UniformGrid uGrid, DateFormat dateFormat)
+        public  CSVToTSpatial(SpatialIndex uGrid, DateFormat dateFormat)
+        {
+            this(uGrid, dateFormat, false);
+        };
+        public  CSVToTSpatial(SpatialIndex uGrid, DateFormat dateFormat, boolean reuseObjects)
         {
 
             this.uGrid = uGrid;
             this.dateFormat = dateFormat;
+            this.timestampParser = (dateFormat == null) ? null : new TimestampParser(dateFormat);
+            this.reuseObjects = reuseObjects;
         };
 
         @Override
@@ -169,24 +509,23 @@ public class SpatialStream implements Serializable {
             //A sample tuple/record: 1351039728.980,9471001,-22366,2452,1261.421,780.711,-2.415,-2.441
             // time [ms] (unixtime + milliseconds/1000), person id, position x [mm], position y [mm], position z (height) [mm], velocity [mm/s], angle of motion [rad], facing angle [rad]
 
-            Point spatialPoint;
-            Date date = new Date();
             List<String> strArrayList = Arrays.asList(strTuple.toString().split("\\s*,\\s*")); // For parsing CSV with , followed by space
             //List<String> strArrayList = Arrays.asList(strTuple.toString().split(","));
 
+            long timeStampMillisec;
             if (this.dateFormat == null) {
-                Long timeStampMillisec = Long.parseLong(strArrayList.get(0)) * 1000;
-                spatialPoint = new Point(strArrayList.get(1), Double.parseDouble(strArrayList.get(2)), Double.parseDouble(strArrayList.get(3)), timeStampMillisec, uGrid);
+                timeStampMillisec = Long.parseLong(strArrayList.get(0)) * 1000;
             }
             else {
-                Date dateTime = this.dateFormat.parse(strArrayList.get(0));
-                long timeStampMillisec = dateTime.getTime();
-                spatialPoint = new Point(strArrayList.get(1), Double.parseDouble(strArrayList.get(2)), Double.parseDouble(strArrayList.get(3)), timeStampMillisec, uGrid);
+                timeStampMillisec = this.timestampParser.parse(strArrayList.get(0));
             }
 
-
-
-            return spatialPoint;
+            double x = Double.parseDouble(strArrayList.get(2));
+            double y = Double.parseDouble(strArrayList.get(3));
+            if (reuseObjects) {
+                return reusablePoint.set(strArrayList.get(1), x, y, timeStampMillisec, HelperClass.assignGridCellID(new Coordinate(x, y), uGrid));
+            }
+            return new Point(strArrayList.get(1), x, y, timeStampMillisec, uGrid);
         }
     }
 
@@ -195,12 +534,12 @@ public class SpatialStream implements Serializable {
     /*
     public static class JSONToTSpatial extends RichMapFunction<ObjectNode, Point> {
 
-        UniformGrid uGrid;
+        SpatialIndex uGrid;
         DateFormat dateFormat;
 
         //ctor
         public  JSONToTSpatial() {};
-        public  JSONToTSpatial(UniformGrid uGrid, DateFormat dateFormat)
+        public  JSONToTSpatial(SpatialIndex uGrid, DateFormat dateFormat)
         {
 
             this.uGrid = uGrid;
@@ -226,7 +565,7 @@ public class SpatialStream implements Serializable {
      */
 
 
-    public static DataStream<Polygon> PolygonStream(DataStream inputStream, String inputType, UniformGrid uGrid){
+    public static DataStream<Polygon> PolygonStream(DataStream inputStream, String inputType, SpatialIndex uGrid){
 
         DataStream<Polygon> polygonStream = null;
 
@@ -236,17 +575,37 @@ public class SpatialStream implements Serializable {
         else if (inputType.equals("CSV")){
             polygonStream = inputStream.map(new CSVToSpatialPolygon(uGrid));
         }
+        else if (inputType.equals("Binary")){
+            polygonStream = inputStream.map(new BinaryToSpatialPolygon(uGrid));
+        }
 
         return polygonStream;
     }
 
+    public static class BinaryToSpatialPolygon extends RichMapFunction<byte[], Polygon> {
+
+        SpatialIndex uGrid;
+
+        //ctor
+        public  BinaryToSpatialPolygon() {};
+        public  BinaryToSpatialPolygon(SpatialIndex uGrid)
+        {
+            this.uGrid = uGrid;
+        };
+
+        @Override
+        public Polygon map(byte[] record) throws Exception {
+            return SpatialBinaryFormat.decodePolygon(record, uGrid);
+        }
+    }
+
     public static class GeoJSONToSpatialPolygon extends RichMapFunction<ObjectNode, Polygon> {
 
-        UniformGrid uGrid;
+        SpatialIndex uGrid;
 
         //ctor
         public  GeoJSONToSpatialPolygon() {};
-        public  GeoJSONToSpatialPolygon(UniformGrid uGrid)
+        public  GeoJSONToSpatialPolygon(SpatialIndex uGrid)
         {
             this.uGrid = uGrid;
         };
@@ -289,11 +648,11 @@ public class SpatialStream implements Serializable {
     // Assuming that csv string contains longitude and latitude at positions 0 and 1, respectively
     public static class CSVToSpatialPolygon extends RichMapFunction<ObjectNode, Polygon> {
 
-        UniformGrid uGrid;
+        SpatialIndex uGrid;
 
         //ctor
         public  CSVToSpatialPolygon() {};
-        public  CSVToSpatialPolygon(UniformGrid uGrid)
+        public  CSVToSpatialPolygon(SpatialIndex uGrid)
         {
             this.uGrid = uGrid;
         };
@@ -0,0 +1,289 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialStreams;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+
+/*
+Timestamp parser equivalent to a SimpleDateFormat (the --dateFormat of the trajectory streams), returning epoch milliseconds.
+Fixed-width patterns of yyyy, MM, dd, HH, mm, ss, S..SSS and literals (e.g., yyyy-MM-dd HH:mm:ss) are compiled to field offsets:
+the digits are read in place and the epoch second of the date and hour is cached, as consecutive records mostly share it,
+hence only the minutes, seconds and milliseconds are added per record.
+Other patterns, texts which do not match the compiled pattern and hours with a time zone offset change are parsed by a private
+copy of the DateFormat. An instance keeps the cache of the last record, hence it must not be shared by concurrent tasks
+*/
+public class TimestampParser implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int YEAR = 0;
+    private static final int MONTH = 1;
+    private static final int DAY = 2;
+    private static final int HOUR = 3;
+    private static final int MINUTE = 4;
+    private static final int SECOND = 5;
+    private static final int MILLISECOND = 6;
+    private static final int NUM_FIELDS = 7;
+    // Digit positions of the compiled template
+    private static final char DIGIT = '\0';
+
+    private final DateFormat dateFormat;
+    // Pattern text with the literals and DIGIT at the positions of the fields, null if the pattern is not compiled
+    private final char[] template;
+    private final int[] fieldOffset = new int[NUM_FIELDS];
+    private final int[] fieldWidth = new int[NUM_FIELDS];
+    // Positions of the year, month, day and hour digits, i.e., the key of the cached epoch second
+    private final int[] hourPositions;
+
+    private transient ZoneRules zoneRules;
+    private transient char[] cachedHour;
+    private transient long cachedHourEpochSecond;
+    private transient CharArrayView view;
+
+    public TimestampParser(String pattern) {
+        this(new SimpleDateFormat(pattern));
+    }
+
+    public TimestampParser(DateFormat dateFormat) {
+        this.dateFormat = (DateFormat) dateFormat.clone();
+        this.template = (dateFormat instanceof SimpleDateFormat) ? compile(((SimpleDateFormat) dateFormat).toPattern(), fieldOffset, fieldWidth) : null;
+
+        int numHourPositions = 0;
+        for (int field = YEAR; field <= HOUR; field++) {
+            numHourPositions += fieldWidth[field];
+        }
+        this.hourPositions = new int[numHourPositions];
+        int i = 0;
+        for (int field = YEAR; field <= HOUR; field++) {
+            for (int k = 0; k < fieldWidth[field]; k++) {
+                hourPositions[i++] = fieldOffset[field] + k;
+            }
+        }
+    }
+
+    // Template of a fixed-width pattern, null if the pattern has other fields (e.g., MMM, yy, hh, a, z)
+    private static char[] compile(String pattern, int[] fieldOffset, int[] fieldWidth) {
+        Arrays.fill(fieldOffset, -1);
+        StringBuilder template = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '\'') { // quoted literal, '' is a quote
+                int j = i + 1;
+                if (j < pattern.length() && pattern.charAt(j) == '\'') {
+                    template.append('\'');
+                    i = j + 1;
+                    continue;
+                }
+                while (j < pattern.length() && pattern.charAt(j) != '\'') {
+                    template.append(pattern.charAt(j++));
+                }
+                i = j + 1;
+            } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                int j = i;
+                while (j < pattern.length() && pattern.charAt(j) == c) {
+                    j++;
+                }
+                int field = getField(c, j - i);
+                if (field < 0 || fieldOffset[field] >= 0) {
+                    return null;
+                }
+                fieldOffset[field] = template.length();
+                fieldWidth[field] = j - i;
+                for (int k = i; k < j; k++) {
+                    template.append(DIGIT);
+                }
+                i = j;
+            } else if (c == DIGIT) {
+                return null;
+            } else {
+                template.append(c);
+                i++;
+            }
+        }
+        return template.toString().toCharArray();
+    }
+
+    private static int getField(char letter, int width) {
+        switch (letter) {
+            case 'y': return (width == 4) ? YEAR : -1;
+            case 'M': return (width == 2) ? MONTH : -1;
+            case 'd': return (width == 2) ? DAY : -1;
+            case 'H': return (width == 2) ? HOUR : -1;
+            case 'm': return (width == 2) ? MINUTE : -1;
+            case 's': return (width == 2) ? SECOND : -1;
+            case 'S': return (width <= 3) ? MILLISECOND : -1;
+            default: return -1;
+        }
+    }
+
+    public long parse(CharSequence text) throws ParseException {
+        if (template == null || text.length() != template.length) {
+            return dateFormat.parse(text.toString()).getTime();
+        }
+        for (int i = 0; i < template.length; i++) {
+            char c = text.charAt(i);
+            if ((template[i] == DIGIT) ? (c < '0' || c > '9') : (c != template[i])) {
+                return dateFormat.parse(text.toString()).getTime();
+            }
+        }
+
+        if (!isCachedHour(text) && !cacheHour(text)) {
+            return dateFormat.parse(text.toString()).getTime();
+        }
+        int minute = getNumber(text, MINUTE, 0);
+        int second = getNumber(text, SECOND, 0);
+        if (minute > 59 || second > 59) { // lenient overflow, as by the DateFormat
+            return dateFormat.parse(text.toString()).getTime();
+        }
+        return (cachedHourEpochSecond + 60 * minute + second) * 1000 + getNumber(text, MILLISECOND, 0);
+    }
+
+    // Timestamp of an ASCII field of a record, e.g., of the CSV record values
+    public long parse(byte[] bytes, int start, int end) throws ParseException {
+        return parse(getView().wrap(bytes, start, end));
+    }
+
+    // Timestamp of a character range, e.g., of the text buffer of a JSON parser
+    public long parse(char[] chars, int offset, int length) throws ParseException {
+        return parse(getView().wrap(chars, offset, length));
+    }
+
+    private boolean isCachedHour(CharSequence text) {
+        if (cachedHour == null) {
+            return false;
+        }
+        for (int i = 0; i < hourPositions.length; i++) {
+            if (text.charAt(hourPositions[i]) != cachedHour[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Epoch second of the hour of the text, false if the text is out of range or the UTC offset changes within the hour
+    private boolean cacheHour(CharSequence text) {
+        int month = getNumber(text, MONTH, 1);
+        int day = getNumber(text, DAY, 1);
+        int hour = getNumber(text, HOUR, 0);
+        if (month < 1 || month > 12 || day < 1 || hour > 23) {
+            return false;
+        }
+        if (zoneRules == null) {
+            zoneRules = dateFormat.getTimeZone().toZoneId().getRules();
+        }
+
+        LocalDateTime hourStart;
+        try {
+            hourStart = LocalDateTime.of(getNumber(text, YEAR, 1970), month, day, hour, 0);
+        } catch (DateTimeException e) { // e.g., February 30
+            return false;
+        }
+        // Hours in a gap or an overlap of the local time, or with an offset change after their start, are left to the DateFormat
+        // (an offset change at the end of the hour still overlaps its last minutes if it is shorter than an hour, e.g., Lord Howe)
+        if (zoneRules.getValidOffsets(hourStart).size() != 1 || zoneRules.getValidOffsets(hourStart.plusSeconds(3599)).size() != 1) {
+            return false;
+        }
+        ZoneOffset offset = zoneRules.getOffset(hourStart);
+        long hourEpochSecond = hourStart.toEpochSecond(offset);
+        if (!offset.equals(zoneRules.getOffset(Instant.ofEpochSecond(hourEpochSecond + 3599)))) {
+            return false;
+        }
+
+        if (cachedHour == null) {
+            cachedHour = new char[hourPositions.length];
+        }
+        for (int i = 0; i < hourPositions.length; i++) {
+            cachedHour[i] = text.charAt(hourPositions[i]);
+        }
+        cachedHourEpochSecond = hourEpochSecond;
+        return true;
+    }
+
+    private int getNumber(CharSequence text, int field, int defaultValue) {
+        if (fieldOffset[field] < 0) {
+            return defaultValue;
+        }
+        int value = 0;
+        for (int i = fieldOffset[field]; i < fieldOffset[field] + fieldWidth[field]; i++) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private CharArrayView getView() {
+        if (view == null) {
+            view = new CharArrayView();
+        }
+        return view;
+    }
+
+    // Reusable CharSequence over a range of a byte (ASCII) or char array
+    private static class CharArrayView implements CharSequence {
+
+        private byte[] bytes;
+        private char[] chars;
+        private int offset;
+        private int length;
+
+        CharArrayView wrap(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.chars = null;
+            this.offset = start;
+            this.length = end - start;
+            return this;
+        }
+
+        CharArrayView wrap(char[] chars, int offset, int length) {
+            this.bytes = null;
+            this.chars = chars;
+            this.offset = offset;
+            this.length = length;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (chars != null) ? chars[offset + index] : (char) (bytes[offset + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return (chars != null) ? new String(chars, offset, length) : new String(bytes, offset, length, StandardCharsets.UTF_8);
+        }
+    }
+}
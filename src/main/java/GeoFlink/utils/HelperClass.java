@@ -16,16 +16,21 @@ limitations under the License.
 
 package GeoFlink.utils;
 
+import GeoFlink.spatialIndices.CellBitmap;
+import GeoFlink.spatialIndices.SpatialIndex;
 import GeoFlink.spatialIndices.UniformGrid;
 import GeoFlink.spatialObjects.Point;
 import GeoFlink.spatialObjects.Polygon;
 import org.apache.flink.api.common.functions.FilterFunction;
+import org.apache.flink.api.common.functions.RichFilterFunction;
 import org.apache.flink.api.common.functions.RichFlatMapFunction;
 import org.apache.flink.api.common.functions.RuntimeContext;
 import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.api.java.tuple.Tuple4;
 import org.apache.flink.api.java.tuple.Tuple5;
 import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.MetricGroup;
 import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.flink.streaming.connectors.kafka.KafkaSerializationSchema;
 import org.apache.flink.util.Collector;
@@ -33,9 +38,12 @@ import org.apache.kafka.clients.producer.ProducerRecord;
 import org.locationtech.jts.geom.Coordinate;
 
 import javax.annotation.Nullable;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
 
 public class HelperClass {
@@ -54,9 +62,72 @@ public class HelperClass {
         return Integer.parseInt(str.replaceFirst("^0+(?!$)", ""));
     }
 
-    public static boolean pointWithinQueryRange(ArrayList<Integer> pointCellIndices, ArrayList<Integer> queryCellIndices, int neighboringLayers){
+    // packs the x and y cell indices into a single long cell key (x: higher 32 bits, y: lower 32 bits)
+    public static long getCellKey(int xCellIndex, int yCellIndex)
+    {
+        return (((long) xCellIndex) << 32) | (yCellIndex & 0xFFFFFFFFL);
+    }
+
+    public static int getCellXIndex(long cellKey)
+    {
+        return (int) (cellKey >> 32);
+    }
+
+    public static int getCellYIndex(long cellKey)
+    {
+        return (int) cellKey;
+    }
+
+    // return the zero padded String form of a cell key, used for display only
+    public static String getCellIDStr(long cellKey)
+    {
+        return padLeadingZeroesToInt(getCellXIndex(cellKey), UniformGrid.CELLINDEXSTRLENGTH) + padLeadingZeroesToInt(getCellYIndex(cellKey), UniformGrid.CELLINDEXSTRLENGTH);
+    }
+
+    // return the position of the cell (x, y) along the Z-order (Morton) curve, i.e., the interleaved bits of x and y
+    public static long getZOrderIndex(int xCellIndex, int yCellIndex)
+    {
+        long d = 0;
+        for (int i = 0; i < 31; i++) {
+            d |= ((long) ((xCellIndex >> i) & 1)) << (2 * i + 1);
+            d |= ((long) ((yCellIndex >> i) & 1)) << (2 * i);
+        }
+        return d;
+    }
 
-        if((pointCellIndices.get(0) >= queryCellIndices.get(0) - neighboringLayers) && (pointCellIndices.get(0) <= queryCellIndices.get(0) + neighboringLayers) && (pointCellIndices.get(1) >= queryCellIndices.get(1) - neighboringLayers) && (pointCellIndices.get(1) <= queryCellIndices.get(1) + neighboringLayers)){
+    // return the position of the cell (x, y) along the Hilbert curve covering a 2^order x 2^order grid
+    public static long getHilbertIndex(int order, int xCellIndex, int yCellIndex)
+    {
+        long x = xCellIndex;
+        long y = yCellIndex;
+        long d = 0;
+        for (long s = (order > 0) ? (1L << (order - 1)) : 0; s > 0; s /= 2) {
+            long rx = ((x & s) > 0) ? 1 : 0;
+            long ry = ((y & s) > 0) ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+
+            // rotating the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                long t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    public static boolean pointWithinQueryRange(long pointCellKey, long queryCellKey, int neighboringLayers){
+
+        int pointCellXIndex = getCellXIndex(pointCellKey);
+        int pointCellYIndex = getCellYIndex(pointCellKey);
+        int queryCellXIndex = getCellXIndex(queryCellKey);
+        int queryCellYIndex = getCellYIndex(queryCellKey);
+
+        if((pointCellXIndex >= queryCellXIndex - neighboringLayers) && (pointCellXIndex <= queryCellXIndex + neighboringLayers) && (pointCellYIndex >= queryCellYIndex - neighboringLayers) && (pointCellYIndex <= queryCellYIndex + neighboringLayers)){
             return true;
         }
         else{
@@ -79,40 +150,15 @@ public class HelperClass {
     }
 
     // assigning grid cell ID
-    public static String assignGridCellID(Coordinate coordinate, UniformGrid uGrid) {
-
-        // Direct approach to compute the cellIDs (Key)
-        // int xCellIndex = (int)(Math.floor((point.getX() - uGrid.getMinX())/uGrid.getCellLength()));
-        // int yCellIndex = (int)(Math.floor((point.getY() - uGrid.getMinY())/uGrid.getCellLength()));
-        int xCellIndex = (int)(Math.floor((coordinate.getX() - uGrid.getMinX())/uGrid.getCellLength()));
-        int yCellIndex = (int)(Math.floor((coordinate.getY() - uGrid.getMinY())/uGrid.getCellLength()));
+    public static long assignGridCellID(Coordinate coordinate, SpatialIndex uGrid) {
 
-        String gridIDStr = HelperClass.padLeadingZeroesToInt(xCellIndex, uGrid.getCellIndexStrLength()) + HelperClass.padLeadingZeroesToInt(yCellIndex, uGrid.getCellIndexStrLength());
-
-        return gridIDStr;
+        return uGrid.assignGridCellID(coordinate);
     }
 
     // assigning grid cell ID - BoundingBox
-    public static HashSet<String> assignGridCellID(Tuple2<Coordinate, Coordinate> bBox, UniformGrid uGrid) {
-
-        HashSet<String> gridCellIDs = new HashSet<String>();
+    public static HashSet<Long> assignGridCellID(Tuple2<Coordinate, Coordinate> bBox, SpatialIndex uGrid) {
 
-        // bottom-left coordinate (min values)
-        int xCellIndex1 = (int) (Math.floor((bBox.f0.getX() - uGrid.getMinX()) / uGrid.getCellLength()));
-        int yCellIndex1 = (int) (Math.floor((bBox.f0.getY() - uGrid.getMinY()) / uGrid.getCellLength()));
-
-        // top-right coordinate (max values)
-        int xCellIndex2 = (int) (Math.floor((bBox.f1.getX() - uGrid.getMinX()) / uGrid.getCellLength()));
-        int yCellIndex2 = (int) (Math.floor((bBox.f1.getY() - uGrid.getMinY()) / uGrid.getCellLength()));
-
-        for(int x = xCellIndex1; x <= xCellIndex2; x++)
-            for(int y = yCellIndex1; y <= yCellIndex2; y++)
-            {
-                String gridIDStr = HelperClass.padLeadingZeroesToInt(x, uGrid.getCellIndexStrLength()) + HelperClass.padLeadingZeroesToInt(y, uGrid.getCellIndexStrLength());
-                gridCellIDs.add(gridIDStr);
-            }
-
-        return gridCellIDs;
+        return uGrid.assignGridCellID(bBox);
     }
 
     // assigning grid cell ID - using coordinates
@@ -135,38 +181,13 @@ public class HelperClass {
     }
      */
 
-    public static ArrayList<Integer> getIntCellIndices(String cellID)
-    {
-        ArrayList<Integer> cellIndices = new ArrayList<Integer>();
-
-        //substring(int startIndex, int endIndex): endIndex is excluded
-        String cellIDX = cellID.substring(0,5);
-        String cellIDY = cellID.substring(5);
-
-        cellIndices.add(HelperClass.removeLeadingZeroesFromString(cellIDX));
-        cellIndices.add(HelperClass.removeLeadingZeroesFromString(cellIDY));
-
-        return cellIndices;
-    }
-
-    public static Integer getCellLayerWRTQueryCell(String queryCellID, String cellID)
+    public static Integer getCellLayerWRTQueryCell(long queryCellID, long cellID)
     {
-        ArrayList<Integer> queryCellIndices = getIntCellIndices(queryCellID);
-        ArrayList<Integer> cellIndices = getIntCellIndices(cellID);
-        Integer cellLayer;
+        int xIndexDiff = Math.abs(getCellXIndex(queryCellID) - getCellXIndex(cellID));
+        int yIndexDiff = Math.abs(getCellYIndex(queryCellID) - getCellYIndex(cellID));
 
-        if((queryCellIndices.get(0) == cellIndices.get(0)) && (queryCellIndices.get(1) == cellIndices.get(1))) {
-            return 0; // cell layer is 0
-        }
-        else if ( Math.abs(queryCellIndices.get(0) - cellIndices.get(0)) == 0){
-            return Math.abs(queryCellIndices.get(1) - cellIndices.get(1));
-        }
-        else if ( Math.abs(queryCellIndices.get(1) - cellIndices.get(1)) == 0){
-            return Math.abs(queryCellIndices.get(0) - cellIndices.get(0));
-        }
-        else{
-            return Math.max(Math.abs(queryCellIndices.get(0) - cellIndices.get(0)), Math.abs(queryCellIndices.get(1) - cellIndices.get(1)));
-        }
+        // cell layer is 0 for the query cell itself
+        return Math.max(xIndexDiff, yIndexDiff);
     }
 
     public static double getPointPointEuclideanDistance(Coordinate c1, Coordinate c2) {
@@ -245,8 +266,8 @@ public class HelperClass {
     public static double getPointPolygonMinEuclideanDistance(Point p, Polygon poly) {
 
         // Point coordinates
-        double x = p.point.getX();
-        double y = p.point.getY();
+        double x = p.x;
+        double y = p.y;
 
         // Line coordinate 1
         double x1 = poly.boundingBox.f0.getX();
@@ -435,12 +456,49 @@ public class HelperClass {
     }
 
 
+    // Reference point of a pair of objects: the point of the bounding box nearest to the other bounding box (a point being a degenerate one)
+    // Per axis, the larger of the two minimums clamped to the bounding box
+    // It lies in the cells of the bounding box and within the pair distance of the other object, i.e., in a cell both objects are replicated to
+    public static Coordinate getReferencePoint(Tuple2<Coordinate, Coordinate> bBox, double otherMinX, double otherMinY) {
+        double x = Math.min(Math.max(bBox.f0.x, otherMinX), bBox.f1.x);
+        double y = Math.min(Math.max(bBox.f0.y, otherMinY), bBox.f1.y);
+        return new Coordinate(x, y);
+    }
+
+    // A pair is reported only by the cell of its reference point, hence exactly once without deduplicating the output
+    // The reference point is clamped into the grid extent, as the objects are only replicated to the cells of the grid (a polygon
+    // bounding box may cross the border); clamping keeps it within the bounding box part inside the grid and not farther from the other object
+    public static boolean isReferenceCell(long cellKey, Polygon poly, Point p, SpatialIndex uGrid) {
+        return getReferenceCell(getReferencePoint(poly.boundingBox, p.x, p.y), uGrid) == cellKey;
+    }
+
+    public static boolean isReferenceCell(long cellKey, Polygon poly, Polygon other, SpatialIndex uGrid) {
+        return getReferenceCell(getReferencePoint(poly.boundingBox, other.boundingBox.f0.x, other.boundingBox.f0.y), uGrid) == cellKey;
+    }
+
+    private static long getReferenceCell(Coordinate referencePoint, SpatialIndex uGrid) {
+        // The upper bounds belong to the next (non-existing) cell row/column
+        double x = Math.min(Math.max(referencePoint.x, uGrid.getMinX()), Math.nextDown(uGrid.getMaxX()));
+        double y = Math.min(Math.max(referencePoint.y, uGrid.getMinY()), Math.nextDown(uGrid.getMaxY()));
+        return uGrid.assignGridCellID(new Coordinate(x, y));
+    }
+
     // Generation of replicated polygon stream corresponding to each grid cell a polygon belongs
+    // thinReplicas: the replicas carry the id, cell and bounding box only (enough for the bounding box distances of the joins)
     public static class ReplicatePolygonStream extends RichFlatMapFunction<Polygon, Polygon> {
 
+        private final boolean thinReplicas;
         private long parallelism;
         private long uniqueObjID;
 
+        public ReplicatePolygonStream() {
+            this(false);
+        }
+
+        public ReplicatePolygonStream(boolean thinReplicas) {
+            this.thinReplicas = thinReplicas;
+        }
+
         @Override
         public void open(Configuration parameters) {
             RuntimeContext ctx = getRuntimeContext();
@@ -452,8 +510,8 @@ public class HelperClass {
         public void flatMap(Polygon poly, Collector<Polygon> out) throws Exception {
 
             // Create duplicated polygon stream based on GridIDs
-            for (String gridID: poly.gridIDsSet) {
-                Polygon p = new Polygon(Arrays.asList(poly.polygon.getCoordinates()), uniqueObjID, poly.gridIDsSet, gridID, poly.boundingBox);
+            for (Long gridID: poly.gridIDsSet) {
+                Polygon p = thinReplicas ? getThinReplica(poly, uniqueObjID, gridID) : new Polygon(poly.coordinates, uniqueObjID, poly.gridIDsSet, gridID, poly.boundingBox);
                 out.collect(p);
             }
 
@@ -462,6 +520,100 @@ public class HelperClass {
         }
     }
 
+    // Envelope and id of a polygon, without its coordinates and cells
+    public static Polygon getThinReplica(Polygon poly, long objID, long gridID) {
+        return new Polygon((double[]) null, objID, null, gridID, poly.boundingBox);
+    }
+
+    // Routing of each polygon to a single cell of a query instead of replicating it to all its cells
+    // The polygon is sent to its smallest guaranteed cell if any (so that the window reports it without a distance check),
+    // otherwise to its smallest candidate cell; polygons without a cell in the query neighborhood are dropped
+    public static class OwnerCellPolygonStream extends RichFlatMapFunction<Polygon, Polygon> {
+
+        private final CellBitmap guaranteedCells;
+        private final CellBitmap neighboringCells;
+        private long parallelism;
+        private long uniqueObjID;
+
+        public OwnerCellPolygonStream(CellBitmap guaranteedCells, CellBitmap neighboringCells) {
+            this.guaranteedCells = guaranteedCells;
+            this.neighboringCells = neighboringCells;
+        }
+
+        @Override
+        public void open(Configuration parameters) {
+            RuntimeContext ctx = getRuntimeContext();
+            parallelism = ctx.getNumberOfParallelSubtasks();
+            uniqueObjID = ctx.getIndexOfThisSubtask();
+        }
+
+        @Override
+        public void flatMap(Polygon poly, Collector<Polygon> out) throws Exception {
+
+            boolean found = false;
+            boolean guaranteed = false;
+            long ownerCell = UniformGrid.NO_CELL_KEY;
+            for (long gridID: poly.gridIDsSet) {
+                if (guaranteedCells.contains(gridID)) {
+                    if (!guaranteed || gridID < ownerCell) {
+                        ownerCell = gridID;
+                    }
+                    found = guaranteed = true;
+                }
+                else if (!guaranteed && neighboringCells.contains(gridID) && (!found || gridID < ownerCell)) {
+                    ownerCell = gridID;
+                    found = true;
+                }
+            }
+
+            if (found) {
+                out.collect(new Polygon(poly.coordinates, uniqueObjID, poly.gridIDsSet, ownerCell, poly.boundingBox));
+            }
+            uniqueObjID += parallelism;
+        }
+    }
+
+    // Cell-based pre-filter of a point query, reporting how well the index prunes the stream:
+    // points of the guaranteed cells (no distance computation), of the candidate cells (distance computation) and pruned points
+    public static class CellPruningFilter extends RichFilterFunction<Point> {
+
+        private final CellBitmap guaranteedCells;
+        private final CellBitmap neighboringCells;
+        private final String indexName;
+        private transient Counter guaranteedCounter;
+        private transient Counter candidateCounter;
+        private transient Counter prunedCounter;
+
+        public CellPruningFilter(CellBitmap guaranteedCells, CellBitmap neighboringCells, SpatialIndex uGrid) {
+            this.guaranteedCells = guaranteedCells;
+            this.neighboringCells = neighboringCells;
+            this.indexName = uGrid.getClass().getSimpleName();
+        }
+
+        @Override
+        public void open(Configuration parameters) throws Exception {
+            super.open(parameters);
+            MetricGroup pruningMetrics = getRuntimeContext().getMetricGroup().addGroup("Pruning", indexName);
+            this.guaranteedCounter = pruningMetrics.counter("Guaranteed Cell Points");
+            this.candidateCounter = pruningMetrics.counter("Candidate Cell Points");
+            this.prunedCounter = pruningMetrics.counter("Pruned Points");
+        }
+
+        @Override
+        public boolean filter(Point p) throws Exception {
+            if (guaranteedCells.contains(p.gridID)) {
+                guaranteedCounter.inc();
+                return true;
+            }
+            else if (neighboringCells.contains(p.gridID)) {
+                candidateCounter.inc();
+                return true;
+            }
+            prunedCounter.inc();
+            return false;
+        }
+    }
+
 
     public static double computeHaverSine(Double lon, Double lat, Double lon1, Double lat1) {
         Double rLat1 = Math.toRadians(lat);
@@ -471,6 +623,54 @@ public class HelperClass {
         return distance;
     }
 
+    // Reads sample coordinates (e.g., for building a QuadTree), one "x,y" pair per line. Unparsable lines (e.g., header) are skipped
+    public static List<Coordinate> readSampleCoordinates(String filePath) throws IOException {
+
+        List<Coordinate> coordinates = new ArrayList<Coordinate>();
+
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(filePath), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.trim().split("\\s*[,\\s]\\s*");
+                if (values.length < 2) {
+                    continue;
+                }
+                try {
+                    coordinates.add(new Coordinate(Double.parseDouble(values[0]), Double.parseDouble(values[1])));
+                } catch (NumberFormatException e) {
+                    // skipping the line
+                }
+            }
+        }
+        return coordinates;
+    }
+
+    // Reads measured per cell weights, one "x,y,weight" (or "x,y" with weight 1) per line, the weight of a line is added to the cell containing (x, y). Unparsable lines are skipped
+    public static Map<Long, Long> readCellWeights(String filePath, SpatialIndex uGrid) throws IOException {
+
+        Map<Long, Long> cellWeights = new HashMap<Long, Long>();
+
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(filePath), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.trim().split("\\s*[,\\s]\\s*");
+                if (values.length < 2) {
+                    continue;
+                }
+                try {
+                    long cellKey = uGrid.assignGridCellID(new Coordinate(Double.parseDouble(values[0]), Double.parseDouble(values[1])));
+                    long weight = (values.length > 2) ? Long.parseLong(values[2]) : 1L;
+                    if (cellKey != UniformGrid.NO_CELL_KEY) {
+                        cellWeights.merge(cellKey, weight, Long::sum);
+                    }
+                } catch (NumberFormatException e) {
+                    // skipping the line
+                }
+            }
+        }
+        return cellWeights;
+    }
+
     public static class checkExitControlTuple implements FilterFunction<ObjectNode> {
         @Override
         public boolean filter(ObjectNode json) throws Exception {
@@ -526,7 +726,7 @@ public class HelperClass {
         }
     }
 
-    public static class LatencySinkTuple4 implements Serializable, KafkaSerializationSchema<Tuple4<String, Integer, HashMap<String, Long>, Long>> {
+    public static class LatencySinkTuple4 implements Serializable, KafkaSerializationSchema<Tuple4<Long, Integer, HashMap<String, Long>, Long>> {
 
         String outputTopic;
         Integer queryID;
@@ -538,7 +738,7 @@ public class HelperClass {
         }
 
         @Override
-        public ProducerRecord<byte[], byte[]> serialize(Tuple4<String, Integer, HashMap<String, Long>, Long> element, @Nullable Long timestamp) {
+        public ProducerRecord<byte[], byte[]> serialize(Tuple4<Long, Integer, HashMap<String, Long>, Long> element, @Nullable Long timestamp) {
             //String outputStr = queryID.toString() + ", " + element.f3.toString();
             String outputStr = element.f3.toString();
             return new ProducerRecord<byte[], byte[]>(outputTopic, outputStr.getBytes(StandardCharsets.UTF_8));
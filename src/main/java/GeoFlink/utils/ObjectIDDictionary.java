@@ -0,0 +1,293 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.utils;
+
+import GeoFlink.spatialObjects.Point;
+import org.apache.flink.api.common.state.BroadcastState;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.state.ReadOnlyBroadcastState;
+import org.apache.flink.api.common.state.ValueState;
+import org.apache.flink.api.common.state.ValueStateDescriptor;
+import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.streaming.api.functions.co.BroadcastProcessFunction;
+import org.apache.flink.util.Collector;
+import org.apache.flink.util.OutputTag;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/*
+Dictionary encoding of the object IDs: each objID is mapped to a dense int (Point.objKey) at ingest,
+so that the long-lived per-object state of the trajectory operators is keyed by ints instead of Strings.
+The (objKey, objID) entries are emitted once per object on a side output and broadcast to the decoders,
+which restore the objIDs of the results just before the sinks.
+Only operators keeping per-object state across windows (TAggregateQuery.TSpatialHeatmapAggregateQuery) encode their input;
+the per-object maps of the windowed operators are rebuilt from the window contents at every window, an encoder (an extra
+keyBy(objID)) and a decoder would cost them more than they save.
+With an expiry threshold, the entry of an object without points for the threshold is removed from the encoder and the decoders,
+as the trajectory state of the operator is deleted, hence the dictionary holds the active objects only
+*/
+public class ObjectIDDictionary implements Serializable {
+
+    // The entry (objKey, null) removes objKey from the dictionary
+    public static final OutputTag<Tuple2<Integer, String>> dictionaryEntryTag = new OutputTag<Tuple2<Integer, String>>("objIDDictionaryEntries"){};
+
+    public static final MapStateDescriptor<Integer, String> dictionaryDescriptor = new MapStateDescriptor<Integer, String>(
+            "objIDDictionaryDescriptor", // state name
+            BasicTypeInfo.INT_TYPE_INFO, BasicTypeInfo.STRING_TYPE_INFO);
+
+    // Key of the results which are not related to a single object, e.g., SUM and AVG aggregates; decoded as ""
+    public static final int NO_OBJ_KEY = -1;
+
+    // Assigns the objKey of each point; the new dictionary entries are available by getSideOutput(dictionaryEntryTag)
+    public static SingleOutputStreamOperator<Point> encode(DataStream<Point> pointStream) {
+        return encode(pointStream, null);
+    }
+
+    // expiryThreshold: milliseconds since the latest point timestamp of an object after which its entry is removed, never if null
+    public static SingleOutputStreamOperator<Point> encode(DataStream<Point> pointStream, Long expiryThreshold) {
+        return pointStream.keyBy(new KeySelector<Point, String>() {
+            @Override
+            public String getKey(Point p) throws Exception {
+                return p.objID;
+            }
+        }).process(new Encoder(expiryThreshold)).name("ObjIDDictionaryEncoder");
+    }
+
+    // Restores the objIDs of the results, using the dictionary entries of the encoder
+    public static <IN, OUT> DataStream<OUT> decode(DataStream<IN> encodedStream, DataStream<Tuple2<Integer, String>> dictionaryEntries, Decoder<IN, OUT> decoder) {
+        return encodedStream.connect(dictionaryEntries.broadcast(dictionaryDescriptor)).process(decoder).name("ObjIDDictionaryDecoder");
+    }
+
+    // Dense keys: the i-th object of encoder subtask s gets the key base + i * parallelism + s, hence no coordination among the subtasks
+    // The largest assigned key is checkpointed as union state; when restored (also after rescaling), base is the largest key of all
+    // subtasks + 1, hence the new keys do not collide with the keys assigned before
+    // Expiry: a processing time timer per object fires expiryThreshold after its latest timestamp, the criterion of
+    // TAggregateQuery.THeatmapAggregateQueryMapFunction.deleteHaltedTrajectories
+    public static class Encoder extends KeyedProcessFunction<String, Point, Point> implements CheckpointedFunction {
+
+        private final Long expiryThreshold;
+
+        private ValueState<Integer> objKeyVState;
+        private ValueState<Long> maxTimestampVState;
+        private transient ListState<Integer> maxObjKeyLState;
+        private int baseKey;
+        private int nextIndex;
+        private int maxObjKey;
+        private int parallelism;
+        private int subtaskIndex;
+
+        //ctor
+        public Encoder() {
+            this(null);
+        }
+
+        public Encoder(Long expiryThreshold) {
+            this.expiryThreshold = expiryThreshold;
+        }
+
+        @Override
+        public void open(Configuration parameters) {
+            ValueStateDescriptor<Integer> objKeyDescriptor = new ValueStateDescriptor<Integer>(
+                    "objKeyDescriptor", // state name
+                    BasicTypeInfo.INT_TYPE_INFO);
+            ValueStateDescriptor<Long> maxTimestampDescriptor = new ValueStateDescriptor<Long>(
+                    "objKeyMaxTimestampDescriptor", // state name
+                    BasicTypeInfo.LONG_TYPE_INFO);
+            this.objKeyVState = getRuntimeContext().getState(objKeyDescriptor);
+            this.maxTimestampVState = getRuntimeContext().getState(maxTimestampDescriptor);
+            this.parallelism = getRuntimeContext().getNumberOfParallelSubtasks();
+            this.subtaskIndex = getRuntimeContext().getIndexOfThisSubtask();
+        }
+
+        @Override
+        public void processElement(Point p, Context ctx, Collector<Point> out) throws Exception {
+            Integer objKey = objKeyVState.value();
+            if (objKey == null) {
+                objKey = baseKey + nextIndex * parallelism + subtaskIndex;
+                nextIndex++;
+                maxObjKey = Math.max(maxObjKey, objKey);
+                objKeyVState.update(objKey);
+                ctx.output(dictionaryEntryTag, Tuple2.of(objKey, p.objID));
+            }
+
+            if (expiryThreshold != null) {
+                Long maxTimestamp = maxTimestampVState.value();
+                if (maxTimestamp == null || p.timeStampMillisec > maxTimestamp) {
+                    maxTimestampVState.update(p.timeStampMillisec);
+                    ctx.timerService().registerProcessingTimeTimer(p.timeStampMillisec + expiryThreshold + 1);
+                }
+            }
+
+            p.objKey = objKey;
+            out.collect(p);
+        }
+
+        @Override
+        public void onTimer(long timestamp, OnTimerContext ctx, Collector<Point> out) throws Exception {
+            Long maxTimestamp = maxTimestampVState.value();
+            // Timers of the earlier timestamps of the object are ignored
+            if (maxTimestamp != null && timestamp - maxTimestamp > expiryThreshold) {
+                ctx.output(dictionaryEntryTag, Tuple2.of(objKeyVState.value(), null));
+                objKeyVState.clear();
+                maxTimestampVState.clear();
+            }
+        }
+
+        @Override
+        public void snapshotState(FunctionSnapshotContext context) throws Exception {
+            maxObjKeyLState.clear();
+            maxObjKeyLState.add(maxObjKey);
+        }
+
+        @Override
+        public void initializeState(FunctionInitializationContext context) throws Exception {
+            maxObjKeyLState = context.getOperatorStateStore().getUnionListState(new ListStateDescriptor<Integer>("objKeyMaxKey", BasicTypeInfo.INT_TYPE_INFO));
+            maxObjKey = -1;
+            if (context.isRestored()) {
+                for (Integer objKey : maxObjKeyLState.get()) {
+                    maxObjKey = Math.max(maxObjKey, objKey);
+                }
+            }
+            baseKey = maxObjKey + 1;
+            nextIndex = 0;
+        }
+    }
+
+    // decode returns null if an objKey of the result is not in the dictionary yet (its entry is still on the way from the encoder);
+    // such results are held back until the missing entries arrive; they are checkpointed as operator list state (Kryo) and, after
+    // a restore, decoded with the restored dictionary at the first input
+    // A removed entry is kept for removalDelay milliseconds, for the results of the object still on the way from the operator
+    public static abstract class Decoder<IN, OUT> extends BroadcastProcessFunction<IN, Tuple2<Integer, String>, OUT> implements CheckpointedFunction {
+
+        private static final long DEFAULT_REMOVAL_DELAY = 60000;
+
+        private final long removalDelay;
+        private transient List<IN> pendingResults;
+        private transient ListState<Object> pendingResultsLState;
+        // Restored pending results not yet retried
+        private transient boolean retryPendingResults;
+        // (objKey, removal time) in the order of removal
+        private transient ArrayDeque<Tuple2<Integer, Long>> pendingRemovals;
+
+        //ctor
+        public Decoder() {
+            this(DEFAULT_REMOVAL_DELAY);
+        }
+
+        public Decoder(long removalDelay) {
+            this.removalDelay = removalDelay;
+        }
+
+        public abstract OUT decode(IN encoded, ReadOnlyBroadcastState<Integer, String> dictionary) throws Exception;
+
+        @Override
+        public void initializeState(FunctionInitializationContext context) throws Exception {
+            pendingResultsLState = context.getOperatorStateStore().getListState(new ListStateDescriptor<Object>("decoderPendingResults", Object.class));
+            if (context.isRestored()) {
+                for (Object encoded : pendingResultsLState.get()) {
+                    getPendingResults().add((IN) encoded);
+                }
+                retryPendingResults = !getPendingResults().isEmpty();
+            }
+        }
+
+        @Override
+        public void snapshotState(FunctionSnapshotContext context) throws Exception {
+            pendingResultsLState.clear();
+            if (pendingResults != null) {
+                for (IN encoded : pendingResults) {
+                    pendingResultsLState.add(encoded);
+                }
+            }
+        }
+
+        @Override
+        public void processElement(IN encoded, ReadOnlyContext ctx, Collector<OUT> out) throws Exception {
+            if (retryPendingResults) {
+                decodePendingResults(ctx.getBroadcastState(dictionaryDescriptor), out);
+                retryPendingResults = false;
+            }
+
+            OUT decoded = decode(encoded, ctx.getBroadcastState(dictionaryDescriptor));
+            if (decoded != null) {
+                out.collect(decoded);
+            } else {
+                getPendingResults().add(encoded);
+            }
+        }
+
+        @Override
+        public void processBroadcastElement(Tuple2<Integer, String> entry, Context ctx, Collector<OUT> out) throws Exception {
+            BroadcastState<Integer, String> dictionary = ctx.getBroadcastState(dictionaryDescriptor);
+            long currentTime = ctx.currentProcessingTime();
+            if (pendingRemovals == null) {
+                pendingRemovals = new ArrayDeque<Tuple2<Integer, Long>>();
+            }
+            while (!pendingRemovals.isEmpty() && currentTime - pendingRemovals.peek().f1 >= removalDelay) {
+                dictionary.remove(pendingRemovals.poll().f0);
+            }
+
+            if (entry.f1 == null) {
+                pendingRemovals.add(Tuple2.of(entry.f0, currentTime));
+                return;
+            }
+            dictionary.put(entry.f0, entry.f1);
+            decodePendingResults(dictionary, out);
+            retryPendingResults = false;
+        }
+
+        private void decodePendingResults(ReadOnlyBroadcastState<Integer, String> dictionary, Collector<OUT> out) throws Exception {
+            if (pendingResults != null && !pendingResults.isEmpty()) {
+                Iterator<IN> pendingIterator = pendingResults.iterator();
+                while (pendingIterator.hasNext()) {
+                    OUT decoded = decode(pendingIterator.next(), dictionary);
+                    if (decoded != null) {
+                        out.collect(decoded);
+                        pendingIterator.remove();
+                    }
+                }
+            }
+        }
+
+        private List<IN> getPendingResults() {
+            if (pendingResults == null) {
+                pendingResults = new ArrayList<IN>();
+            }
+            return pendingResults;
+        }
+    }
+
+    // objID of an objKey, null if unknown
+    public static String getObjID(int objKey, ReadOnlyBroadcastState<Integer, String> dictionary) throws Exception {
+        return (objKey == NO_OBJ_KEY) ? "" : dictionary.get(objKey);
+    }
+}
@@ -0,0 +1,350 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.utils;
+
+import GeoFlink.spatialObjects.Point;
+import org.apache.flink.api.common.state.ValueState;
+import org.apache.flink.api.common.state.ValueStateDescriptor;
+import org.apache.flink.api.common.typeinfo.PrimitiveArrayTypeInfo;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.Utils;
+import org.apache.flink.api.java.typeutils.TypeExtractor;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.runtime.state.StateSnapshotContext;
+import org.apache.flink.runtime.state.VoidNamespace;
+import org.apache.flink.streaming.api.datastream.KeyedStream;
+import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.streaming.api.operators.KeyedProcessOperator;
+import org.apache.flink.util.Collector;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+Sliding processing-time window of the points of a cell, kept off-heap: the points of each cell are appended as binary records
+to a direct ByteBuffer instead of being kept as Point objects in the window state, hence the window contents are not scanned by the GC.
+Windows are aligned as SlidingProcessingTimeWindows (start at multiples of the slide) and evaluated by evaluate(...) through a cursor
+over the records; only the points which are output are materialized by toPoint().
+
+Record: arrival time, timeStampMillisec, ingestionTime, x, y, gridID (fixed-width part) followed by the UTF-8 objID (int length-prefixed)
+The buffers of the emptied cells are pooled and reused by the next cells instead of allocating direct memory per cell.
+Checkpointing: at a snapshot, the live records of every key are written to the keyed state of the key (by OffHeapCellWindowOperator,
+hence applied with process(...)), so each subtask restores the cells of its key groups only, also after rescaling; the pending windows
+are evaluated by the restored timers
+*/
+public abstract class OffHeapCellWindow<OUT> extends KeyedProcessFunction<Long, Point, OUT> {
+
+    private static final int FIXED_RECORD_SIZE = 6 * 8 + 4;
+    private static final int INITIAL_CAPACITY = 64 * FIXED_RECORD_SIZE;
+    // Number of free buffers kept for reuse per subtask, further buffers are released to the GC
+    private static final int MAX_POOLED_BUFFERS = 256;
+
+    private final long windowSize;
+    private final long slideStep;
+    private transient HashMap<Long, CellBuffer> cellBuffers;
+    private transient ArrayDeque<ByteBuffer> bufferPool;
+    private transient RecordCursor cursor;
+
+    // windowSize and slideStep in seconds, as the window assigners of the operators
+    public OffHeapCellWindow(long windowSize, long slideStep) {
+        this.windowSize = windowSize * 1000L;
+        this.slideStep = slideStep * 1000L;
+    }
+
+    // Applies the window to a keyed point stream, as KeyedStream.process
+    public static <OUT> SingleOutputStreamOperator<OUT> process(KeyedStream<Point, Long> keyedStream, OffHeapCellWindow<OUT> window) {
+        TypeInformation<OUT> outType = TypeExtractor.getUnaryOperatorReturnType(window, KeyedProcessFunction.class, 1, 2,
+                TypeExtractor.NO_INDEX, keyedStream.getType(), Utils.getCallLocationName(), true);
+        return keyedStream.transform("Off-heap Cell Window", outType, new OffHeapCellWindowOperator<OUT>(keyedStream.getExecutionEnvironment().clean(window)));
+    }
+
+    // Called at the end of each window of a non-empty key (a cell, or a group of cells if the key is a routing key of a GridPartitioner)
+    public abstract void evaluate(long key, long windowStart, long windowEnd, RecordCursor records, Collector<OUT> out) throws Exception;
+
+    @Override
+    public void open(Configuration parameters) throws Exception {
+        super.open(parameters);
+        cellBuffers = new HashMap<Long, CellBuffer>();
+        bufferPool = new ArrayDeque<ByteBuffer>();
+        cursor = new RecordCursor();
+    }
+
+    @Override
+    public void processElement(Point p, Context ctx, Collector<OUT> out) throws Exception {
+        long arrivalTime = ctx.timerService().currentProcessingTime();
+        CellBuffer cellBuffer = getCellBuffer(ctx.getCurrentKey());
+        cellBuffer.append(arrivalTime, p);
+
+        // End of the earliest window containing the point, registered once per cell and timestamp by the timer service
+        long lastWindowStart = arrivalTime - (arrivalTime % slideStep);
+        ctx.timerService().registerProcessingTimeTimer(lastWindowStart + slideStep - 1);
+    }
+
+    @Override
+    public void onTimer(long timestamp, OnTimerContext ctx, Collector<OUT> out) throws Exception {
+        long key = ctx.getCurrentKey();
+        CellBuffer cellBuffer = cellBuffers.get(key);
+        if (cellBuffer == null) {
+            return;
+        }
+
+        long windowEnd = timestamp + 1;
+        long windowStart = windowEnd - windowSize;
+        cellBuffer.evictBefore(windowStart);
+        if (cellBuffer.hasRecordsBefore(windowEnd)) {
+            cursor.reset(cellBuffer.buffer, cellBuffer.head, windowEnd);
+            evaluate(key, windowStart, windowEnd, cursor, out);
+        }
+
+        // The records of the next window, if any, are evaluated at its end
+        cellBuffer.evictBefore(windowStart + slideStep);
+        if (cellBuffer.isEmpty()) {
+            cellBuffers.remove(key);
+            releaseBuffer(cellBuffer.buffer);
+        } else {
+            ctx.timerService().registerProcessingTimeTimer(timestamp + slideStep);
+        }
+    }
+
+    private CellBuffer getCellBuffer(long key) {
+        CellBuffer cellBuffer = cellBuffers.get(key);
+        if (cellBuffer == null) {
+            ByteBuffer buffer = bufferPool.poll();
+            cellBuffer = new CellBuffer((buffer == null) ? ByteBuffer.allocateDirect(INITIAL_CAPACITY) : buffer);
+            cellBuffers.put(key, cellBuffer);
+        }
+        return cellBuffer;
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+            buffer.clear();
+            bufferPool.push(buffer);
+        }
+    }
+
+    // Records of a cell in arrival order, from head to the buffer position
+    private static class CellBuffer {
+
+        ByteBuffer buffer;
+        int head = 0;
+
+        CellBuffer(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void append(long arrivalTime, Point p) {
+            byte[] objID = (p.objID == null) ? null : p.objID.getBytes(StandardCharsets.UTF_8);
+            int recordSize = FIXED_RECORD_SIZE + (objID == null ? 0 : objID.length);
+            ensureRemaining(recordSize);
+            buffer.putLong(arrivalTime);
+            buffer.putLong(p.timeStampMillisec);
+            buffer.putLong(p.ingestionTime);
+            buffer.putDouble(p.x);
+            buffer.putDouble(p.y);
+            buffer.putLong(p.gridID);
+            buffer.putInt(objID == null ? -1 : objID.length);
+            if (objID != null) {
+                buffer.put(objID);
+            }
+        }
+
+        // Records restored from a snapshot (getRecords)
+        void appendRecords(byte[] records) {
+            ensureRemaining(records.length);
+            buffer.put(records);
+        }
+
+        // Live records, from head to the buffer position
+        byte[] getRecords() {
+            byte[] records = new byte[buffer.position() - head];
+            ByteBuffer live = buffer.duplicate();
+            live.position(head);
+            live.get(records);
+            return records;
+        }
+
+        void ensureRemaining(int recordSize) {
+            if (buffer.remaining() < recordSize) {
+                grow(recordSize);
+            }
+        }
+
+        // Drops the evicted records, compacting in place if the live records fill at most half of the buffer, otherwise in a larger buffer
+        void grow(int recordSize) {
+            int liveBytes = buffer.position() - head;
+            buffer.limit(buffer.position());
+            buffer.position(head);
+            if (liveBytes + recordSize <= buffer.capacity() / 2) {
+                buffer.compact();
+            } else {
+                int capacity = buffer.capacity() * 2;
+                while (capacity < liveBytes + recordSize) {
+                    capacity *= 2;
+                }
+                ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+                grown.put(buffer);
+                buffer = grown;
+            }
+            head = 0;
+        }
+
+        void evictBefore(long arrivalTime) {
+            while (head < buffer.position() && buffer.getLong(head) < arrivalTime) {
+                head += recordSize(head);
+            }
+        }
+
+        boolean hasRecordsBefore(long arrivalTime) {
+            return head < buffer.position() && buffer.getLong(head) < arrivalTime;
+        }
+
+        boolean isEmpty() {
+            return head >= buffer.position();
+        }
+
+        int recordSize(int offset) {
+            int objIDLength = buffer.getInt(offset + FIXED_RECORD_SIZE - 4);
+            return FIXED_RECORD_SIZE + Math.max(objIDLength, 0);
+        }
+    }
+
+    // Iterates over the records of a window, reading the fields in place
+    public static class RecordCursor {
+
+        private ByteBuffer buffer;
+        private int offset;
+        private int nextOffset;
+        private int end;
+        private long windowEnd;
+
+        void reset(ByteBuffer buffer, int head, long windowEnd) {
+            this.buffer = buffer;
+            this.nextOffset = head;
+            this.end = buffer.position();
+            this.windowEnd = windowEnd;
+        }
+
+        // Moves to the next record of the window, false at the end of the window
+        public boolean next() {
+            if (nextOffset >= end || buffer.getLong(nextOffset) >= windowEnd) {
+                return false;
+            }
+            offset = nextOffset;
+            nextOffset = offset + FIXED_RECORD_SIZE + Math.max(buffer.getInt(offset + FIXED_RECORD_SIZE - 4), 0);
+            return true;
+        }
+
+        public long getTimeStampMillisec() {
+            return buffer.getLong(offset + 8);
+        }
+
+        public long getIngestionTime() {
+            return buffer.getLong(offset + 16);
+        }
+
+        public double getX() {
+            return buffer.getDouble(offset + 24);
+        }
+
+        public double getY() {
+            return buffer.getDouble(offset + 32);
+        }
+
+        public long getGridID() {
+            return buffer.getLong(offset + 40);
+        }
+
+        public String getObjID() {
+            int objIDLength = buffer.getInt(offset + FIXED_RECORD_SIZE - 4);
+            if (objIDLength < 0) {
+                return null;
+            }
+            byte[] objID = new byte[objIDLength];
+            ByteBuffer record = buffer.duplicate();
+            record.position(offset + FIXED_RECORD_SIZE);
+            record.get(objID);
+            return new String(objID, StandardCharsets.UTF_8);
+        }
+
+        // Materializes the current record
+        public Point toPoint() {
+            Point p = new Point(getObjID(), getX(), getY(), getTimeStampMillisec(), getGridID());
+            p.ingestionTime = getIngestionTime();
+            return p;
+        }
+    }
+
+    // Runs an OffHeapCellWindow and keeps its cells in keyed state: snapshotState writes the live records of each cell under its key
+    // before the keyed state backend is snapshotted, and clears the keys of the cells emptied since the last snapshot; open() restores them
+    public static class OffHeapCellWindowOperator<OUT> extends KeyedProcessOperator<Long, Point, OUT> {
+
+        private static final String CELL_RECORDS_STATE_NAME = "offHeapCellWindowRecords";
+
+        private transient ValueState<byte[]> cellRecordsVState;
+        // Keys with records in the keyed state
+        private transient Set<Long> storedKeys;
+
+        public OffHeapCellWindowOperator(OffHeapCellWindow<OUT> window) {
+            super(window);
+        }
+
+        @Override
+        public void open() throws Exception {
+            super.open();
+            cellRecordsVState = getPartitionedState(new ValueStateDescriptor<byte[]>(CELL_RECORDS_STATE_NAME, PrimitiveArrayTypeInfo.BYTE_PRIMITIVE_ARRAY_TYPE_INFO));
+
+            OffHeapCellWindow<OUT> window = (OffHeapCellWindow<OUT>) userFunction;
+            List<Long> restoredKeys;
+            try (Stream<Long> keys = getKeyedStateBackend().<VoidNamespace>getKeys(CELL_RECORDS_STATE_NAME, VoidNamespace.INSTANCE)) {
+                restoredKeys = keys.collect(Collectors.toList());
+            }
+            storedKeys = new HashSet<Long>(restoredKeys);
+            for (Long key : restoredKeys) {
+                setCurrentKey(key);
+                window.getCellBuffer(key).appendRecords(cellRecordsVState.value());
+            }
+        }
+
+        @Override
+        public void snapshotState(StateSnapshotContext context) throws Exception {
+            OffHeapCellWindow<OUT> window = (OffHeapCellWindow<OUT>) userFunction;
+            for (Map.Entry<Long, CellBuffer> cellBuffer : window.cellBuffers.entrySet()) {
+                setCurrentKey(cellBuffer.getKey());
+                cellRecordsVState.update(cellBuffer.getValue().getRecords());
+            }
+            for (Long key : storedKeys) {
+                if (!window.cellBuffers.containsKey(key)) {
+                    setCurrentKey(key);
+                    cellRecordsVState.clear();
+                }
+            }
+            storedKeys = new HashSet<Long>(window.cellBuffers.keySet());
+
+            super.snapshotState(context);
+        }
+    }
+}
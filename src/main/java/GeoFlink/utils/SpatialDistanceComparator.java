@@ -40,8 +40,8 @@ import java.util.Comparator;
 
         public int compare(Tuple2<Point, Double> t1, Tuple2<Point, Double> t2) {
             // computeSpatialDistance(Double lon, Double lat, Double lon1, Double lat1)
-            double distance1 = HelperClass.getPointPointEuclideanDistance(t1.f0.point.getX(), t1.f0.point.getY(), queryPoint.point.getX(), queryPoint.point.getY());
-            double distance2 = HelperClass.getPointPointEuclideanDistance(t2.f0.point.getX(), t2.f0.point.getY(), queryPoint.point.getX(), queryPoint.point.getY());
+            double distance1 = HelperClass.getPointPointEuclideanDistance(t1.f0.x, t1.f0.y, queryPoint.x, queryPoint.y);
+            double distance2 = HelperClass.getPointPointEuclideanDistance(t2.f0.x, t2.f0.y, queryPoint.x, queryPoint.y);
 
             if (distance1 > distance2) {
                 return -1;
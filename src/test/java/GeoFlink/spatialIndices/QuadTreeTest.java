@@ -0,0 +1,89 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialIndices;
+
+import GeoFlink.utils.HelperClass;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QuadTreeTest {
+
+    // 16 x 16 finest cells of length 1, split to depth 1 at least and beyond as long as a node holds more than 4 samples
+    private static QuadTree denseLowerLeftTree() {
+        List<Coordinate> samples = new ArrayList<Coordinate>();
+        for (int i = 0; i < 50; i++) {
+            samples.add(new Coordinate(0.5, 0.5));
+        }
+        samples.add(new Coordinate(15.5, 15.5));
+        return new QuadTree(1, 4, 4, 0, 16, 0, 16, samples);
+    }
+
+    @Test
+    public void leavesTileTheGrid() {
+        QuadTree tree = denseLowerLeftTree();
+        long area = 0;
+        for (long leaf : tree.getGirdCellsSet()) {
+            area += (long) tree.getLeafSize(leaf) * tree.getLeafSize(leaf);
+        }
+        assertEquals(16 * 16, area);
+    }
+
+    @Test
+    public void denseRegionsHaveSmallerLeaves() {
+        QuadTree tree = denseLowerLeftTree();
+        assertEquals(1, tree.getLeafSize(tree.assignGridCellID(new Coordinate(0.5, 0.5))));
+        assertEquals(8, tree.getLeafSize(tree.assignGridCellID(new Coordinate(15.5, 15.5))));
+    }
+
+    @Test
+    public void pointsAreAssignedToTheLeafContainingThem() {
+        QuadTree tree = denseLowerLeftTree();
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < 16; y++) {
+                long leaf = tree.assignGridCellID(new Coordinate(x + 0.5, y + 0.5));
+                assertTrue(tree.getGirdCellsSet().contains(leaf));
+
+                int leafX = HelperClass.getCellXIndex(leaf);
+                int leafY = HelperClass.getCellYIndex(leaf);
+                int size = tree.getLeafSize(leaf);
+                assertTrue(x >= leafX && x < leafX + size);
+                assertTrue(y >= leafY && y < leafY + size);
+            }
+        }
+        assertEquals(UniformGrid.NO_CELL_KEY, tree.assignGridCellID(new Coordinate(-1, 5)));
+        assertEquals(UniformGrid.NO_CELL_KEY, tree.assignGridCellID(new Coordinate(5, 16.5)));
+    }
+
+    @Test
+    public void adaptMergesTheEmptiedNodes() {
+        QuadTree tree = denseLowerLeftTree();
+        QuadTree adapted = tree.adapt(new HashMap<Long, Long>(), 4, 0);
+
+        assertEquals(1, adapted.getLayoutVersion());
+        assertEquals(4, adapted.getGirdCellsSet().size());
+        assertFalse(adapted.hasSameLayout(tree));
+        assertTrue(adapted.hasSameLayout(adapted.adapt(new HashMap<Long, Long>(), 4, 0)));
+    }
+}
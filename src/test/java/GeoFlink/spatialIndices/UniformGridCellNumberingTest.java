@@ -0,0 +1,86 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialIndices;
+
+import GeoFlink.utils.HelperClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class UniformGridCellNumberingTest {
+
+    private static final int ROWS = 8;
+
+    // Cell (x, y) of each cell number, checking that the numbering is a bijection onto [0, ROWS^2)
+    private static long[] getCellsByNumber(UniformGrid uGrid) {
+        long[] cells = new long[ROWS * ROWS];
+        boolean[] numbered = new boolean[ROWS * ROWS];
+        for (int x = 0; x < ROWS; x++) {
+            for (int y = 0; y < ROWS; y++) {
+                long cellKey = HelperClass.getCellKey(x, y);
+                int number = (int) uGrid.getCellNumber(cellKey);
+                assertFalse("duplicate cell number " + number, numbered[number]);
+                numbered[number] = true;
+                cells[number] = cellKey;
+            }
+        }
+        return cells;
+    }
+
+    @Test
+    public void rowMajorNumbering() {
+        UniformGrid uGrid = new UniformGrid(ROWS, 0, 8, 0, 8, "RowMajor");
+        long[] cells = getCellsByNumber(uGrid);
+        for (int number = 0; number < cells.length; number++) {
+            assertEquals(number % ROWS, HelperClass.getCellXIndex(cells[number]));
+            assertEquals(number / ROWS, HelperClass.getCellYIndex(cells[number]));
+        }
+    }
+
+    // Consecutive cells of the Hilbert curve are adjacent
+    @Test
+    public void hilbertNumberingIsContinuous() {
+        UniformGrid uGrid = new UniformGrid(ROWS, 0, 8, 0, 8, "Hilbert");
+        long[] cells = getCellsByNumber(uGrid);
+        for (int number = 1; number < cells.length; number++) {
+            int dx = Math.abs(HelperClass.getCellXIndex(cells[number]) - HelperClass.getCellXIndex(cells[number - 1]));
+            int dy = Math.abs(HelperClass.getCellYIndex(cells[number]) - HelperClass.getCellYIndex(cells[number - 1]));
+            assertEquals("cells " + (number - 1) + " and " + number, 1, dx + dy);
+        }
+    }
+
+    // Each aligned 2 x 2 block of cells takes 4 consecutive Z-order numbers
+    @Test
+    public void zOrderNumberingKeepsBlocksTogether() {
+        UniformGrid uGrid = new UniformGrid(ROWS, 0, 8, 0, 8, "ZOrder");
+        long[] cells = getCellsByNumber(uGrid);
+        for (int number = 0; number < cells.length; number += 4) {
+            int blockX = HelperClass.getCellXIndex(cells[number]) / 2;
+            int blockY = HelperClass.getCellYIndex(cells[number]) / 2;
+            for (int i = 1; i < 4; i++) {
+                assertEquals(blockX, HelperClass.getCellXIndex(cells[number + i]) / 2);
+                assertEquals(blockY, HelperClass.getCellYIndex(cells[number + i]) / 2);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownNumberingIsRejected() {
+        new UniformGrid(ROWS, 0, 8, 0, 8, "Spiral");
+    }
+}
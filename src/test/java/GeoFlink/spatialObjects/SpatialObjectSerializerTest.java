@@ -0,0 +1,122 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialObjects;
+
+import GeoFlink.spatialIndices.UniformGrid;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.api.common.typeutils.TypeSerializerSchemaCompatibility;
+import org.apache.flink.api.common.typeutils.TypeSerializerSnapshot;
+import org.apache.flink.core.memory.DataInputDeserializer;
+import org.apache.flink.core.memory.DataOutputSerializer;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SpatialObjectSerializerTest {
+
+    private static final UniformGrid uGrid = new UniformGrid(100, 0, 10, 0, 10);
+
+    private static <T> T roundTrip(TypeSerializer<T> serializer, T value) throws IOException {
+        DataOutputSerializer out = new DataOutputSerializer(64);
+        serializer.serialize(value, out);
+        DataInputDeserializer in = new DataInputDeserializer(out.getCopyOfBuffer());
+        T copy = serializer.deserialize(in);
+        assertEquals(0, in.available());
+        return copy;
+    }
+
+    private static <T> void assertSnapshotRestores(TypeSerializer<T> serializer) throws IOException {
+        DataOutputSerializer out = new DataOutputSerializer(64);
+        TypeSerializerSnapshot.writeVersionedSnapshot(out, serializer.snapshotConfiguration());
+        TypeSerializerSnapshot<T> snapshot = TypeSerializerSnapshot.readVersionedSnapshot(
+                new DataInputDeserializer(out.getCopyOfBuffer()), SpatialObjectSerializerTest.class.getClassLoader());
+
+        TypeSerializerSchemaCompatibility<T> compatibility = snapshot.resolveSchemaCompatibility(serializer);
+        assertTrue(compatibility.isCompatibleAsIs());
+        assertSame(serializer, snapshot.restoreSerializer());
+    }
+
+    private static void assertPointEquals(Point expected, Point actual) {
+        assertEquals(expected.objID, actual.objID);
+        assertEquals(expected.timeStampMillisec, actual.timeStampMillisec);
+        assertEquals(expected.gridID, actual.gridID);
+        assertEquals(expected.x, actual.x, 0);
+        assertEquals(expected.y, actual.y, 0);
+        assertEquals(expected.ingestionTime, actual.ingestionTime);
+        assertEquals(expected.objKey, actual.objKey);
+    }
+
+    @Test
+    public void pointRoundTrip() throws IOException {
+        Point p = new Point("taxi-42", 1.25, 8.5, 1351039728980L, uGrid);
+        p.objKey = 17;
+        assertPointEquals(p, roundTrip(PointSerializer.INSTANCE, p));
+        assertPointEquals(p, PointSerializer.INSTANCE.copy(p));
+    }
+
+    @Test
+    public void pointWithoutObjIDRoundTrip() throws IOException {
+        Point p = new Point(3.0, 4.0, uGrid);
+        Point copy = roundTrip(PointSerializer.INSTANCE, p);
+        assertNull(copy.objID);
+        assertPointEquals(p, copy);
+
+        // Unassigned cell of the no-arg constructor
+        assertEquals(UniformGrid.NO_CELL_KEY, roundTrip(PointSerializer.INSTANCE, new Point()).gridID);
+    }
+
+    @Test
+    public void polygonRoundTrip() throws IOException {
+        Polygon poly = new Polygon(new double[]{1, 1, 4, 1, 4, 3, 1, 3, 1, 1}, uGrid);
+        ((SpatialObject) poly).objID = "building-7";
+        poly.timeStampMillisec = 1351039728980L;
+        poly.simplificationTolerance = 0.01;
+        poly.originalCoordinates = new double[]{1, 1, 2.5, 0.995, 4, 1, 4, 3, 1, 3, 1, 1};
+
+        Polygon copy = roundTrip(PolygonSerializer.INSTANCE, poly);
+        assertEquals(((SpatialObject) poly).objID, ((SpatialObject) copy).objID);
+        assertEquals(poly.timeStampMillisec, copy.timeStampMillisec);
+        assertEquals(poly.objID, copy.objID);
+        assertEquals(poly.gridID, copy.gridID);
+        assertEquals(poly.gridIDsSet, copy.gridIDsSet);
+        assertEquals(poly.boundingBox.f0, copy.boundingBox.f0);
+        assertEquals(poly.boundingBox.f1, copy.boundingBox.f1);
+        assertArrayEquals(poly.coordinates, copy.coordinates, 0);
+        assertEquals(poly.simplificationTolerance, copy.simplificationTolerance, 0);
+        assertArrayEquals(poly.originalCoordinates, copy.originalCoordinates, 0);
+    }
+
+    @Test
+    public void emptyPolygonRoundTrip() throws IOException {
+        Polygon copy = roundTrip(PolygonSerializer.INSTANCE, new Polygon());
+        assertNull(copy.gridIDsSet);
+        assertNull(copy.boundingBox);
+        assertNull(copy.originalCoordinates);
+    }
+
+    @Test
+    public void serializerSnapshotsRestoreTheSameSerializer() throws IOException {
+        assertSnapshotRestores(PointSerializer.INSTANCE);
+        assertSnapshotRestores(PolygonSerializer.INSTANCE);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialStreams;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CSVPointParserTest {
+
+    private static byte[] bytes(String record) {
+        return record.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static double parseX(String value) {
+        CSVPointParser parser = new CSVPointParser(0, 1);
+        assertTrue(parser.parse(bytes(value + ",0")));
+        return parser.getX();
+    }
+
+    // Up to 15 digits the fast path must give the correctly rounded double, i.e., the same as Double.parseDouble
+    @Test
+    public void fastPathMatchesParseDouble() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            int digits = 1 + random.nextInt(15);
+            long mantissa = (long) (random.nextDouble() * Math.pow(10, digits));
+            String value = Long.toString(mantissa);
+            int fractionDigits = random.nextInt(value.length() + 1);
+            if (fractionDigits > 0) {
+                value = value.substring(0, value.length() - fractionDigits) + "." + value.substring(value.length() - fractionDigits);
+            }
+            if (random.nextBoolean()) {
+                value = "-" + value;
+            }
+            assertEquals(value, Double.parseDouble(value), parseX(value), 0);
+        }
+    }
+
+    @Test
+    public void slowPathValues() {
+        String[] values = {"1234567890.1234567", "0.12345678901234567890", "1e-3", "-2.5E10", "+7.25", ".5", "5.", "NaN"};
+        for (String value : values) {
+            assertEquals(value, Double.parseDouble(value), parseX(value), 0);
+        }
+    }
+
+    @Test
+    public void fieldsAndWhitespace() throws Exception {
+        CSVPointParser parser = CSVPointParser.ATCFormat();
+        assertTrue(parser.parse(bytes("1351039728.980, 9471001 ,-22366,\t2452,1261.421,780.711,-2.415,-2.441\r\n")));
+        assertEquals(-22366, parser.getX(), 0);
+        assertEquals(2452, parser.getY(), 0);
+        assertEquals(1351039728980L, parser.getTimeStampMillisec());
+        assertEquals("9471001", parser.getObjID());
+    }
+
+    @Test
+    public void timestampFractions() {
+        CSVPointParser parser = new CSVPointParser(1, 2, 0, CSVPointParser.NO_COLUMN);
+        assertTrue(parser.parse(bytes("1351039728,1,2")));
+        assertEquals(1351039728000L, parser.getTimeStampMillisec());
+        assertTrue(parser.parse(bytes("1351039728.5,1,2")));
+        assertEquals(1351039728500L, parser.getTimeStampMillisec());
+        assertTrue(parser.parse(bytes("1351039728.98765,1,2")));
+        assertEquals(1351039728987L, parser.getTimeStampMillisec());
+        assertTrue(parser.parse(bytes("1.351039728e9,1,2")));
+        assertEquals(1351039728000L, parser.getTimeStampMillisec());
+    }
+
+    @Test
+    public void recordsWithMissingColumnsAreRejected() {
+        CSVPointParser parser = CSVPointParser.ATCFormat();
+        assertFalse(parser.parse(bytes("1351039728.980,9471001,-22366")));
+        assertFalse(parser.parse(bytes("")));
+
+        CSVPointParser semicolonParser = new CSVPointParser(0, 1, CSVPointParser.NO_COLUMN, CSVPointParser.NO_COLUMN, ';');
+        assertFalse(semicolonParser.parse(bytes("1.5,2.5")));
+        assertTrue(semicolonParser.parse(bytes("1.5;2.5")));
+        assertEquals(2.5, semicolonParser.getY(), 0);
+    }
+}
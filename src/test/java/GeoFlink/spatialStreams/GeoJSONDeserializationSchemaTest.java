@@ -0,0 +1,101 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialStreams;
+
+import GeoFlink.spatialIndices.UniformGrid;
+import GeoFlink.spatialObjects.Point;
+import GeoFlink.spatialObjects.Polygon;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class GeoJSONDeserializationSchemaTest {
+
+    private static final UniformGrid uGrid = new UniformGrid(100, 0, 10, 0, 10);
+
+    private static ConsumerRecord<byte[], byte[]> record(String value) {
+        return new ConsumerRecord<byte[], byte[]>("topic", 0, 0L, null, (value == null) ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void point() throws Exception {
+        Point p = new GeoJSONDeserializationSchema.PointSchema(uGrid).deserialize(record(
+                "{\"type\": \"Feature\", \"properties\": {\"name\": {\"nested\": [1, 2]}}, \"geometry\": {\"type\": \"Point\", \"coordinates\": [1.5, 2.25, 30.0]}}"));
+        assertEquals(1.5, p.x, 0);
+        assertEquals(2.25, p.y, 0);
+        assertEquals(uGrid.assignGridCellID(new Coordinate(1.5, 2.25)), p.gridID);
+    }
+
+    @Test
+    public void trajectoryPointWithMillisecondTimestamp() throws Exception {
+        Point p = new GeoJSONDeserializationSchema.TPointSchema(uGrid, null).deserialize(record(
+                "{\"geometry\": {\"coordinates\": [3, 4], \"type\": \"Point\"}, \"properties\": {\"oID\": \"taxi-42\", \"timestamp\": 1351039728980}, \"type\": \"Feature\"}"));
+        assertEquals("taxi-42", p.objID);
+        assertEquals(1351039728980L, p.timeStampMillisec);
+        assertEquals(3, p.x, 0);
+        assertEquals(4, p.y, 0);
+    }
+
+    @Test
+    public void trajectoryPointWithFormattedTimestamp() throws Exception {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        GeoJSONDeserializationSchema.TPointSchema schema = new GeoJSONDeserializationSchema.TPointSchema(uGrid, dateFormat);
+
+        Point p = schema.deserialize(record(
+                "{\"type\": \"Feature\", \"geometry\": {\"type\": \"Point\", \"coordinates\": [3, 4]}, \"properties\": {\"timestamp\": \"2020-02-29 23:59:58\", \"oID\": \"7\"}}"));
+        assertEquals("7", p.objID);
+        assertEquals(dateFormat.parse("2020-02-29 23:59:58").getTime(), p.timeStampMillisec);
+
+        // The fields of the previous record are not carried over
+        Point q = schema.deserialize(record("{\"type\": \"Feature\", \"geometry\": {\"type\": \"Point\", \"coordinates\": [5, 6]}}"));
+        assertNull(q.objID);
+        assertEquals(0, q.timeStampMillisec);
+    }
+
+    @Test
+    public void polygonShell() throws Exception {
+        Polygon poly = new GeoJSONDeserializationSchema.PolygonSchema(uGrid).deserialize(record(
+                "{\"type\": \"Feature\", \"geometry\": {\"type\": \"Polygon\", \"coordinates\": [[[1, 1], [4, 1], [4, 3], [1, 3], [1, 1]], [[2, 2], [3, 2], [3, 2.5], [2, 2]]]}}"));
+        assertArrayEquals(new double[]{1, 1, 4, 1, 4, 3, 1, 3, 1, 1}, poly.coordinates, 0);
+        assertEquals(new Coordinate(1, 1), poly.boundingBox.f0);
+        assertEquals(new Coordinate(4, 3), poly.boundingBox.f1);
+    }
+
+    @Test
+    public void multiPolygonFirstShell() throws Exception {
+        Polygon poly = new GeoJSONDeserializationSchema.PolygonSchema(uGrid).deserialize(record(
+                "{\"type\": \"Feature\", \"geometry\": {\"type\": \"MultiPolygon\", \"coordinates\": [[[[1, 1], [2, 1], [2, 2], [1, 1]]], [[[5, 5], [6, 5], [6, 6], [5, 5]]]]}, \"properties\": {}}"));
+        assertArrayEquals(new double[]{1, 1, 2, 1, 2, 2, 1, 1}, poly.coordinates, 0);
+    }
+
+    @Test
+    public void recordsWithoutGeometryAreDropped() throws Exception {
+        GeoJSONDeserializationSchema.PointSchema schema = new GeoJSONDeserializationSchema.PointSchema(uGrid);
+        assertNull(schema.deserialize(record(null)));
+        assertNull(schema.deserialize(record("{\"type\": \"Feature\", \"properties\": {\"oID\": \"1\"}}")));
+        assertNull(schema.deserialize(record("{\"type\": \"Feature\", \"geometry\": {\"type\": \"Point\", \"coordinates\": []}}")));
+    }
+}
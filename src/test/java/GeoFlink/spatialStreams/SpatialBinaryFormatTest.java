@@ -0,0 +1,131 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialStreams;
+
+import GeoFlink.spatialIndices.UniformGrid;
+import GeoFlink.spatialObjects.Point;
+import GeoFlink.spatialObjects.Polygon;
+import GeoFlink.spatialObjects.SpatialObject;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SpatialBinaryFormatTest {
+
+    private static final UniformGrid uGrid = new UniformGrid(100, -180, 180, -90, 90);
+
+    private static Point roundTrip(Point p) {
+        byte[] record = SpatialBinaryFormat.encodePoint(p);
+        assertEquals(SpatialBinaryFormat.POINT, SpatialBinaryFormat.getType(record));
+        assertEquals(p.timeStampMillisec, SpatialBinaryFormat.getTimeStampMillisec(record));
+        return SpatialBinaryFormat.decodePoint(record, new Point(), uGrid);
+    }
+
+    // Zigzag varint timestamps around the byte boundaries and at the extremes
+    @Test
+    public void pointTimestamps() {
+        long[] timestamps = {1, -1, 63, -64, 64, -65, 8191, 8192, 1351039728980L, -1351039728980L, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long timestamp : timestamps) {
+            Point p = new Point("taxi-42", 139.7, 35.6, timestamp, uGrid);
+            Point decoded = roundTrip(p);
+            assertEquals(timestamp, decoded.timeStampMillisec);
+            assertEquals("taxi-42", decoded.objID);
+            assertEquals(p.x, decoded.x, 0);
+            assertEquals(p.y, decoded.y, 0);
+            assertEquals(p.gridID, decoded.gridID);
+        }
+    }
+
+    @Test
+    public void pointOptionalFields() {
+        Point p = new Point(-73.98, 40.75, uGrid);
+        byte[] record = SpatialBinaryFormat.encodePoint(p);
+        assertEquals(2 + 16, record.length);
+
+        Point decoded = roundTrip(p);
+        assertNull(decoded.objID);
+        assertEquals(0, decoded.timeStampMillisec);
+
+        // Non-ASCII objID, and a trajectory point of 18 bytes plus a 6 byte timestamp plus the objID
+        Point q = new Point("\u6771\u4eac-\u00e9", -73.98, 40.75, 1351039728980L, uGrid);
+        assertEquals(q.objID, roundTrip(q).objID);
+        assertEquals(18 + 6 + 1 + 9, SpatialBinaryFormat.encodePoint(q).length);
+    }
+
+    @Test
+    public void polygonRawRing() {
+        double[] coordinates = {139.691706, 35.689487, 139.7, 35.689487, 139.7, 35.7, 139.691706, 35.689487};
+        Polygon poly = new Polygon(coordinates.clone(), uGrid);
+        ((SpatialObject) poly).objID = "ward";
+        poly.timeStampMillisec = 1351039728980L;
+
+        Polygon decoded = SpatialBinaryFormat.decodePolygon(SpatialBinaryFormat.encodePolygon(poly, false), uGrid);
+        assertArrayEquals(coordinates, decoded.coordinates, 0);
+        assertEquals("ward", ((SpatialObject) decoded).objID);
+        assertEquals(poly.timeStampMillisec, decoded.timeStampMillisec);
+        assertEquals(poly.gridIDsSet, decoded.gridIDsSet);
+    }
+
+    // Delta rings round the coordinates to 1 / COORDINATE_SCALE, the differences may be negative and span several varint bytes
+    @Test
+    public void polygonDeltaRing() {
+        Random random = new Random(42);
+        int numCoordinates = 200;
+        double[] coordinates = new double[2 * numCoordinates];
+        for (int i = 0; i < numCoordinates - 1; i++) {
+            coordinates[2 * i] = -180 + 360 * random.nextDouble();
+            coordinates[2 * i + 1] = -90 + 180 * random.nextDouble();
+        }
+        coordinates[2 * numCoordinates - 2] = coordinates[0];
+        coordinates[2 * numCoordinates - 1] = coordinates[1];
+        Polygon poly = new Polygon(coordinates.clone(), uGrid);
+
+        byte[] record = SpatialBinaryFormat.encodePolygon(poly, true);
+        assertEquals(SpatialBinaryFormat.POLYGON, SpatialBinaryFormat.getType(record));
+        Polygon decoded = SpatialBinaryFormat.decodePolygon(record, uGrid);
+
+        assertEquals(numCoordinates, decoded.getNumCoordinates());
+        for (int i = 0; i < coordinates.length; i++) {
+            assertEquals(coordinates[i], decoded.coordinates[i], 0.5 / SpatialBinaryFormat.COORDINATE_SCALE + 1e-12);
+        }
+        assertEquals(decoded.coordinates[0], decoded.coordinates[2 * numCoordinates - 2], 0);
+        assertEquals(decoded.coordinates[1], decoded.coordinates[2 * numCoordinates - 1], 0);
+    }
+
+    // Neighboring vertices take a few bytes each instead of 16
+    @Test
+    public void polygonDeltaRingSize() {
+        double[] coordinates = {139.691706, 35.689487, 139.691806, 35.689487, 139.691806, 35.689587, 139.691706, 35.689487};
+        Polygon poly = new Polygon(coordinates, uGrid);
+        byte[] record = SpatialBinaryFormat.encodePolygon(poly, true);
+        // header, vertex count, the first vertex relative to 0 (5 bytes per ordinate), then 1 byte per difference of 0 and 2 per difference of 1000
+        assertEquals(2 + 1 + 2 * 5 + (3 + 3 + 4), record.length);
+        assertArrayEquals(coordinates, SpatialBinaryFormat.decodePolygon(record, uGrid).coordinates, 1e-9);
+        assertEquals(new Coordinate(139.691706, 35.689487), SpatialBinaryFormat.decodePolygon(record, uGrid).boundingBox.f0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void recordTypeIsChecked() {
+        Polygon poly = new Polygon(new double[]{0, 0, 1, 0, 1, 1, 0, 0}, uGrid);
+        SpatialBinaryFormat.decodePoint(SpatialBinaryFormat.encodePolygon(poly, true), new Point(), uGrid);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+Copyright 2020 Data Platform Research Team, AIRC, AIST, Japan
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package GeoFlink.spatialStreams;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimestampParserTest {
+
+    private static SimpleDateFormat dateFormat(String pattern, String timeZone) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(pattern);
+        dateFormat.setTimeZone(TimeZone.getTimeZone(timeZone));
+        return dateFormat;
+    }
+
+    // Texts of the local times every step minutes over the days before and after a UTC instant
+    private static List<String> localTimesAround(SimpleDateFormat dateFormat, long utcMillis, int stepMinutes) {
+        List<String> texts = new ArrayList<String>();
+        for (long t = utcMillis - 86400000L; t <= utcMillis + 86400000L; t += stepMinutes * 60000L) {
+            texts.add(dateFormat.format(new Date(t)));
+        }
+        return texts;
+    }
+
+    private static void assertParsedAsDateFormat(SimpleDateFormat dateFormat, List<String> texts) throws ParseException {
+        TimestampParser parser = new TimestampParser(dateFormat);
+        for (String text : texts) {
+            assertEquals(text, dateFormat.parse(text).getTime(), parser.parse(text));
+            byte[] bytes = ("," + text + ",").getBytes(StandardCharsets.US_ASCII);
+            assertEquals(text, dateFormat.parse(text).getTime(), parser.parse(bytes, 1, bytes.length - 1));
+        }
+    }
+
+    // The cached hours must not span an offset change: in sequence, shuffled and with the gap and overlap hours
+    private static void assertDSTTransition(String timeZone, String transitionUTC) throws ParseException {
+        SimpleDateFormat dateFormat = dateFormat("yyyy-MM-dd HH:mm:ss", timeZone);
+        long transition = dateFormat("yyyy-MM-dd HH:mm:ss", "UTC").parse(transitionUTC).getTime();
+
+        List<String> texts = localTimesAround(dateFormat, transition, 7);
+        assertParsedAsDateFormat(dateFormat, texts);
+        Collections.shuffle(texts, new Random(42));
+        assertParsedAsDateFormat(dateFormat, texts);
+
+        // Local times of the gap (spring forward) do not occur in the formatted texts
+        List<String> gapTexts = new ArrayList<String>();
+        for (int hour = 0; hour < 24; hour++) {
+            gapTexts.add(transitionUTC.substring(0, 11) + String.format("%02d:30:00", hour));
+        }
+        assertParsedAsDateFormat(dateFormat, gapTexts);
+    }
+
+    @Test
+    public void springForwardAndFallBack() throws ParseException {
+        assertDSTTransition("America/New_York", "2021-03-14 07:00:00");
+        assertDSTTransition("America/New_York", "2021-11-07 06:00:00");
+        assertDSTTransition("Europe/Berlin", "2021-03-28 01:00:00");
+        assertDSTTransition("Europe/Berlin", "2021-10-31 01:00:00");
+    }
+
+    // 30 minute offset change
+    @Test
+    public void halfHourTransition() throws ParseException {
+        assertDSTTransition("Australia/Lord_Howe", "2021-04-03 15:00:00");
+        assertDSTTransition("Australia/Lord_Howe", "2021-10-02 15:30:00");
+    }
+
+    @Test
+    public void millisecondsAndLiterals() throws ParseException {
+        SimpleDateFormat dateFormat = dateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", "UTC");
+        assertParsedAsDateFormat(dateFormat, localTimesAround(dateFormat, 1351039728980L, 61));
+        assertParsedAsDateFormat(dateFormat, Collections.singletonList("2012-10-24T00:48:48.007Z"));
+    }
+
+    // Out of range fields are parsed leniently by the DateFormat
+    @Test
+    public void lenientFields() throws ParseException {
+        SimpleDateFormat dateFormat = dateFormat("yyyy-MM-dd HH:mm:ss", "Asia/Tokyo");
+        List<String> texts = new ArrayList<String>();
+        texts.add("2021-02-28 10:15:00");
+        texts.add("2021-02-30 10:15:00");
+        texts.add("2021-02-28 10:61:00");
+        texts.add("2021-02-28 10:15:75");
+        texts.add("2021-13-01 24:00:00");
+        texts.add("2021-02-28 10:15:00");
+        assertParsedAsDateFormat(dateFormat, texts);
+    }
+
+    @Test
+    public void otherPatternsUseTheDateFormat() throws ParseException {
+        SimpleDateFormat dateFormat = dateFormat("dd MMM yyyy HH:mm", "UTC");
+        assertParsedAsDateFormat(dateFormat, localTimesAround(dateFormat, 1351039728980L, 127));
+    }
+}